@@ -12,6 +12,7 @@ import com.crosspromotion.sdk.core.imp.video.VideoAdImp;
 import com.crosspromotion.sdk.report.AdReport;
 import com.crosspromotion.sdk.utils.Cache;
 import com.crosspromotion.sdk.utils.PUtils;
+import com.crosspromotion.sdk.utils.ResIndex;
 import com.crosspromotion.sdk.utils.error.ErrorBuilder;
 import com.crosspromotion.sdk.utils.error.ErrorCode;
 import com.crosspromotion.sdk.utils.webview.ActWebView;
@@ -55,16 +56,22 @@ public class AdsActivity extends BaseActivity implements JsBridge.MessageListene
     protected void initViewAndLoad(String impUrl) {
         try {
             super.initViewAndLoad(impUrl);
-            if (mJsBridge == null) {
-                mJsBridge = new JsBridge();
+            if (mPrerendered != null) {
+                mJsBridge = mPrerendered.getJsBridge();
+                mJsBridge.updateScene(mSceneName, mAbt);
+                mJsBridge.setMessageListener(this);
+            } else {
+                if (mJsBridge == null) {
+                    mJsBridge = new JsBridge();
 
+                }
+                mJsBridge.setMessageListener(this);
+                mJsBridge.injectJavaScript(mAdView);
+                mJsBridge.setPlacementId(mPlacementId);
+                mJsBridge.setSceneName(mSceneName);
+                mJsBridge.setAbt(mAbt);
+                mJsBridge.setCampaign(mAdBean.getAdString());
             }
-            mJsBridge.setMessageListener(this);
-            mJsBridge.injectJavaScript(mAdView);
-            mJsBridge.setPlacementId(mPlacementId);
-            mJsBridge.setSceneName(mSceneName);
-            mJsBridge.setAbt(mAbt);
-            mJsBridge.setCampaign(mAdBean.getAdString());
 
 //            if (mReceiver == null) {
 //                mReceiver = new VolumeReceiver();
@@ -222,13 +229,23 @@ public class AdsActivity extends BaseActivity implements JsBridge.MessageListene
     }
 
     private void loadAdUrl(String url) throws Exception {
-        boolean existCache = Cache.existCache(this, url);
-        if (existCache) {
+        if (mPrerendered != null) {
+            // already loaded, it is drawn once attached
+            mAdView.post(new Runnable() {
+                @Override
+                public void run() {
+                    onCreativePainted();
+                }
+            });
+        } else if (ResIndex.canServe(this, url) || !Cache.existCache(this, url)) {
+            // a cached page is streamed from the cache by shouldInterceptRequest
+            mAdView.loadUrl(url);
+        } else {
+            // cached without a mime type or as a redirect, which shouldInterceptRequest lets
+            // through, loaded from the file as html like before
             File file = Cache.getCacheFile(this, url, null);
             String data = IOUtil.toString(IOUtil.getFileInputStream(file), CommonConstants.CHARTSET_UTF8);
             mAdView.loadDataWithBaseURL(url, data, "text/html", CommonConstants.CHARTSET_UTF8, null);
-        } else {
-            mAdView.loadUrl(url);
         }
         if (mJsBridge != null) {
             mJsBridge.reportShowEvent();
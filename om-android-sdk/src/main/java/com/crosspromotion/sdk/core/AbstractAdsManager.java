@@ -3,12 +3,14 @@ package com.crosspromotion.sdk.core;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Base64;
 
 import com.crosspromotion.sdk.bean.AdBean;
 import com.crosspromotion.sdk.report.AdReport;
 import com.crosspromotion.sdk.utils.DownloadManager;
+import com.crosspromotion.sdk.utils.ResIndex;
 import com.crosspromotion.sdk.utils.PUtils;
 import com.crosspromotion.sdk.utils.ResponseUtil;
 import com.crosspromotion.sdk.utils.error.Error;
@@ -16,6 +18,7 @@ import com.crosspromotion.sdk.utils.error.ErrorBuilder;
 import com.crosspromotion.sdk.utils.error.ErrorCode;
 import com.crosspromotion.sdk.utils.helper.PayloadHelper;
 import com.crosspromotion.sdk.utils.helper.WaterFallHelper;
+import com.crosspromotion.sdk.utils.webview.AdsWebView;
 import com.openmediation.sdk.utils.AdRateUtil;
 import com.openmediation.sdk.utils.AdtUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
@@ -35,9 +38,11 @@ import org.json.JSONObject;
 
 import java.io.File;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.net.ssl.HttpsURLConnection;
 
@@ -93,6 +98,12 @@ public abstract class AbstractAdsManager implements Request.OnRequestCallback {
         }
         mTimeoutRunnable = null;
         mHandler = null;
+        HandlerUtil.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                AdsWebView.getInstance().discardPrerendered(mPlacementId);
+            }
+        });
     }
 
     public void loadAds(Map extras) {
@@ -163,7 +174,9 @@ public abstract class AbstractAdsManager implements Request.OnRequestCallback {
         }
 
         try {
+            prepareCreative(mAdBean);
             Intent intent = new Intent(mContext, clazz);
+            intent.putExtra("showTime", SystemClock.elapsedRealtime());
             intent.putExtra("adBean", AdBean.toJsonString(mAdBean));
             intent.putExtra("placementId", mPlacementId);
             intent.putExtra("adType", getAdType());
@@ -236,10 +249,43 @@ public abstract class AbstractAdsManager implements Request.OnRequestCallback {
         }
         onLoadFinish();
         if (isCacheAdsType()) {
+            prepareCreative(adBean);
+            prerender(adBean);
             callbackAdsReady();
         }
     }
 
+    /**
+     * Indexes the creative page off the main thread, ahead of show
+     */
+    private void prepareCreative(AdBean adBean) {
+        if (adBean != null && adBean.getResources() != null && !adBean.getResources().isEmpty()) {
+            ResIndex.prepare(adBean.getResources().get(0));
+        }
+    }
+
+    /**
+     * Renders a ready full screen ad into a pooled WebView, so show only has to attach it
+     */
+    private void prerender(final AdBean adBean) {
+        if (adBean == null || adBean.getResources() == null || adBean.getResources().isEmpty()) {
+            return;
+        }
+        final int adType = getAdType();
+        if (adType != CommonConstants.INTERSTITIAL && adType != CommonConstants.VIDEO) {
+            return;
+        }
+        final String url = adBean.getResources().get(0);
+        final String campaign = adBean.getAdString();
+        final String pkgName = adBean.getPkgName();
+        HandlerUtil.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                AdsWebView.getInstance().prerender(mPlacementId, url, campaign, pkgName);
+            }
+        });
+    }
+
     /**
      * Banner广告需要判断是否是自刷新，自刷新的加载失败不回调用户
      * 其它类型需要判断是否是手动加载
@@ -360,8 +406,14 @@ public abstract class AbstractAdsManager implements Request.OnRequestCallback {
         preLoadResImpl(adBeanList.get(0));
     }
 
+    /**
+     * Downloads the ad's resources. The ad is ready once its necessary resources are cached,
+     * the rest keep downloading at a lower priority.
+     */
     protected void preLoadResImpl(AdBean adBean) {
-        final List<String> res = new ArrayList<>();
+        // url to download priority, in download order
+        final Map<String, Integer> res = new LinkedHashMap<>();
+        final Set<String> necessaryRes = new HashSet<>();
         final int adType = getAdType();
         switch (adType) {
             case CommonConstants.NATIVE:
@@ -370,37 +422,27 @@ public abstract class AbstractAdsManager implements Request.OnRequestCallback {
                     onAdsLoadFailed(ErrorBuilder.build(ErrorCode.CODE_LOAD_SERVER_ERROR));
                     return;
                 }
-                res.addAll(imgUrls);
-                if (!TextUtils.isEmpty(adBean.getIconUrl())) {
-                    res.add(adBean.getIconUrl());
-                }
+                addRes(res, necessaryRes, imgUrls, DownloadManager.PRIORITY_HIGH, true);
+                addRes(res, necessaryRes, adBean.getIconUrl(), DownloadManager.PRIORITY_HIGH, true);
                 break;
             default:
                 if (adBean.getResources() == null || adBean.getResources().isEmpty()) {
                     onAdsLoadFailed(ErrorBuilder.build(ErrorCode.CODE_LOAD_SERVER_ERROR));
                     return;
                 }
-                if (!adBean.getResources().isEmpty()) {
-                    res.addAll(adBean.getResources());
-                }
-                if (!TextUtils.isEmpty(adBean.getIconUrl())) {
-                    res.add(adBean.getIconUrl());
-                }
-                if (!TextUtils.isEmpty(adBean.getVideoUrl())) {
-                    res.add(adBean.getVideoUrl());
-                }
-                List<String> imgUrlList = adBean.getMainimgUrl();
-                if (imgUrlList != null && imgUrlList.size() > 0) {
-                    res.addAll(imgUrlList);
-                }
+                addRes(res, necessaryRes, adBean.getResources(), DownloadManager.PRIORITY_HIGH, true);
+                addRes(res, necessaryRes, adBean.getVideoUrl(), DownloadManager.PRIORITY_NORMAL, true);
+                addRes(res, necessaryRes, adBean.getIconUrl(), DownloadManager.PRIORITY_LOW, false);
+                addRes(res, necessaryRes, adBean.getMainimgUrl(), DownloadManager.PRIORITY_LOW, false);
                 break;
         }
 
         try {
             adBean.getSuccess().set(0);
             adBean.getFailed().set(0);
-            for (String s : res) {
-                DownloadManager.getInstance().downloadFile(s, new DownloadResCallback(res.size(), adBean));
+            DownloadResCallback callback = new DownloadResCallback(res.size(), necessaryRes, adBean);
+            for (Map.Entry<String, Integer> entry : res.entrySet()) {
+                DownloadManager.getInstance().downloadFile(entry.getKey(), entry.getValue(), callback);
             }
         } catch (Exception e) {
             DeveloperLog.LogD("AdManager loadAd res exception : ", e);
@@ -409,6 +451,44 @@ public abstract class AbstractAdsManager implements Request.OnRequestCallback {
         }
     }
 
+    private static void addRes(Map<String, Integer> res, Set<String> necessaryRes, List<String> urls,
+                               int priority, boolean necessary) {
+        if (urls == null) {
+            return;
+        }
+        for (String url : urls) {
+            addRes(res, necessaryRes, url, priority, necessary);
+        }
+    }
+
+    private static void addRes(Map<String, Integer> res, Set<String> necessaryRes, String url,
+                               int priority, boolean necessary) {
+        if (TextUtils.isEmpty(url)) {
+            return;
+        }
+        Integer current = res.get(url);
+        if (current == null || priority < current) {
+            res.put(url, priority);
+        }
+        if (necessary) {
+            necessaryRes.add(url);
+        }
+    }
+
+    private void saveAdBeanCache(AdBean adBean) {
+        if (!isCacheAdsType()) {
+            return;
+        }
+        try {
+            final String cache = Base64.encodeToString(AdBean.toJsonString(adBean).getBytes(), Base64.DEFAULT).trim();
+            DataCache.getInstance().set(mPlacementId + KeyConstants.KEY_CACHE_AD_BEAN, cache);
+            DeveloperLog.LogD("AdBean saved to cache: " + mPlacementId);
+            DataCache.getInstance().setMEM(mPlacementId + KeyConstants.KEY_CACHE_AD_BEAN_UPDATED, true);
+        } catch (Exception e) {
+            DeveloperLog.LogE("AdBean failed save to cache: " + mPlacementId);
+        }
+    }
+
     protected PlacementInfo getPlacementInfo() {
         return new PlacementInfo(mPlacementId).getPlacementInfo(getAdType());
     }
@@ -482,42 +562,53 @@ public abstract class AbstractAdsManager implements Request.OnRequestCallback {
     private class DownloadResCallback implements DownloadManager.OnResDownloaded {
 
         private int total;
+        private Set<String> necessaryRes;
         private AdBean adBean;
+        private int necessaryDone;
+        private boolean isFinished;
 
-        DownloadResCallback(int total, AdBean adBean) {
+        DownloadResCallback(int total, Set<String> necessaryRes, AdBean adBean) {
             this.total = total;
+            this.necessaryRes = necessaryRes;
             this.adBean = adBean;
         }
 
         @Override
         public void onCompleted(String url, File file) {
             try {
+                boolean necessary = necessaryRes.contains(url);
                 if (file == null) {
                     adBean.getFailed().incrementAndGet();
                 } else {
                     adBean.getSuccess().incrementAndGet();
                     adBean.replaceOnlineResToLocal(url, "file://".concat(file.getPath()));
+                    ResIndex.put(url, file);
                 }
-                if (total == (adBean.getSuccess().get() + adBean.getFailed().get())) {
-                    if (adBean.getFailed().get() > 0) {
-                        onAdsLoadFailed(ErrorBuilder.build(ErrorCode.CODE_LOAD_DOWNLOAD_FAILED));
-                    } else {
-                        mAdBean = adBean;
-                        mAdBean.setFillTime(System.currentTimeMillis());
-                        if (isCacheAdsType()) {
-                            try {
-                                final String cache = Base64.encodeToString(AdBean.toJsonString(mAdBean).getBytes(), Base64.DEFAULT).trim();
-                                DataCache.getInstance().set(mPlacementId + KeyConstants.KEY_CACHE_AD_BEAN, cache);
-                                DeveloperLog.LogD("AdBean saved to cache: " + mPlacementId);
-                                DataCache.getInstance().setMEM(mPlacementId + KeyConstants.KEY_CACHE_AD_BEAN_UPDATED, true);
-                            } catch (Exception e) {
-                                DeveloperLog.LogE("AdBean failed save to cache: " + mPlacementId);
-                            }
-
+                boolean ready = false;
+                boolean failed = false;
+                synchronized (this) {
+                    if (!isFinished) {
+                        if (file == null && necessary) {
+                            isFinished = true;
+                            failed = true;
+                        } else if (necessary && ++necessaryDone == necessaryRes.size()) {
+                            isFinished = true;
+                            ready = true;
                         }
-                        onAdsLoadSuccess(mAdBean);
                     }
                 }
+                if (failed) {
+                    onAdsLoadFailed(ErrorBuilder.build(ErrorCode.CODE_LOAD_DOWNLOAD_FAILED));
+                } else if (ready) {
+                    mAdBean = adBean;
+                    mAdBean.setFillTime(System.currentTimeMillis());
+                    saveAdBeanCache(mAdBean);
+                    onAdsLoadSuccess(mAdBean);
+                } else if (total == (adBean.getSuccess().get() + adBean.getFailed().get())
+                        && adBean == mAdBean) {
+                    // optional resources finished after the ad was ready, keep their local paths
+                    saveAdBeanCache(adBean);
+                }
             } catch (Throwable e) {
                 DeveloperLog.LogE("CrossPromotion AbstractAdsManager DownloadRes error: " + e.toString());
                 onAdsLoadFailed(ErrorBuilder.build(ErrorCode.CODE_LOAD_DOWNLOAD_FAILED));
@@ -3,29 +3,32 @@
 
 package com.crosspromotion.sdk.core;
 
+import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.Intent;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.view.ViewGroup;
-import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.widget.RelativeLayout;
 
 import com.crosspromotion.sdk.bean.AdBean;
 import com.crosspromotion.sdk.utils.GpUtil;
-import com.crosspromotion.sdk.utils.ResUtil;
 import com.crosspromotion.sdk.utils.error.Error;
 import com.crosspromotion.sdk.utils.error.ErrorBuilder;
 import com.crosspromotion.sdk.utils.error.ErrorCode;
 import com.crosspromotion.sdk.utils.webview.AdsWebView;
 import com.crosspromotion.sdk.utils.webview.BaseWebView;
-import com.crosspromotion.sdk.utils.webview.BaseWebViewClient;
+import com.crosspromotion.sdk.utils.webview.CachedWebViewClient;
 import com.openmediation.sdk.utils.DeveloperLog;
 import com.openmediation.sdk.utils.HandlerUtil;
 import com.openmediation.sdk.utils.SdkUtil;
 import com.openmediation.sdk.utils.crash.CrashUtil;
 
+import java.lang.ref.WeakReference;
+
 /**
  *
  */
@@ -38,6 +41,15 @@ public class BaseActivity extends Activity {
     protected int mAbt;
     protected AbstractAdsManager mAdsManager;
     protected boolean isCloseCallbacked = false;
+    /**
+     * When show was called, in {@link SystemClock#elapsedRealtime()}
+     */
+    protected long mShowTime;
+    /**
+     * The creative rendered ahead of show, null if it is loaded now
+     */
+    protected AdsWebView.Prerendered mPrerendered;
+    private boolean isPainted;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -51,6 +63,7 @@ public class BaseActivity extends Activity {
             mPlacementId = intent.getStringExtra("placementId");
             mSceneName = intent.getStringExtra("sceneName");
             mAbt = intent.getIntExtra("abt", 0);
+            mShowTime = intent.getLongExtra("showTime", SystemClock.elapsedRealtime());
             mAdsManager = CallbackBridge.getListener(mPlacementId);
 
             String adBeanString = intent.getStringExtra("adBean");
@@ -87,7 +100,8 @@ public class BaseActivity extends Activity {
     }
 
     protected void initViewAndLoad(String impUrl) {
-        mAdView = AdsWebView.getInstance().getAdView();
+        mPrerendered = AdsWebView.getInstance().takePrerendered(mPlacementId, impUrl, mAdBean.getAdString());
+        mAdView = mPrerendered != null ? mPrerendered.getView() : AdsWebView.getInstance().getAdView();
         if (mAdView.getParent() != null) {
             ViewGroup group = (ViewGroup) mAdView.getParent();
             group.removeView(mAdView);
@@ -99,6 +113,18 @@ public class BaseActivity extends Activity {
         mAdView.setWebViewClient(new AdWebClient(this, mAdBean.getPkgName()));
     }
 
+    /**
+     * Called once the creative is first drawn
+     */
+    protected void onCreativePainted() {
+        if (isPainted) {
+            return;
+        }
+        isPainted = true;
+        DeveloperLog.LogD("BaseActivity", "show to first paint: "
+                + (SystemClock.elapsedRealtime() - mShowTime) + "ms, placementId: " + mPlacementId);
+    }
+
     /**
      * Ads close callback
      */
@@ -165,11 +191,38 @@ public class BaseActivity extends Activity {
         }
     }
 
-    protected static class AdWebClient extends BaseWebViewClient {
+    protected static class AdWebClient extends CachedWebViewClient {
         private boolean isJumped = false;
+        private WeakReference<BaseActivity> mActivityRef;
 
         public AdWebClient(Activity activity, String pkgName) {
             super(activity, pkgName);
+            if (activity instanceof BaseActivity) {
+                mActivityRef = new WeakReference<>((BaseActivity) activity);
+            }
+        }
+
+        @TargetApi(Build.VERSION_CODES.M)
+        @Override
+        public void onPageCommitVisible(WebView view, String url) {
+            super.onPageCommitVisible(view, url);
+            onPainted();
+        }
+
+        @Override
+        public void onPageFinished(WebView view, String url) {
+            super.onPageFinished(view, url);
+            // onPageCommitVisible is not available below M
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                onPainted();
+            }
+        }
+
+        private void onPainted() {
+            BaseActivity activity = mActivityRef == null ? null : mActivityRef.get();
+            if (activity != null) {
+                activity.onCreativePainted();
+            }
         }
 
         @Override
@@ -198,15 +251,5 @@ public class BaseActivity extends Activity {
             }
             return true;
         }
-
-        @Override
-        public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
-            DeveloperLog.LogD("shouldInterceptRequest: ", url);
-            WebResourceResponse response = ResUtil.shouldInterceptRequest(view, url);
-            if (response == null) {
-                DeveloperLog.LogD("response null:" + url);
-            }
-            return response == null ? super.shouldInterceptRequest(view, url) : response;
-        }
     }
 }
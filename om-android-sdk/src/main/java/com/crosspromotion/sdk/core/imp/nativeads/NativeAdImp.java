@@ -29,6 +29,7 @@ import com.openmediation.sdk.nativead.MediaView;
 import com.openmediation.sdk.nativead.NativeAdView;
 import com.openmediation.sdk.utils.DeveloperLog;
 import com.openmediation.sdk.utils.IOUtil;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.WorkExecutor;
 import com.openmediation.sdk.utils.constant.CommonConstants;
 import com.openmediation.sdk.utils.crash.CrashUtil;
@@ -78,7 +79,7 @@ public final class NativeAdImp extends AbstractAdsManager implements View.OnClic
         AdMark adMark = adBean.getAdMark();
         if (adMark != null && !TextUtils.isEmpty(adMark.getLogo())) {
             final String logo = adMark.getLogo();
-            WorkExecutor.execute(new Runnable() {
+            WorkExecutor.execute(SdkScheduler.Lane.IO, new Runnable() {
                 @Override
                 public void run() {
                     try {
@@ -8,6 +8,7 @@ import android.content.Context;
 import com.crosspromotion.sdk.bean.AdBean;
 import com.crosspromotion.sdk.utils.PUtils;
 import com.openmediation.sdk.utils.SceneUtil;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.WorkExecutor;
 import com.openmediation.sdk.utils.request.network.AdRequest;
 
@@ -46,7 +47,7 @@ public final class AdReport {
                 tracker = tracker.replace("{scene}", sceneId + "");
             }
             AdRequest.get().url(tracker).readTimeout(60000).connectTimeout(30000)
-                    .instanceFollowRedirects(true).performRequest(context);
+                    .instanceFollowRedirects(true).lane(SdkScheduler.Lane.UPLOAD).performRequest(context);
         }
 
         sClickReport.add(adBean);
@@ -78,7 +79,7 @@ public final class AdReport {
                 tracker = tracker.replace("{scene}", sceneId + "");
             }
             AdRequest.get().url(tracker).readTimeout(60000).connectTimeout(30000)
-                    .instanceFollowRedirects(true).performRequest(context);
+                    .instanceFollowRedirects(true).lane(SdkScheduler.Lane.UPLOAD).performRequest(context);
         }
 
         sImpReport.add(adBean);
@@ -95,6 +96,6 @@ public final class AdReport {
             }
         };
 
-        WorkExecutor.execute(runnable);
+        WorkExecutor.execute(SdkScheduler.Lane.IO, runnable);
     }
 }
@@ -10,6 +10,7 @@ import android.text.TextUtils;
 import com.openmediation.sdk.utils.AdtUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
 import com.openmediation.sdk.utils.IOUtil;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.constant.CommonConstants;
 import com.openmediation.sdk.utils.request.network.Headers;
 import com.openmediation.sdk.utils.request.network.Response;
@@ -17,10 +18,9 @@ import com.openmediation.sdk.utils.request.network.Response;
 import org.json.JSONObject;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.nio.charset.Charset;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -39,13 +39,42 @@ public final class Cache {
             CommonConstants.KEY_LOCATION,
             CommonConstants.KEY_CONTENT_LENGTH
     };
+    private static final String PART_SUFFIX = ".part";
+    private static final String PART_VALIDATOR_SUFFIX = ".validator";
+    private static final String KEY_CONTENT_RANGE = "Content-Range";
+    private static final String KEY_ACCEPT_RANGES = "Accept-Ranges";
+
+    private static final int HEADER_CACHE_CONTROL = 0;
+    private static final int HEADER_CONTENT_LENGTH = 5;
+
+    private static final long TRIM_TARGET = (long) (FREE_SD_SPACE_NEEDED_TO_CACHE * 0.6);
+
+    private static CacheIndex sIndex;
 
     public static void init() {
-        if (AdtUtil.getInstance().getApplicationContext() == null) {
+        final Context context = AdtUtil.getInstance().getApplicationContext();
+        if (context == null) {
             return;
         }
-        createCacheRootDir(AdtUtil.getInstance().getApplicationContext());
-        freeSpaceIfNeeded(AdtUtil.getInstance().getApplicationContext());
+        createCacheRootDir(context);
+        SdkScheduler.execute(SdkScheduler.Lane.IO, new Runnable() {
+            @Override
+            public void run() {
+                freeSpaceIfNeeded(context);
+            }
+        });
+    }
+
+    /**
+     * Gets the index, loading its journal on first use
+     */
+    private static synchronized CacheIndex getIndex(Context context) {
+        if (sIndex == null) {
+            CacheIndex index = new CacheIndex(getRootDir(context), HEADERS);
+            index.load();
+            sIndex = index;
+        }
+        return sIndex;
     }
 
     /**
@@ -74,26 +103,15 @@ public final class Cache {
                     context = AdtUtil.getInstance().getApplicationContext();
                 }
             }
-            File rootDir = getRootDir(context);
-            File content;
-            File header;
             if (url.startsWith("http")) {
-                Map<String, String> urlFields = getUrlFields(url);
-                String filePath = urlFields.get("path");
-                String fileName = urlFields.get("name");
-                if (TextUtils.isEmpty(fileName)) {
-                    return false;
-                }
-                content = new File(rootDir, filePath + fileName);
-                header = new File(rootDir, filePath + fileName.concat(CommonConstants.FILE_HEADER_SUFFIX));
-            } else {
-                Uri tmp = Uri.parse(url);
-                if (TextUtils.isEmpty(tmp.getPath())) {
-                    return false;
-                }
-                content = new File(tmp.getPath());
-                header = new File(tmp.getPath().concat(CommonConstants.FILE_HEADER_SUFFIX));
+                return existIndexedCache(context, url);
             }
+            Uri tmp = Uri.parse(url);
+            if (TextUtils.isEmpty(tmp.getPath())) {
+                return false;
+            }
+            File content = new File(tmp.getPath());
+            File header = new File(tmp.getPath().concat(CommonConstants.FILE_HEADER_SUFFIX));
             if (!header.exists() || !content.exists()) {
                 return false;
             }
@@ -109,11 +127,9 @@ public final class Cache {
                 } catch (Exception ignored) {
                 }
             }
-            updateFileTime(header);
-            updateFileTime(content);
 
             long interval = getRequestInterval(header);
-            long maxAge = getMaxAge(header);
+            long maxAge = getMaxAge(getValueFromFile(header, CommonConstants.KEY_CACHE_CONTROL));
 
             return interval < maxAge;
         } catch (Exception e) {
@@ -122,6 +138,92 @@ public final class Cache {
         }
     }
 
+    /**
+     * checks the index for url, the content file is only stat'ed to catch files the system
+     * removed from the cache dir
+     */
+    private static boolean existIndexedCache(Context context, String url) {
+        String key = getKey(url);
+        if (key == null) {
+            return false;
+        }
+        CacheIndex index = getIndex(context);
+        CacheIndex.Entry entry = index.get(key, System.currentTimeMillis());
+        if (entry == null || entry.mSize <= 0) {
+            return false;
+        }
+        String contentLength = entry.mHeaders[HEADER_CONTENT_LENGTH];
+        if (!TextUtils.isEmpty(contentLength)) {
+            try {
+                if (entry.mSize != Integer.parseInt(contentLength)) {
+                    return false;
+                }
+            } catch (Exception ignored) {
+            }
+        }
+        if (index.getFile(key).length() != entry.mSize) {
+            index.remove(key);
+            return false;
+        }
+        long interval = System.currentTimeMillis() - entry.mRequestTime;
+        return interval < getMaxAge(entry.mHeaders[HEADER_CACHE_CONTROL]);
+    }
+
+    /**
+     * Returns the cached header field of url, or null if url is not cached
+     */
+    public static String getHeaderValue(Context context, String url, String key) {
+        String cacheKey = getKey(url);
+        if (context == null || cacheKey == null) {
+            return null;
+        }
+        for (int i = 0; i < HEADERS.length; i++) {
+            if (HEADERS[i].equals(key)) {
+                return getIndex(context).getHeader(cacheKey, i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the time at which the cached url expires, 0 if url is not cached
+     */
+    public static long getExpireTime(Context context, String url) {
+        String key = getKey(url);
+        if (context == null || key == null) {
+            return 0;
+        }
+        CacheIndex index = getIndex(context);
+        synchronized (index) {
+            CacheIndex.Entry entry = index.peek(key);
+            if (entry == null || entry.mSize <= 0) {
+                return 0;
+            }
+            return entry.mRequestTime + getMaxAge(entry.mHeaders[HEADER_CACHE_CONTROL]);
+        }
+    }
+
+    /**
+     * deletes the cached content and header of url
+     */
+    public static void deleteCache(Context context, String url) {
+        String key = getKey(url);
+        if (context == null || key == null) {
+            return;
+        }
+        getIndex(context).remove(key);
+        ResIndex.remove(url);
+        File rootDir = getRootDir(context);
+        File content = new File(rootDir, key);
+        if (content.exists()) {
+            DeveloperLog.LogD("Cache", "delete content file : " + content.delete());
+        }
+        File header = new File(rootDir, key.concat(CommonConstants.FILE_HEADER_SUFFIX));
+        if (header.exists()) {
+            DeveloperLog.LogD("Cache", "delete header file : " + header.delete());
+        }
+    }
+
     /**
      * caches file
      */
@@ -134,6 +236,7 @@ public final class Cache {
             success = saveContent(context, url, response);
             if (success) {
                 saveHeaderFields(context, url, response);
+                freeSpaceIfNeeded(context);
             }
         } catch (Exception e) {
             success = false;
@@ -142,11 +245,135 @@ public final class Cache {
         return success;
     }
 
+    /**
+     * appends the body of a 206 response to the partial file of url, caches the file once complete
+     *
+     * @param offset length of the partial file when the range was requested
+     * @return true if the file is complete
+     */
+    public static boolean resumeFile(Context context, String url, Response response, long offset) {
+        if (context == null) {
+            return false;
+        }
+        try {
+            long[] range = parseContentRange(response.headers().getFirst(KEY_CONTENT_RANGE));
+            File part = getPartialFile(context, url);
+            if (part == null || range == null || range[0] != offset || part.length() != offset) {
+                deletePartialFile(context, url);
+                return false;
+            }
+            InputStream in = response.body().stream();
+            FileOutputStream out = new FileOutputStream(part, true);
+            try {
+                IOUtil.copy(in, out);
+            } finally {
+                IOUtil.closeQuietly(out);
+                IOUtil.closeQuietly(in);
+            }
+            if (range[1] > 0 && part.length() != range[1]) {
+                return false;
+            }
+            File result = getCacheFile(context, url, null);
+            if (result == null || (result.exists() && !result.delete()) || !part.renameTo(result)) {
+                deletePartialFile(context, url);
+                return false;
+            }
+            deletePartialValidator(context, url);
+            saveHeaderFields(context, url, response.headers(), String.valueOf(result.length()));
+            freeSpaceIfNeeded(context);
+            return true;
+        } catch (Exception e) {
+            DeveloperLog.LogD("Cache", e);
+            return false;
+        }
+    }
+
+    /**
+     * gets the file a download of url is written to until it completes
+     */
+    public static File getPartialFile(Context context, String url) {
+        File content = getCacheFile(context, url, null);
+        return content == null ? null : new File(content.getPath().concat(PART_SUFFIX));
+    }
+
+    /**
+     * gets the validator to send in If-Range when resuming the partial file of url
+     *
+     * @return the ETag or Last-Modified of the partial download, null if it can not be resumed
+     */
+    public static String getPartialValidator(Context context, String url) {
+        File part = getPartialFile(context, url);
+        if (part == null || part.length() <= 0) {
+            return null;
+        }
+        File validator = new File(part.getPath().concat(PART_VALIDATOR_SUFFIX));
+        if (!validator.exists()) {
+            return null;
+        }
+        try {
+            String value = IOUtil.toString(IOUtil.getFileInputStream(validator)).trim();
+            return TextUtils.isEmpty(value) ? null : value;
+        } catch (Exception e) {
+            DeveloperLog.LogD("Cache", e);
+            return null;
+        }
+    }
+
+    /**
+     * deletes the partial file of url and its validator
+     */
+    public static void deletePartialFile(Context context, String url) {
+        File part = getPartialFile(context, url);
+        if (part != null && part.exists()) {
+            DeveloperLog.LogD("Cache", "delete partial file : " + part.delete());
+        }
+        deletePartialValidator(context, url);
+    }
+
+    private static void deletePartialValidator(Context context, String url) {
+        File part = getPartialFile(context, url);
+        if (part != null) {
+            new File(part.getPath().concat(PART_VALIDATOR_SUFFIX)).delete();
+        }
+    }
+
+    /**
+     * Parses "bytes start-end/total"
+     *
+     * @return start and total, total is 0 if unknown, or null
+     */
+    private static long[] parseContentRange(String contentRange) {
+        if (TextUtils.isEmpty(contentRange) || !contentRange.startsWith("bytes ")) {
+            return null;
+        }
+        try {
+            int dash = contentRange.indexOf('-');
+            int slash = contentRange.indexOf('/');
+            if (dash < 0 || slash < dash) {
+                return null;
+            }
+            long start = Long.parseLong(contentRange.substring(6, dash).trim());
+            String total = contentRange.substring(slash + 1).trim();
+            return new long[]{start, "*".equals(total) ? 0 : Long.parseLong(total)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     /**
      * caches header fields
      */
     public static void saveHeaderFields(Context context, String url, Response response) throws Exception {
-        Headers headers = response.headers();
+        saveHeaderFields(context, url, response.headers(), null);
+    }
+
+    /**
+     * caches header fields
+     *
+     * @param contentLength overrides the Content-Length of the headers if not null
+     */
+    private static void saveHeaderFields(Context context, String url, Headers headers,
+                                         String contentLength) throws Exception {
         if (headers == null || headers.isEmpty()) {
             return;
         }
@@ -161,16 +388,26 @@ public final class Cache {
         }
 
         JSONObject object = new JSONObject();
-        for (String s : HEADERS) {
+        String[] values = new String[HEADERS.length];
+        for (int i = 0; i < HEADERS.length; i++) {
+            String s = HEADERS[i];
             if (headers.containsKey(s)) {
                 String value = headers.get(s).get(0);
                 String tmp = value.split(";")[0];
-                object.put(s, tmp.trim());
+                values[i] = tmp.trim();
+                object.put(s, values[i]);
             }
         }
+        if (contentLength != null) {
+            values[HEADER_CONTENT_LENGTH] = contentLength;
+            object.put(CommonConstants.KEY_CONTENT_LENGTH, contentLength);
+        }
 
-        object.put(CommonConstants.KEY_REQUEST_TIME, String.valueOf(System.currentTimeMillis()));
+        long requestTime = System.currentTimeMillis();
+        object.put(CommonConstants.KEY_REQUEST_TIME, String.valueOf(requestTime));
         IOUtil.writeToFile(object.toString().getBytes(Charset.forName("utf-8")), header);
+        String key = filePath + urlFields.get("name");
+        getIndex(context).put(key, new File(rootDir, key).length(), values, requestTime);
     }
 
     /**
@@ -185,14 +422,38 @@ public final class Cache {
         if (TextUtils.isEmpty(fileName)) {
             return false;
         }
-        File result = makeFilePath(rootDir, filePath, fileName);
-        if (result.length() > 0) {//if exists, delete it
+        makeRootDirectory(rootDir, filePath);
+        File result = new File(rootDir, filePath + fileName);
+        // the body goes to a partial file first so an interrupted download can be resumed
+        File part = new File(result.getPath().concat(PART_SUFFIX));
+        savePartialValidator(part, response.headers());
+        int contentLength = (int) response.headers().getContentLength();//only image and video res have value ,otherwise value = -1
+
+        if (!convertToResult(part, response, contentLength)) {
+            return false;
+        }
+        if (result.exists()) {//if exists, delete it
             result.delete();
-            result = makeFilePath(rootDir, filePath, fileName);
         }
-        int contentLength = (int) response.headers().getContentLength();//only image and video res have value ,otherwise value = -1
+        new File(part.getPath().concat(PART_VALIDATOR_SUFFIX)).delete();
+        return part.renameTo(result);
+    }
 
-        return convertToResult(result, response, contentLength);
+    /**
+     * keeps the ETag or Last-Modified of a download that the server allows to resume
+     */
+    private static void savePartialValidator(File part, Headers headers) throws Exception {
+        File validator = new File(part.getPath().concat(PART_VALIDATOR_SUFFIX));
+        String value = headers.getFirst(CommonConstants.KEY_ETAG);
+        if (TextUtils.isEmpty(value) || value.startsWith("W/")) {
+            // weak validators can not be used with If-Range
+            value = headers.getFirst(CommonConstants.KEY_LAST_MODIFIED);
+        }
+        if (TextUtils.isEmpty(value) || "none".equalsIgnoreCase(headers.getFirst(KEY_ACCEPT_RANGES))) {
+            validator.delete();
+            return;
+        }
+        IOUtil.writeToFile(value.getBytes(Charset.forName("utf-8")), validator);
     }
 
     /**
@@ -225,7 +486,6 @@ public final class Cache {
             }
         }
         DeveloperLog.LogD("result:" + result.toString());
-        updateFileTime(result);
         return result;
     }
 
@@ -233,7 +493,6 @@ public final class Cache {
      * Returns value from file for key
      */
     public static String getValueFromFile(File file, String key) throws Exception {
-        updateFileTime(file);
         InputStream inputStream = IOUtil.getFileInputStream(file);
         if (inputStream == null) {
             return "";
@@ -247,16 +506,6 @@ public final class Cache {
         return object.optString(key);
     }
 
-    /**
-     * updates file's last modify time
-     */
-    private static void updateFileTime(File file) {
-        if (file != null && file.exists()) {
-            long newModifiedTime = System.currentTimeMillis();
-            file.setLastModified(newModifiedTime);
-        }
-    }
-
     /**
      * Stores received data to file
      */
@@ -289,30 +538,19 @@ public final class Cache {
     }
 
     /**
-     * checks free space, if not enough in cache left, deletes files by LRU
+     * checks the cached size in the index, if over budget, deletes files by LRU
      */
     private static void freeSpaceIfNeeded(Context context) {
-        File dir = getRootDir(context);
-        File[] files = dir.listFiles();
-        if (files == null) {
+        CacheIndex index = getIndex(context);
+        // if the cache is larger than 100MB
+        // frees 40% space
+        if (index.totalBytes() <= FREE_SD_SPACE_NEEDED_TO_CACHE) {
             return;
         }
-
-        int dirSize = 0;
-        for (File file : files) {
-            dirSize += file.length();
-        }
-        // if the dir size is larger than 100MB
-        // frees 40% space
-        if (dirSize > FREE_SD_SPACE_NEEDED_TO_CACHE) {
-            // delete 40% files by LRU
-            int removeFactor = (int) ((0.4 * files.length) + 1);
-            // sort the files by modify time
-            Arrays.sort(files, new FileLastModifySort());
-            // delete files
-            for (int i = 0; i < removeFactor; i++) {
-                files[i].delete();
-            }
+        File rootDir = getRootDir(context);
+        for (String key : index.trimTo(TRIM_TARGET)) {
+            new File(rootDir, key).delete();
+            new File(rootDir, key.concat(CommonConstants.FILE_HEADER_SUFFIX)).delete();
         }
     }
 
@@ -330,9 +568,8 @@ public final class Cache {
     /**
      * gets cache max-age
      */
-    private static long getMaxAge(File header) throws Exception {
+    private static long getMaxAge(String cacheControl) {
         long maxAge = 0;
-        String cacheControl = getValueFromFile(header, CommonConstants.KEY_CACHE_CONTROL);
         if (!TextUtils.isEmpty(cacheControl)) {
             if (cacheControl.contains(CommonConstants.KEY_MAX_AGE)) {
                 String[] tmp = cacheControl.split(",");
@@ -353,6 +590,21 @@ public final class Cache {
         }
     }
 
+    /**
+     * gets the index key of url, its file path relative to the cache root
+     */
+    private static String getKey(String url) {
+        if (TextUtils.isEmpty(url) || !url.startsWith("http")) {
+            return null;
+        }
+        Map<String, String> urlFields = getUrlFields(url);
+        String fileName = urlFields.get("name");
+        if (TextUtils.isEmpty(fileName)) {
+            return null;
+        }
+        return urlFields.get("path") + fileName;
+    }
+
     private static Map<String, String> getUrlFields(String url) {
         Map<String, String> urlFields = new HashMap<>();
         Uri uri = Uri.parse(url);
@@ -402,19 +654,4 @@ public final class Cache {
             DeveloperLog.LogE("error:", e);
         }
     }
-
-    /**
-     * Compares with lastModified
-     */
-    private static class FileLastModifySort implements Comparator<File> {
-        public int compare(File arg0, File arg1) {
-            if (arg0.lastModified() > arg1.lastModified()) {
-                return 1;
-            } else if (arg0.lastModified() == arg1.lastModified()) {
-                return 0;
-            } else {
-                return -1;
-            }
-        }
-    }
 }
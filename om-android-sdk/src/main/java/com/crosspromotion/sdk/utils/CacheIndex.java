@@ -0,0 +1,464 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.crosspromotion.sdk.utils;
+
+import android.text.TextUtils;
+
+import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.IOUtil;
+import com.openmediation.sdk.utils.constant.CommonConstants;
+import com.openmediation.sdk.utils.crash.CrashUtil;
+
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index of the creative cache, backed by one append-only journal in the cache dir.
+ * <p>
+ * Each cached file has an entry with its size, the header fields that used to be read from
+ * its sidecar file, the request time and the last access. Entries are kept in use order, moved
+ * to the end by {@link #get(String, long)} and {@link #put(String, long, String[], long)} only,
+ * so eviction walks the least recently used first and lookups that are not uses keep the order.
+ * The journal is replayed at startup, a torn tail is cut off, and it is rewritten once it holds
+ * far more records than live entries. Without a journal the index is rebuilt once from the
+ * sidecar files.
+ */
+final class CacheIndex {
+
+    private static final String JOURNAL = "cache.journal";
+    private static final String JOURNAL_TMP = "cache.journal.tmp";
+    private static final int MAGIC = 0x4F4D4331;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_ACCESS = 3;
+
+    /**
+     * Access times are written to the journal at most this often per entry
+     */
+    private static final long ACCESS_PERSIST_INTERVAL = 60 * 1000L;
+    private static final int COMPACT_MIN_RECORDS = 256;
+    private static final int MAX_RECORD = 64 * 1024;
+
+    private final File mRoot;
+    private final String[] mHeaderKeys;
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(64);
+    private long mTotalBytes;
+    private int mRecords;
+    private FileOutputStream mOut;
+
+    CacheIndex(File root, String[] headerKeys) {
+        mRoot = root;
+        mHeaderKeys = headerKeys;
+    }
+
+    static final class Entry {
+        final String mKey;
+        /**
+         * bytes of the content file
+         */
+        long mSize;
+        long mRequestTime;
+        long mLastAccess;
+        long mPersistedAccess;
+        /**
+         * values of the cached header fields, in the order of the index's header keys
+         */
+        String[] mHeaders;
+
+        Entry(String key, int headerCount) {
+            mKey = key;
+            mHeaders = new String[headerCount];
+        }
+    }
+
+    /**
+     * Replays the journal, or rebuilds it from the sidecar files when there is none
+     */
+    synchronized void load() {
+        File journal = new File(mRoot, JOURNAL);
+        boolean clean = false;
+        if (journal.exists()) {
+            clean = replay(journal);
+        } else {
+            rebuildFromSidecars(mRoot, "");
+        }
+        // the system may clear the cache dir while the app is not running
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (new File(mRoot, entry.mKey).length() != entry.mSize) {
+                mTotalBytes -= entry.mSize;
+                iterator.remove();
+                clean = false;
+            }
+        }
+        if (!clean || mRecords > mEntries.size() * 2) {
+            rewrite();
+        }
+    }
+
+    /**
+     * @return the entry, or null. Marks it as most recently used.
+     */
+    synchronized Entry get(String key, long now) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.mLastAccess = now;
+        touch(entry);
+        if (now - entry.mPersistedAccess > ACCESS_PERSIST_INTERVAL) {
+            entry.mPersistedAccess = now;
+            append(accessRecord(entry));
+        }
+        return entry;
+    }
+
+    /**
+     * @return the entry, or null; does not count as an access
+     */
+    synchronized Entry peek(String key) {
+        return mEntries.get(key);
+    }
+
+    /**
+     * @return the header value of the entry, or null; does not count as an access
+     */
+    synchronized String getHeader(String key, int header) {
+        Entry entry = peek(key);
+        return entry == null ? null : entry.mHeaders[header];
+    }
+
+    synchronized void put(String key, long size, String[] headers, long requestTime) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            entry = new Entry(key, mHeaderKeys.length);
+            mEntries.put(key, entry);
+        } else {
+            mTotalBytes -= entry.mSize;
+            touch(entry);
+        }
+        entry.mSize = size;
+        entry.mHeaders = headers;
+        entry.mRequestTime = requestTime;
+        entry.mLastAccess = requestTime;
+        entry.mPersistedAccess = requestTime;
+        mTotalBytes += size;
+        append(putRecord(entry));
+    }
+
+    /**
+     * Moves the entry to the most recently used end
+     */
+    private void touch(Entry entry) {
+        mEntries.remove(entry.mKey);
+        mEntries.put(entry.mKey, entry);
+    }
+
+    synchronized void remove(String key) {
+        Entry entry = mEntries.remove(key);
+        if (entry != null) {
+            mTotalBytes -= entry.mSize;
+            append(removeRecord(key));
+        }
+    }
+
+    File getFile(String key) {
+        return new File(mRoot, key);
+    }
+
+    synchronized long totalBytes() {
+        return mTotalBytes;
+    }
+
+    /**
+     * Drops least recently used entries until the total size is at most {@code target}
+     *
+     * @return keys of the dropped entries, whose files the caller deletes
+     */
+    synchronized List<String> trimTo(long target) {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mTotalBytes > target && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            iterator.remove();
+            mTotalBytes -= entry.mSize;
+            evicted.add(entry.mKey);
+            append(removeRecord(entry.mKey));
+        }
+        return evicted;
+    }
+
+    /**
+     * @return true if the whole journal was read
+     */
+    private boolean replay(File journal) {
+        long good = 0;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)));
+            if (in.readInt() != MAGIC) {
+                mEntries.clear();
+                return false;
+            }
+            good = 4;
+            while (true) {
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_RECORD) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                in.readFully(record);
+                apply(new DataInputStream(new ByteArrayInputStream(record)));
+                good += 4 + length;
+                mRecords++;
+            }
+        } catch (EOFException ignored) {
+            // end of the journal or a torn last record
+        } catch (Exception e) {
+            DeveloperLog.LogD("CacheIndex replay stopped at " + good, e);
+        } finally {
+            IOUtil.closeQuietly(in);
+        }
+        if (good < journal.length()) {
+            truncate(journal, good);
+            return false;
+        }
+        return good > 0;
+    }
+
+    private void apply(DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        String key = in.readUTF();
+        if (op == OP_PUT) {
+            Entry entry = new Entry(key, mHeaderKeys.length);
+            entry.mSize = in.readLong();
+            entry.mRequestTime = in.readLong();
+            entry.mLastAccess = in.readLong();
+            entry.mPersistedAccess = entry.mLastAccess;
+            int count = in.readByte();
+            for (int i = 0; i < count; i++) {
+                String value = in.readBoolean() ? in.readUTF() : null;
+                if (i < entry.mHeaders.length) {
+                    entry.mHeaders[i] = value;
+                }
+            }
+            Entry old = mEntries.remove(key);
+            if (old != null) {
+                mTotalBytes -= old.mSize;
+            }
+            mEntries.put(key, entry);
+            mTotalBytes += entry.mSize;
+        } else if (op == OP_REMOVE) {
+            Entry old = mEntries.remove(key);
+            if (old != null) {
+                mTotalBytes -= old.mSize;
+            }
+        } else if (op == OP_ACCESS) {
+            long time = in.readLong();
+            Entry entry = mEntries.get(key);
+            if (entry != null) {
+                entry.mLastAccess = time;
+                entry.mPersistedAccess = time;
+                touch(entry);
+            }
+        }
+    }
+
+    private void truncate(File journal, long length) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(journal, "rw");
+            file.setLength(length);
+        } catch (Exception e) {
+            DeveloperLog.LogD("CacheIndex", e);
+        } finally {
+            IOUtil.closeQuietly(file);
+        }
+    }
+
+    /**
+     * Reads the sidecar files written before the journal existed
+     */
+    private void rebuildFromSidecars(File dir, String prefix) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        String suffix = CommonConstants.FILE_HEADER_SUFFIX;
+        List<Entry> found = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                rebuildFromSidecars(file, prefix + name + "/");
+                continue;
+            }
+            if (!name.endsWith(suffix)) {
+                continue;
+            }
+            File content = new File(dir, name.substring(0, name.length() - suffix.length()));
+            if (!content.exists()) {
+                continue;
+            }
+            try {
+                JSONObject object = readJson(file);
+                if (object == null) {
+                    continue;
+                }
+                String key = prefix + content.getName();
+                Entry entry = new Entry(key, mHeaderKeys.length);
+                for (int i = 0; i < mHeaderKeys.length; i++) {
+                    String value = object.optString(mHeaderKeys[i]);
+                    entry.mHeaders[i] = TextUtils.isEmpty(value) ? null : value;
+                }
+                String requestTime = object.optString(CommonConstants.KEY_REQUEST_TIME);
+                entry.mRequestTime = TextUtils.isEmpty(requestTime) ? 0 : Long.parseLong(requestTime);
+                entry.mSize = content.length();
+                entry.mLastAccess = content.lastModified();
+                entry.mPersistedAccess = entry.mLastAccess;
+                found.add(entry);
+            } catch (Exception e) {
+                DeveloperLog.LogD("CacheIndex", e);
+            }
+        }
+        for (Entry entry : found) {
+            mEntries.put(entry.mKey, entry);
+            mTotalBytes += entry.mSize;
+        }
+    }
+
+    private static JSONObject readJson(File file) throws Exception {
+        String values = IOUtil.toString(IOUtil.getFileInputStream(file));
+        if (TextUtils.isEmpty(values) || values.indexOf('{') < 0) {
+            return null;
+        }
+        return new JSONObject(values.substring(values.indexOf('{'), values.lastIndexOf('}') + 1));
+    }
+
+    private void append(byte[] record) {
+        try {
+            if (mOut == null) {
+                mOut = new FileOutputStream(new File(mRoot, JOURNAL), true);
+            }
+            mOut.write(record);
+            mRecords++;
+        } catch (Exception e) {
+            DeveloperLog.LogD("CacheIndex append", e);
+            IOUtil.closeQuietly(mOut);
+            mOut = null;
+        }
+        if (mRecords > COMPACT_MIN_RECORDS && mRecords > mEntries.size() * 3) {
+            rewrite();
+        }
+    }
+
+    /**
+     * Writes the live entries to a new journal, least recently used first
+     */
+    private void rewrite() {
+        IOUtil.closeQuietly(mOut);
+        mOut = null;
+        File tmp = new File(mRoot, JOURNAL_TMP);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+            new DataOutputStream(buffer).writeInt(MAGIC);
+            for (Entry entry : mEntries.values()) {
+                buffer.write(putRecord(entry));
+                if (buffer.size() >= 8192) {
+                    buffer.writeTo(out);
+                    buffer.reset();
+                }
+            }
+            buffer.writeTo(out);
+            out.getFD().sync();
+            IOUtil.closeQuietly(out);
+            out = null;
+            if (!tmp.renameTo(new File(mRoot, JOURNAL))) {
+                throw new IOException("rename journal failed");
+            }
+            mRecords = mEntries.size();
+        } catch (Exception e) {
+            DeveloperLog.LogD("CacheIndex rewrite", e);
+            CrashUtil.getSingleton().saveException(e);
+        } finally {
+            IOUtil.closeQuietly(out);
+        }
+    }
+
+    private static byte[] putRecord(Entry entry) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(OP_PUT);
+            out.writeUTF(entry.mKey);
+            out.writeLong(entry.mSize);
+            out.writeLong(entry.mRequestTime);
+            out.writeLong(entry.mLastAccess);
+            out.writeByte(entry.mHeaders.length);
+            for (String value : entry.mHeaders) {
+                out.writeBoolean(value != null);
+                if (value != null) {
+                    out.writeUTF(value);
+                }
+            }
+            return frame(bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] removeRecord(String key) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(OP_REMOVE);
+            out.writeUTF(key);
+            return frame(bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] accessRecord(Entry entry) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(OP_ACCESS);
+            out.writeUTF(entry.mKey);
+            out.writeLong(entry.mLastAccess);
+            return frame(bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Prefixes the record with its length so a torn tail can be detected on replay
+     */
+    private static byte[] frame(ByteArrayOutputStream record) throws IOException {
+        ByteArrayOutputStream framed = new ByteArrayOutputStream(record.size() + 4);
+        new DataOutputStream(framed).writeInt(record.size());
+        record.writeTo(framed);
+        return framed.toByteArray();
+    }
+}
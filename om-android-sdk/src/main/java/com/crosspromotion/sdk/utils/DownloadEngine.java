@@ -0,0 +1,228 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.crosspromotion.sdk.utils;
+
+import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.SdkScheduler;
+import com.openmediation.sdk.utils.SdkTimer;
+import com.openmediation.sdk.utils.device.DeviceContext;
+import com.openmediation.sdk.utils.request.network.util.NetworkChecker;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs creative downloads on the {@link SdkScheduler.Lane#DOWNLOAD} lane, so long video downloads
+ * do not hold the shared IO lane and stay within the SDK thread budget.
+ * <p>
+ * Queued downloads run in priority order, then in the order they were submitted. At most
+ * {@link #MAX_PER_HOST} run against one host. The total, and how many low priority downloads
+ * may run next to the others, follow the connection type so that on slow networks optional
+ * images do not take the bandwidth the necessary resources need. A download is only handed to
+ * the lane once it may run, and one the lane rejects waits in the queue for another try.
+ */
+final class DownloadEngine {
+
+    static final int PRIORITY_HIGH = 0;
+    static final int PRIORITY_NORMAL = 1;
+    static final int PRIORITY_LOW = 2;
+
+    private static final int MAX_PER_HOST = 2;
+    private static final long RETRY_DELAY = 1000L;
+
+    private final TreeSet<Task> mQueue = new TreeSet<>(new Comparator<Task>() {
+        @Override
+        public int compare(Task o1, Task o2) {
+            if (o1.mPriority != o2.mPriority) {
+                return o1.mPriority < o2.mPriority ? -1 : 1;
+            }
+            return o1.mSeq < o2.mSeq ? -1 : (o1.mSeq == o2.mSeq ? 0 : 1);
+        }
+    });
+    private final Map<String, Task> mQueued = new HashMap<>();
+    private final Map<String, Integer> mHostRunning = new HashMap<>();
+    private long mSeq;
+    private int mRunning;
+    private int mLowRunning;
+    private boolean isRetryScheduled;
+
+    /**
+     * Runs on the timer thread
+     */
+    private final Runnable mRetryTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (DownloadEngine.this) {
+                isRetryScheduled = false;
+                dispatchLocked();
+            }
+        }
+    };
+
+    private static final class Task {
+        final String mKey;
+        final String mHost;
+        final Runnable mRunnable;
+        int mPriority;
+        long mSeq;
+
+        Task(String key, String host, int priority, Runnable runnable) {
+            mKey = key;
+            mHost = host == null ? "" : host;
+            mPriority = priority;
+            mRunnable = runnable;
+        }
+    }
+
+    /**
+     * Queues a download
+     *
+     * @param key      identifies the download, usually its url
+     * @param host     host the download connects to
+     * @param priority one of the PRIORITY constants
+     * @param runnable does the download
+     */
+    synchronized void submit(String key, String host, int priority, Runnable runnable) {
+        Task task = new Task(key, host, priority, runnable);
+        task.mSeq = mSeq++;
+        mQueue.add(task);
+        mQueued.put(key, task);
+        dispatchLocked();
+    }
+
+    /**
+     * Raises the priority of a queued download
+     */
+    synchronized void promote(String key, int priority) {
+        Task task = mQueued.get(key);
+        if (task == null || task.mPriority <= priority) {
+            return;
+        }
+        mQueue.remove(task);
+        task.mPriority = priority;
+        mQueue.add(task);
+    }
+
+    /**
+     * Hands the downloads that may run now to the lane
+     */
+    private void dispatchLocked() {
+        Task task;
+        while ((task = pollLocked()) != null) {
+            onStartLocked(task);
+            if (!SdkScheduler.execute(SdkScheduler.Lane.DOWNLOAD, new Runner(task))) {
+                onFinishLocked(task);
+                mQueue.add(task);
+                mQueued.put(task.mKey, task);
+                if (!isRetryScheduled) {
+                    isRetryScheduled = true;
+                    SdkTimer.schedule(mRetryTask, RETRY_DELAY, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the next task that may run now, or null
+     */
+    private Task pollLocked() {
+        if (mRunning >= maxRunning()) {
+            return null;
+        }
+        Iterator<Task> iterator = mQueue.iterator();
+        while (iterator.hasNext()) {
+            Task task = iterator.next();
+            Integer hostRunning = mHostRunning.get(task.mHost);
+            if (hostRunning != null && hostRunning >= MAX_PER_HOST) {
+                continue;
+            }
+            if (task.mPriority == PRIORITY_LOW && mLowRunning >= maxLowRunning()) {
+                continue;
+            }
+            iterator.remove();
+            mQueued.remove(task.mKey);
+            return task;
+        }
+        return null;
+    }
+
+    private void onStartLocked(Task task) {
+        mRunning++;
+        if (task.mPriority == PRIORITY_LOW) {
+            mLowRunning++;
+        }
+        Integer hostRunning = mHostRunning.get(task.mHost);
+        mHostRunning.put(task.mHost, hostRunning == null ? 1 : hostRunning + 1);
+    }
+
+    private void onFinishLocked(Task task) {
+        mRunning--;
+        if (task.mPriority == PRIORITY_LOW) {
+            mLowRunning--;
+        }
+        Integer hostRunning = mHostRunning.get(task.mHost);
+        if (hostRunning == null || hostRunning <= 1) {
+            mHostRunning.remove(task.mHost);
+        } else {
+            mHostRunning.put(task.mHost, hostRunning - 1);
+        }
+    }
+
+    private static int maxRunning() {
+        switch (netClass()) {
+            case 2:
+                return 4;
+            case 1:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    private static int maxLowRunning() {
+        return netClass() == 2 ? 2 : 1;
+    }
+
+    /**
+     * @return 2 on wifi, ethernet and 4G or newer, 1 on 3G, 0 otherwise
+     */
+    private static int netClass() {
+        int type = DeviceContext.get().getConnectType();
+        if (type == NetworkChecker.NetType.WIFI.getValue()
+                || type == NetworkChecker.NetType.ETHERNET.getValue()
+                || type >= NetworkChecker.NetType.MOBILE_4G.getValue()) {
+            return 2;
+        } else if (type == NetworkChecker.NetType.MOBILE_3G.getValue()) {
+            return 1;
+        }
+        return 0;
+    }
+
+    private final class Runner implements Runnable {
+        private final Task mTask;
+
+        Runner(Task task) {
+            mTask = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mTask.mRunnable.run();
+            } catch (Throwable e) {
+                DeveloperLog.LogW("DownloadEngine task error: " + e);
+            } finally {
+                synchronized (DownloadEngine.this) {
+                    onFinishLocked(mTask);
+                    dispatchLocked();
+                }
+            }
+        }
+    }
+}
@@ -4,9 +4,9 @@ import android.text.TextUtils;
 
 import com.openmediation.sdk.utils.AdtUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
-import com.openmediation.sdk.utils.WorkExecutor;
 
 import java.io.File;
+import java.net.URL;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -15,8 +15,22 @@ import java.util.concurrent.CopyOnWriteArrayList;
 
 public class DownloadManager {
 
+    /**
+     * Resources the ad needs before it is ready, such as its html and scripts, or a native ad's images
+     */
+    public static final int PRIORITY_HIGH = DownloadEngine.PRIORITY_HIGH;
+    /**
+     * Videos, needed before the ad is ready but after its html
+     */
+    public static final int PRIORITY_NORMAL = DownloadEngine.PRIORITY_NORMAL;
+    /**
+     * Icons, images and anything else the ad can show without
+     */
+    public static final int PRIORITY_LOW = DownloadEngine.PRIORITY_LOW;
+
     private ConcurrentLinkedQueue<String> mActiveTask;
     private ConcurrentMap<String, List<OnResDownloaded>> mPendingTask;
+    private DownloadEngine mEngine;
 
     private static final class DmHolder {
         private static final DownloadManager INSTANCE = new DownloadManager();
@@ -25,13 +39,25 @@ public class DownloadManager {
     private DownloadManager() {
         mActiveTask = new ConcurrentLinkedQueue<>();
         mPendingTask = new ConcurrentHashMap<>();
+        mEngine = new DownloadEngine();
     }
 
     public static DownloadManager getInstance() {
         return DmHolder.INSTANCE;
     }
 
-    public synchronized void downloadFile(final String url, final OnResDownloaded listener) {
+    public void downloadFile(final String url, final OnResDownloaded listener) {
+        downloadFile(url, PRIORITY_NORMAL, listener);
+    }
+
+    /**
+     * Downloads url into the cache, the listener is called on a download thread
+     *
+     * @param url      the resource url
+     * @param priority {@link #PRIORITY_HIGH}, {@link #PRIORITY_NORMAL} or {@link #PRIORITY_LOW}
+     * @param listener called with the cached file, or null on failure
+     */
+    public synchronized void downloadFile(final String url, int priority, final OnResDownloaded listener) {
         if (TextUtils.isEmpty(url)) {
             if (listener != null) {
                 listener.onCompleted(url, null);
@@ -44,19 +70,20 @@ public class DownloadManager {
             }
             return;
         }
-        WorkExecutor.execute(new Runnable() {
+        synchronized (DownloadManager.class) {
+            addToPendingTask(url, listener);
+            DeveloperLog.LogD("DownloadManager downloadFile addToPendingTask url is  = " + url);
+            if (mActiveTask.contains(url)) {
+                DeveloperLog.LogD("DownloadManager downloadFile mActiveTask.contains(url) ");
+                mEngine.promote(url, priority);
+                return;
+            }
+            mActiveTask.add(url);
+        }
+        mEngine.submit(url, getHost(url), priority, new Runnable() {
             @Override
             public void run() {
                 try {
-                    synchronized (DownloadManager.class) {
-                        addToPendingTask(url, listener);
-                        DeveloperLog.LogD("DownloadManager downloadFile addToPendingTask url is  = " + url);
-                        if (mActiveTask.contains(url)) {
-                            DeveloperLog.LogD("DownloadManager downloadFile mActiveTask.contains(url) ");
-                            return;
-                        }
-                        mActiveTask.add(url);
-                    }
                     File file = ResDownloader.downloadFile(url);
                     synchronized (DownloadManager.class) {
                         callbackPendingTaskFinished(url, file);
@@ -74,6 +101,13 @@ public class DownloadManager {
         });
     }
 
+    private static String getHost(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (Exception e) {
+            return "";
+        }
+    }
 
     private void addToPendingTask(String url, OnResDownloaded listener) {
         synchronized (DownloadManager.class) {
@@ -13,15 +13,27 @@ import com.openmediation.sdk.utils.constant.CommonConstants;
 import com.openmediation.sdk.utils.request.HeaderUtils;
 import com.openmediation.sdk.utils.request.network.AdRequest;
 import com.openmediation.sdk.utils.request.network.Headers;
+import com.openmediation.sdk.utils.request.network.NetworkMetrics;
 import com.openmediation.sdk.utils.request.network.Response;
+import com.openmediation.sdk.utils.request.network.exception.ReadException;
 
 import java.io.File;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 public class ResDownloader {
 
+    private static final String KEY_RANGE = "Range";
+    private static final String KEY_IF_RANGE = "If-Range";
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    private static final ConcurrentHashMap<String, FutureTask<File>> IN_FLIGHT = new ConcurrentHashMap<>();
+
     static boolean downloadFile(List<String> urls, List<String> necessaryRes) throws Exception {
         int failSize = 0;
         for (String url : urls) {
@@ -35,20 +47,84 @@ public class ResDownloader {
         return failSize == 0;
     }
 
-    public static File downloadFile(String url) throws Exception {
+    /**
+     * Downloads the url into the cache. A caller asking for a url that is already being downloaded
+     * waits for that download and gets the same file instead of opening a second connection.
+     */
+    public static File downloadFile(final String url) throws Exception {
         if (TextUtils.isEmpty(url)) {
             return null;
         }
+        FutureTask<File> task = new FutureTask<>(new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                return download(url);
+            }
+        });
+        FutureTask<File> inFlight = IN_FLIGHT.putIfAbsent(url, task);
+        if (inFlight == null) {
+            try {
+                task.run();
+            } finally {
+                IN_FLIGHT.remove(url, task);
+            }
+            inFlight = task;
+        } else {
+            DeveloperLog.LogD("ResDownLoader", "join in-flight download : " + url);
+            NetworkMetrics.onCoalesced(url);
+        }
+        try {
+            return inFlight.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static File download(String url) throws Exception {
         Response response = null;
         try {
-            response = AdRequest.get().url(url).connectTimeout(30 * 1000).readTimeout(10 * 60 * 1000)
-                    .headers(getCacheHeaders(AdtUtil.getInstance().getApplicationContext(), url)).syncRequest();
+            Context context = AdtUtil.getInstance().getApplicationContext();
+            Headers headers = getCacheHeaders(context, url);
+            long offset = 0;
+            String validator = Cache.getPartialValidator(context, url);
+            if (validator != null) {
+                // resumes an interrupted download, the server sends the whole file if it changed
+                offset = Cache.getPartialFile(context, url).length();
+                headers.set(KEY_RANGE, "bytes=" + offset + "-");
+                headers.set(KEY_IF_RANGE, validator);
+                DeveloperLog.LogD("ResDownLoader", "resume from " + offset + " : " + url);
+            }
+            try {
+                response = AdRequest.get().url(url).connectTimeout(30 * 1000).readTimeout(10 * 60 * 1000)
+                        .headers(headers).syncRequestOrThrow();
+            } catch (ReadException e) {
+                int code = e.getCode();
+                if (offset > 0 && (code == HTTP_RANGE_NOT_SATISFIABLE || code == HttpURLConnection.HTTP_PRECON_FAILED)) {
+                    // the server refused the range, the partial file is of no use
+                    Cache.deletePartialFile(context, url);
+                }
+                DeveloperLog.LogD("ResDownLoader", e);
+                return null;
+            } catch (Exception e) {
+                // a transport error, the partial file is resumed next time
+                DeveloperLog.LogD("ResDownLoader", e);
+                return null;
+            }
 
             if (response == null) {
                 return null;
             }
             int code = response.code();
-            if (code == HttpURLConnection.HTTP_OK) {
+            if (code == HttpURLConnection.HTTP_PARTIAL && offset > 0) {
+                if (Cache.resumeFile(context, url, response, offset)) {
+                    return Cache.getCacheFile(context, url, null);
+                }
+                return null;
+            } else if (code == HttpURLConnection.HTTP_OK) {
                 boolean success = Cache.saveFile(AdtUtil.getInstance().getApplicationContext(), url, response);
                 if (success) {
                     return Cache.getCacheFile(AdtUtil.getInstance().getApplicationContext(), url, null);
@@ -64,7 +140,7 @@ public class ResDownloader {
                 String redirectUrl = response.headers().getLocation();
                 URL u = new URL(new URL(url), redirectUrl);
                 DeveloperLog.LogD("ResDownLoader", "redirect url is : " + u.toString());
-                return downloadFile(u.toString());
+                return download(u.toString());
             } else {
                 deleteFileWhenError(url);
                 return null;
@@ -76,28 +152,19 @@ public class ResDownloader {
     }
 
     private static void deleteFileWhenError(String url) {
-        File content = Cache.getCacheFile(AdtUtil.getInstance().getApplicationContext(), url, null);
-        if (content != null && content.exists()) {
-            DeveloperLog.LogD("ResDownLoader", "delete content file when error : " + content.delete());
-        }
-        File header = Cache.getCacheFile(AdtUtil.getInstance().getApplicationContext(), url, CommonConstants.FILE_HEADER_SUFFIX);
-        if (header != null && header.exists()) {
-            DeveloperLog.LogD("ResDownLoader", "delete header file when error : " + header.delete());
-        }
+        DeveloperLog.LogD("ResDownLoader", "delete cache when error : " + url);
+        Cache.deleteCache(AdtUtil.getInstance().getApplicationContext(), url);
     }
 
     private static Headers getCacheHeaders(Context context, String url) throws Exception {
         Headers headers = HeaderUtils.getBaseHeaders();
-        File header = Cache.getCacheFile(context, url, CommonConstants.FILE_HEADER_SUFFIX);
-        if (header != null && header.exists()) {
-            String eTag = Cache.getValueFromFile(header, CommonConstants.KEY_ETAG);
-            if (!TextUtils.isEmpty(eTag)) {
-                headers.set(CommonConstants.KEY_IF_NONE_MATCH, eTag);
-            } else {
-                String lastModified = Cache.getValueFromFile(header, CommonConstants.KEY_LAST_MODIFIED);
-                if (!TextUtils.isEmpty(lastModified)) {
-                    headers.set(CommonConstants.KEY_IF_MODIFIED_SINCE, lastModified);
-                }
+        String eTag = Cache.getHeaderValue(context, url, CommonConstants.KEY_ETAG);
+        if (!TextUtils.isEmpty(eTag)) {
+            headers.set(CommonConstants.KEY_IF_NONE_MATCH, eTag);
+        } else {
+            String lastModified = Cache.getHeaderValue(context, url, CommonConstants.KEY_LAST_MODIFIED);
+            if (!TextUtils.isEmpty(lastModified)) {
+                headers.set(CommonConstants.KEY_IF_MODIFIED_SINCE, lastModified);
             }
         }
         return headers;
@@ -0,0 +1,337 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.crosspromotion.sdk.utils;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.webkit.MimeTypeMap;
+
+import com.openmediation.sdk.utils.AdtUtil;
+import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.IOUtil;
+import com.openmediation.sdk.utils.SdkScheduler;
+import com.openmediation.sdk.utils.WorkExecutor;
+import com.openmediation.sdk.utils.constant.CommonConstants;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Resolves creative urls to what the WebView needs to serve them from the cache: the file,
+ * its mime type and whether the url redirects.
+ * <p>
+ * Entries are added as soon as preloading downloads a resource, so a creative's sub-requests
+ * are answered from memory. Small files are memory-mapped once and every request reads a
+ * view of the same mapping; larger files such as videos are opened per request at the
+ * requested offset.
+ */
+public final class ResIndex {
+
+    private static final int MAX_ENTRIES = 256;
+    /**
+     * Files up to this size are mapped
+     */
+    private static final long MAX_MAPPED_SIZE = 1024 * 1024L;
+
+    private static final Map<String, Res> INDEX = new LinkedHashMap<String, Res>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Res> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private ResIndex() {
+    }
+
+    static final class Res {
+        final File mFile;
+        final String mMimeType;
+        final String mEncoding;
+        final String mLocation;
+        final long mLength;
+        final long mExpireTime;
+        final ByteBuffer mMapped;
+
+        Res(File file, String mimeType, String encoding, String location, long length, long expireTime,
+            ByteBuffer mapped) {
+            mFile = file;
+            mMimeType = mimeType;
+            mEncoding = encoding;
+            mLocation = location;
+            mLength = length;
+            mExpireTime = expireTime;
+            mMapped = mapped;
+        }
+
+        boolean isRedirect() {
+            return !TextUtils.isEmpty(mLocation);
+        }
+
+        /**
+         * Opens a stream over {@code count} bytes starting at {@code start}
+         */
+        InputStream open(long start, long count) throws IOException {
+            if (mMapped != null) {
+                ByteBuffer buffer = mMapped.duplicate();
+                buffer.position((int) start);
+                buffer.limit((int) (start + count));
+                return new BufferInputStream(buffer);
+            }
+            FileInputStream input = new FileInputStream(mFile);
+            try {
+                input.getChannel().position(start);
+            } catch (IOException e) {
+                IOUtil.closeQuietly(input);
+                throw e;
+            }
+            return count < mLength - start ? new LimitedInputStream(input, count) : input;
+        }
+    }
+
+    /**
+     * Adds a downloaded resource
+     *
+     * @param url  the resource url
+     * @param file the cached file
+     */
+    public static void put(String url, File file) {
+        Context context = AdtUtil.getInstance().getApplicationContext();
+        if (context == null || TextUtils.isEmpty(url) || file == null) {
+            return;
+        }
+        Res res = build(context, stripFragment(url), file);
+        if (res != null) {
+            synchronized (INDEX) {
+                INDEX.put(stripFragment(url), res);
+            }
+        }
+    }
+
+    /**
+     * Indexes url on the IO lane, so the first WebView request for it, such as the creative page
+     * at show time, does not open the cache files
+     *
+     * @param url the resource url
+     */
+    public static void prepare(final String url) {
+        final Context context = AdtUtil.getInstance().getApplicationContext();
+        if (context == null || TextUtils.isEmpty(url)) {
+            return;
+        }
+        WorkExecutor.execute(SdkScheduler.Lane.IO, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    get(context, url);
+                } catch (Exception e) {
+                    DeveloperLog.LogD("ResIndex prepare error", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return true if url is cached and can be served from the cache by shouldInterceptRequest,
+     * which lets through redirects and entries without a mime type
+     */
+    public static boolean canServe(Context context, String url) {
+        Res res = get(context, url);
+        return res != null && !res.isRedirect() && !TextUtils.isEmpty(res.mMimeType);
+    }
+
+    static void remove(String url) {
+        synchronized (INDEX) {
+            INDEX.remove(stripFragment(url));
+        }
+    }
+
+    /**
+     * @return the resource for url, or null if it is not cached
+     */
+    static Res get(Context context, String url) {
+        url = stripFragment(url);
+        Res res;
+        synchronized (INDEX) {
+            res = INDEX.get(url);
+        }
+        if (res != null && isValid(res)) {
+            return res;
+        }
+        if (!Cache.existCache(context, url)) {
+            if (res != null) {
+                remove(url);
+            }
+            return null;
+        }
+        res = build(context, url, Cache.getCacheFile(context, url, null));
+        if (res != null) {
+            synchronized (INDEX) {
+                INDEX.put(url, res);
+            }
+        }
+        return res;
+    }
+
+    private static boolean isValid(Res res) {
+        if (System.currentTimeMillis() >= res.mExpireTime) {
+            return false;
+        }
+        // a mapping stays readable after the file is evicted, a plain file must still be there
+        return res.mMapped != null || res.mFile.length() == res.mLength;
+    }
+
+    private static Res build(Context context, String url, File file) {
+        if (file == null) {
+            return null;
+        }
+        long length = file.length();
+        long expireTime = Cache.getExpireTime(context, url);
+        if (length <= 0 || expireTime <= 0) {
+            return null;
+        }
+        String location = Cache.getHeaderValue(context, url, CommonConstants.KEY_LOCATION);
+        String mimeType = Cache.getHeaderValue(context, url, CommonConstants.KEY_CONTENT_TYPE);
+        String encoding = null;
+        if (!TextUtils.isEmpty(mimeType) && mimeType.indexOf(';') > 0) {
+            // "text/html; charset=utf-8", WebResourceResponse takes the two apart
+            encoding = getCharset(mimeType);
+            mimeType = mimeType.substring(0, mimeType.indexOf(';')).trim();
+        }
+        if (TextUtils.isEmpty(mimeType)) {//checks the mimeType obtained from the header
+            String extension = MimeTypeMap.getFileExtensionFromUrl(url);
+            if (TextUtils.equals("js", extension.toLowerCase())) {
+                mimeType = "application/x-javascript";
+            } else {
+                mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
+            }
+        }
+        if (encoding == null && "text/html".equalsIgnoreCase(mimeType)) {
+            // creative pages used to be loaded as utf-8 strings
+            encoding = CommonConstants.CHARTSET_UTF8;
+        }
+        return new Res(file, mimeType, encoding, location, length, expireTime, map(file, length));
+    }
+
+    private static String getCharset(String contentType) {
+        for (String param : contentType.split(";")) {
+            param = param.trim();
+            if (param.regionMatches(true, 0, "charset=", 0, 8)) {
+                String charset = param.substring(8).trim();
+                if (charset.length() > 1 && charset.startsWith("\"") && charset.endsWith("\"")) {
+                    charset = charset.substring(1, charset.length() - 1);
+                }
+                return TextUtils.isEmpty(charset) ? null : charset;
+            }
+        }
+        return null;
+    }
+
+    private static ByteBuffer map(File file, long length) {
+        if (length > MAX_MAPPED_SIZE) {
+            return null;
+        }
+        FileInputStream input = null;
+        try {
+            input = new FileInputStream(file);
+            return input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } catch (Exception e) {
+            DeveloperLog.LogD("ResIndex map error", e);
+            return null;
+        } finally {
+            IOUtil.closeQuietly(input);
+        }
+    }
+
+    private static String stripFragment(String url) {
+        int i = url.indexOf('#');
+        return i == -1 ? url : url.substring(0, i);
+    }
+
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer mBuffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return mBuffer.hasRemaining() ? mBuffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!mBuffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, mBuffer.remaining());
+            mBuffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.min(Math.max(n, 0), mBuffer.remaining());
+            mBuffer.position(mBuffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return mBuffer.remaining();
+        }
+    }
+
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long mRemaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            mRemaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                mRemaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            int count = super.read(b, off, (int) Math.min(len, mRemaining));
+            if (count > 0) {
+                mRemaining -= count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, mRemaining));
+            mRemaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), mRemaining);
+        }
+    }
+}
@@ -5,23 +5,24 @@ package com.crosspromotion.sdk.utils;
 
 import android.os.Build;
 import android.text.TextUtils;
-import android.webkit.MimeTypeMap;
 import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 
 import com.openmediation.sdk.utils.DeveloperLog;
-import com.openmediation.sdk.utils.IOUtil;
 import com.openmediation.sdk.utils.constant.CommonConstants;
 import com.openmediation.sdk.utils.crash.CrashUtil;
 
-import java.io.File;
-import java.io.InputStream;
+import java.io.ByteArrayInputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public final class ResUtil {
 
+    private static final String KEY_RANGE = "Range";
+    private static final String KEY_CONTENT_RANGE = "Content-Range";
+    private static final String KEY_ACCEPT_RANGES = "Accept-Ranges";
+
     public static boolean loadRes(List<String> resources, List<String> necessaryRes) throws Exception {
         if (resources == null || resources.isEmpty()) {
             return false;
@@ -32,60 +33,105 @@ public final class ResUtil {
     }
 
     public static WebResourceResponse shouldInterceptRequest(WebView view, String url) {
-        try {
-            DeveloperLog.LogD(url);
-            int i = url.indexOf('#');
-            if (i != -1) url = url.substring(0, i);
+        return shouldInterceptRequest(view, url, null);
+    }
 
+    /**
+     * Serves url from the cache, honouring a Range header on Lollipop and above
+     *
+     * @param view           the WebView
+     * @param url            the requested url
+     * @param requestHeaders the request headers, may be null
+     * @return the response, or null to let the WebView load url itself
+     */
+    public static WebResourceResponse shouldInterceptRequest(WebView view, String url,
+                                                             Map<String, String> requestHeaders) {
+        try {
+            ResIndex.Res res = ResIndex.get(view.getContext(), url);
             //Check redirect location
-            File headerFile = Cache.getCacheFile(view.getContext(), url, CommonConstants.FILE_HEADER_SUFFIX);
-            if (headerFile == null || !headerFile.exists()) {
+            if (res == null || res.isRedirect() || TextUtils.isEmpty(res.mMimeType)) {
                 return null;
-            } else {
-                String location = Cache.getValueFromFile(headerFile, CommonConstants.KEY_LOCATION);
-                if (!TextUtils.isEmpty(location)) {
-                    return null;
-                }
             }
-
-            if (Cache.existCache(view.getContext(), url)) {
-                DeveloperLog.LogD("exist:" + url);
-                try {
-//                    File header = Cache.getCacheFile(view.getContext().getApplicationContext(), url, Constants.FILE_HEADER_SUFFIX);
-                    String mime_type = Cache.getValueFromFile(headerFile, CommonConstants.KEY_CONTENT_TYPE);
-
-                    if (TextUtils.isEmpty(mime_type)) {//checks the mimeType obtained from the header
-                        String extension = MimeTypeMap.getFileExtensionFromUrl(url);
-                        if (TextUtils.equals("js", extension.toLowerCase())) {
-                            mime_type = "application/x-javascript";
-                        } else {
-                            mime_type = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
-                        }
-                    }
-
-                    if (!TextUtils.isEmpty(mime_type)) {//re-checks the mimeType in order to not load pure text files
-                        InputStream input = IOUtil.getFileInputStream(Cache.getCacheFile(view.getContext().getApplicationContext(),
-                                url, null));
-                        if (input == null) {
-                            return null;
-                        }
-                        WebResourceResponse response = new WebResourceResponse(mime_type, null, input);
-                        Map<String, String> headers = new HashMap<>();
-                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                            headers.put("Access-Control-Allow-Origin", "*");
-                            response.setResponseHeaders(headers);
-                        }
-                        return response;
-                    }
-                } catch (Exception e) {
-                    DeveloperLog.LogD("ResUtil", e);
-                    CrashUtil.getSingleton().saveException(e);
-                }
+            DeveloperLog.LogD("exist:" + url);
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+                return new WebResourceResponse(res.mMimeType, res.mEncoding, res.open(0, res.mLength));
+            }
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Access-Control-Allow-Origin", "*");
+            headers.put(KEY_ACCEPT_RANGES, "bytes");
+            String range = getRange(requestHeaders);
+            long[] bounds = TextUtils.isEmpty(range) ? null : parseRange(range, res.mLength);
+            if (bounds == null) {
+                headers.put(CommonConstants.KEY_CONTENT_LENGTH, String.valueOf(res.mLength));
+                return new WebResourceResponse(res.mMimeType, res.mEncoding, 200, "OK", headers,
+                        res.open(0, res.mLength));
             }
+            if (bounds[0] >= res.mLength) {
+                headers.put(KEY_CONTENT_RANGE, "bytes */" + res.mLength);
+                return new WebResourceResponse(res.mMimeType, res.mEncoding, 416,
+                        "Range Not Satisfiable", headers, new ByteArrayInputStream(new byte[0]));
+            }
+            long count = bounds[1] - bounds[0] + 1;
+            headers.put(CommonConstants.KEY_CONTENT_LENGTH, String.valueOf(count));
+            headers.put(KEY_CONTENT_RANGE, "bytes " + bounds[0] + "-" + bounds[1] + "/" + res.mLength);
+            return new WebResourceResponse(res.mMimeType, res.mEncoding, 206, "Partial Content", headers,
+                    res.open(bounds[0], count));
         } catch (Exception e) {
             DeveloperLog.LogD("ResUtil", e);
             CrashUtil.getSingleton().saveException(e);
         }
         return null;
     }
+
+    private static String getRange(Map<String, String> requestHeaders) {
+        if (requestHeaders == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> entry : requestHeaders.entrySet()) {
+            if (KEY_RANGE.equalsIgnoreCase(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses a single "bytes=start-end" range
+     *
+     * @return first and last byte, first is past the end if the range can not be satisfied,
+     * null if the header is not a single byte range
+     */
+    static long[] parseRange(String range, long length) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+        int dash = range.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = range.substring(6, dash).trim();
+            String last = range.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // suffix range: the last n bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return new long[]{length, length};
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+                if (end < start && start < length) {
+                    return null;
+                }
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
 }
@@ -5,6 +5,7 @@ import android.text.TextUtils;
 import com.openmediation.sdk.utils.AdtUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
 import com.openmediation.sdk.utils.Gzip;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.WorkExecutor;
 import com.openmediation.sdk.utils.cache.DataCache;
 import com.openmediation.sdk.utils.constant.CommonConstants;
@@ -26,7 +27,7 @@ import java.nio.charset.Charset;
 public class PayloadHelper {
 
     public static void payloadRequest(final PlacementInfo info, final String payload, final Request.OnRequestCallback callback) throws Exception {
-        WorkExecutor.execute(new Runnable() {
+        WorkExecutor.execute(SdkScheduler.Lane.CRITICAL, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -9,6 +9,7 @@ import com.crosspromotion.sdk.utils.PUtils;
 import com.openmediation.sdk.utils.AdtUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
 import com.openmediation.sdk.utils.Gzip;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.WorkExecutor;
 import com.openmediation.sdk.utils.cache.DataCache;
 import com.openmediation.sdk.utils.constant.CommonConstants;
@@ -46,7 +47,7 @@ public class WaterFallHelper {
     public static void wfRequest(final PlacementInfo info, final int loadType,
                                  final Request.OnRequestCallback callback, final Map<String, Object> extras) throws Exception {
 
-        WorkExecutor.execute(new Runnable() {
+        WorkExecutor.execute(SdkScheduler.Lane.CRITICAL, new Runnable() {
             @Override
             public void run() {
                 try {
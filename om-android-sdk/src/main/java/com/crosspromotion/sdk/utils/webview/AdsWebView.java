@@ -3,19 +3,45 @@
 
 package com.crosspromotion.sdk.utils.webview;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.text.TextUtils;
 import android.util.Log;
+import android.webkit.WebView;
 
 import com.openmediation.sdk.utils.AdtUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
 import com.openmediation.sdk.utils.HandlerUtil;
 import com.openmediation.sdk.utils.crash.CrashUtil;
 
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Pool of WebViews for full screen ads.
+ * <p>
+ * Idle WebViews are created when the main thread is idle, so a show does not pay for
+ * constructing one. A ready ad can also be rendered off-screen ahead of its show, the show then
+ * only moves the loaded view into the activity. Views that showed an ad are destroyed rather
+ * than reused. Idle and pre-rendered views are released on memory pressure.
+ * <p>
+ * All methods except {@link #setPoolSize(int)} must be called on the main thread.
+ */
 public class AdsWebView {
     private static final String TAG = "AdsWebView";
 
-    private BaseWebView mAdView;
-    private boolean isDestroyed;
+    private static final int DEFAULT_POOL_SIZE = 2;
+
+    private final ArrayDeque<BaseWebView> mIdle = new ArrayDeque<>();
+    private final Map<String, Prerendered> mPrerendered = new HashMap<>();
+    private volatile int mPoolSize = DEFAULT_POOL_SIZE;
+    private boolean isFillScheduled;
+    private boolean isCallbacksRegistered;
 
     private static final class AdtWebViewHolder {
         private static AdsWebView sInstance = new AdsWebView();
@@ -28,32 +54,141 @@ public class AdsWebView {
         return AdtWebViewHolder.sInstance;
     }
 
+    /**
+     * A creative loaded into a WebView that has not been shown yet
+     */
+    public static final class Prerendered {
+        private final BaseWebView mView;
+        private final JsBridge mJsBridge;
+        private final String mUrl;
+        private final String mCampaign;
 
-    public void init(final Context context) {
+        private Prerendered(BaseWebView view, JsBridge jsBridge, String url, String campaign) {
+            mView = view;
+            mJsBridge = jsBridge;
+            mUrl = url;
+            mCampaign = campaign;
+        }
+
+        public BaseWebView getView() {
+            return mView;
+        }
+
+        public JsBridge getJsBridge() {
+            return mJsBridge;
+        }
+    }
+
+    /**
+     * Sets how many WebViews are kept, idle and pre-rendered ones together
+     *
+     * @param poolSize at least 1
+     */
+    public void setPoolSize(int poolSize) {
+        mPoolSize = Math.max(1, poolSize);
         HandlerUtil.runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                try {
-                    if (mAdView == null || isDestroyed) {
-                        Log.i(TAG, "start to create BaseWebView");
-                        mAdView = new BaseWebView(context.getApplicationContext());
-                    }
-                    isDestroyed = false;
-                    mAdView.loadUrl("about:blank");
-                } catch (Throwable e) {
-                    DeveloperLog.LogD("AdsWebView", e);
-                    CrashUtil.getSingleton().saveException(e);
+                while (!mIdle.isEmpty() && mIdle.size() + mPrerendered.size() > mPoolSize) {
+                    release(mIdle.poll());
                 }
+                scheduleFill();
+            }
+        });
+    }
+
+    public void init(final Context context) {
+        HandlerUtil.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                registerCallbacks(context);
+                scheduleFill();
             }
         });
     }
 
+    /**
+     * @return a WebView for showing an ad, created now if the pool is empty
+     */
     public BaseWebView getAdView() {
-        if (isDestroyed) {
-            init(AdtUtil.getInstance().getApplicationContext());
-            return mAdView;
+        BaseWebView view = mIdle.poll();
+        if (view == null) {
+            view = create();
+        }
+        scheduleFill();
+        return view;
+    }
+
+    /**
+     * Loads a ready ad into a pooled WebView off-screen, replacing what was pre-rendered for
+     * the placement before
+     *
+     * @param placementId the placement
+     * @param url         the creative page
+     * @param campaign    the campaign passed to the creative
+     * @param pkgName     the promoted app's package
+     */
+    public void prerender(String placementId, String url, String campaign, String pkgName) {
+        if (TextUtils.isEmpty(placementId) || TextUtils.isEmpty(url)) {
+            return;
+        }
+        Prerendered old = mPrerendered.get(placementId);
+        if (old != null && TextUtils.equals(old.mUrl, url) && TextUtils.equals(old.mCampaign, campaign)) {
+            return;
+        }
+        discardPrerendered(placementId);
+        try {
+            BaseWebView view = mIdle.poll();
+            if (view == null) {
+                view = create();
+            }
+            if (view == null) {
+                return;
+            }
+            view.setWebViewClient(new PrerenderWebClient(view.getContext(), pkgName));
+            JsBridge jsBridge = new JsBridge();
+            jsBridge.injectJavaScript(view);
+            jsBridge.setPlacementId(placementId);
+            jsBridge.setCampaign(campaign);
+            view.loadUrl(url);
+            view.onPause();
+            mPrerendered.put(placementId, new Prerendered(view, jsBridge, url, campaign));
+            DeveloperLog.LogD(TAG, "prerender placementId: " + placementId);
+        } catch (Throwable e) {
+            DeveloperLog.LogD("AdsWebView", e);
+            CrashUtil.getSingleton().saveException(e);
+        }
+    }
+
+    /**
+     * Takes the pre-rendered view of the ad about to be shown
+     *
+     * @return the view, or null if a different ad or nothing was pre-rendered
+     */
+    public Prerendered takePrerendered(String placementId, String url, String campaign) {
+        Prerendered prerendered = mPrerendered.get(placementId);
+        if (prerendered == null) {
+            return null;
+        }
+        if (!TextUtils.equals(prerendered.mUrl, url) || !TextUtils.equals(prerendered.mCampaign, campaign)) {
+            discardPrerendered(placementId);
+            return null;
+        }
+        mPrerendered.remove(placementId);
+        prerendered.mView.onResume();
+        scheduleFill();
+        return prerendered;
+    }
+
+    /**
+     * Releases what was pre-rendered for the placement
+     */
+    public void discardPrerendered(String placementId) {
+        Prerendered prerendered = mPrerendered.remove(placementId);
+        if (prerendered != null) {
+            prerendered.mJsBridge.release();
+            destroy(prerendered.mView, "sdk");
         }
-        return mAdView;
     }
 
     public void destroy(BaseWebView baseWebView, String jsName) {
@@ -66,6 +201,111 @@ public class AdsWebView {
         baseWebView.setWebChromeClient(null);
         baseWebView.freeMemory();
         baseWebView.destroy();
-        isDestroyed = true;
+        scheduleFill();
+    }
+
+    private BaseWebView create() {
+        try {
+            Context context = AdtUtil.getInstance().getApplicationContext();
+            registerCallbacks(context);
+            Log.i(TAG, "start to create BaseWebView");
+            BaseWebView view = new BaseWebView(context.getApplicationContext());
+            view.loadUrl("about:blank");
+            return view;
+        } catch (Throwable e) {
+            DeveloperLog.LogD("AdsWebView", e);
+            CrashUtil.getSingleton().saveException(e);
+            return null;
+        }
+    }
+
+    private static void release(BaseWebView view) {
+        if (view != null) {
+            view.destroy();
+        }
+    }
+
+    /**
+     * Tops the pool up the next time the main thread is idle
+     */
+    private void scheduleFill() {
+        if (isFillScheduled || Looper.myLooper() != Looper.getMainLooper()) {
+            return;
+        }
+        isFillScheduled = true;
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                // one per idle pass, a WebView takes a while to create
+                boolean created = false;
+                if (mIdle.size() + mPrerendered.size() < mPoolSize) {
+                    BaseWebView view = create();
+                    if (view != null) {
+                        mIdle.add(view);
+                        created = true;
+                    }
+                }
+                isFillScheduled = created && mIdle.size() + mPrerendered.size() < mPoolSize;
+                return isFillScheduled;
+            }
+        });
+    }
+
+    private void registerCallbacks(Context context) {
+        if (isCallbacksRegistered || context == null) {
+            return;
+        }
+        isCallbacksRegistered = true;
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trim(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                trim(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+            }
+        });
+    }
+
+    /**
+     * Idle views go on low memory, pre-rendered ones only when memory is critical while running or
+     * the process is about to be killed in the background. UI_HIDDEN only means the app's UI went
+     * away, the pool is kept for when it comes back.
+     */
+    private void trim(int level) {
+        if (level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            return;
+        }
+        while (!mIdle.isEmpty()) {
+            release(mIdle.poll());
+        }
+        if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            Iterator<String> iterator = mPrerendered.keySet().iterator();
+            while (iterator.hasNext()) {
+                Prerendered prerendered = mPrerendered.get(iterator.next());
+                iterator.remove();
+                prerendered.mJsBridge.release();
+                release(prerendered.mView);
+            }
+        }
+        DeveloperLog.LogD(TAG, "trim memory level: " + level);
+    }
+
+    /**
+     * Serves the creative's requests from the cache while it is rendered off-screen
+     */
+    private static final class PrerenderWebClient extends CachedWebViewClient {
+
+        PrerenderWebClient(Context context, String pkgName) {
+            super(context, pkgName);
+        }
     }
 }
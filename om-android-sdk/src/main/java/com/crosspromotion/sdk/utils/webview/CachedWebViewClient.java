@@ -0,0 +1,42 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.crosspromotion.sdk.utils.webview;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
+
+import com.crosspromotion.sdk.utils.ResUtil;
+import com.openmediation.sdk.utils.DeveloperLog;
+
+/**
+ * Serves the creative's requests from the cache, for the clients of WebViews that show ads
+ */
+public class CachedWebViewClient extends BaseWebViewClient {
+
+    public CachedWebViewClient(Context context, String pkgName) {
+        super(context, pkgName);
+    }
+
+    @Override
+    public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
+        WebResourceResponse response = ResUtil.shouldInterceptRequest(view, url);
+        if (response == null) {
+            DeveloperLog.LogD("response null:" + url);
+        }
+        return response == null ? super.shouldInterceptRequest(view, url) : response;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    @Override
+    public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+        // not passed on to super, which would look the url up again without the request
+        // headers and so ignore a Range header
+        return ResUtil.shouldInterceptRequest(view, request.getUrl().toString(),
+                request.getRequestHeaders());
+    }
+}
@@ -12,12 +12,18 @@ import com.openmediation.sdk.utils.device.DeviceUtil;
 
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class JsBridge {
 
     private BaseWebView mWebView;
+    private static final int MAX_PENDING_MESSAGES = 32;
+
     private MessageListener mListener;
+    private final List<JSONObject> mPendingMessages = new ArrayList<>();
+    private boolean isReleased;
     private AtomicBoolean isJsLoaded = new AtomicBoolean(false);
     private AtomicBoolean isReportShowCalled = new AtomicBoolean(false);
     private String placementId;
@@ -53,14 +59,47 @@ public class JsBridge {
         this.campaign = campaign;
     }
 
+    /**
+     * Updates the scene of a creative loaded before its show, the creative is sent its init
+     * params again if it already got them
+     */
+    public void updateScene(String sceneName, int abt) {
+        if (TextUtils.equals(this.sceneName, sceneName) && this.abt == abt) {
+            return;
+        }
+        this.sceneName = sceneName;
+        this.abt = abt;
+        if (isJsLoaded.get()) {
+            jsLoaded();
+        }
+    }
+
+    /**
+     * Sets the listener, messages the creative sent before there was one are delivered to it
+     */
     public void setMessageListener(MessageListener listener) {
-        mListener = listener;
+        List<JSONObject> pending;
+        synchronized (this) {
+            mListener = listener;
+            if (listener == null || mPendingMessages.isEmpty()) {
+                return;
+            }
+            pending = new ArrayList<>(mPendingMessages);
+            mPendingMessages.clear();
+        }
+        for (JSONObject message : pending) {
+            listener.onReceiveMessage(message.optString("m"), message.optJSONObject("d"));
+        }
     }
 
     public void release() {
         isJsLoaded.set(false);
         isReportShowCalled.set(false);
-        mListener = null;
+        synchronized (this) {
+            mListener = null;
+            isReleased = true;
+            mPendingMessages.clear();
+        }
         HandlerUtil.runOnUiThread(new Runnable() {
             @Override
             public void run() {
@@ -93,8 +132,16 @@ public class JsBridge {
                     || JsBridgeConstants.METHOD_REFRESH_AD.equals(m)
                     || JsBridgeConstants.METHOD_REPORT_VIDEO_PROGRESS.equals(m)
                     || JsBridgeConstants.METHOD_AD_REWARDED.equals(m)) {
-                if (mListener != null) {
-                    mListener.onReceiveMessage(m, data);
+                MessageListener listener;
+                synchronized (this) {
+                    listener = mListener;
+                    if (listener == null && !isReleased && mPendingMessages.size() < MAX_PENDING_MESSAGES) {
+                        // pre-rendered, the activity is not there yet
+                        mPendingMessages.add(object);
+                    }
+                }
+                if (listener != null) {
+                    listener.onReceiveMessage(m, data);
                 }
                 if (JsBridgeConstants.METHOD_CLOSE.equals(m)) {
                     release();
@@ -9,7 +9,6 @@ import android.text.TextUtils;
 import android.util.Log;
 import android.view.ViewGroup;
 import android.view.ViewParent;
-import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.widget.FrameLayout;
 
@@ -20,9 +19,8 @@ import com.crosspromotion.sdk.report.AdReport;
 import com.crosspromotion.sdk.utils.Cache;
 import com.crosspromotion.sdk.utils.GpUtil;
 import com.crosspromotion.sdk.utils.PUtils;
-import com.crosspromotion.sdk.utils.ResUtil;
 import com.crosspromotion.sdk.utils.webview.BaseWebView;
-import com.crosspromotion.sdk.utils.webview.BaseWebViewClient;
+import com.crosspromotion.sdk.utils.webview.CachedWebViewClient;
 import com.crosspromotion.sdk.utils.webview.JsBridge;
 import com.crosspromotion.sdk.utils.webview.JsBridgeConstants;
 import com.openmediation.sdk.utils.AdtUtil;
@@ -269,7 +267,7 @@ public final class PromotionAdView implements JsBridge.MessageListener {
         return params;
     }
 
-    protected static class AdWebClient extends BaseWebViewClient {
+    protected static class AdWebClient extends CachedWebViewClient {
         private boolean isJumped = false;
 
         public AdWebClient(Context activity, String pkgName) {
@@ -306,15 +304,6 @@ public final class PromotionAdView implements JsBridge.MessageListener {
             }
             return true;
         }
-
-        @Override
-        public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
-            WebResourceResponse response = ResUtil.shouldInterceptRequest(view, url);
-            if (response == null) {
-                DeveloperLog.LogD("response null:" + url);
-            }
-            return response == null ? super.shouldInterceptRequest(view, url) : response;
-        }
     }
 
     public interface AdRenderListener {
@@ -11,6 +11,8 @@ public class InitConfiguration {
     private boolean isLogEnable;
     private List<OmAds.AD_TYPE> mAdTypes;
     private List<OmAds.CACHE_TYPE> mCacheAdTypes;
+    private int mThreadBudget;
+    private boolean isPipelinedLoad;
 
     private InitConfiguration(Builder builder) {
         mAppKey = builder.appKey;
@@ -19,6 +21,8 @@ public class InitConfiguration {
         isLogEnable = builder.logEnable;
         mAdTypes = builder.mPreloadAdTypes;
         mCacheAdTypes = builder.mUseCacheAdTypes;
+        mThreadBudget = builder.threadBudget;
+        isPipelinedLoad = builder.pipelinedLoad;
     }
 
     public String getAppKey() {
@@ -45,6 +49,14 @@ public class InitConfiguration {
         return mCacheAdTypes;
     }
 
+    public int getThreadBudget() {
+        return mThreadBudget;
+    }
+
+    public boolean isPipelinedLoad() {
+        return isPipelinedLoad;
+    }
+
     public static class Builder {
         private String appKey;
         private String initHost;
@@ -52,6 +64,8 @@ public class InitConfiguration {
         private boolean logEnable;
         private List<OmAds.AD_TYPE> mPreloadAdTypes;
         private List<OmAds.CACHE_TYPE> mUseCacheAdTypes;
+        private int threadBudget;
+        private boolean pipelinedLoad;
 
         public Builder appKey(String appKey) {
             this.appKey = appKey;
@@ -85,6 +99,23 @@ public class InitConfiguration {
             return this;
         }
 
+        /**
+         * Max number of worker threads the SDK may run at the same time
+         */
+        public Builder threadBudget(int threadBudget) {
+            this.threadBudget = threadBudget;
+            return this;
+        }
+
+        /**
+         * Starts c2s bids alongside the waterfall request and, for cached ad types, loads the
+         * waterfall instances without waiting for the c2s bids
+         */
+        public Builder pipelinedLoad(boolean pipelinedLoad) {
+            this.pipelinedLoad = pipelinedLoad;
+            return this;
+        }
+
         public InitConfiguration build() {
             return new InitConfiguration(this);
         }
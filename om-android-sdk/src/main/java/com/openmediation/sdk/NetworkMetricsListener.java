@@ -0,0 +1,25 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk;
+
+/**
+ * NetworkMetricsListener is an interface to notify the application about the network requests
+ * made by the SDK. Methods are called on SDK network threads and should return quickly.
+ */
+public interface NetworkMetricsListener {
+    /**
+     * Called when a request has finished, after its response body was read or closed.
+     *
+     * @param metrics - timings and sizes of the request
+     */
+    void onRequestFinished(RequestMetrics metrics);
+
+    /**
+     * Called when a request was dropped because its queue was full.
+     *
+     * @param url  - url of the dropped request
+     * @param lane - name of the queue
+     */
+    void onRequestRejected(String url, String lane);
+}
@@ -0,0 +1,84 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk;
+
+/**
+ * Counters of one endpoint since the SDK started, see {@link OmAds#getNetworkStats()}
+ */
+public class NetworkStats {
+
+    /**
+     * Upper bounds in ms of the latency histogram buckets, the last bucket has no upper bound
+     */
+    public static final long[] LATENCY_BOUNDS = {50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    private final String mEndpoint;
+    private final long mRequests;
+    private final long mErrors;
+    private final long mCoalesced;
+    private final long mRejected;
+    private final long mRequestBytes;
+    private final long mResponseBytes;
+    private final long[] mLatency;
+
+    /**
+     * SDK internal constructor. Should not be used by publishers.
+     */
+    public NetworkStats(String endpoint, long requests, long errors, long coalesced, long rejected,
+                        long requestBytes, long responseBytes, long[] latency) {
+        mEndpoint = endpoint;
+        mRequests = requests;
+        mErrors = errors;
+        mCoalesced = coalesced;
+        mRejected = rejected;
+        mRequestBytes = requestBytes;
+        mResponseBytes = responseBytes;
+        mLatency = latency;
+    }
+
+    public String getEndpoint() {
+        return mEndpoint;
+    }
+
+    /**
+     * @return requests that reached the network
+     */
+    public long getRequests() {
+        return mRequests;
+    }
+
+    public long getErrors() {
+        return mErrors;
+    }
+
+    /**
+     * @return requests served by joining an identical request already in flight
+     */
+    public long getCoalesced() {
+        return mCoalesced;
+    }
+
+    /**
+     * @return requests dropped because the request queue was full
+     */
+    public long getRejected() {
+        return mRejected;
+    }
+
+    public long getRequestBytes() {
+        return mRequestBytes;
+    }
+
+    public long getResponseBytes() {
+        return mResponseBytes;
+    }
+
+    /**
+     * @return total request time histogram, one count per bucket of {@link #LATENCY_BOUNDS}
+     * plus one for slower requests
+     */
+    public long[] getLatencyHistogram() {
+        return mLatency.clone();
+    }
+}
@@ -9,7 +9,9 @@ import com.openmediation.sdk.core.AdapterRepository;
 import com.openmediation.sdk.core.OmManager;
 import com.openmediation.sdk.utils.AFManager;
 import com.openmediation.sdk.utils.AdLog;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.constant.CommonConstants;
+import com.openmediation.sdk.utils.request.network.NetworkMetrics;
 
 import java.util.Map;
 
@@ -38,6 +40,9 @@ public abstract class OmAds {
     public static void init(Activity activity, InitConfiguration configuration, InitCallback callback) {
         if (configuration != null) {
             AdLog.getSingleton().isDebug(configuration.isLogEnable());
+            if (configuration.getThreadBudget() > 0) {
+                SdkScheduler.setThreadBudget(configuration.getThreadBudget());
+            }
         }
         OmManager.getInstance().init(activity, configuration, callback);
     }
@@ -312,6 +317,33 @@ public abstract class OmAds {
         ImpressionManager.removeListener(listener);
     }
 
+    /**
+     * Call this method to receive timings and sizes of the network requests made by the SDK.
+     *
+     * @param listener - {@link NetworkMetricsListener} interface implementation
+     */
+    public static void addNetworkMetricsListener(NetworkMetricsListener listener) {
+        NetworkMetrics.addListener(listener);
+    }
+
+    /**
+     * Call this method to unsubscribe from network request metrics.
+     *
+     * @param listener - previously submitted to addNetworkMetricsListener() {@link NetworkMetricsListener}
+     */
+    public static void removeNetworkMetricsListener(NetworkMetricsListener listener) {
+        NetworkMetrics.removeListener(listener);
+    }
+
+    /**
+     * Returns the network counters collected since the SDK started.
+     *
+     * @return {@link NetworkStats} keyed by endpoint, the request url without query
+     */
+    public static Map<String, NetworkStats> getNetworkStats() {
+        return NetworkMetrics.getStats();
+    }
+
 
     /**
      * SDK supported pre loadable Ad types
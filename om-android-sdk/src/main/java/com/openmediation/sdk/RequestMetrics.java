@@ -0,0 +1,146 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk;
+
+/**
+ * Timings and sizes of one SDK network request. Durations are in ms, -1 when not measured.
+ * <p>
+ * HttpURLConnection resolves the host while connecting, so DNS time is part of the connect time.
+ */
+public class RequestMetrics {
+
+    private final String mUrl;
+    private final String mEndpoint;
+    private final String mMethod;
+    private final int mCode;
+    private final String mError;
+    private final long mConnectTime;
+    private final long mHandshakeTime;
+    private final long mTtfb;
+    private final long mBodyTime;
+    private final long mTotalTime;
+    private final long mRequestBytes;
+    private final long mResponseBytes;
+
+    /**
+     * SDK internal constructor. Should not be used by publishers.
+     */
+    public RequestMetrics(String url, String endpoint, String method, int code, String error,
+                          long connectTime, long handshakeTime, long ttfb, long bodyTime,
+                          long totalTime, long requestBytes, long responseBytes) {
+        mUrl = url;
+        mEndpoint = endpoint;
+        mMethod = method;
+        mCode = code;
+        mError = error;
+        mConnectTime = connectTime;
+        mHandshakeTime = handshakeTime;
+        mTtfb = ttfb;
+        mBodyTime = bodyTime;
+        mTotalTime = totalTime;
+        mRequestBytes = requestBytes;
+        mResponseBytes = responseBytes;
+    }
+
+    /**
+     * @return the full request url
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * @return the key requests are grouped by: the url without query for the SDK's api, the host
+     * and file type, such as "https://cdn.example.com/*.mp4", for other urls
+     */
+    public String getEndpoint() {
+        return mEndpoint;
+    }
+
+    public String getMethod() {
+        return mMethod;
+    }
+
+    /**
+     * @return the http status code, -1 if no response was read
+     */
+    public int getCode() {
+        return mCode;
+    }
+
+    /**
+     * @return the failure message, null if the request succeeded
+     */
+    public String getError() {
+        return mError;
+    }
+
+    public boolean isSuccess() {
+        return mError == null;
+    }
+
+    /**
+     * @return time to open the connection, including DNS and TLS handshake
+     */
+    public long getConnectTime() {
+        return mConnectTime;
+    }
+
+    /**
+     * @return TLS handshake time, -1 for plain http or a reused connection
+     */
+    public long getHandshakeTime() {
+        return mHandshakeTime;
+    }
+
+    /**
+     * @return time from the connection being open to the response headers, including
+     * the request body upload
+     */
+    public long getTtfb() {
+        return mTtfb;
+    }
+
+    /**
+     * @return time from the response headers to the end of the body
+     */
+    public long getBodyTime() {
+        return mBodyTime;
+    }
+
+    public long getTotalTime() {
+        return mTotalTime;
+    }
+
+    /**
+     * @return request body size, -1 if streamed with unknown length
+     */
+    public long getRequestBytes() {
+        return mRequestBytes;
+    }
+
+    /**
+     * @return response body bytes read by the SDK
+     */
+    public long getResponseBytes() {
+        return mResponseBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestMetrics{" +
+                "mEndpoint='" + mEndpoint + '\'' +
+                ", mMethod=" + mMethod +
+                ", mCode=" + mCode +
+                ", mError='" + mError + '\'' +
+                ", mConnectTime=" + mConnectTime +
+                ", mHandshakeTime=" + mHandshakeTime +
+                ", mTtfb=" + mTtfb +
+                ", mBodyTime=" + mBodyTime +
+                ", mTotalTime=" + mTotalTime +
+                ", mRequestBytes=" + mRequestBytes +
+                ", mResponseBytes=" + mResponseBytes +
+                '}';
+    }
+}
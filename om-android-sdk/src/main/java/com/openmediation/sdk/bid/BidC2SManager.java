@@ -4,7 +4,6 @@
 package com.openmediation.sdk.bid;
 
 import android.content.Context;
-import android.os.Looper;
 
 import com.openmediation.sdk.banner.AdSize;
 import com.openmediation.sdk.core.InsManager;
@@ -13,7 +12,8 @@ import com.openmediation.sdk.mediation.CustomAdsAdapter;
 import com.openmediation.sdk.utils.AdapterUtil;
 import com.openmediation.sdk.utils.AdsUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
-import com.openmediation.sdk.utils.HandlerUtil;
+import com.openmediation.sdk.utils.SdkScheduler;
+import com.openmediation.sdk.utils.SdkTimer;
 import com.openmediation.sdk.utils.WorkExecutor;
 import com.openmediation.sdk.utils.crash.CrashUtil;
 import com.openmediation.sdk.utils.event.AdvanceEventId;
@@ -22,25 +22,23 @@ import com.openmediation.sdk.utils.model.BaseInstance;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class BidC2SManager {
 
-    private final ConcurrentHashMap<String, List<BaseInstance>> mBidInstances;
-    private final ConcurrentHashMap<String, List<BaseInstance>> mSuccessInstances;
-    private final ConcurrentHashMap<Integer, BidTimeout> mBidTimeoutRunnable;
-    private final ConcurrentHashMap<String, BidResponseCallback> mBidResultCallbacks;
-    private final HandlerUtil.HandlerHolder mHandler;
+    /**
+     * The bid each instance is in, a load can run several bids for one placement at once
+     */
+    private final ConcurrentHashMap<Integer, BidSession> mBidSessions;
+    private final ConcurrentHashMap<Integer, SdkTimer.Timeout> mBidTimeouts;
 
     private static final class BidHolder {
         private static final BidC2SManager INSTANCE = new BidC2SManager();
     }
 
     private BidC2SManager() {
-        mBidInstances = new ConcurrentHashMap<>();
-        mSuccessInstances = new ConcurrentHashMap<>();
-        mBidTimeoutRunnable = new ConcurrentHashMap<>();
-        mBidResultCallbacks = new ConcurrentHashMap<>();
-        mHandler = new HandlerUtil.HandlerHolder(null, Looper.getMainLooper());
+        mBidSessions = new ConcurrentHashMap<>();
+        mBidTimeouts = new ConcurrentHashMap<>();
     }
 
     public static BidC2SManager getInstance() {
@@ -51,7 +49,6 @@ public class BidC2SManager {
      * c2s
      */
     public void bid(final Context context, final List<BaseInstance> bidInstances, final String placementId, final String reqId, final int adType, final AdSize adSize, final BidResponseCallback callback) {
-        resetBidResponse(placementId);
         if (bidInstances == null || bidInstances.isEmpty()) {
             if (callback != null) {
                 callback.onBidC2SComplete(null);
@@ -59,14 +56,16 @@ public class BidC2SManager {
             return;
         }
 
-        WorkExecutor.execute(new Runnable() {
+        WorkExecutor.execute(SdkScheduler.Lane.CRITICAL, new Runnable() {
             @Override
             public void run() {
-                mBidInstances.put(placementId, bidInstances);
-                if (callback != null) {
-                    mBidResultCallbacks.put(placementId, callback);
-                }
+                BidSession session = new BidSession(bidInstances, callback);
                 resetBidState(bidInstances);
+                for (BaseInstance bidInstance : bidInstances) {
+                    if (bidInstance != null) {
+                        mBidSessions.put(bidInstance.getId(), session);
+                    }
+                }
                 int biding = 0;
                 for (BaseInstance bidInstance : bidInstances) {
                     if (bidInstance == null) {
@@ -81,12 +80,12 @@ public class BidC2SManager {
                     }
                     biding++;
                     bidInstance.setReqId(reqId);
-                    bidStart(bidInstance, bidInstance.getHbt());
-                    executeBid(context, placementId, adType, adSize, bidInstance, adapter);
+                    bidStart(bidInstance, session, bidInstance.getHbt());
+                    executeBid(context, placementId, adType, adSize, bidInstance, adapter, session);
                 }
 
-                if (biding == 0 && callback != null) {
-                    callback.onBidC2SComplete(null);
+                if (biding == 0) {
+                    complete(session);
                 }
             }
         });
@@ -97,13 +96,13 @@ public class BidC2SManager {
      *
      * @param bidInstance bidInstance
      */
-    private void bidStart(BaseInstance bidInstance, long delay) {
+    private void bidStart(BaseInstance bidInstance, BidSession session, long delay) {
         InsManager.onInsBidStart(bidInstance);
-        startTimeout(bidInstance, delay);
+        startTimeout(bidInstance, session, delay);
     }
 
-    private void executeBid(Context context, String placementId, int adType, AdSize adSize, BaseInstance bidInstance, CustomAdsAdapter adapter) {
-        HbCallback hbCallback = new HbCallback(bidInstance);
+    private void executeBid(Context context, String placementId, int adType, AdSize adSize, BaseInstance bidInstance, CustomAdsAdapter adapter, BidSession session) {
+        HbCallback hbCallback = new HbCallback(bidInstance, session);
         try {
             adapter.getBidResponse(context, BidUtil.makeBidRequestInfo(placementId, bidInstance, adType, adSize),
                     hbCallback);
@@ -121,23 +120,14 @@ public class BidC2SManager {
         InsManager.onInsBidSuccess(instance, response);
     }
 
-    private synchronized void bidSuccess(BaseInstance instance, BidResponse response) {
-        if (instance.getBidState() != BaseInstance.BID_STATE.BID_PENDING) {
+    private synchronized void bidSuccess(BaseInstance instance, BidSession session, BidResponse response) {
+        if (!isPending(instance, session)) {
             return;
         }
         onBidResponse(instance, response);
-
-        String placementId = instance.getPlacementId();
-
-        // Add Success Instances
-        List<BaseInstance> instanceList = mSuccessInstances.get(placementId);
-        if (instanceList == null) {
-            instanceList = new ArrayList<>();
-        }
-        instanceList.add(instance);
-        mSuccessInstances.put(placementId, instanceList);
-        if (isBidComplete(placementId)) {
-            callbackBidResult(placementId);
+        session.mSuccessInstances.add(instance);
+        if (isComplete(session)) {
+            complete(session);
         }
     }
 
@@ -147,57 +137,67 @@ public class BidC2SManager {
         InsManager.onInsBidFailed(instance, error);
     }
 
-    private synchronized void bidFailed(BaseInstance instance, String error) {
+    private synchronized void bidFailed(BaseInstance instance, BidSession session, String error) {
+        if (!isPending(instance, session)) {
+            return;
+        }
         onBidFailed(instance, error);
-        String placementId = instance.getPlacementId();
-        if (isBidComplete(placementId)) {
-            callbackBidResult(placementId);
+        if (isComplete(session)) {
+            complete(session);
         }
     }
 
-    private synchronized void callbackBidResult(String placementId) {
-        if (mBidResultCallbacks.containsKey(placementId)) {
-            BidResponseCallback callback = mBidResultCallbacks.get(placementId);
-            if (callback != null) {
-                List<BaseInstance> c2sInstances = mSuccessInstances.get(placementId);
-                callback.onBidC2SComplete(c2sInstances);
-                mBidResultCallbacks.remove(placementId);
+    private boolean isComplete(BidSession session) {
+        for (BaseInstance instance : session.mInstances) {
+            // an instance taken over by a later bid no longer counts for this one
+            if (instance == null || mBidSessions.get(instance.getId()) != session) {
+                continue;
+            }
+            if (instance.getBidState() != BaseInstance.BID_STATE.BID_SUCCESS
+                    && instance.getBidState() != BaseInstance.BID_STATE.BID_FAILED) {
+                return false;
             }
         }
+        return true;
     }
 
-    private void startTimeout(BaseInstance instance, long delay) {
-        BidTimeout timeout = mBidTimeoutRunnable.get(instance.getId());
-        if (timeout == null) {
-            timeout = new BidTimeout(instance);
-            mBidTimeoutRunnable.put(instance.getId(), timeout);
-        }
-        mHandler.postDelayed(timeout, delay);
+    /**
+     * @return whether the instance is still bidding in this session and not in a later one
+     */
+    private boolean isPending(BaseInstance instance, BidSession session) {
+        return mBidSessions.get(instance.getId()) == session
+                && instance.getBidState() == BaseInstance.BID_STATE.BID_PENDING;
     }
 
-    private void stopTimeout(BaseInstance instance) {
-        BidTimeout timeout = mBidTimeoutRunnable.get(instance.getId());
-        if (timeout != null) {
-            mHandler.removeCallbacks(timeout);
-            mBidTimeoutRunnable.remove(instance.getId());
+    private synchronized void complete(BidSession session) {
+        if (session.isCompleted) {
+            return;
+        }
+        session.isCompleted = true;
+        for (BaseInstance instance : session.mInstances) {
+            if (instance != null) {
+                mBidSessions.remove(instance.getId(), session);
+            }
+        }
+        if (session.mCallback != null) {
+            session.mCallback.onBidC2SComplete(session.mSuccessInstances.isEmpty() ? null : session.mSuccessInstances);
         }
     }
 
-    private synchronized boolean isBidComplete(String placementId) {
-        List<BaseInstance> instances = mBidInstances.get(placementId);
-        if (instances == null || instances.isEmpty()) {
-            return true;
+    private void startTimeout(BaseInstance instance, BidSession session, long delay) {
+        SdkTimer.Timeout timeout = SdkTimer.schedule(SdkScheduler.Lane.CRITICAL, new BidTimeout(instance, session),
+                delay, TimeUnit.MILLISECONDS);
+        SdkTimer.Timeout last = mBidTimeouts.put(instance.getId(), timeout);
+        if (last != null) {
+            last.cancel();
         }
-        int success = 0;
-        int failed = 0;
-        for (BaseInstance instance : instances) {
-            if (instance.getBidState() == BaseInstance.BID_STATE.BID_SUCCESS) {
-                success++;
-            } else if (instance.getBidState() == BaseInstance.BID_STATE.BID_FAILED) {
-                failed++;
-            }
+    }
+
+    private void stopTimeout(BaseInstance instance) {
+        SdkTimer.Timeout timeout = mBidTimeouts.remove(instance.getId());
+        if (timeout != null) {
+            timeout.cancel();
         }
-        return success + failed == instances.size();
     }
 
     private void resetBidState(List<BaseInstance> bidInstances) {
@@ -207,41 +207,58 @@ public class BidC2SManager {
         }
     }
 
-    private void resetBidResponse(String placementId) {
-        if (mSuccessInstances != null) {
-            mSuccessInstances.remove(placementId);
+    /**
+     * One call of {@link #bid}: its instances, the winners so far and who gets the result
+     */
+    private static final class BidSession {
+        private final List<BaseInstance> mInstances;
+        private final BidResponseCallback mCallback;
+        private final List<BaseInstance> mSuccessInstances = new ArrayList<>();
+        private boolean isCompleted;
+
+        BidSession(List<BaseInstance> instances, BidResponseCallback callback) {
+            mInstances = instances;
+            mCallback = callback;
         }
     }
 
     private static class HbCallback implements BidCallback {
 
         private final BaseInstance mInstance;
+        private final BidSession mSession;
 
-        HbCallback(BaseInstance instance) {
+        HbCallback(BaseInstance instance, BidSession session) {
             mInstance = instance;
+            mSession = session;
         }
 
         @Override
         public void onBidSuccess(BidResponse response) {
-            getInstance().bidSuccess(mInstance, response);
+            getInstance().bidSuccess(mInstance, mSession, response);
         }
 
         @Override
         public void onBidFailed(String error) {
-            getInstance().bidFailed(mInstance, error);
+            getInstance().bidFailed(mInstance, mSession, error);
         }
     }
 
     private static class BidTimeout implements Runnable {
         private final BaseInstance mInstance;
+        private final BidSession mSession;
 
-        BidTimeout(BaseInstance instance) {
+        BidTimeout(BaseInstance instance, BidSession session) {
             mInstance = instance;
+            mSession = session;
         }
 
         @Override
         public void run() {
-            getInstance().bidFailed(mInstance, "C2S Bid Failed: timeout");
+            // the bid may have returned while the timeout was queued
+            if (mInstance.getBidState() != BaseInstance.BID_STATE.BID_PENDING) {
+                return;
+            }
+            getInstance().bidFailed(mInstance, mSession, "C2S Bid Failed: timeout");
             AdsUtil.advanceEventReport(mInstance, AdvanceEventId.CODE_C2S_BID_TIMEOUT,
                     AdvanceEventId.MSG_C2S_BID_TIMEOUT);
         }
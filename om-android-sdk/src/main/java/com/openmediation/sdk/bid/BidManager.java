@@ -12,9 +12,11 @@ import com.openmediation.sdk.mediation.CustomAdsAdapter;
 import com.openmediation.sdk.utils.AdapterUtil;
 import com.openmediation.sdk.utils.AdtUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.crash.CrashUtil;
 import com.openmediation.sdk.utils.event.EventId;
 import com.openmediation.sdk.utils.event.EventUploadManager;
+import com.openmediation.sdk.utils.helper.ConfigurationHelper;
 import com.openmediation.sdk.utils.model.BaseInstance;
 import com.openmediation.sdk.utils.model.Configurations;
 import com.openmediation.sdk.utils.model.Placement;
@@ -46,7 +48,12 @@ public class BidManager {
         return mBidInstances;
     }
 
-    public void initBid(Context context, Configurations config) {
+    /**
+     * Inits bidding for the placements' bid instances. Placements are built when first used, so
+     * each one is handled as it is built; those with bid instances are built right away, so their
+     * bidders are inited before the first bid.
+     */
+    public void initBid(final Context context, final Configurations config) {
         if (config == null) {
             return;
         }
@@ -56,40 +63,45 @@ public class BidManager {
             return;
         }
 
-        for (Map.Entry<String, Placement> placementEntry : placementMap.entrySet()) {
-            if (placementEntry == null) {
-                continue;
+        ConfigurationHelper.observePlacements(placementMap, new ConfigurationHelper.OnPlacementBuiltListener() {
+            @Override
+            public void onPlacementBuilt(Placement placement) {
+                initBid(context, config, placement);
             }
-            List<BaseInstance> bidInstances = new ArrayList<>();
-            SparseArray<BaseInstance> insMap = placementEntry.getValue().getInsMap();
+        });
+        ConfigurationHelper.buildBidPlacements(placementMap);
+    }
+
+    private void initBid(Context context, Configurations config, Placement placement) {
+        List<BaseInstance> bidInstances = new ArrayList<>();
+        SparseArray<BaseInstance> insMap = placement.getInsMap();
+
+        if (insMap == null || insMap.size() <= 0) {
+            return;
+        }
 
-            if (insMap == null || insMap.size() <= 0) {
+        int size = insMap.size();
+        for (int i = 0; i < size; i++) {
+            BaseInstance instance = insMap.valueAt(i);
+            if (instance == null) {
                 continue;
             }
 
-            int size = insMap.size();
-            for (int i = 0; i < size; i++) {
-                BaseInstance instance = insMap.valueAt(i);
-                if (instance == null) {
-                    continue;
-                }
-
-                if (instance.getHb() == 1) {
-                    CustomAdsAdapter adapter = AdapterUtil.getCustomAdsAdapter(instance.getMediationId());
-                    if (adapter != null) {
-                        try {
-                            adapter.initBid(context, BidUtil.makeBidInitInfo(config, instance.getMediationId()));
-                            bidInstances.add(instance);
-                        } catch (Throwable throwable) {
-                            DeveloperLog.LogE("initBid error: " + throwable.toString());
-                            CrashUtil.getSingleton().saveException(throwable);
-                        }
+            if (instance.getHb() == 1) {
+                CustomAdsAdapter adapter = AdapterUtil.getCustomAdsAdapter(instance.getMediationId());
+                if (adapter != null) {
+                    try {
+                        adapter.initBid(context, BidUtil.makeBidInitInfo(config, instance.getMediationId()));
+                        bidInstances.add(instance);
+                    } catch (Throwable throwable) {
+                        DeveloperLog.LogE("initBid error: " + throwable.toString());
+                        CrashUtil.getSingleton().saveException(throwable);
                     }
                 }
             }
-            if (bidInstances.size() > 0) {
-                mBidInstances.put(placementEntry.getKey(), bidInstances);
-            }
+        }
+        if (bidInstances.size() > 0) {
+            mBidInstances.put(placement.getId(), bidInstances);
         }
     }
 
@@ -111,7 +123,7 @@ public class BidManager {
     }
 
     void notifyWin(String url, BaseInstance instance) {
-        AdRequest.get().url(url).performRequest(AdtUtil.getInstance().getApplicationContext());
+        AdRequest.get().url(url).lane(SdkScheduler.Lane.UPLOAD).performRequest(AdtUtil.getInstance().getApplicationContext());
         EventUploadManager.getInstance().uploadEvent(EventId.INSTANCE_BID_WIN, InsManager.buildReportData(instance));
     }
 
@@ -130,7 +142,7 @@ public class BidManager {
     }
 
     void notifyLose(String url, BaseInstance instance) {
-        AdRequest.get().url(url).performRequest(AdtUtil.getInstance().getApplicationContext());
+        AdRequest.get().url(url).lane(SdkScheduler.Lane.UPLOAD).performRequest(AdtUtil.getInstance().getApplicationContext());
         EventUploadManager.getInstance().uploadEvent(EventId.INSTANCE_BID_LOSE, InsManager.buildReportData(instance));
     }
 
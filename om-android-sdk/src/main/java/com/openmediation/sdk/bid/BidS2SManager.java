@@ -4,6 +4,7 @@
 package com.openmediation.sdk.bid;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.text.TextUtils;
 
 import com.openmediation.sdk.core.InsManager;
@@ -12,6 +13,7 @@ import com.openmediation.sdk.utils.AdapterUtil;
 import com.openmediation.sdk.utils.AdsUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
 import com.openmediation.sdk.utils.PlacementUtils;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.WorkExecutor;
 import com.openmediation.sdk.utils.crash.CrashUtil;
 import com.openmediation.sdk.utils.event.AdvanceEventId;
@@ -20,10 +22,19 @@ import com.openmediation.sdk.utils.model.BaseInstance;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BidS2SManager {
     private final ConcurrentHashMap<String, List<BidResponse>> mS2SInstanceBidResponse;
     private final ConcurrentHashMap<String, BidResponseCallback> mBidResultCallbacks;
+    private final ConcurrentHashMap<Integer, CachedToken> mTokenCache;
+
+    /**
+     * How long a collected token is reused by the next loads of any placement
+     */
+    private static final long TOKEN_TTL = 60 * 1000L;
 
     private static final class BidHolder {
         private static final BidS2SManager INSTANCE = new BidS2SManager();
@@ -32,6 +43,7 @@ public class BidS2SManager {
     private BidS2SManager() {
         mS2SInstanceBidResponse = new ConcurrentHashMap<>();
         mBidResultCallbacks = new ConcurrentHashMap<>();
+        mTokenCache = new ConcurrentHashMap<>();
     }
 
     public static BidS2SManager getInstance() {
@@ -58,7 +70,7 @@ public class BidS2SManager {
             return;
         }
 
-        WorkExecutor.execute(new Runnable() {
+        WorkExecutor.execute(SdkScheduler.Lane.CRITICAL, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -67,6 +79,9 @@ public class BidS2SManager {
                     }
                     boolean cacheAdsType = PlacementUtils.isCacheAdsType(adType);
                     resetBidState(cacheAdsType, bidInstances);
+                    List<BaseInstance> tokenInstances = new ArrayList<>();
+                    List<CustomAdsAdapter> tokenAdapters = new ArrayList<>();
+                    long budget = 0;
                     for (BaseInstance bidInstance : bidInstances) {
                         CustomAdsAdapter adapter = AdapterUtil.getCustomAdsAdapter(bidInstance.getMediationId());
                         if (adapter == null) {
@@ -85,14 +100,27 @@ public class BidS2SManager {
                         }
                         bidInstance.setReqId(reqId);
                         bidInstance.setBidState(BaseInstance.BID_STATE.BID_PENDING);
-                        BidResponse response = getBidInstanceToken(context, adapter, bidInstance);
-                        if (response != null) {
-                            bidSuccess(bidInstance, response);
-                        } else {
-                            bidFailed(bidInstance, "No BidToken");
+                        String token = getCachedToken(bidInstance.getMediationId());
+                        if (token != null) {
+                            bidSuccess(bidInstance, buildBidResponse(bidInstance, token));
+                            continue;
+                        }
+                        tokenInstances.add(bidInstance);
+                        tokenAdapters.add(adapter);
+                        budget = Math.max(budget, bidInstance.getHbt());
+                    }
+                    if (tokenInstances.isEmpty()) {
+                        callbackBidResult(placementId);
+                        return;
+                    }
+                    TokenRound round = new TokenRound(placementId, reqId, tokenInstances);
+                    SdkScheduler.schedule(SdkScheduler.Lane.CRITICAL, round, budget, TimeUnit.MILLISECONDS);
+                    for (int i = 0; i < tokenInstances.size(); i++) {
+                        TokenTask task = new TokenTask(context, tokenAdapters.get(i), tokenInstances.get(i), round);
+                        if (!SdkScheduler.execute(SdkScheduler.Lane.CRITICAL, task)) {
+                            task.run();
                         }
                     }
-                    callbackBidResult(placementId);
                 } catch (Throwable e) {
                     DeveloperLog.LogW("S2S Failed: " + e.getMessage());
                     callbackBidResult(placementId);
@@ -103,28 +131,83 @@ public class BidS2SManager {
         });
     }
 
-    private BidResponse getBidInstanceToken(Context context, CustomAdsAdapter adapter, BaseInstance bidInstance) {
+    private String getBidInstanceToken(Context context, CustomAdsAdapter adapter, BaseInstance bidInstance) {
         if (bidInstance == null) {
             return null;
         }
-        BidResponse bidResponse = null;
         try {
             String token = adapter.getBiddingToken(context);
             if (TextUtils.isEmpty(token)) {
                 return null;
             }
-            bidResponse = new BidResponse();
-            bidResponse.setIid(bidInstance.getId());
-            bidResponse.setToken(token);
+            mTokenCache.put(bidInstance.getMediationId(), new CachedToken(token));
+            return token;
         } catch (Throwable throwable) {
             DeveloperLog.LogW("S2S bid error: " + throwable.toString());
             CrashUtil.getSingleton().saveException(throwable);
             AdsUtil.advanceEventReport(bidInstance, AdvanceEventId.CODE_S2S_GET_TOKEN_ERROR,
                     AdvanceEventId.MSG_S2S_GET_TOKEN_ERROR + throwable.getMessage());
         }
+        return null;
+    }
+
+    private String getCachedToken(int mediationId) {
+        CachedToken cachedToken = mTokenCache.get(mediationId);
+        if (cachedToken == null) {
+            return null;
+        }
+        if (SystemClock.elapsedRealtime() - cachedToken.mCreatedAt > TOKEN_TTL) {
+            mTokenCache.remove(mediationId, cachedToken);
+            return null;
+        }
+        return cachedToken.mToken;
+    }
+
+    private static BidResponse buildBidResponse(BaseInstance bidInstance, String token) {
+        BidResponse bidResponse = new BidResponse();
+        bidResponse.setIid(bidInstance.getId());
+        bidResponse.setToken(token);
         return bidResponse;
     }
 
+    /**
+     * Called by the token tasks of a round, drops tokens that arrive after the instance's hbt
+     * or after the round is closed
+     */
+    private synchronized void onTokenResult(TokenRound round, BaseInstance instance, String token, long dur) {
+        if (round.isFinished() || !round.mReqId.equals(instance.getReqId())
+                || instance.getBidState() != BaseInstance.BID_STATE.BID_PENDING) {
+            DeveloperLog.LogD(instance + " S2S token dropped, arrived after " + dur + " ms");
+            return;
+        }
+        if (token == null) {
+            bidFailed(instance, "No BidToken");
+        } else if (dur > instance.getHbt()) {
+            bidFailed(instance, "BidToken timeout");
+        } else {
+            bidSuccess(instance, buildBidResponse(instance, token));
+        }
+        if (round.onTokenDone()) {
+            finishRound(round);
+        }
+    }
+
+    private synchronized void finishRound(TokenRound round) {
+        if (!round.finish()) {
+            return;
+        }
+        SdkScheduler.remove(round);
+        for (BaseInstance instance : round.mInstances) {
+            if (round.mReqId.equals(instance.getReqId())
+                    && instance.getBidState() == BaseInstance.BID_STATE.BID_PENDING) {
+                bidFailed(instance, "BidToken timeout");
+                AdsUtil.advanceEventReport(instance, AdvanceEventId.CODE_S2S_TOKEN_TIMEOUT,
+                        AdvanceEventId.MSG_S2S_TOKEN_TIMEOUT + instance.getHbt() + " ms.");
+            }
+        }
+        callbackBidResult(round.mPlacementId);
+    }
+
     private synchronized void bidSuccess(BaseInstance instance, BidResponse response) {
         instance.setBidState(BaseInstance.BID_STATE.BID_SUCCESS);
         List<BidResponse> responseList = mS2SInstanceBidResponse.get(instance.getPlacementId());
@@ -168,4 +251,78 @@ public class BidS2SManager {
         mS2SInstanceBidResponse.remove(placementId);
     }
 
+    private static final class CachedToken {
+        private final String mToken;
+        private final long mCreatedAt;
+
+        CachedToken(String token) {
+            mToken = token;
+            mCreatedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * One s2s bid of a placement. Runs as the global deadline: when it fires, every instance
+     * still waiting for its token fails and the collected tokens are reported.
+     */
+    private final class TokenRound implements Runnable {
+        private final String mPlacementId;
+        private final String mReqId;
+        private final List<BaseInstance> mInstances;
+        private final AtomicInteger mRemaining;
+        private final AtomicBoolean mFinished = new AtomicBoolean(false);
+
+        TokenRound(String placementId, String reqId, List<BaseInstance> instances) {
+            mPlacementId = placementId;
+            mReqId = reqId;
+            mInstances = instances;
+            mRemaining = new AtomicInteger(instances.size());
+        }
+
+        boolean onTokenDone() {
+            return mRemaining.decrementAndGet() <= 0;
+        }
+
+        boolean isFinished() {
+            return mFinished.get();
+        }
+
+        boolean finish() {
+            return mFinished.compareAndSet(false, true);
+        }
+
+        @Override
+        public void run() {
+            finishRound(this);
+        }
+    }
+
+    private final class TokenTask implements Runnable {
+        private final Context mContext;
+        private final CustomAdsAdapter mAdapter;
+        private final BaseInstance mInstance;
+        private final TokenRound mRound;
+
+        TokenTask(Context context, CustomAdsAdapter adapter, BaseInstance instance, TokenRound round) {
+            mContext = context;
+            mAdapter = adapter;
+            mInstance = instance;
+            mRound = round;
+        }
+
+        @Override
+        public void run() {
+            if (mRound.isFinished()) {
+                return;
+            }
+            long start = SystemClock.elapsedRealtime();
+            String token = getBidInstanceToken(mContext, mAdapter, mInstance);
+            long dur = SystemClock.elapsedRealtime() - start;
+            DeveloperLog.LogD(mInstance + " S2S get token cost " + dur + " ms");
+            AdsUtil.advanceEventReport(mInstance, AdvanceEventId.CODE_S2S_TOKEN_DUR,
+                    AdvanceEventId.MSG_S2S_TOKEN_DUR + dur + " ms.");
+            onTokenResult(mRound, mInstance, token, dur);
+        }
+    }
+
 }
@@ -35,23 +35,24 @@ import com.openmediation.sdk.utils.event.AdvanceEventId;
 import com.openmediation.sdk.utils.event.EventId;
 import com.openmediation.sdk.utils.helper.LrReportHelper;
 import com.openmediation.sdk.utils.helper.WaterFallHelper;
+import com.openmediation.sdk.utils.helper.WaterfallParser;
 import com.openmediation.sdk.utils.lifecycle.ActLifecycle;
 import com.openmediation.sdk.utils.model.BaseInstance;
 import com.openmediation.sdk.utils.model.MediationRule;
 import com.openmediation.sdk.utils.model.Placement;
 import com.openmediation.sdk.utils.model.PlacementInfo;
 import com.openmediation.sdk.utils.model.Scene;
+import com.openmediation.sdk.utils.model.WaterfallResult;
 import com.openmediation.sdk.utils.request.network.Request;
 import com.openmediation.sdk.utils.request.network.Response;
 
-import org.json.JSONObject;
 
 import java.lang.ref.WeakReference;
 import java.net.HttpURLConnection;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public abstract class AbstractAdsApi implements InitCallback, BidResponseCallback, Request.OnRequestCallback {
@@ -63,7 +64,7 @@ public abstract class AbstractAdsApi implements InitCallback, BidResponseCallbac
     protected ListenerWrapper mListenerWrapper;
     protected OmManager.LOAD_TYPE mLoadType;
     //Adapters to be loaded
-    protected CopyOnWriteArrayList<BaseInstance> mTotalIns;
+    protected InstanceList mTotalIns;
     protected boolean isManualTriggered;
     /**
      * Banner AdSize
@@ -78,7 +79,7 @@ public abstract class AbstractAdsApi implements InitCallback, BidResponseCallbac
      */
     protected int mRuleId = -1;
 
-    private JSONObject mWFJsonInfo;
+    private WaterfallResult mWfResult;
 
     private long mStartLoadTime;
 
@@ -93,6 +94,24 @@ public abstract class AbstractAdsApi implements InitCallback, BidResponseCallbac
 
     private final AtomicBoolean wfLoadSuccessReported = new AtomicBoolean(false);
 
+    /**
+     * Pipelined load state, guarded by mPipelineLock.
+     * mSpeculativeC2S: c2s instances bid before the waterfall returned, null if none
+     * mSpeculativeC2SResult: their bid result once the speculative bid completed, until it is
+     * retained for the waterfall or released
+     * mPendingWfC2S: c2s instances of a waterfall waiting for the speculative bid
+     * isWfResolved: the waterfall returned or failed, a later speculative result is settled at once
+     * mJoinedC2S: speculative bid winners to merge with the bid of the remaining c2s instances
+     */
+    private final Object mPipelineLock = new Object();
+    private List<BaseInstance> mSpeculativeC2S;
+    private List<BaseInstance> mSpeculativeC2SResult;
+    private boolean isSpeculativeC2SDone;
+    private List<BaseInstance> mPendingWfC2S;
+    private boolean isWfResolved;
+    private boolean isEarlyLoadStarted;
+    private List<BaseInstance> mJoinedC2S;
+
     public abstract boolean isInventoryAdsType();
 
     /**
@@ -134,7 +153,23 @@ public abstract class AbstractAdsApi implements InitCallback, BidResponseCallbac
 
     protected abstract void notifyUnLoadInsBidLose();
 
-    protected abstract void startLoadAdsImpl(JSONObject clInfo, List<BaseInstance> totalIns);
+    protected abstract void startLoadAdsImpl(WaterfallResult wfResult, List<BaseInstance> totalIns);
+
+    /**
+     * Whether c2s instances can join a load that is already running. If so, a pipelined load
+     * starts the waterfall instances without waiting for the c2s bids
+     */
+    protected boolean canMergeLateC2S() {
+        return false;
+    }
+
+    /**
+     * Adds c2s instances whose bid completed after the load started
+     *
+     * @param instances instances that won their bid
+     */
+    protected void onLateC2SInstances(List<BaseInstance> instances) {
+    }
 
     /**
      * when all ins load failed and no cache, recoder failed load count, report event
@@ -143,7 +178,7 @@ public abstract class AbstractAdsApi implements InitCallback, BidResponseCallbac
     }
 
     public AbstractAdsApi() {
-        mTotalIns = new CopyOnWriteArrayList<>();
+        mTotalIns = new InstanceList();
         mListenerWrapper = new ListenerWrapper();
     }
 
@@ -197,10 +232,15 @@ public abstract class AbstractAdsApi implements InitCallback, BidResponseCallbac
         }
         isWfFailed = true;
         wfLoadSuccessReported.set(false);
+        resetPipeline();
         if (getPlacementType() == CommonConstants.PROMOTION) {
             startLoadAdsImpl(null, InsManager.getInstanceList(mPlacement));
             return;
         }
+        // before the s2s bid, which can apply a cached waterfall right away
+        if (OmManager.getInstance().isPipelinedLoad()) {
+            speculativeC2SBid();
+        }
         s2sBid();
     }
 
@@ -269,8 +309,8 @@ public abstract class AbstractAdsApi implements InitCallback, BidResponseCallbac
     protected void inventoryAdsReportAReady() {
     }
 
-    protected void startLoadAds(JSONObject clInfo, List<BaseInstance> instances) {
-        List<BaseInstance> wfInstances = InsManager.getListInsResult(mReqId, clInfo, mPlacement);
+    protected void startLoadAds(WaterfallResult wfResult, List<BaseInstance> instances) {
+        List<BaseInstance> wfInstances = InsManager.getListInsResult(mReqId, wfResult, mPlacement);
         DeveloperLog.LogD("placement: " + mPlacementId + " startLoadAd wfInstances : " + wfInstances);
         List<BaseInstance> totalIns = InsManager.sort(wfInstances, instances);
         DeveloperLog.LogD("placement: " + mPlacementId + " after instances sort: " + totalIns);
@@ -290,7 +330,7 @@ public abstract class AbstractAdsApi implements InitCallback, BidResponseCallbac
         if (mWfLog != null) {
             mWfLog.setUnloadInstance(totalIns);
         }
-        startLoadAdsImpl(clInfo, totalIns);
+        startLoadAdsImpl(wfResult, totalIns);
     }
 
     /**
@@ -311,8 +351,7 @@ public abstract class AbstractAdsApi implements InitCallback, BidResponseCallbac
      */
     protected void loadInsAndSendEvent(BaseInstance instance) {
         setActRef();
-        if (AdRateUtil.shouldBlockInstance(Preconditions.checkNotNull(mPlacement) ?
-                mPlacement.getId() : "" + instance.getKey(), instance)) {
+        if (AdRateUtil.shouldBlockInstance(instance)) {
             onInsCapped(PlacementUtils.getPlacementType(getPlacementType()), instance, isReload());
             return;
         }
@@ -539,7 +578,7 @@ public abstract class AbstractAdsApi implements InitCallback, BidResponseCallbac
     public void onBidC2SComplete(List<BaseInstance> c2sInstances) {
         try {
             DeveloperLog.LogD("onBidC2SComplete c2sInstances : " + c2sInstances);
-            startLoadAds(mWFJsonInfo, c2sInstances);
+            startLoadAds(mWfResult, mergeJoinedC2S(c2sInstances));
         } catch (Exception e) {
             DeveloperLog.LogE("onBidC2SComplete, Placement:" + mPlacement, e);
             Error error = ErrorBuilder.build(ErrorCode.CODE_LOAD_SERVER_ERROR
@@ -569,12 +608,14 @@ public abstract class AbstractAdsApi implements InitCallback, BidResponseCallbac
             }
             String responseString = response.body().string();
             DeveloperLog.LogD("onRequestSuccess : " + responseString);
+            WaterfallResult wfResult = WaterfallParser.parse(responseString);
             // save wf data
-            OmCacheManager.getInstance().saveWaterfallData(mPlacement.getId(), mPlacement.getT(), responseString);
+            OmCacheManager.getInstance().saveWaterfallData(mPlacement.getId(), mPlacement.getT(),
+                    responseString, wfResult.getCode());
             if (mReadWfFromLocal) {
                 return;
             }
-            onInternalRequestSuccess(responseString);
+            onInternalRequestSuccess(wfResult);
             AdsUtil.advanceEventReport(mPlacementId, AdvanceEventId.CODE_WF_RESPONSE_DATA,
                     AdvanceEventId.MSG_WF_RESPONSE_DATA, responseString);
         } catch (Exception e) {
@@ -595,20 +636,19 @@ public abstract class AbstractAdsApi implements InitCallback, BidResponseCallbac
     /**
      * WF RequestSuccess
      *
-     * @param response String
+     * @param wfResult the parsed response
      */
-    protected final void onInternalRequestSuccess(String response) throws Exception {
-        JSONObject wfInfo = new JSONObject(response);
-        int code = wfInfo.optInt("code");
+    protected final void onInternalRequestSuccess(WaterfallResult wfResult) throws Exception {
+        int code = wfResult.getCode();
         if (code != 0) {
             Error error = new Error(ErrorCode.CODE_LOAD_NO_AVAILABLE_AD,
-                    wfInfo.optString("msg"), ErrorCode.CODE_INTERNAL_SERVER_ERROR);
+                    wfResult.getMsg(), ErrorCode.CODE_INTERNAL_SERVER_ERROR);
             onClRequestFailed(error);
             AdsUtil.advanceEventReport(mPlacementId, AdvanceEventId.CODE_WF_CODE_ERROR,
                     AdvanceEventId.MSG_WF_CODE_ERROR + ", code is " + code);
             return;
         }
-        MediationRule mediationRule = WaterFallHelper.getMediationRule(wfInfo);
+        MediationRule mediationRule = wfResult.getRule();
         if (mediationRule != null) {
             mRuleId = mediationRule.getId();
             if (mWfLog != null) {
@@ -618,22 +658,289 @@ public abstract class AbstractAdsApi implements InitCallback, BidResponseCallbac
         }
         InspectorManager.getInstance().notifyWaterfallChanged(mPlacementId, mWfLog);
 
-        mPlacement.setWfAbt(wfInfo.optInt("abt"));
-        mPlacement.setWfAbtId(wfInfo.optInt("abtId"));
+        mPlacement.setWfAbt(wfResult.getAbt());
+        mPlacement.setWfAbtId(wfResult.getAbtId());
         // report Waterfall Ready
         if (!mReadWfFromLocal && isInventoryAdsType()) {
             inventoryAdsReportAReady();
         }
-        mWFJsonInfo = wfInfo;
-        List<BaseInstance> c2SInstances = InsManager.getC2SInstances(mReqId, wfInfo, mPlacement);
+        mWfResult = wfResult;
+        if (onPipelinedWfResponse(wfResult)) {
+            return;
+        }
+        List<BaseInstance> c2SInstances = InsManager.getC2SInstances(mReqId, wfResult, mPlacement);
         if (c2SInstances == null || c2SInstances.isEmpty()) {
-            startLoadAds(wfInfo, null);
+            startLoadAds(wfResult, null);
         } else {
             BidManager.getInstance().c2sBid(mActRefs.get(), c2SInstances, mPlacement.getId(), mReqId, mPlacement.getT(),
                     mAdSize, AbstractAdsApi.this);
         }
     }
 
+    private void resetPipeline() {
+        List<BaseInstance> unclaimed;
+        synchronized (mPipelineLock) {
+            unclaimed = mSpeculativeC2SResult;
+            mSpeculativeC2S = null;
+            mSpeculativeC2SResult = null;
+            isSpeculativeC2SDone = false;
+            mPendingWfC2S = null;
+            isWfResolved = false;
+            isEarlyLoadStarted = false;
+            mJoinedC2S = null;
+        }
+        releaseC2S(unclaimed);
+    }
+
+    /**
+     * Bids the c2s instances known from the cached placement config while the s2s bid and the
+     * waterfall request are running
+     */
+    private void speculativeC2SBid() {
+        List<BaseInstance> instances = InsManager.getSpeculativeC2SInstances(mPlacement);
+        if (instances.isEmpty()) {
+            return;
+        }
+        synchronized (mPipelineLock) {
+            mSpeculativeC2S = instances;
+        }
+        DeveloperLog.LogD("placement: " + mPlacementId + " speculative c2s bid: " + instances);
+        BidManager.getInstance().c2sBid(mActRefs.get(), instances, mPlacement.getId(), mReqId, mPlacement.getT(),
+                mAdSize, new SpeculativeC2SCallback(mReqId));
+    }
+
+    /**
+     * Joins the waterfall response with the speculative c2s bid
+     *
+     * @return false if no speculative c2s bid is running for this load
+     */
+    private boolean onPipelinedWfResponse(WaterfallResult wfResult) {
+        List<BaseInstance> wfC2S;
+        List<BaseInstance> bidResult;
+        boolean earlyLoad = false;
+        synchronized (mPipelineLock) {
+            if (mSpeculativeC2S == null) {
+                return false;
+            }
+            isWfResolved = true;
+            wfC2S = InsManager.getC2SInstances(mReqId, wfResult, mPlacement, mSpeculativeC2S);
+            if (wfC2S == null) {
+                wfC2S = new ArrayList<>();
+            }
+            bidResult = mSpeculativeC2SResult;
+            mSpeculativeC2SResult = null;
+            if (!isSpeculativeC2SDone) {
+                if (wfC2S.isEmpty()) {
+                    // nothing to wait for
+                    bidResult = null;
+                } else {
+                    earlyLoad = canMergeLateC2S() && !wfResult.getIns().isEmpty();
+                    mPendingWfC2S = wfC2S;
+                    isEarlyLoadStarted = earlyLoad;
+                    if (!earlyLoad) {
+                        return true;
+                    }
+                }
+            }
+        }
+        if (earlyLoad) {
+            DeveloperLog.LogD("placement: " + mPlacementId + " start load before c2s bid completed");
+            startLoadAds(wfResult, null);
+        } else {
+            joinC2S(wfResult, wfC2S, bidResult);
+        }
+        return true;
+    }
+
+    private void onSpeculativeC2SComplete(String reqId, List<BaseInstance> bidResult) {
+        List<BaseInstance> wfC2S;
+        boolean earlyLoad;
+        synchronized (mPipelineLock) {
+            if (!TextUtils.equals(reqId, mReqId) || mSpeculativeC2S == null) {
+                // a load that is over
+                wfC2S = null;
+                earlyLoad = false;
+            } else {
+                isSpeculativeC2SDone = true;
+                wfC2S = mPendingWfC2S;
+                mPendingWfC2S = null;
+                earlyLoad = isEarlyLoadStarted;
+                if (wfC2S == null && !isWfResolved) {
+                    // waterfall not returned yet
+                    mSpeculativeC2SResult = bidResult;
+                    return;
+                }
+            }
+        }
+        if (wfC2S == null) {
+            // the waterfall failed or has no c2s instances waiting for this bid
+            releaseC2S(reqId, bidResult);
+            return;
+        }
+        if (!earlyLoad) {
+            joinC2S(mWfResult, wfC2S, bidResult);
+            return;
+        }
+        List<BaseInstance> won = retainWfC2S(bidResult, wfC2S);
+        if (!won.isEmpty()) {
+            onLateC2SInstances(won);
+        }
+        List<BaseInstance> missing = getMissingC2S(wfC2S);
+        if (!missing.isEmpty()) {
+            BidManager.getInstance().c2sBid(mActRefs.get(), missing, mPlacement.getId(), mReqId, mPlacement.getT(),
+                    mAdSize, new LateC2SCallback(reqId));
+        }
+    }
+
+    /**
+     * Starts loading once both the waterfall and the speculative c2s bid are back. C2s instances of
+     * the waterfall that were not bid speculatively are bid now and merged in onBidC2SComplete
+     */
+    private void joinC2S(WaterfallResult wfResult, List<BaseInstance> wfC2S, List<BaseInstance> bidResult) {
+        List<BaseInstance> won = retainWfC2S(bidResult, wfC2S);
+        List<BaseInstance> missing = getMissingC2S(wfC2S);
+        if (missing.isEmpty()) {
+            startLoadAds(wfResult, won.isEmpty() ? null : won);
+            return;
+        }
+        synchronized (mPipelineLock) {
+            mJoinedC2S = won;
+        }
+        BidManager.getInstance().c2sBid(mActRefs.get(), missing, mPlacement.getId(), mReqId, mPlacement.getT(),
+                mAdSize, AbstractAdsApi.this);
+    }
+
+    private List<BaseInstance> mergeJoinedC2S(List<BaseInstance> c2sInstances) {
+        List<BaseInstance> joined;
+        synchronized (mPipelineLock) {
+            joined = mJoinedC2S;
+            mJoinedC2S = null;
+        }
+        if (joined == null || joined.isEmpty()) {
+            return c2sInstances;
+        }
+        List<BaseInstance> result = new ArrayList<>(joined);
+        if (c2sInstances != null) {
+            result.addAll(c2sInstances);
+        }
+        return result;
+    }
+
+    /**
+     * @return speculative bid winners that are part of the waterfall, the others are notified
+     * as losers
+     */
+    private List<BaseInstance> retainWfC2S(List<BaseInstance> bidResult, List<BaseInstance> wfC2S) {
+        List<BaseInstance> won = new ArrayList<>();
+        if (bidResult == null) {
+            return won;
+        }
+        for (BaseInstance instance : bidResult) {
+            if (wfC2S.contains(instance)) {
+                won.add(instance);
+            } else {
+                BidUtil.notifyLose(instance, BidLoseReason.INTERNAL.getValue());
+            }
+        }
+        return won;
+    }
+
+    /**
+     * Notifies speculative bid winners that no waterfall will take
+     */
+    private void releaseC2S(List<BaseInstance> bidResult) {
+        if (bidResult != null && !bidResult.isEmpty()) {
+            retainWfC2S(bidResult, new ArrayList<BaseInstance>());
+        }
+    }
+
+    /**
+     * Like {@link #releaseC2S(List)}, skipping winners that bid again for a later load since
+     */
+    private void releaseC2S(String reqId, List<BaseInstance> bidResult) {
+        if (bidResult == null) {
+            return;
+        }
+        List<BaseInstance> released = new ArrayList<>();
+        for (BaseInstance instance : bidResult) {
+            if (TextUtils.equals(reqId, instance.getReqId())) {
+                released.add(instance);
+            }
+        }
+        releaseC2S(released);
+    }
+
+    /**
+     * Settles the speculative bid of a load whose waterfall failed
+     */
+    private void releaseSpeculativeC2S() {
+        List<BaseInstance> bidResult;
+        synchronized (mPipelineLock) {
+            if (mSpeculativeC2S == null) {
+                return;
+            }
+            isWfResolved = true;
+            mPendingWfC2S = null;
+            bidResult = mSpeculativeC2SResult;
+            mSpeculativeC2SResult = null;
+        }
+        releaseC2S(bidResult);
+    }
+
+    private List<BaseInstance> getMissingC2S(List<BaseInstance> wfC2S) {
+        List<BaseInstance> missing = new ArrayList<>();
+        synchronized (mPipelineLock) {
+            for (BaseInstance instance : wfC2S) {
+                if (mSpeculativeC2S == null || !mSpeculativeC2S.contains(instance)) {
+                    missing.add(instance);
+                }
+            }
+        }
+        return missing;
+    }
+
+    private class SpeculativeC2SCallback implements BidResponseCallback {
+        private final String mBidReqId;
+
+        SpeculativeC2SCallback(String reqId) {
+            mBidReqId = reqId;
+        }
+
+        @Override
+        public void onBidS2SComplete(List<BidResponse> responses) {
+        }
+
+        @Override
+        public void onBidC2SComplete(List<BaseInstance> c2sInstances) {
+            try {
+                onSpeculativeC2SComplete(mBidReqId, c2sInstances);
+            } catch (Exception e) {
+                DeveloperLog.LogE("onSpeculativeC2SComplete, Placement:" + mPlacement, e);
+                CrashUtil.getSingleton().saveException(e);
+            }
+        }
+    }
+
+    private class LateC2SCallback implements BidResponseCallback {
+        private final String mBidReqId;
+
+        LateC2SCallback(String reqId) {
+            mBidReqId = reqId;
+        }
+
+        @Override
+        public void onBidS2SComplete(List<BidResponse> responses) {
+        }
+
+        @Override
+        public void onBidC2SComplete(List<BaseInstance> c2sInstances) {
+            if (!TextUtils.equals(mBidReqId, mReqId) || c2sInstances == null || c2sInstances.isEmpty()) {
+                return;
+            }
+            onLateC2SInstances(c2sInstances);
+        }
+    }
+
     @Override
     public void onRequestFailed(String error) {
         Error errorResult = ErrorBuilder.build(ErrorCode.CODE_LOAD_SERVER_ERROR
@@ -645,6 +952,7 @@ public abstract class AbstractAdsApi implements InitCallback, BidResponseCallbac
 
     private void onClRequestFailed(Error error) {
         DeveloperLog.LogE(error.toString() + ", request cl failed : " + error + ", error" + error);
+        releaseSpeculativeC2S();
         if (isInventoryAdsType()) {
             if (!hasAvailableInventory()) {
                 onAllLoadFailed();
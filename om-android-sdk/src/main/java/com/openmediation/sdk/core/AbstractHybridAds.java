@@ -1,6 +1,5 @@
 package com.openmediation.sdk.core;
 
-import android.os.Looper;
 import android.text.TextUtils;
 
 import com.openmediation.sdk.bid.BidLoseReason;
@@ -15,6 +14,7 @@ import com.openmediation.sdk.utils.AdsUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
 import com.openmediation.sdk.utils.HandlerUtil;
 import com.openmediation.sdk.utils.PlacementUtils;
+import com.openmediation.sdk.utils.SdkTimer;
 import com.openmediation.sdk.utils.constant.CommonConstants;
 import com.openmediation.sdk.utils.crash.CrashUtil;
 import com.openmediation.sdk.utils.error.Error;
@@ -26,13 +26,14 @@ import com.openmediation.sdk.utils.helper.LrReportHelper;
 import com.openmediation.sdk.utils.helper.WaterFallHelper;
 import com.openmediation.sdk.utils.model.BaseInstance;
 import com.openmediation.sdk.utils.model.Scene;
+import com.openmediation.sdk.utils.model.WaterfallResult;
 
-import org.json.JSONObject;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 public abstract class AbstractHybridAds extends AbstractAdsApi {
     /**
@@ -63,16 +64,14 @@ public abstract class AbstractHybridAds extends AbstractAdsApi {
      */
     int mPt;
 
-    private final HandlerUtil.HandlerHolder mHandler;
     private int mLoadedInsIndex = 0;
     private int mCanCallbackIndex;//index of current callback
     private int mCurrentLoadGroupIndex = -1;
-    private Map<Integer, TimeoutRunnable> mTimeouts = new HashMap<>();
+    private Map<Integer, TimeoutRunnable> mTimeouts = new ConcurrentHashMap<>();
 
     public AbstractHybridAds(String placementId) {
         super();
         this.mPlacementId = placementId;
-        mHandler = new HandlerUtil.HandlerHolder(null, Looper.getMainLooper());
         setCurrentPlacement(PlacementUtils.getPlacement(placementId));
     }
 
@@ -162,12 +161,12 @@ public abstract class AbstractHybridAds extends AbstractAdsApi {
     }
 
     @Override
-    protected void startLoadAdsImpl(JSONObject clInfo, List<BaseInstance> totalIns) {
+    protected void startLoadAdsImpl(WaterfallResult wfResult, List<BaseInstance> totalIns) {
         mTotalIns.clear();
         mTotalIns.addAll(totalIns);
         InsManager.resetInsStateOnClResponse(mTotalIns);
         if (mPlacement != null) {
-            WaterFallHelper.getS2sBidResponse(mPlacement, clInfo);
+            WaterFallHelper.getS2sBidResponse(mPlacement, wfResult);
         }
         HandlerUtil.runOnUiThread(new Runnable() {
             @Override
@@ -211,7 +210,7 @@ public abstract class AbstractHybridAds extends AbstractAdsApi {
     protected void onInsShowSuccess(BaseInstance instance, Scene scene) {
         super.onInsShowSuccess(instance, scene);
         callbackAdShowedOnUiThread();
-        AdRateUtil.onInstancesShowed(instance.getPlacementId(), instance.getKey());
+        AdRateUtil.onInstancesShowed(instance);
     }
 
     @Override
@@ -489,34 +488,57 @@ public abstract class AbstractHybridAds extends AbstractAdsApi {
     private void startTimeout(int insIndex) {
         TimeoutRunnable timeout = new TimeoutRunnable(insIndex);
         mTimeouts.put(mCurrentLoadGroupIndex, timeout);
-        mHandler.postDelayed(timeout, mPt * 1000L);
+        timeout.start(mPt * 1000L);
     }
 
     protected void cancelTimeout(boolean all, int grpIndex) {
-        if (mHandler != null) {
-            if (all) {
-                mHandler.removeCallbacksAndMessages(null);
-                mTimeouts.clear();
-            } else {
-                TimeoutRunnable timeout = mTimeouts.get(grpIndex);
-                if (timeout != null) {
-                    mHandler.removeCallbacks(timeout);
-                    mTimeouts.remove(grpIndex);
-                }
+        if (all) {
+            for (TimeoutRunnable timeout : mTimeouts.values()) {
+                timeout.cancel();
+            }
+            mTimeouts.clear();
+        } else {
+            TimeoutRunnable timeout = mTimeouts.remove(grpIndex);
+            if (timeout != null) {
+                timeout.cancel();
             }
         }
     }
 
+    /**
+     * Expires on the timer thread and loads the next group on the UI thread, where loads start
+     */
     private class TimeoutRunnable implements Runnable {
 
         private final int insIndex;
+        private SdkTimer.Timeout mTimeout;
+        private volatile boolean isCancelled;
 
         TimeoutRunnable(int insIndex) {
             this.insIndex = insIndex;
         }
 
+        void start(long delay) {
+            mTimeout = SdkTimer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    HandlerUtil.runOnUiThread(TimeoutRunnable.this);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        void cancel() {
+            isCancelled = true;
+            if (mTimeout != null) {
+                mTimeout.cancel();
+            }
+        }
+
         @Override
         public void run() {
+            if (isCancelled) {
+                return;
+            }
             DeveloperLog.LogD("timeout startNextInstance : " + insIndex);
             startNextInstance(insIndex);
             AdsUtil.advanceEventReport(mPlacementId, AdvanceEventId.CODE_INS_GROUP_LOAD_TIMEOUT,
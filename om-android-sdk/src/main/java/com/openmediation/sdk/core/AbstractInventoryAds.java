@@ -34,6 +34,7 @@ import com.openmediation.sdk.utils.model.BaseInstance;
 import com.openmediation.sdk.utils.model.Placement;
 import com.openmediation.sdk.utils.model.PlacementInfo;
 import com.openmediation.sdk.utils.model.Scene;
+import com.openmediation.sdk.utils.model.WaterfallResult;
 
 import org.json.JSONObject;
 
@@ -50,7 +51,7 @@ public abstract class AbstractInventoryAds extends AbstractAdsApi {
     protected Scene mScene;
     private int mInventorySize;
     // ad loading
-    protected boolean isInLoadingProgress;
+    protected volatile boolean isInLoadingProgress;
     // ad showing
     protected boolean isInShowingProgress;
 
@@ -226,7 +227,7 @@ public abstract class AbstractInventoryAds extends AbstractAdsApi {
     }
 
     @Override
-    protected void startLoadAdsImpl(JSONObject clInfo, List<BaseInstance> totalIns) {
+    protected void startLoadAdsImpl(WaterfallResult wfResult, List<BaseInstance> totalIns) {
         List<BaseInstance> lastAvailableIns = InsManager.getInsWithStatus(mTotalIns, BaseInstance.MEDIATION_STATE.AVAILABLE);
         if (lastAvailableIns != null && !lastAvailableIns.isEmpty()) {
             InsManager.reOrderIns(lastAvailableIns, totalIns);
@@ -238,7 +239,7 @@ public abstract class AbstractInventoryAds extends AbstractAdsApi {
         reSizeInventorySize();
         DeveloperLog.LogD("after cl, Inventory size is : " + mInventorySize);
         if (mPlacement != null) {
-            WaterFallHelper.getS2sBidResponse(mPlacement, clInfo);
+            WaterFallHelper.getS2sBidResponse(mPlacement, wfResult);
         }
         HandlerUtil.runOnUiThread(new Runnable() {
             @Override
@@ -248,6 +249,35 @@ public abstract class AbstractInventoryAds extends AbstractAdsApi {
         });
     }
 
+    @Override
+    protected boolean canMergeLateC2S() {
+        return true;
+    }
+
+    @Override
+    protected synchronized void onLateC2SInstances(List<BaseInstance> instances) {
+        if (!isInLoadingProgress) {
+            // the load already finished, failed or timed out
+            DeveloperLog.LogD("placement: " + mPlacementId + " load is over, ignore late c2s: " + instances);
+            for (BaseInstance instance : instances) {
+                BidUtil.notifyLose(instance, BidLoseReason.INTERNAL.getValue());
+            }
+            return;
+        }
+        for (BaseInstance instance : instances) {
+            InsManager.sort(mTotalIns, instance);
+        }
+        InsManager.resetInsStateOnClResponse(mTotalIns);
+        reSizeInventorySize();
+        DeveloperLog.LogD("after late c2s, TotalIns is : " + mTotalIns.toString());
+        HandlerUtil.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                initOrFetchNextAdapter();
+            }
+        });
+    }
+
     @Override
     protected List<BidResponse> appendLastBidResult() {
         List<BidResponse> responses = null;
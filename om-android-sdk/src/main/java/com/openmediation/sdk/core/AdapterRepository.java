@@ -14,6 +14,7 @@ import com.openmediation.sdk.utils.cache.DataCache;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AdapterRepository {
 
@@ -25,6 +26,9 @@ public class AdapterRepository {
 
     private MetaData mMetaData = new MetaData();
     private Map<String, Object> mPolicySettings = new HashMap<>();
+    // kept for adapters constructed later
+    private volatile String mUserId;
+    private Map<String, String> mTestModes = new ConcurrentHashMap<>();
 
     public static AdapterRepository getInstance() {
         return AdapterRepositoryHolder.mSingleton;
@@ -87,6 +91,17 @@ public class AdapterRepository {
         if (privacyLimit != null) {
             setUSPrivacyLimit(adEvent, privacyLimit);
         }
+
+        String userId = mUserId;
+        if (userId != null) {
+            setUserId(adEvent, userId);
+        }
+
+        for (Map.Entry<String, String> testMode : mTestModes.entrySet()) {
+            if (testMode.getKey().equalsIgnoreCase(adEvent.getAdapterName())) {
+                setTestMode(adEvent, testMode.getValue());
+            }
+        }
     }
 
     public synchronized void setGDPRConsent(boolean consent) {
@@ -137,6 +152,7 @@ public class AdapterRepository {
         }
     }
     public synchronized void setUserId(String userId) {
+        mUserId = userId;
         SparseArray<CustomAdsAdapter> adapterMap = AdapterUtil.getAdapterMap();
         int size = adapterMap.size();
         for (int i = 0; i < size; i++) {
@@ -146,6 +162,9 @@ public class AdapterRepository {
     }
 
     public synchronized void setTestMode(String adaptorName, String deviceId) {
+        if (adaptorName != null && deviceId != null) {
+            mTestModes.put(adaptorName, deviceId);
+        }
         SparseArray<CustomAdsAdapter> adapterMap = AdapterUtil.getAdapterMap();
         int size = adapterMap.size();
         for (int i = 0; i < size; i++) {
@@ -23,6 +23,7 @@ import com.openmediation.sdk.utils.HandlerUtil;
 import com.openmediation.sdk.utils.IOUtil;
 import com.openmediation.sdk.utils.JsonUtil;
 import com.openmediation.sdk.utils.OaidHelper;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.SdkUtil;
 import com.openmediation.sdk.utils.WorkExecutor;
 import com.openmediation.sdk.utils.cache.DataCache;
@@ -35,9 +36,12 @@ import com.openmediation.sdk.utils.error.ErrorBuilder;
 import com.openmediation.sdk.utils.error.ErrorCode;
 import com.openmediation.sdk.utils.event.EventId;
 import com.openmediation.sdk.utils.event.EventUploadManager;
+import com.openmediation.sdk.utils.event.LrReportManager;
 import com.openmediation.sdk.utils.helper.ConfigurationHelper;
 import com.openmediation.sdk.utils.lifecycle.ActLifecycle;
+import com.openmediation.sdk.utils.model.ApiConfigurations;
 import com.openmediation.sdk.utils.model.Configurations;
+import com.openmediation.sdk.utils.request.network.NetworkMetrics;
 import com.openmediation.sdk.utils.request.network.Request;
 import com.openmediation.sdk.utils.request.network.Response;
 
@@ -88,8 +92,9 @@ public final class InitImp {
             ActLifecycle.getInstance().setActivity(activity);
         }
         EventUploadManager.getInstance().init(AdtUtil.getInstance().getApplicationContext());
+        LrReportManager.getInstance().init(AdtUtil.getInstance().getApplicationContext());
         EventUploadManager.getInstance().uploadEvent(reInitRunning.get() ? EventId.RE_INIT_START : EventId.INIT_START);
-        WorkExecutor.execute(new InitAsyncRunnable(configuration, callback));
+        WorkExecutor.execute(SdkScheduler.Lane.CRITICAL, new InitAsyncRunnable(configuration, callback));
     }
 
     /**
@@ -282,9 +287,9 @@ public final class InitImp {
                 initUtil();
                 saveInitConfig();
                 // read init config from cache
-                String config = OmCacheManager.getInstance().getInitData(initConfiguration);
-                if (!TextUtils.isEmpty(config)) {
-                    parseConfigData(initConfiguration, config, true, mCallback);
+                Configurations config = OmCacheManager.getInstance().getInitData(initConfiguration);
+                if (config != null) {
+                    applyConfig(initConfiguration, config, true, mCallback);
                 } else {
                     // get the server data same time
                     getIdAndRequestConfig(initConfiguration, mCallback);
@@ -356,12 +361,22 @@ public final class InitImp {
         }
     }
 
-    private static void parseConfigData(InitConfiguration configuration, String requestData, boolean readFromLocal, InitCallback callback) {
-        //adds global data to memory
+    private static Configurations parseConfigData(InitConfiguration configuration, String requestData, boolean readFromLocal, InitCallback callback) {
         Configurations config = ConfigurationHelper.parseFormServerResponse(requestData);
+        applyConfig(configuration, config, readFromLocal, callback);
+        return config;
+    }
+
+    private static void applyConfig(InitConfiguration configuration, Configurations config, boolean readFromLocal, InitCallback callback) {
+        //adds global data to memory
         if (config != null) {
             DeveloperLog.LogD("Om init request config success");
             DataCache.getInstance().setMEM(KeyConstants.KEY_CONFIGURATION, config);
+            ApiConfigurations api = config.getApi();
+            if (api != null) {
+                NetworkMetrics.addApiUrls(api.getWf(), api.getLr(), api.getEr(), api.getIc(), api.getIap(),
+                        api.getCd(), api.getHb(), api.getCpcl(), api.getCppl());
+            }
             try {
                 BidManager.getInstance().initBid(AdtUtil.getInstance().getApplicationContext(), config);
             } catch (Exception e) {
@@ -420,8 +435,10 @@ public final class InitImp {
                     return;
                 }
                 DeveloperLog.LogD("Om init response data: " + responseData);
-                parseConfigData(configuration, responseData, false, mCallback);
-                OmCacheManager.getInstance().saveInitData(configuration, responseData);
+                Configurations config = parseConfigData(configuration, responseData, false, mCallback);
+                if (config != null) {
+                    OmCacheManager.getInstance().saveInitData(configuration, config);
+                }
             } catch (Throwable e) {
                 CrashUtil.getSingleton().saveException(e);
                 Error error = new Error(ErrorCode.CODE_INIT_EXCEPTION
@@ -5,6 +5,7 @@ import android.text.TextUtils;
 import android.util.SparseArray;
 
 import com.openmediation.sdk.ImpressionManager;
+import com.openmediation.sdk.bid.BidManager;
 import com.openmediation.sdk.bid.BidResponse;
 import com.openmediation.sdk.core.imp.nativead.NaInstance;
 import com.openmediation.sdk.core.runnable.LoadTimeoutRunnable;
@@ -15,12 +16,13 @@ import com.openmediation.sdk.mediation.AdapterError;
 import com.openmediation.sdk.mediation.CustomAdsAdapter;
 import com.openmediation.sdk.mediation.MediationInfo;
 import com.openmediation.sdk.utils.AdRateUtil;
+import com.openmediation.sdk.utils.AdapterUtil;
 import com.openmediation.sdk.utils.AdtUtil;
 import com.openmediation.sdk.utils.DensityUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
-import com.openmediation.sdk.utils.InsExecutor;
 import com.openmediation.sdk.utils.JsonUtil;
 import com.openmediation.sdk.utils.PlacementUtils;
+import com.openmediation.sdk.utils.SdkTimer;
 import com.openmediation.sdk.utils.cache.DataCache;
 import com.openmediation.sdk.utils.constant.CommonConstants;
 import com.openmediation.sdk.utils.constant.KeyConstants;
@@ -35,8 +37,8 @@ import com.openmediation.sdk.utils.model.Mediation;
 import com.openmediation.sdk.utils.model.MediationRule;
 import com.openmediation.sdk.utils.model.Placement;
 import com.openmediation.sdk.utils.model.Scene;
+import com.openmediation.sdk.utils.model.WaterfallResult;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
@@ -46,7 +48,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 public class InsManager {
@@ -159,7 +160,12 @@ public class InsManager {
         }
         Placement placement = PlacementUtils.getPlacement(insFields.getPlacementId());
         int timeout = placement != null ? placement.getPt() : 30;
-        insFields.setScheduledFuture(InsExecutor.execute(insFields.getTimeoutRunnable(), timeout, TimeUnit.SECONDS));
+        SdkTimer.Timeout last = insFields.getLoadTimeout();
+        if (last != null) {
+            last.cancel();
+        }
+        // the runnable posts to the UI thread, so it runs on the timer thread
+        insFields.setLoadTimeout(SdkTimer.schedule(insFields.getTimeoutRunnable(), timeout, TimeUnit.SECONDS));
     }
 
     /**
@@ -169,18 +175,11 @@ public class InsManager {
         if (insFields == null) {
             return;
         }
-        if (insFields.getScheduledFuture() != null) {
-            ScheduledFuture scheduledFuture = insFields.getScheduledFuture();
-            if (!scheduledFuture.isCancelled()) {
-                scheduledFuture.cancel(true);
-            }
-            insFields.setScheduledFuture(null);
-        }
-
-        if (insFields.getTimeoutRunnable() != null) {
-            InsExecutor.remove(insFields.getTimeoutRunnable());
-            insFields.setTimeoutRunnable(null);
+        if (insFields.getLoadTimeout() != null) {
+            insFields.getLoadTimeout().cancel();
+            insFields.setLoadTimeout(null);
         }
+        insFields.setTimeoutRunnable(null);
     }
 
     /**
@@ -393,7 +392,7 @@ public class InsManager {
             return;
         }
         insFields.setShowStart(System.currentTimeMillis());
-        AdRateUtil.onInstancesShowed(insFields.getPlacementId(), insFields.getKey());
+        AdRateUtil.onInstancesShowed(insFields);
         if (scene != null) {
             AdRateUtil.onSceneShowed(insFields.getPlacementId(), scene);
         }
@@ -464,36 +463,18 @@ public class InsManager {
      * @param states    the states
      * @return the ins with status
      */
-    public static synchronized List<BaseInstance> getInsWithStatus(List<BaseInstance> instances, BaseInstance.MEDIATION_STATE... states) {
+    public static List<BaseInstance> getInsWithStatus(List<BaseInstance> instances, BaseInstance.MEDIATION_STATE... states) {
         if (instances == null) {
             return null;
         }
-
-        List<BaseInstance> instanceList = new ArrayList<>();
-        for (BaseInstance in : instances) {
-            for (BaseInstance.MEDIATION_STATE state : states) {
-                if (in.getMediationState() == state) {
-                    instanceList.add(in);
-                }
-            }
-        }
-        return instanceList;
+        return filterInsWithStatus(instances, states);
     }
 
-    public static synchronized List<BaseInstance> getInsIdWithStatus(List<BaseInstance> instances, BaseInstance.MEDIATION_STATE... states) {
+    public static List<BaseInstance> getInsIdWithStatus(List<BaseInstance> instances, BaseInstance.MEDIATION_STATE... states) {
         if (instances == null) {
             return Collections.emptyList();
         }
-
-        List<BaseInstance> insList = new ArrayList<>();
-        for (BaseInstance in : instances) {
-            for (BaseInstance.MEDIATION_STATE state : states) {
-                if (in.getMediationState() == state) {
-                    insList.add(in);
-                }
-            }
-        }
-        return insList;
+        return filterInsWithStatus(instances, states);
     }
 
     /**
@@ -504,7 +485,49 @@ public class InsManager {
      * @return the int
      */
     public static int instanceCount(List<BaseInstance> instances, BaseInstance.MEDIATION_STATE... states) {
-        return getInsWithStatus(instances, states).size();
+        if (instances == null) {
+            return 0;
+        }
+        if (instances instanceof InstanceList) {
+            return ((InstanceList) instances).count(states);
+        }
+        int count = 0;
+        for (BaseInstance in : instances) {
+            if (hasStatus(in, states)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Walks a snapshot of the instances without a lock, the placement's {@link InstanceList}
+     * skips the walk when no instance is in the states
+     */
+    private static List<BaseInstance> filterInsWithStatus(List<BaseInstance> instances, BaseInstance.MEDIATION_STATE... states) {
+        if (instances instanceof InstanceList && ((InstanceList) instances).count(states) == 0) {
+            return new ArrayList<>();
+        }
+        List<BaseInstance> insList = new ArrayList<>();
+        for (BaseInstance in : instances) {
+            if (hasStatus(in, states)) {
+                insList.add(in);
+            }
+        }
+        return insList;
+    }
+
+    private static boolean hasStatus(BaseInstance in, BaseInstance.MEDIATION_STATE... states) {
+        if (in == null) {
+            return false;
+        }
+        BaseInstance.MEDIATION_STATE current = in.getMediationState();
+        for (BaseInstance.MEDIATION_STATE state : states) {
+            if (current == state) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -736,14 +759,25 @@ public class InsManager {
     /**
      * Gets list ins result.
      *
-     * @param clInfo    the cl info
+     * @param wfResult  the waterfall response
      * @param placement the placement
      * @return the list ins result
      */
-    public static List<BaseInstance> getC2SInstances(String reqId, JSONObject clInfo, Placement placement) {
+    public static List<BaseInstance> getC2SInstances(String reqId, WaterfallResult wfResult, Placement placement) {
+        return getC2SInstances(reqId, wfResult, placement, null);
+    }
 
-        JSONArray insArray = clInfo.optJSONArray("c2s");
-        if (insArray == null || insArray.length() <= 0) {
+    /**
+     * Gets the c2s instances of the waterfall, instances in {@code bidding} were bid before the
+     * waterfall returned and keep their bid state
+     *
+     * @param bidding instances of a speculative c2s bid of the same request, may be null
+     */
+    public static List<BaseInstance> getC2SInstances(String reqId, WaterfallResult wfResult, Placement placement,
+                                                     List<BaseInstance> bidding) {
+
+        List<Integer> insIds = wfResult.getC2s();
+        if (insIds.isEmpty()) {
             return null;
         }
 
@@ -752,16 +786,19 @@ public class InsManager {
             return null;
         }
         boolean cacheAds = PlacementUtils.isCacheAdsType(placement.getT());
-        MediationRule mediationRule = WaterFallHelper.getMediationRule(clInfo);
-        int abt = clInfo.optInt("abt");
+        MediationRule mediationRule = wfResult.getRule();
+        int abt = wfResult.getAbt();
         List<BaseInstance> instancesList = new ArrayList<>();
-        for (int i = 0; i < insArray.length(); i++) {
-            int insId = insArray.optInt(i);
+        for (int insId : insIds) {
             BaseInstance instance = getInsWithAdType(placement, insId, insMap);
             if (instance != null) {
                 instance.setWfAbt(abt);
-                instance.setWfAbtId(clInfo.optInt("abtId"));
+                instance.setWfAbtId(wfResult.getAbtId());
                 instance.setMediationRule(mediationRule);
+                if (bidding != null && bidding.contains(instance)) {
+                    instancesList.add(instance);
+                    continue;
+                }
                 instance.setReqId(reqId);
                 instance.setRevenue(0);
                 instance.setPriority(0);
@@ -779,18 +816,50 @@ public class InsManager {
         return instancesList;
     }
 
-    public static List<BaseInstance> getListInsResult(String reqId, JSONObject clInfo, Placement placement) {
-        return getListInsResult(reqId, clInfo, placement, 0);
+    /**
+     * Gets the c2s instances that can be bid before the waterfall returns: header bidding
+     * instances of the cached placement config whose adapter bids on the client
+     *
+     * @param placement the placement
+     * @return the instances, may be empty
+     */
+    public static List<BaseInstance> getSpeculativeC2SInstances(Placement placement) {
+        List<BaseInstance> instancesList = new ArrayList<>();
+        List<BaseInstance> bidInstances = BidManager.getInstance().getBidInstances().get(placement.getId());
+        if (bidInstances == null || bidInstances.isEmpty()) {
+            return instancesList;
+        }
+        boolean cacheAds = PlacementUtils.isCacheAdsType(placement.getT());
+        for (BaseInstance instance : bidInstances) {
+            CustomAdsAdapter adapter = AdapterUtil.getCustomAdsAdapter(instance.getMediationId());
+            if (adapter == null || adapter.isS2S()) {
+                continue;
+            }
+            if (cacheAds && instance.getMediationState() == BaseInstance.MEDIATION_STATE.AVAILABLE) {
+                continue;
+            }
+            instance.setRevenue(0);
+            instance.setPriority(0);
+            instance.setRevenuePrecision(1);
+            instance.setBidResponse(null);
+            instance.setObject(null);
+            instancesList.add(instance);
+        }
+        return instancesList;
+    }
+
+    public static List<BaseInstance> getListInsResult(String reqId, WaterfallResult wfResult, Placement placement) {
+        return getListInsResult(reqId, wfResult, placement, 0);
     }
 
     /**
      * Gets list ins result.
      *
-     * @param clInfo    the cl info
+     * @param wfResult  the waterfall response
      * @param placement the placement
      * @return the list ins result
      */
-    public static List<BaseInstance> getListInsResult(String reqId, JSONObject clInfo, Placement placement, int bs) {
+    public static List<BaseInstance> getListInsResult(String reqId, WaterfallResult wfResult, Placement placement, int bs) {
 
         // FixMe
         List<BaseInstance> test = WaterFallHelper.getTestInstanceMap().get(placement.getId());
@@ -802,8 +871,8 @@ public class InsManager {
             return splitAbsIns(test);
         }
 
-        JSONArray insArray = clInfo.optJSONArray("ins");
-        if (insArray == null || insArray.length() <= 0) {
+        List<WaterfallResult.Instance> insList = wfResult.getIns();
+        if (insList.isEmpty()) {
             return null;
         }
 
@@ -812,15 +881,14 @@ public class InsManager {
             return null;
         }
 
-        MediationRule mediationRule = WaterFallHelper.getMediationRule(clInfo);
-        int abt = clInfo.optInt("abt");
-        int abtId = clInfo.optInt("abtId");
+        MediationRule mediationRule = wfResult.getRule();
+        int abt = wfResult.getAbt();
+        int abtId = wfResult.getAbtId();
 
         boolean cacheAds = PlacementUtils.isCacheAdsType(placement.getT());
         List<BaseInstance> instancesList = new ArrayList<>();
-        for (int i = 0; i < insArray.length(); i++) {
-            JSONObject insObject = insArray.optJSONObject(i);
-            BaseInstance instance = getInstance(reqId, placement, insObject, insMap, mediationRule, abt, abtId);
+        for (WaterfallResult.Instance insResult : insList) {
+            BaseInstance instance = getInstance(reqId, placement, insResult, insMap, mediationRule, abt, abtId);
             if (instance != null) {
                 if (!cacheAds || instance.getMediationState() != BaseInstance.MEDIATION_STATE.AVAILABLE) {
                     instance.setBidResponse(null);
@@ -859,10 +927,10 @@ public class InsManager {
         return origin;
     }
 
-    private static BaseInstance getInstance(String reqId, Placement placement, JSONObject insObject,
+    private static BaseInstance getInstance(String reqId, Placement placement, WaterfallResult.Instance insResult,
                                             SparseArray<BaseInstance> insMap, MediationRule mediationRule, int abt, int abtId) {
-        if (insObject != null) {
-            int insId = insObject.optInt("id");
+        if (insResult != null) {
+            int insId = insResult.getId();
             BaseInstance ins = getInsWithAdType(placement, insId, insMap);
             if (ins != null) {
                 if (ins.getMediationState() != BaseInstance.MEDIATION_STATE.AVAILABLE) {
@@ -870,9 +938,9 @@ public class InsManager {
                     ins.setWfAbtId(abtId);
                     ins.setMediationRule(mediationRule);
                     ins.setReqId(reqId);
-                    ins.setRevenue(insObject.optDouble("r", 0d));
-                    ins.setPriority(insObject.optInt("i", -1));
-                    ins.setRevenuePrecision(insObject.optInt("rp", -1));
+                    ins.setRevenue(insResult.getRevenue());
+                    ins.setPriority(insResult.getPriority());
+                    ins.setRevenuePrecision(insResult.getRevenuePrecision());
                 }
                 return ins;
             }
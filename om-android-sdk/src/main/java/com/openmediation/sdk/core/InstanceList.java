@@ -0,0 +1,163 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.core;
+
+import com.openmediation.sdk.utils.model.BaseInstance;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The instances of a placement, with a count of instances in each state.
+ * <p>
+ * Each instance reports its state changes to the list it is in, so counting instances in some
+ * states reads a few counters instead of walking the list under a global lock. An instance can be
+ * in several lists, such as those of two banners of one placement, and each list counts it.
+ */
+public class InstanceList extends CopyOnWriteArrayList<BaseInstance> implements BaseInstance.StateListener {
+
+    private static final BaseInstance.MEDIATION_STATE[] STATES = BaseInstance.MEDIATION_STATE.values();
+
+    private final transient AtomicIntegerArray mCounts = new AtomicIntegerArray(STATES.length);
+    /**
+     * instances this list listens to
+     */
+    private final transient Set<BaseInstance> mIndexed = new HashSet<>();
+
+    @Override
+    public void onStateChanged(BaseInstance.MEDIATION_STATE from, BaseInstance.MEDIATION_STATE to) {
+        if (from != null) {
+            mCounts.decrementAndGet(from.ordinal());
+        }
+        if (to != null) {
+            mCounts.incrementAndGet(to.ordinal());
+        }
+    }
+
+    /**
+     * @param states the states
+     * @return number of instances in any of the states
+     */
+    public int count(BaseInstance.MEDIATION_STATE... states) {
+        if (states == null) {
+            return 0;
+        }
+        int count = 0;
+        for (BaseInstance.MEDIATION_STATE state : states) {
+            if (state != null) {
+                count += mCounts.get(state.ordinal());
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean add(BaseInstance instance) {
+        boolean result = super.add(instance);
+        reindex();
+        return result;
+    }
+
+    @Override
+    public void add(int index, BaseInstance instance) {
+        super.add(index, instance);
+        reindex();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends BaseInstance> c) {
+        boolean result = super.addAll(c);
+        reindex();
+        return result;
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends BaseInstance> c) {
+        boolean result = super.addAll(index, c);
+        reindex();
+        return result;
+    }
+
+    @Override
+    public boolean addIfAbsent(BaseInstance instance) {
+        boolean result = super.addIfAbsent(instance);
+        reindex();
+        return result;
+    }
+
+    @Override
+    public int addAllAbsent(Collection<? extends BaseInstance> c) {
+        int result = super.addAllAbsent(c);
+        reindex();
+        return result;
+    }
+
+    @Override
+    public BaseInstance set(int index, BaseInstance instance) {
+        BaseInstance result = super.set(index, instance);
+        reindex();
+        return result;
+    }
+
+    @Override
+    public BaseInstance remove(int index) {
+        BaseInstance result = super.remove(index);
+        reindex();
+        return result;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        boolean result = super.remove(o);
+        reindex();
+        return result;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        boolean result = super.removeAll(c);
+        reindex();
+        return result;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        boolean result = super.retainAll(c);
+        reindex();
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        reindex();
+    }
+
+    /**
+     * Listens to the instances now in the list and stops listening to the others
+     */
+    private synchronized void reindex() {
+        Set<BaseInstance> current = new HashSet<>();
+        for (BaseInstance instance : this) {
+            if (instance != null) {
+                current.add(instance);
+            }
+        }
+        for (BaseInstance instance : mIndexed) {
+            if (!current.contains(instance)) {
+                instance.removeStateListener(this);
+            }
+        }
+        for (BaseInstance instance : current) {
+            if (!mIndexed.contains(instance)) {
+                instance.addStateListener(this);
+            }
+        }
+        mIndexed.clear();
+        mIndexed.addAll(current);
+    }
+}
@@ -2,20 +2,34 @@
 // Licensed under the GNU Lesser General Public License Version 3
 package com.openmediation.sdk.core;
 
+import android.content.Context;
+import android.os.SystemClock;
 import android.text.TextUtils;
 
 import com.openmediation.sdk.InitConfiguration;
 import com.openmediation.sdk.OmAds;
+import com.openmediation.sdk.utils.AdtUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.JsonUtil;
+import com.openmediation.sdk.utils.PlacementUtils;
 import com.openmediation.sdk.utils.cache.DataCache;
+import com.openmediation.sdk.utils.cache.WaterfallCache;
 import com.openmediation.sdk.utils.constant.CommonConstants;
 import com.openmediation.sdk.utils.constant.KeyConstants;
+import com.openmediation.sdk.utils.event.EventId;
+import com.openmediation.sdk.utils.event.EventUploadManager;
+import com.openmediation.sdk.utils.helper.ConfigSnapshot;
+import com.openmediation.sdk.utils.helper.ConfigurationHelper;
 import com.openmediation.sdk.utils.model.Configurations;
 import com.openmediation.sdk.utils.request.RequestBuilder;
 
+import org.json.JSONObject;
+
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Cache for init and waterfall config
@@ -33,79 +47,125 @@ public class OmCacheManager {
     }
 
     /**
-     * save init data
+     * save init config as a snapshot
      */
-    public void saveInitData(InitConfiguration configuration, String responseData) {
+    public void saveInitData(InitConfiguration configuration, Configurations config) {
         try {
             boolean needCache = needCacheInitData();
             if (!needCache) {
                 return;
             }
-            String value = URLEncoder.encode(responseData, UTF);
             String key = getInitKey(configuration);
-            DataCache.getInstance().set(key, value);
+            if (ConfigSnapshot.write(AdtUtil.getInstance().getApplicationContext(), key, config)
+                    && DataCache.getInstance().containsKey(key)) {
+                // the url-encoded response older versions kept
+                DataCache.getInstance().delete(key);
+            }
         } catch (Throwable e) {
             DeveloperLog.LogE("save init cache error: " + e.getMessage());
         }
     }
 
     /**
-     * read local data
+     * read local config
      *
-     * @return local init data
+     * @return local init config, placements are decoded when first used
      */
-    public String getInitData(InitConfiguration configuration) {
+    public Configurations getInitData(InitConfiguration configuration) {
         try {
             boolean needCache = needCacheInitData();
             if (!needCache) {
-                return "";
+                return null;
             }
+            long start = SystemClock.elapsedRealtime();
             String key = getInitKey(configuration);
+            Context context = AdtUtil.getInstance().getApplicationContext();
+            Configurations config = ConfigSnapshot.read(context, key);
+            if (config != null) {
+                DeveloperLog.LogD(TAG + "read init snapshot in " + (SystemClock.elapsedRealtime() - start) + "ms");
+                return config;
+            }
+            // no snapshot yet, migrates the url-encoded response older versions kept
             String value = DataCache.getInstance().get(key, String.class);
             if (TextUtils.isEmpty(value)) {
-                return "";
+                return null;
+            }
+            config = ConfigurationHelper.parseFormServerResponse(URLDecoder.decode(value, UTF));
+            if (config != null && ConfigSnapshot.write(context, key, config)) {
+                DataCache.getInstance().delete(key);
             }
-            return URLDecoder.decode(value, UTF);
+            return config;
         } catch (Throwable e) {
             DeveloperLog.LogW(TAG + "get init cache error: " + e.getMessage());
         }
-        return "";
+        return null;
     }
 
     /**
-     * save waterfall data
+     * save waterfall data, responses without an ad are not kept
+     *
+     * @param code the code of the parsed response
      */
-    public void saveWaterfallData(String pid, int type, String responseData) {
+    public void saveWaterfallData(String pid, int type, String responseData, int code) {
         try {
             boolean needCacheWfData = needCacheWfData(type);
             if (!needCacheWfData) {
                 return;
             }
+            if (code != 0) {
+                return;
+            }
             DeveloperLog.LogD(TAG + "save wf data to local");
-            String key = getWaterfallKey() + "_" + pid;
-            String value = URLEncoder.encode(responseData, UTF);
-            DataCache.getInstance().set(key, value);
+            WaterfallCache.getInstance().put(getWaterfallKey(pid, type), responseData);
         } catch (Throwable e) {
             DeveloperLog.LogE("save waterfall cache error: " + e.getMessage());
         }
     }
 
-    public String getWaterfallData(String pid, int type) {
+    /**
+     * read the last waterfall response, hit, stale and miss are reported
+     *
+     * @return the response with its age, or null
+     */
+    public WaterfallCache.Entry getWaterfallData(String pid, int type) {
         try {
             boolean needCacheWfData = needCacheWfData(type);
             if (!needCacheWfData) {
-                return "";
+                return null;
             }
-            String key = getWaterfallKey() + "_" + pid;
-            String value = DataCache.getInstance().get(key, String.class);
-            if (TextUtils.isEmpty(value)) {
-                return "";
+            String key = getWaterfallKey(pid, type);
+            WaterfallCache.Entry entry = WaterfallCache.getInstance().get(key);
+            if (entry == null) {
+                entry = migrateWaterfallData(pid, key);
+            }
+            JSONObject params = PlacementUtils.placementEventParams(pid);
+            if (entry == null) {
+                EventUploadManager.getInstance().uploadEvent(EventId.WATERFALL_CACHE_MISS, params);
+                return null;
             }
-            return URLDecoder.decode(value, UTF);
+            JsonUtil.put(params, "age", entry.getAge());
+            EventUploadManager.getInstance().uploadEvent(entry.isFresh() ? EventId.WATERFALL_CACHE_HIT
+                    : EventId.WATERFALL_CACHE_STALE, params);
+            return entry;
         } catch (Throwable e) {
             DeveloperLog.LogE(TAG + "get waterfall cache error: " + e.getMessage());
         }
-        return "";
+        return null;
+    }
+
+    /**
+     * moves the url-encoded response older versions kept in DataCache, it is served as stale
+     */
+    private WaterfallCache.Entry migrateWaterfallData(String pid, String key) throws Exception {
+        String legacyKey = getWaterfallUrlKey() + "_" + pid;
+        String value = DataCache.getInstance().get(legacyKey, String.class);
+        if (TextUtils.isEmpty(value)) {
+            return null;
+        }
+        DataCache.getInstance().delete(legacyKey);
+        WaterfallCache.getInstance().put(key, URLDecoder.decode(value, UTF),
+                System.currentTimeMillis() - WaterfallCache.FRESH_TTL);
+        return WaterfallCache.getInstance().get(key);
     }
 
     public boolean needCacheWfData(int type) {
@@ -140,7 +200,35 @@ public class OmCacheManager {
         return KeyConstants.KEY_CACHE_INIT_CONFIG + "_" + encode;
     }
 
-    private String getWaterfallKey() throws Exception {
+    /**
+     * The response depends on the request context as well: the user, its tags and the privacy
+     * settings put it in a segment and an AB test group on the server
+     */
+    private String getWaterfallKey(String pid, int type) throws Exception {
+        return getWaterfallUrlKey() + "_" + pid + "_" + type + "_" + getRequestContext();
+    }
+
+    private static String getRequestContext() throws Exception {
+        OmManager manager = OmManager.getInstance();
+        StringBuilder context = new StringBuilder();
+        String userId = manager.getUserId();
+        context.append(userId == null ? "" : userId);
+        Map<String, Object> tags = manager.getCustomTags();
+        JSONObject tagsObject = tags == null ? null : JsonUtil.convert(new TreeMap<>(tags));
+        context.append('|').append(tagsObject == null ? "" : tagsObject.toString());
+        MetaData metaData = manager.getMetaData();
+        if (metaData != null) {
+            context.append('|').append(metaData.getUserGender())
+                    .append('|').append(metaData.getUserAge())
+                    .append('|').append(metaData.getGDPRConsent())
+                    .append('|').append(metaData.getAgeRestricted())
+                    .append('|').append(metaData.getUSPrivacyLimit());
+        }
+        // encoded like the url part, the key is stored as plain ascii
+        return URLEncoder.encode(context.toString(), UTF);
+    }
+
+    private String getWaterfallUrlKey() throws Exception {
         Configurations config = DataCache.getInstance().getFromMem(KeyConstants.KEY_CONFIGURATION, Configurations.class);
         if (config == null || config.getApi() == null || TextUtils.isEmpty(config.getApi().getWf())) {
             return KeyConstants.KEY_CACHE_INIT_CONFIG;
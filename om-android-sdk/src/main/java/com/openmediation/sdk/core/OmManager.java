@@ -37,6 +37,7 @@ import com.openmediation.sdk.utils.JsonUtil;
 import com.openmediation.sdk.utils.PlacementUtils;
 import com.openmediation.sdk.utils.Preconditions;
 import com.openmediation.sdk.utils.SceneUtil;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.WorkExecutor;
 import com.openmediation.sdk.utils.cache.DataCache;
 import com.openmediation.sdk.utils.constant.CommonConstants;
@@ -45,6 +46,7 @@ import com.openmediation.sdk.utils.error.Error;
 import com.openmediation.sdk.utils.error.ErrorBuilder;
 import com.openmediation.sdk.utils.error.ErrorCode;
 import com.openmediation.sdk.utils.event.EventId;
+import com.openmediation.sdk.utils.helper.ConfigurationHelper;
 import com.openmediation.sdk.utils.helper.IapHelper;
 import com.openmediation.sdk.utils.lifecycle.ActLifecycle;
 import com.openmediation.sdk.utils.model.BaseInstance;
@@ -104,6 +106,7 @@ public final class OmManager implements InitCallback {
      * auto cache inventory ad
      */
     private boolean mAutoCacheAd = true;
+    private volatile boolean isPipelinedLoad;
 
     private final AtomicBoolean mReInit = new AtomicBoolean(false);
     /**
@@ -190,6 +193,7 @@ public final class OmManager implements InitCallback {
      */
     public void init(Activity activity, InitConfiguration configuration, InitCallback callback) {
         Preconditions.checkNotNull(configuration, true);
+        isPipelinedLoad = configuration.isPipelinedLoad();
         InitLog initLog = new InitLog();
         if (activity != null) {
             if (ActLifecycle.getInstance().getActivity() == null) {
@@ -1259,7 +1263,7 @@ public final class OmManager implements InitCallback {
         if (!force && mReInitCount.get() >= MAX_INIT_COUNT) {
             return;
         }
-        WorkExecutor.execute(new Runnable() {
+        WorkExecutor.execute(SdkScheduler.Lane.CRITICAL, new Runnable() {
             @Override
             public void run() {
                 registerNetworkReceiver();
@@ -1419,7 +1423,18 @@ public final class OmManager implements InitCallback {
             }
             placementId = placement.getId();
         }
-        return mNaManagers.get(placementId);
+        NaManager manager = mNaManagers.get(placementId);
+        if (manager != null) {
+            return manager;
+        }
+        Placement placement = PlacementUtils.getPlacement(placementId);
+        if (placement == null || placement.getT() != CommonConstants.NATIVE) {
+            return null;
+        }
+        manager = new NaManager();
+        manager.setCurrentPlacement(placement);
+        NaManager old = mNaManagers.putIfAbsent(placementId, manager);
+        return old != null ? old : manager;
     }
 
     private void initManagerWithDefaultPlacementId() {
@@ -1433,14 +1448,19 @@ public final class OmManager implements InitCallback {
             return;
         }
 
-        for (Map.Entry<String, Placement> placementEntry : placementMap.entrySet()) {
-            if (placementEntry == null) {
+        for (String placementId : placementMap.keySet()) {
+            int adType = ConfigurationHelper.getPlacementType(placementMap, placementId);
+            if (adType == CommonConstants.SPLASH) {
+                SpAdManager.getInstance().initSplashAd(placementId);
                 continue;
             }
-            Placement placement = placementEntry.getValue();
+            // native managers are created on first use
+            if (adType != CommonConstants.INTERSTITIAL && adType != CommonConstants.VIDEO
+                    && adType != CommonConstants.PROMOTION) {
+                continue;
+            }
+            Placement placement = placementMap.get(placementId);
             if (placement != null) {
-                int adType = placement.getT();
-                String placementId = placement.getId();
                 switch (adType) {
                     case CommonConstants.INTERSTITIAL:
                         if (mIsManagers != null && !mIsManagers.containsKey(placementId)) {
@@ -1456,9 +1476,6 @@ public final class OmManager implements InitCallback {
                             mRvManagers.put(placementId, rvManager);
                         }
                         break;
-                    case CommonConstants.SPLASH:
-                        SpAdManager.getInstance().initSplashAd(placementId);
-                        break;
                     case CommonConstants.PROMOTION:
                         if (mCpManagers != null && !mCpManagers.containsKey(placementId)) {
                             CpManager manager = new CpManager();
@@ -1466,13 +1483,6 @@ public final class OmManager implements InitCallback {
                             mCpManagers.put(placementId, manager);
                         }
                         break;
-                    case CommonConstants.NATIVE:
-                        if (mNaManagers != null && !mNaManagers.containsKey(placementId)) {
-                            NaManager manager = new NaManager();
-                            manager.setCurrentPlacement(placement);
-                            mNaManagers.put(placementId, manager);
-                        }
-                        break;
                     default:
                         break;
 
@@ -1506,25 +1516,25 @@ public final class OmManager implements InitCallback {
                 if (mDidRvInit.get()) {
                     return;
                 }
-                preloadRV(placementMap.entrySet());
+                preloadRV(placementMap);
                 startScheduleRv();
             } else if (adType == AD_TYPE.INTERSTITIAL) {
                 if (mDidIsInit.get()) {
                     return;
                 }
-                preloadIS(placementMap.entrySet());
+                preloadIS(placementMap);
                 startScheduleIs();
             } else if (adType == AD_TYPE.PROMOTION) {
                 if (mDidCpInit.get()) {
                     return;
                 }
-                preloadCP(placementMap.entrySet());
+                preloadCP(placementMap);
                 startScheduleCp();
             } /*else if (adType == AD_TYPE.NATIVE) {
                 if (mDidNaInit.get()) {
                     return;
                 }
-//                preloadNa(placementMap.entrySet());
+//                preloadNa(placementMap);
 //                startScheduleNa();
             }*/
         }
@@ -1554,7 +1564,7 @@ public final class OmManager implements InitCallback {
             DeveloperLog.LogD("preloadAdWithAdType failed cause placementMap empty");
             return;
         }
-        Set<Map.Entry<String, Placement>> placements = placementMap.entrySet();
+        Map<String, Placement> placements = placementMap;
         if (mPreloadAdTypes.isEmpty()) {
             DeveloperLog.LogD("preload all ad");
             preloadIS(placements);
@@ -1577,73 +1587,65 @@ public final class OmManager implements InitCallback {
     }
 
 
-    private void preloadIS(Set<Map.Entry<String, Placement>> placements) {
+    private void preloadIS(Map<String, Placement> placements) {
         mDidIsInit.set(true);
-        for (Map.Entry<String, Placement> placementEntry : placements) {
-            Placement placement = placementEntry.getValue();
-            if (placement != null) {
-                int type = placement.getT();
-                if (type == CommonConstants.INTERSTITIAL) {
-                    IsManager isManager = getIsManager(placement.getId());
-                    if (isManager != null) {
-                        DeveloperLog.LogD("preloadIS for placementId : " + placement.getId());
-                        isManager.loadAds(LOAD_TYPE.INIT);
-                    }
-                }
+        for (String placementId : placements.keySet()) {
+            // the type is known without building the placement
+            if (ConfigurationHelper.getPlacementType(placements, placementId) != CommonConstants.INTERSTITIAL) {
+                continue;
+            }
+            IsManager isManager = getIsManager(placementId);
+            if (isManager != null) {
+                DeveloperLog.LogD("preloadIS for placementId : " + placementId);
+                isManager.loadAds(LOAD_TYPE.INIT);
             }
         }
     }
 
-    private void preloadRV(Set<Map.Entry<String, Placement>> placements) {
+    private void preloadRV(Map<String, Placement> placements) {
         DeveloperLog.LogD("preloadRV");
         mDidRvInit.set(true);
-        for (Map.Entry<String, Placement> placementEntry : placements) {
-            Placement placement = placementEntry.getValue();
-            if (placement != null) {
-                int type = placement.getT();
-                if (type == CommonConstants.VIDEO) {
-                    RvManager rvManager = getRvManager(placement.getId());
-                    if (rvManager != null) {
-                        DeveloperLog.LogD("preloadRV for placementId : " + placement.getId());
-                        rvManager.loadAds(LOAD_TYPE.INIT);
-                    }
-                }
+        for (String placementId : placements.keySet()) {
+            // the type is known without building the placement
+            if (ConfigurationHelper.getPlacementType(placements, placementId) != CommonConstants.VIDEO) {
+                continue;
+            }
+            RvManager rvManager = getRvManager(placementId);
+            if (rvManager != null) {
+                DeveloperLog.LogD("preloadRV for placementId : " + placementId);
+                rvManager.loadAds(LOAD_TYPE.INIT);
             }
         }
     }
 
-    private void preloadCP(Set<Map.Entry<String, Placement>> placements) {
+    private void preloadCP(Map<String, Placement> placements) {
         DeveloperLog.LogD("preloadCP");
         mDidCpInit.set(true);
-        for (Map.Entry<String, Placement> placementEntry : placements) {
-            Placement placement = placementEntry.getValue();
-            if (placement != null) {
-                int type = placement.getT();
-                if (type == CommonConstants.PROMOTION) {
-                    CpManager manager = getCpManager(placement.getId());
-                    if (manager != null) {
-                        DeveloperLog.LogD("preloadCP for placementId : " + placement.getId());
-                        manager.loadAds(LOAD_TYPE.INIT);
-                    }
-                }
+        for (String placementId : placements.keySet()) {
+            // the type is known without building the placement
+            if (ConfigurationHelper.getPlacementType(placements, placementId) != CommonConstants.PROMOTION) {
+                continue;
+            }
+            CpManager manager = getCpManager(placementId);
+            if (manager != null) {
+                DeveloperLog.LogD("preloadCP for placementId : " + placementId);
+                manager.loadAds(LOAD_TYPE.INIT);
             }
         }
     }
 
-    private void preloadNa(Set<Map.Entry<String, Placement>> placements) {
+    private void preloadNa(Map<String, Placement> placements) {
         DeveloperLog.LogD("preloadNa");
         mDidNaInit.set(true);
-        for (Map.Entry<String, Placement> placementEntry : placements) {
-            Placement placement = placementEntry.getValue();
-            if (placement != null) {
-                int type = placement.getT();
-                if (type == CommonConstants.NATIVE) {
-                    NaManager manager = getNaManager(placement.getId());
-                    if (manager != null) {
-                        DeveloperLog.LogD("preloadNa for placementId : " + placement.getId());
-                        manager.loadAds(LOAD_TYPE.INIT);
-                    }
-                }
+        for (String placementId : placements.keySet()) {
+            // the type is known without building the placement
+            if (ConfigurationHelper.getPlacementType(placements, placementId) != CommonConstants.NATIVE) {
+                continue;
+            }
+            NaManager manager = getNaManager(placementId);
+            if (manager != null) {
+                DeveloperLog.LogD("preloadNa for placementId : " + placementId);
+                manager.loadAds(LOAD_TYPE.INIT);
             }
         }
     }
@@ -1869,6 +1871,10 @@ public final class OmManager implements InitCallback {
         return mAutoCacheAd;
     }
 
+    public boolean isPipelinedLoad() {
+        return isPipelinedLoad;
+    }
+
     public void onNetworkChanged() {
         DeveloperLog.d("Start Re Init SDK: Network Changed");
         startReInitTask(true);
@@ -1908,18 +1914,13 @@ public final class OmManager implements InitCallback {
             return ret;
         }
 
-        for (Map.Entry<String, Placement> placementEntry : placementMap.entrySet()) {
-            if (placementEntry == null) {
+        for (String placementId : placementMap.keySet()) {
+            if (ConfigurationHelper.getPlacementType(placementMap, placementId) != adTypeFilter) {
                 continue;
             }
-            Placement placement = placementEntry.getValue();
-            if (placement != null) {
-                int adType = placement.getT();
-                String placementId = placement.getId();
-                if (adType == adTypeFilter && placement.getName() != null && placement.getName().indexOf(nameFilter) >= 0) {
-                    ret.add(placementId);
-                }
-
+            Placement placement = placementMap.get(placementId);
+            if (placement != null && placement.getName() != null && placement.getName().indexOf(nameFilter) >= 0) {
+                ret.add(placementId);
             }
         }
         return ret;
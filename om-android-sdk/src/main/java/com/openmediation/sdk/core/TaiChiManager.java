@@ -8,6 +8,7 @@ package com.openmediation.sdk.core;
 import com.openmediation.sdk.utils.DeveloperLog;
 import com.openmediation.sdk.utils.FirebaseUtil;
 import com.openmediation.sdk.utils.JsonUtil;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.WorkExecutor;
 import com.openmediation.sdk.utils.cache.DataCache;
 import com.openmediation.sdk.utils.cache.LifetimeRevenueData;
@@ -60,7 +61,7 @@ public class TaiChiManager {
                 }
             }
         };
-        WorkExecutor.execute(runnable);
+        WorkExecutor.execute(SdkScheduler.Lane.EVENT, runnable);
     }
 
     private static void resetUarData() {
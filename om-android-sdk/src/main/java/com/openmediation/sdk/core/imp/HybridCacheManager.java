@@ -8,9 +8,12 @@ import android.text.TextUtils;
 import com.openmediation.sdk.core.AbstractHybridAds;
 import com.openmediation.sdk.core.OmCacheManager;
 import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.cache.WaterfallCache;
 import com.openmediation.sdk.utils.error.Error;
 import com.openmediation.sdk.utils.error.ErrorBuilder;
 import com.openmediation.sdk.utils.error.ErrorCode;
+import com.openmediation.sdk.utils.helper.WaterfallParser;
+import com.openmediation.sdk.utils.model.WaterfallResult;
 
 /**
  * HybridCacheManager for Banner and Splash
@@ -26,11 +29,18 @@ public abstract class HybridCacheManager extends AbstractHybridAds {
     public void s2sBid() {
         try {
             mReadWfFromLocal = false;
-            String cache = OmCacheManager.getInstance().getWaterfallData(mPlacement.getId(), mPlacement.getT());
-            if (!TextUtils.isEmpty(cache)) {
+            WaterfallCache.Entry cache = OmCacheManager.getInstance().getWaterfallData(mPlacement.getId(), mPlacement.getT());
+            if (cache != null && !TextUtils.isEmpty(cache.getResponse())) {
                 mReadWfFromLocal = true;
-                DeveloperLog.LogD(TAG, "Om wf read local cache, placementId: " + mPlacement.getId());
-                onInternalRequestSuccess(cache);
+                DeveloperLog.LogD(TAG, "Om wf read local cache, placementId: " + mPlacement.getId()
+                        + ", age: " + cache.getAge());
+                WaterfallResult wfResult = WaterfallParser.parse(cache.getResponse());
+                onInternalRequestSuccess(wfResult);
+                if (cache.isFresh() && wfResult.getBidResponses().isEmpty()) {
+                    // no refresh until the response goes stale, s2s bids are one-shot and
+                    // are always followed by a new request
+                    return;
+                }
             } else {
                 // has no cache
                 DeveloperLog.LogD(TAG, "Om wf need read from cache, but has no local cache, placementId: " + mPlacement.getId());
@@ -3,6 +3,7 @@ package com.openmediation.sdk.core.runnable;
 import com.openmediation.sdk.InitCallback;
 import com.openmediation.sdk.core.InitImp;
 import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.WorkExecutor;
 import com.openmediation.sdk.utils.crash.CrashUtil;
 import com.openmediation.sdk.utils.error.Error;
@@ -25,7 +26,7 @@ public class InitScheduleTask implements Runnable {
         int delay = config.getRi();
         DeveloperLog.LogD("Execute Re Init SDK Delay : " + delay + " min");
         mTask = new InitScheduleTask();
-        WorkExecutor.execute(mTask, delay, TimeUnit.MINUTES);
+        WorkExecutor.execute(SdkScheduler.Lane.CRITICAL, mTask, delay, TimeUnit.MINUTES);
     }
 
     public InitScheduleTask() {
@@ -11,32 +11,28 @@ import com.openmediation.sdk.utils.event.EventUploadManager;
 import com.openmediation.sdk.utils.model.BaseInstance;
 import com.openmediation.sdk.utils.model.Placement;
 import com.openmediation.sdk.utils.model.Scene;
-import com.openmediation.sdk.utils.cache.DataCache;
 
 /**
- * Ads impression rate control
+ * Ads impression rate control, counters are kept by {@link FrequencyCapEngine}
  */
 public class AdRateUtil {
-    private static String RATE = "Rate";
-    private static String CAP = "CAP";
-    private static String CAP_TIME = "CAPTime";
 
     /**
      * saves placement's and instance's impression time and count
      *
-     * @param placementId  the placement id
-     * @param instancesKey the instances key
+     * @param instance the instance
      */
-    public static void onInstancesShowed(final String placementId, final String instancesKey) {
-        WorkExecutor.execute(new Runnable() {
+    public static void onInstancesShowed(BaseInstance instance) {
+        final String placementId = instance.getPlacementId();
+        if (TextUtils.isEmpty(placementId)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        FrequencyCapEngine.placement(placementId).onShow(now);
+        FrequencyCapEngine.instance(placementId, instance.getId(), instance.getKey()).onShow(now);
+        WorkExecutor.execute(SdkScheduler.Lane.IO, new Runnable() {
             @Override
             public void run() {
-                AdRateUtil.saveShowTime(placementId);
-                AdRateUtil.addCAP(placementId);
-
-                AdRateUtil.saveShowTime(placementId + instancesKey);
-                AdRateUtil.addCAP(placementId + instancesKey);
-                //
                 PlacementUtils.savePlacementImprCount(placementId);
             }
         });
@@ -48,25 +44,12 @@ public class AdRateUtil {
      * @param placementId the placement id
      * @param scene       the scene
      */
-    public static void onSceneShowed(final String placementId, final Scene scene) {
-        if (scene != null) {
-            WorkExecutor.execute(new Runnable() {
-                @Override
-                public void run() {
-                    AdRateUtil.saveShowTime(placementId + scene.getN());
-                    AdRateUtil.addCAP(placementId + scene.getN());
-                }
-            });
+    public static void onSceneShowed(String placementId, Scene scene) {
+        if (scene != null && !TextUtils.isEmpty(placementId)) {
+            FrequencyCapEngine.scene(placementId, scene.getId(), scene.getN()).onShow(System.currentTimeMillis());
         }
     }
 
-    /**
-     * @param key
-     */
-    private static void saveShowTime(String key) {
-        DataCache.getInstance().set(RATE + key, System.currentTimeMillis());
-    }
-
     /**
      * Should block placement boolean.
      *
@@ -77,7 +60,8 @@ public class AdRateUtil {
         if (placement == null || TextUtils.isEmpty(placement.getId())) {
             return false;
         }
-        boolean result = AdRateUtil.isInterval(placement.getId(), placement.getFrequencyInterval());
+        boolean result = FrequencyCapEngine.placement(placement.getId())
+                .isInInterval(placement.getFrequencyInterval(), System.currentTimeMillis());
         if (result) {
             EventUploadManager.getInstance().uploadEvent(EventId.PLACEMENT_CAPPED);
         }
@@ -94,8 +78,8 @@ public class AdRateUtil {
         if (placement == null || TextUtils.isEmpty(placement.getId())) {
             return false;
         }
-        boolean result = AdRateUtil.isCAP(placement.getId(), placement.getFrequencyUnit(), placement.getFrequencyCap());
-
+        boolean result = FrequencyCapEngine.placement(placement.getId()).isCapped(placement.getFrequencyUnit(),
+                placement.getFrequencyCap(), System.currentTimeMillis());
         if (result) {
             EventUploadManager.getInstance().uploadEvent(EventId.PLACEMENT_CAPPED);
         }
@@ -105,16 +89,18 @@ public class AdRateUtil {
     /**
      * Should block instance boolean.
      *
-     * @param key      the key
      * @param instance the instance
      * @return the boolean
      */
-    public static boolean shouldBlockInstance(String key, BaseInstance instance) {
-        if (TextUtils.isEmpty(key)) {
+    public static boolean shouldBlockInstance(BaseInstance instance) {
+        if (instance == null || TextUtils.isEmpty(instance.getPlacementId())) {
             return false;
         }
-        boolean result = AdRateUtil.isInterval(key, instance.getFrequencyInterval())
-                || AdRateUtil.isCAP(key, instance.getFrequencyUnit(), instance.getFrequencyCap());
+        long now = System.currentTimeMillis();
+        FrequencyCapEngine.Counter counter = FrequencyCapEngine.instance(instance.getPlacementId(),
+                instance.getId(), instance.getKey());
+        boolean result = counter.isInInterval(instance.getFrequencyInterval(), now)
+                || counter.isCapped(instance.getFrequencyUnit(), instance.getFrequencyCap(), now);
         if (result) {
             EventUploadManager.getInstance().uploadEvent(EventId.INSTANCE_CAPPED, InsManager.buildReportData(instance));
         }
@@ -129,84 +115,12 @@ public class AdRateUtil {
      * @return the boolean
      */
     public static boolean shouldBlockScene(String placementId, Scene scene) {
-        boolean result = scene != null && AdRateUtil.isCAP(placementId + scene.getN(), scene.getFrequencyUnit(),
-                scene.getFrequencyCap());
+        boolean result = scene != null && !TextUtils.isEmpty(placementId)
+                && FrequencyCapEngine.scene(placementId, scene.getId(), scene.getN()).isCapped(
+                scene.getFrequencyUnit(), scene.getFrequencyCap(), System.currentTimeMillis());
         if (result) {
             EventUploadManager.getInstance().uploadEvent(EventId.SCENE_CAPPED, SceneUtil.sceneReport(placementId, scene));
         }
         return result;
     }
-
-    /**
-     * is Interval long enough
-     *
-     * @param key
-     * @param rate
-     * @return
-     */
-    private static boolean isInterval(String key, long rate) {
-        if (rate == 0) {
-            return false;
-        }
-        Long beforeTime = DataCache.getInstance().get(RATE + key, long.class);
-        if (beforeTime == null) {
-            return false;
-        }
-        DeveloperLog.LogD("Interval:" + key + ":" + (System.currentTimeMillis() - beforeTime) + ":" + rate);
-        return System.currentTimeMillis() - beforeTime < rate;
-    }
-
-    /**
-     * saves current Placement/Mediation impression count and 1st impression time
-     *
-     * @param key
-     */
-    private static void addCAP(String key) {
-        Integer cap = DataCache.getInstance().get(CAP + key, int.class);
-        if (cap == null) {
-            cap = 0;
-        }
-        DeveloperLog.LogD("AddCAP:" + key + ":" + cap + 1);
-        DataCache.getInstance().set(CAP + key, cap + 1);
-        Long capTime = DataCache.getInstance().get(CAP_TIME + key, long.class);
-        if (capTime == null) {
-            DataCache.getInstance().set(CAP_TIME + key, System.currentTimeMillis());
-        }
-    }
-
-    /**
-     * checks how many impressions exist between current Placement's 1st impression time and now
-     *
-     * @param key
-     * @param time  hours
-     * @param count
-     * @return
-     */
-    private static boolean isCAP(String key, int time, int count) {
-        if (count <= 0) {
-            return false;
-        }
-        Long capTime = DataCache.getInstance().get(CAP_TIME + key, long.class);
-        if (capTime == null) {
-            return false;
-        }
-        try {
-            Integer cap = DataCache.getInstance().get(CAP + key, int.class);
-            DeveloperLog.LogD("CapTime:" + key + ":" + (System.currentTimeMillis() - capTime) +
-                    ":" + time + ":Cap:" + cap + ":" + count);
-            if (cap == null) {
-                cap = 0;
-            }
-            if (System.currentTimeMillis() - capTime < time) {
-                return cap >= count;
-            } else {
-                DataCache.getInstance().delete(CAP_TIME + key);
-                DataCache.getInstance().delete(CAP + key);
-                return false;
-            }
-        } catch(Exception e) {
-            DeveloperLog.LogD("isCAP Error: " + e.getMessage());
-        }
-        return false;
-    }
 }
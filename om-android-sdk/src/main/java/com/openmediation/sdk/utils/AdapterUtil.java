@@ -3,8 +3,13 @@
 
 package com.openmediation.sdk.utils;
 
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
 import android.util.Base64;
 import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 
 import com.openmediation.sdk.core.AdapterRepository;
 import com.openmediation.sdk.mediation.CustomAdsAdapter;
@@ -19,6 +24,14 @@ import java.nio.charset.Charset;
 
 /**
  * The type Adapter util.
+ * <p>
+ * Each adapter module lists itself in its manifest with a meta-data named
+ * {@link #ADAPTER_INDEX_PREFIX} plus its mediation id, valued with its class name and version.
+ * The build merges them into the app manifest, so the index holds only the bundled adapters, and
+ * an adapter is constructed the first time it is asked for. A known adapter missing from the index,
+ * such as one built before the index existed, is looked up by its class name the first time it is
+ * asked for, at the latest when the adns are built. Without any index every known adapter class is
+ * probed as before.
  */
 public class AdapterUtil {
 
@@ -27,111 +40,250 @@ public class AdapterUtil {
      */
     protected static final String MEDIATION_ADAPTER_BASE_PATH = CommonConstants.PKG_ADAPTER;
     private static final String ADAPTER = "Adapter";
+    private static final String ADAPTER_INDEX_PREFIX = "com.openmediation.sdk.adapter.";
+    private static final String ADAPTER_INDEX_SEPARATOR = ";";
+    private static final Object LOCK = new Object();
+    /**
+     * adapters constructed so far
+     */
     private static SparseArray<CustomAdsAdapter> mAdapters = new SparseArray<>();
-    private static final SparseArray<String> mAdapterPaths;
-
-    static {
-        mAdapterPaths = new SparseArray<>();
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_1, getAdapterPath(MediationInfo.MEDIATION_ID_1));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_2, getAdapterPath(MediationInfo.MEDIATION_ID_2));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_3, getAdapterPath(MediationInfo.MEDIATION_ID_3));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_4, getAdapterPath(MediationInfo.MEDIATION_ID_4));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_5, getAdapterPath(MediationInfo.MEDIATION_ID_5));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_6, getAdapterPath(MediationInfo.MEDIATION_ID_6));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_7, getAdapterPath(MediationInfo.MEDIATION_ID_7));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_8, getAdapterPath(MediationInfo.MEDIATION_ID_8));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_9, getAdapterPath(MediationInfo.MEDIATION_ID_9));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_10, getAdapterPath(MediationInfo.MEDIATION_ID_10));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_11, getAdapterPath(MediationInfo.MEDIATION_ID_11));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_12, getAdapterPath(MediationInfo.MEDIATION_ID_12));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_13, getAdapterPath(MediationInfo.MEDIATION_ID_13));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_14, getAdapterPath(MediationInfo.MEDIATION_ID_14));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_15, getAdapterPath(MediationInfo.MEDIATION_ID_15));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_17, getAdapterPath(MediationInfo.MEDIATION_ID_17));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_19, getAdapterPath(MediationInfo.MEDIATION_ID_19));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_20, getAdapterPath(MediationInfo.MEDIATION_ID_20));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_21, getAdapterPath(MediationInfo.MEDIATION_ID_21));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_22, getAdapterPath(MediationInfo.MEDIATION_ID_22));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_23, getAdapterPath(MediationInfo.MEDIATION_ID_23));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_24, getAdapterPath(MediationInfo.MEDIATION_ID_24));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_25, getAdapterPath(MediationInfo.MEDIATION_ID_25));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_26, getAdapterPath(MediationInfo.MEDIATION_ID_26));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_27, getAdapterPath(MediationInfo.MEDIATION_ID_27));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_28, getAdapterPath(MediationInfo.MEDIATION_ID_28));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_31, getAdapterPath(MediationInfo.MEDIATION_ID_31));
-        mAdapterPaths.put(MediationInfo.MEDIATION_ID_30, getAdapterPath(MediationInfo.MEDIATION_ID_30));
-    }
+    /**
+     * bundled adapters by mediation id, each as {class name, adapter version}
+     */
+    private static final SparseArray<String[]> mAdapterIndex = new SparseArray<>();
+    /**
+     * mediation ids missing from the index whose class was looked up by name
+     */
+    private static final SparseBooleanArray mProbed = new SparseBooleanArray();
+    private static JSONArray sAdns;
 
     public static void initAdapter() {
-        mAdapters.clear();
-        //traverses to get adapters
-        for (int i = 0; i < mAdapterPaths.size(); i++) {
-            try {
-                CustomAdsAdapter adapter = createAdapter(CustomAdsAdapter.class, mAdapterPaths.get(mAdapterPaths.keyAt(i)));
-                mAdapters.put(adapter.getAdNetworkId(), adapter);
-            } catch (Throwable e) {
+        synchronized (LOCK) {
+            mAdapters.clear();
+            mAdapterIndex.clear();
+            mProbed.clear();
+            sAdns = null;
+            readAdapterIndex();
+            if (mAdapterIndex.size() > 0) {
+                DeveloperLog.LogD("AdapterUtil index : " + mAdapterIndex.size() + " adapters");
+                return;
+            }
+            //traverses to get adapters
+            SparseArray<String> adapterPaths = getAdapterPaths();
+            for (int i = 0; i < adapterPaths.size(); i++) {
+                try {
+                    CustomAdsAdapter adapter = createAdapter(CustomAdsAdapter.class, adapterPaths.valueAt(i));
+                    mAdapters.put(adapter.getAdNetworkId(), adapter);
+                    mAdapterIndex.put(adapter.getAdNetworkId(), new String[]{adapterPaths.valueAt(i), adapter.getAdapterVersion()});
+                } catch (Throwable e) {
 //                CrashUtil.getSingleton().saveException(e);
-                DeveloperLog.LogD("AdapterUtil getAdns : ", e);
+                    DeveloperLog.LogD("AdapterUtil getAdns : ", e);
+                    mProbed.put(adapterPaths.keyAt(i), true);
+                }
             }
         }
+        // set GDPR Age Gender, adapters from the index get them when constructed
+        SparseArray<CustomAdsAdapter> adapters = getAdapterMap();
+        for (int i = 0; i < adapters.size(); i++) {
+            AdapterRepository.getInstance().setCustomParams(adapters.valueAt(i));
+        }
     }
 
     /**
-     * @return the adns
+     * @return the adns, built once per init
      */
     public static JSONArray getAdns() {
-        JSONArray jsonArray = new JSONArray();
-        if (mAdapters == null || mAdapters.size() == 0) {
-            return jsonArray;
+        SparseArray<String[]> index;
+        synchronized (LOCK) {
+            if (sAdns != null) {
+                return sAdns;
+            }
+            index = mAdapterIndex.clone();
         }
-        //traverses to get adapters
-        int size = mAdapters.size();
+        // known adapters missing from the index, such as ones built before it existed
+        SparseArray<String> adapterPaths = getAdapterPaths();
+        for (int i = 0; i < adapterPaths.size(); i++) {
+            int mediationId = adapterPaths.keyAt(i);
+            if (index.get(mediationId) == null) {
+                index.put(mediationId, new String[]{adapterPaths.valueAt(i), ""});
+            }
+        }
+        JSONArray jsonArray = new JSONArray();
+        //traverses the bundled adapters
+        int size = index.size();
         for (int i = 0; i < size; i++) {
             try {
-                CustomAdsAdapter adapter = mAdapters.valueAt(i);
-                mAdapters.put(adapter.getAdNetworkId(), adapter);
-                AdNetwork unityAdNetwork = getAdNetWork(adapter);
-                jsonArray.put(unityAdNetwork.toJson());
-                // set GDPR Age Gender
-                AdapterRepository.getInstance().setCustomParams(adapter);
+                // the network sdk version is only known to the adapter
+                CustomAdsAdapter adapter = getCustomAdsAdapter(index.keyAt(i));
+                if (adapter == null) {
+                    continue;
+                }
+                String adapterVersion = index.valueAt(i)[1];
+                if (adapterVersion == null || adapterVersion.isEmpty()) {
+                    adapterVersion = adapter.getAdapterVersion();
+                }
+                AdNetwork adNetwork = new AdNetwork(adapter.getAdNetworkId(), adapterVersion, adapter.getMediationVersion());
+                jsonArray.put(adNetwork.toJson());
             } catch (Throwable e) {
 //                CrashUtil.getSingleton().saveException(e);
                 DeveloperLog.LogD("AdapterUtil getAdns : ", e);
             }
         }
+        synchronized (LOCK) {
+            sAdns = jsonArray;
+        }
         return jsonArray;
     }
 
     /**
-     * Gets adapter map.
+     * Gets the adapters constructed so far.
      *
-     * @return the adapter map
+     * @return a copy of the adapter map
      */
     public static SparseArray<CustomAdsAdapter> getAdapterMap() {
-        return mAdapters;
+        synchronized (LOCK) {
+            return mAdapters.clone();
+        }
     }
 
     /**
-     * Gets custom ads adapter.
+     * Gets custom ads adapter, constructing it on first use.
      *
      * @param mediationId the mediation id
-     * @return the custom ads adapter
+     * @return the custom ads adapter, or null if its class is not bundled
      */
     public static CustomAdsAdapter getCustomAdsAdapter(int mediationId) {
-        if (mAdapters != null) {
-            return mAdapters.get(mediationId);
+        String[] entry;
+        String path;
+        synchronized (LOCK) {
+            CustomAdsAdapter adapter = mAdapters.get(mediationId);
+            if (adapter != null) {
+                return adapter;
+            }
+            entry = mAdapterIndex.get(mediationId);
+            if (entry != null) {
+                path = entry[0];
+            } else if (mProbed.get(mediationId)) {
+                return null;
+            } else {
+                // an adapter built without an index entry, looked up by its class name once
+                path = getAdapterPath(mediationId);
+            }
+        }
+        // loading the class runs the network sdk's static init, kept out of the lock
+        CustomAdsAdapter adapter;
+        try {
+            adapter = createAdapter(CustomAdsAdapter.class, path);
+        } catch (Throwable e) {
+            synchronized (LOCK) {
+                if (entry == null) {
+                    DeveloperLog.LogD("AdapterUtil adapter not found : " + mediationId);
+                    mProbed.put(mediationId, true);
+                } else {
+                    DeveloperLog.LogD("AdapterUtil create adapter error : " + path, e);
+                    if (mAdapterIndex.get(mediationId) == entry) {
+                        mAdapterIndex.remove(mediationId);
+                    }
+                }
+            }
+            return null;
         }
-        return null;
+        synchronized (LOCK) {
+            // another thread may have constructed it meanwhile, the first one is kept
+            CustomAdsAdapter published = mAdapters.get(mediationId);
+            if (published != null) {
+                return published;
+            }
+            mAdapters.put(mediationId, adapter);
+            if (entry == null) {
+                mProbed.put(mediationId, true);
+                if (mAdapterIndex.get(mediationId) == null) {
+                    mAdapterIndex.put(mediationId, new String[]{path, adapter.getAdapterVersion()});
+                    // the next init request lists it
+                    sAdns = null;
+                }
+            }
+        }
+        // set GDPR Age Gender
+        AdapterRepository.getInstance().setCustomParams(adapter);
+        return adapter;
     }
 
-    private static AdNetwork getAdNetWork(CustomAdsAdapter adapter) {
-        if (adapter != null) {
-            return new AdNetwork(adapter.getAdNetworkId(), adapter.getAdapterVersion(), adapter.getMediationVersion());
-        } else {
-            return null;
+    /**
+     * Reads the adapter entries merged into the app manifest
+     */
+    private static void readAdapterIndex() {
+        Context context = AdtUtil.getInstance().getApplicationContext();
+        if (context == null) {
+            return;
+        }
+        try {
+            ApplicationInfo info = context.getPackageManager().getApplicationInfo(
+                    context.getPackageName(), PackageManager.GET_META_DATA);
+            Bundle metaData = info.metaData;
+            if (metaData == null) {
+                return;
+            }
+            for (String key : metaData.keySet()) {
+                if (!key.startsWith(ADAPTER_INDEX_PREFIX)) {
+                    continue;
+                }
+                Object value = metaData.get(key);
+                if (!(value instanceof String)) {
+                    continue;
+                }
+                int mediationId;
+                try {
+                    mediationId = Integer.parseInt(key.substring(ADAPTER_INDEX_PREFIX.length()));
+                } catch (NumberFormatException e) {
+                    // one bad entry, the others are still good
+                    DeveloperLog.LogD("AdapterUtil malformed index key : " + key);
+                    continue;
+                }
+                String[] entry = ((String) value).split(ADAPTER_INDEX_SEPARATOR, 2);
+                mAdapterIndex.put(mediationId, new String[]{entry[0], entry.length > 1 ? entry[1] : ""});
+            }
+        } catch (Throwable e) {
+            DeveloperLog.LogD("AdapterUtil read index error : ", e);
         }
     }
 
+    /**
+     * @return class names of all known adapters by mediation id
+     */
+    private static SparseArray<String> getAdapterPaths() {
+        SparseArray<String> adapterPaths = new SparseArray<>();
+        adapterPaths.put(MediationInfo.MEDIATION_ID_1, getAdapterPath(MediationInfo.MEDIATION_ID_1));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_2, getAdapterPath(MediationInfo.MEDIATION_ID_2));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_3, getAdapterPath(MediationInfo.MEDIATION_ID_3));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_4, getAdapterPath(MediationInfo.MEDIATION_ID_4));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_5, getAdapterPath(MediationInfo.MEDIATION_ID_5));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_6, getAdapterPath(MediationInfo.MEDIATION_ID_6));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_7, getAdapterPath(MediationInfo.MEDIATION_ID_7));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_8, getAdapterPath(MediationInfo.MEDIATION_ID_8));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_9, getAdapterPath(MediationInfo.MEDIATION_ID_9));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_10, getAdapterPath(MediationInfo.MEDIATION_ID_10));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_11, getAdapterPath(MediationInfo.MEDIATION_ID_11));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_12, getAdapterPath(MediationInfo.MEDIATION_ID_12));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_13, getAdapterPath(MediationInfo.MEDIATION_ID_13));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_14, getAdapterPath(MediationInfo.MEDIATION_ID_14));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_15, getAdapterPath(MediationInfo.MEDIATION_ID_15));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_17, getAdapterPath(MediationInfo.MEDIATION_ID_17));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_19, getAdapterPath(MediationInfo.MEDIATION_ID_19));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_20, getAdapterPath(MediationInfo.MEDIATION_ID_20));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_21, getAdapterPath(MediationInfo.MEDIATION_ID_21));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_22, getAdapterPath(MediationInfo.MEDIATION_ID_22));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_23, getAdapterPath(MediationInfo.MEDIATION_ID_23));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_24, getAdapterPath(MediationInfo.MEDIATION_ID_24));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_25, getAdapterPath(MediationInfo.MEDIATION_ID_25));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_26, getAdapterPath(MediationInfo.MEDIATION_ID_26));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_27, getAdapterPath(MediationInfo.MEDIATION_ID_27));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_28, getAdapterPath(MediationInfo.MEDIATION_ID_28));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_31, getAdapterPath(MediationInfo.MEDIATION_ID_31));
+        adapterPaths.put(MediationInfo.MEDIATION_ID_30, getAdapterPath(MediationInfo.MEDIATION_ID_30));
+        return adapterPaths;
+    }
+
     /**
      * Create adapter t.
      *
@@ -0,0 +1,296 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils;
+
+import com.openmediation.sdk.utils.cache.DataCache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * In-memory impression counters for frequency capping.
+ * <p>
+ * Counters live in copy-on-write open addressing tables keyed by primitive ids, so checks are
+ * lock-free and allocation-free once a counter exists. Each counter packs the start of its
+ * capping window and the impression count in one long that is updated by CAS. A window starts
+ * with the first impression and is dropped once it is older than the unit of the cap.
+ * Changed counters are written to {@link DataCache} in batches on the IO lane, under the same
+ * keys as before, and read back from there when a counter is first used.
+ */
+final class FrequencyCapEngine {
+
+    private static final String RATE = "Rate";
+    private static final String CAP = "CAP";
+    private static final String CAP_TIME = "CAPTime";
+
+    /**
+     * window start is stored relative to 2020-01-01 so 41 bits hold it for decades
+     */
+    private static final long EPOCH = 1577836800000L;
+    private static final int COUNT_BITS = 22;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final long FLUSH_DELAY = 2000L;
+
+    private static final CapTable PLACEMENTS = new CapTable();
+    private static final CapTable INSTANCES = new CapTable();
+    private static final CapTable SCENES = new CapTable();
+
+    private static final ConcurrentLinkedQueue<Counter> DIRTY = new ConcurrentLinkedQueue<>();
+    private static final AtomicBoolean FLUSH_SCHEDULED = new AtomicBoolean(false);
+
+    private FrequencyCapEngine() {
+    }
+
+    static Counter placement(String placementId) {
+        long key = placementIndex(placementId);
+        Counter counter = PLACEMENTS.get(key);
+        return counter != null ? counter : PLACEMENTS.getOrCreate(key, placementId);
+    }
+
+    static Counter instance(String placementId, int instanceId, String instanceKey) {
+        Counter counter = INSTANCES.get(instanceId);
+        return counter != null ? counter : INSTANCES.getOrCreate(instanceId, placementId + instanceKey);
+    }
+
+    static Counter scene(String placementId, int sceneId, String sceneName) {
+        long key = (placementIndex(placementId) << 32) | (sceneId & 0xFFFFFFFFL);
+        Counter counter = SCENES.get(key);
+        return counter != null ? counter : SCENES.getOrCreate(key, placementId + sceneName);
+    }
+
+    /**
+     * Placement ids are numeric; other ids fall back to their hash
+     */
+    private static long placementIndex(String placementId) {
+        int length = placementId.length();
+        if (length == 0 || length > 9) {
+            return placementId.hashCode() & 0xFFFFFFFFL;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = placementId.charAt(i);
+            if (c < '0' || c > '9') {
+                return placementId.hashCode() & 0xFFFFFFFFL;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static void markDirty(Counter counter) {
+        if (Counter.DIRTY_FLAG.compareAndSet(counter, 0, 1)) {
+            DIRTY.add(counter);
+        }
+        if (FLUSH_SCHEDULED.compareAndSet(false, true)) {
+            SdkScheduler.schedule(SdkScheduler.Lane.IO, FLUSH_TASK, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static final Runnable FLUSH_TASK = new Runnable() {
+        @Override
+        public void run() {
+            FLUSH_SCHEDULED.set(false);
+            flush();
+        }
+    };
+
+    /**
+     * Writes every changed counter to DataCache in one batch
+     */
+    static void flush() {
+        Map<String, Object> values = new HashMap<>();
+        List<String> deletes = new ArrayList<>();
+        Counter counter;
+        while ((counter = DIRTY.poll()) != null) {
+            Counter.DIRTY_FLAG.set(counter, 0);
+            long lastShow = counter.mLastShowTime;
+            if (lastShow > 0) {
+                values.put(RATE + counter.mKey, lastShow);
+            }
+            long state = counter.mState;
+            if (state == 0) {
+                deletes.add(CAP + counter.mKey);
+                deletes.add(CAP_TIME + counter.mKey);
+            } else {
+                values.put(CAP + counter.mKey, count(state));
+                values.put(CAP_TIME + counter.mKey, windowStart(state));
+            }
+        }
+        try {
+            if (!values.isEmpty()) {
+                DataCache.getInstance().set(values);
+            }
+            if (!deletes.isEmpty()) {
+                DataCache.getInstance().delete(deletes.toArray(new String[0]));
+            }
+        } catch (Exception e) {
+            DeveloperLog.LogD("FrequencyCapEngine flush error", e);
+        }
+    }
+
+    private static long windowStart(long state) {
+        return (state >>> COUNT_BITS) + EPOCH;
+    }
+
+    private static int count(long state) {
+        return (int) (state & COUNT_MASK);
+    }
+
+    private static long pack(long windowStart, long count) {
+        return ((windowStart - EPOCH) << COUNT_BITS) | Math.min(count, COUNT_MASK);
+    }
+
+    static final class Counter {
+        static final AtomicLongFieldUpdater<Counter> STATE =
+                AtomicLongFieldUpdater.newUpdater(Counter.class, "mState");
+        static final AtomicIntegerFieldUpdater<Counter> DIRTY_FLAG =
+                AtomicIntegerFieldUpdater.newUpdater(Counter.class, "mDirty");
+
+        /**
+         * suffix of the DataCache keys
+         */
+        final String mKey;
+        volatile long mLastShowTime;
+        /**
+         * window start and impression count, 0 when no window is open
+         */
+        volatile long mState;
+        volatile int mDirty;
+
+        Counter(String key) {
+            mKey = key;
+            DataCache cache = DataCache.getInstance();
+            Long lastShow = cache.get(RATE + key, long.class);
+            if (lastShow != null) {
+                mLastShowTime = lastShow;
+            }
+            Long capTime = cache.get(CAP_TIME + key, long.class);
+            Integer cap = cache.get(CAP + key, int.class);
+            if (capTime != null && capTime >= EPOCH) {
+                mState = pack(capTime, cap == null ? 0 : cap);
+            }
+        }
+
+        void onShow(long now) {
+            mLastShowTime = now;
+            long state;
+            long next;
+            do {
+                state = mState;
+                next = state == 0 ? pack(now, 1) : pack(windowStart(state), count(state) + 1L);
+            } while (!STATE.compareAndSet(this, state, next));
+            markDirty(this);
+        }
+
+        /**
+         * @return true if the last impression is less than {@code interval} ms ago
+         */
+        boolean isInInterval(long interval, long now) {
+            if (interval == 0) {
+                return false;
+            }
+            long lastShow = mLastShowTime;
+            return lastShow > 0 && now - lastShow < interval;
+        }
+
+        /**
+         * @return true if {@code cap} impressions happened in the current window of
+         * {@code window} ms
+         */
+        boolean isCapped(long window, int cap, long now) {
+            if (cap <= 0) {
+                return false;
+            }
+            long state = mState;
+            if (state == 0) {
+                return false;
+            }
+            if (now - windowStart(state) < window) {
+                return count(state) >= cap;
+            }
+            if (STATE.compareAndSet(this, state, 0)) {
+                markDirty(this);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Open addressing table from a long key to a counter. Readers see an immutable snapshot,
+     * writers copy it under the table lock. Keys are only ever added.
+     */
+    private static final class CapTable {
+        private volatile Snapshot mSnapshot = new Snapshot(16);
+
+        Counter get(long key) {
+            Snapshot snapshot = mSnapshot;
+            int mask = snapshot.mKeys.length - 1;
+            int i = mix(key) & mask;
+            Counter counter;
+            while ((counter = snapshot.mCounters[i]) != null) {
+                if (snapshot.mKeys[i] == key) {
+                    return counter;
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        synchronized Counter getOrCreate(long key, String legacyKey) {
+            Counter counter = get(key);
+            if (counter != null) {
+                return counter;
+            }
+            counter = new Counter(legacyKey);
+            Snapshot old = mSnapshot;
+            int capacity = old.mKeys.length;
+            if ((old.mSize + 1) * 2 > capacity) {
+                capacity *= 2;
+            }
+            Snapshot next = new Snapshot(capacity);
+            for (int i = 0; i < old.mKeys.length; i++) {
+                if (old.mCounters[i] != null) {
+                    next.put(old.mKeys[i], old.mCounters[i]);
+                }
+            }
+            next.put(key, counter);
+            mSnapshot = next;
+            return counter;
+        }
+
+        private static int mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        private static final class Snapshot {
+            final long[] mKeys;
+            final Counter[] mCounters;
+            int mSize;
+
+            Snapshot(int capacity) {
+                mKeys = new long[capacity];
+                mCounters = new Counter[capacity];
+            }
+
+            void put(long key, Counter counter) {
+                int mask = mKeys.length - 1;
+                int i = mix(key) & mask;
+                while (mCounters[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                mKeys[i] = key;
+                mCounters[i] = counter;
+                mSize++;
+            }
+        }
+    }
+}
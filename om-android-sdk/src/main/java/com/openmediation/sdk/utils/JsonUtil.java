@@ -4,12 +4,15 @@
 package com.openmediation.sdk.utils;
 
 import android.text.TextUtils;
+import android.util.JsonWriter;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.lang.reflect.Array;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -95,4 +98,69 @@ public class JsonUtil {
         }
         return jsonArray;
     }
+
+    /**
+     * Writes a field with the same skip rules as {@link #put(JSONObject, String, Object)}
+     */
+    public static void write(JsonWriter writer, String key, Object value) throws IOException {
+        if (value == null) {
+            return;
+        } else if (value instanceof String) {
+            if (TextUtils.isEmpty((String) value)) {
+                return;
+            }
+        } else if (value instanceof Integer) {
+            if ((int) value < 0) {
+                return;
+            }
+        } else if (value instanceof Double) {
+            if ((double) value < 0) {
+                return;
+            }
+        }
+        writer.name(key);
+        writeValue(writer, value);
+    }
+
+    /**
+     * Streams every field of the object into the writer's current object
+     */
+    public static void writeFields(JsonWriter writer, JSONObject object) throws IOException {
+        if (object == null) {
+            return;
+        }
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            Object value = object.opt(key);
+            if (value == null || value == JSONObject.NULL) {
+                continue;
+            }
+            writer.name(key);
+            writeValue(writer, value);
+        }
+    }
+
+    public static void writeValue(JsonWriter writer, Object value) throws IOException {
+        if (value == null || value == JSONObject.NULL) {
+            writer.nullValue();
+        } else if (value instanceof JSONObject) {
+            writer.beginObject();
+            writeFields(writer, (JSONObject) value);
+            writer.endObject();
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            writer.beginArray();
+            for (int i = 0; i < array.length(); i++) {
+                writeValue(writer, array.opt(i));
+            }
+            writer.endArray();
+        } else if (value instanceof Boolean) {
+            writer.value((Boolean) value);
+        } else if (value instanceof Number) {
+            writer.value((Number) value);
+        } else {
+            writer.value(String.valueOf(value));
+        }
+    }
 }
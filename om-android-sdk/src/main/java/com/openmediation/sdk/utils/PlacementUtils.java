@@ -11,6 +11,7 @@ import com.openmediation.sdk.utils.cache.DataCache;
 import com.openmediation.sdk.utils.constant.CommonConstants;
 import com.openmediation.sdk.utils.constant.KeyConstants;
 import com.openmediation.sdk.utils.crash.CrashUtil;
+import com.openmediation.sdk.utils.helper.ConfigurationHelper;
 import com.openmediation.sdk.utils.model.Configurations;
 import com.openmediation.sdk.utils.model.ImpRecord;
 import com.openmediation.sdk.utils.model.BaseInstance;
@@ -114,6 +115,10 @@ public class PlacementUtils {
         Set<String> keys = config.getPls().keySet();
         List<Placement> placements = new ArrayList<>();
         for (String key : keys) {
+            // only placements of the type are built
+            if (ConfigurationHelper.getPlacementType(config.getPls(), key) != adType) {
+                continue;
+            }
             Placement placement = config.getPls().get(key);
             if (placement == null || placement.getT() != adType) {
                 continue;
@@ -129,7 +134,7 @@ public class PlacementUtils {
     }
 
     /**
-     * Gets the 1st Placement if PlacementId is null
+     * Gets the 1st Placement if PlacementId is null. The placement is built on its first lookup.
      *
      * @param placementId the placement id
      * @return placement
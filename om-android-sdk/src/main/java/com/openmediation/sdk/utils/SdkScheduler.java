@@ -0,0 +1,542 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils;
+
+import android.os.Process;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SDK-wide scheduler shared by {@link WorkExecutor}, {@link InsExecutor}, the event executor and the
+ * request executor. All work runs on one bounded set of worker threads, picked up lane by lane in
+ * priority order. Delayed and periodic tasks wait on a single timer thread and are dispatched into
+ * their lane when due.
+ */
+public final class SdkScheduler {
+
+    private static final String TAG = "SdkScheduler";
+
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_THREAD_BUDGET = Math.max(4, Math.min(CPU_COUNT + 2, 8));
+    private static final long KEEP_ALIVE_MILLIS = 60 * 1000L;
+
+    /**
+     * Work lanes, declared from the highest priority to the lowest
+     */
+    public enum Lane {
+        /**
+         * Waterfall, bid and init requests on the ad-load critical path
+         */
+        CRITICAL(128, Process.THREAD_PRIORITY_DEFAULT),
+        /**
+         * Ad loading and reload tasks
+         */
+        LOAD(256, Process.THREAD_PRIORITY_DEFAULT),
+        /**
+         * Event and LR recording
+         */
+        EVENT(256, Process.THREAD_PRIORITY_BACKGROUND),
+        /**
+         * Event, LR and tracking uploads, blocking network I/O with long timeouts
+         */
+        UPLOAD(256, Process.THREAD_PRIORITY_BACKGROUND),
+        /**
+         * Disk and resource download work
+         */
+        IO(128, Process.THREAD_PRIORITY_BACKGROUND),
+        /**
+         * Creative downloads, long transfers the download engine orders and limits per network
+         */
+        DOWNLOAD(32, Process.THREAD_PRIORITY_BACKGROUND),
+        /**
+         * Crash reports, sensors and other housekeeping
+         */
+        HOUSEKEEPING(64, Process.THREAD_PRIORITY_LOWEST);
+
+        private final int mDefaultQueueBound;
+        private final int mThreadPriority;
+
+        Lane(int defaultQueueBound, int threadPriority) {
+            mDefaultQueueBound = defaultQueueBound;
+            mThreadPriority = threadPriority;
+        }
+    }
+
+    /**
+     * Point-in-time metrics of one lane
+     */
+    public static final class LaneMetrics {
+        private final Lane mLane;
+        private final int mQueueDepth;
+        private final int mMaxQueueDepth;
+        private final int mRunning;
+        private final long mSubmitted;
+        private final long mCompleted;
+        private final long mRejected;
+        private final long mAvgWaitMillis;
+        private final long mMaxWaitMillis;
+        private final long mAvgRunMillis;
+
+        private LaneMetrics(LaneState state) {
+            mLane = state.mLane;
+            mQueueDepth = state.mQueue.size();
+            mMaxQueueDepth = state.mMaxQueueDepth;
+            mRunning = state.mRunning;
+            mSubmitted = state.mSubmitted;
+            mCompleted = state.mCompleted;
+            mRejected = state.mRejected;
+            mAvgWaitMillis = state.mCompleted == 0 ? 0 :
+                    TimeUnit.NANOSECONDS.toMillis(state.mTotalWaitNanos / state.mCompleted);
+            mMaxWaitMillis = TimeUnit.NANOSECONDS.toMillis(state.mMaxWaitNanos);
+            mAvgRunMillis = state.mCompleted == 0 ? 0 :
+                    TimeUnit.NANOSECONDS.toMillis(state.mTotalRunNanos / state.mCompleted);
+        }
+
+        public Lane getLane() {
+            return mLane;
+        }
+
+        public int getQueueDepth() {
+            return mQueueDepth;
+        }
+
+        public int getMaxQueueDepth() {
+            return mMaxQueueDepth;
+        }
+
+        public int getRunning() {
+            return mRunning;
+        }
+
+        public long getSubmitted() {
+            return mSubmitted;
+        }
+
+        public long getCompleted() {
+            return mCompleted;
+        }
+
+        public long getRejected() {
+            return mRejected;
+        }
+
+        public long getAvgWaitMillis() {
+            return mAvgWaitMillis;
+        }
+
+        public long getMaxWaitMillis() {
+            return mMaxWaitMillis;
+        }
+
+        public long getAvgRunMillis() {
+            return mAvgRunMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "LaneMetrics{" +
+                    "lane=" + mLane +
+                    ", queueDepth=" + mQueueDepth +
+                    ", maxQueueDepth=" + mMaxQueueDepth +
+                    ", running=" + mRunning +
+                    ", submitted=" + mSubmitted +
+                    ", completed=" + mCompleted +
+                    ", rejected=" + mRejected +
+                    ", avgWaitMillis=" + mAvgWaitMillis +
+                    ", maxWaitMillis=" + mMaxWaitMillis +
+                    ", avgRunMillis=" + mAvgRunMillis +
+                    '}';
+        }
+    }
+
+    private static final class LaneState {
+        private final Lane mLane;
+        private final ArrayDeque<Task> mQueue = new ArrayDeque<>();
+        private int mQueueBound;
+        private int mMaxQueueDepth;
+        private int mRunning;
+        private long mSubmitted;
+        private long mCompleted;
+        private long mRejected;
+        private long mTotalWaitNanos;
+        private long mMaxWaitNanos;
+        private long mTotalRunNanos;
+
+        LaneState(Lane lane) {
+            mLane = lane;
+            mQueueBound = lane.mDefaultQueueBound;
+        }
+    }
+
+    private static final class Task {
+        private final Lane mLane;
+        private final Runnable mCommand;
+        private final long mEnqueueNanos;
+
+        Task(Lane lane, Runnable command) {
+            mLane = lane;
+            mCommand = command;
+            mEnqueueNanos = System.nanoTime();
+        }
+    }
+
+    private static final Object LOCK = new Object();
+    private static final Map<Lane, LaneState> LANES = new EnumMap<>(Lane.class);
+    private static final Lane[] LANE_ORDER = Lane.values();
+    private static final Map<Runnable, ScheduledFuture<?>> PENDING = new ConcurrentHashMap<>();
+    private static final ScheduledThreadPoolExecutor TIMER;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger(1);
+
+    private static int sThreadBudget = DEFAULT_THREAD_BUDGET;
+    private static int sWorkers;
+    private static int sIdleWorkers;
+    private static int sRunningNonCritical;
+
+    static {
+        for (Lane lane : LANE_ORDER) {
+            LANES.put(lane, new LaneState(lane));
+        }
+        TIMER = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "OmScheduler-timer");
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private SdkScheduler() {
+    }
+
+    /**
+     * Sets the total number of worker threads the SDK may use. Takes effect immediately,
+     * extra workers exit once they finish their current task.
+     *
+     * @param budget thread budget, at least 1
+     */
+    public static void setThreadBudget(int budget) {
+        if (budget <= 0) {
+            return;
+        }
+        synchronized (LOCK) {
+            sThreadBudget = budget;
+            LOCK.notifyAll();
+            spawnWorkersLocked();
+        }
+    }
+
+    public static int getThreadBudget() {
+        synchronized (LOCK) {
+            return sThreadBudget;
+        }
+    }
+
+    /**
+     * Sets how many tasks may wait in a lane before new ones are rejected
+     *
+     * @param lane  the lane
+     * @param bound max queued tasks, at least 1
+     */
+    public static void setQueueBound(Lane lane, int bound) {
+        if (lane == null || bound <= 0) {
+            return;
+        }
+        synchronized (LOCK) {
+            LANES.get(lane).mQueueBound = bound;
+        }
+    }
+
+    /**
+     * Queues a task on a lane
+     *
+     * @return false if the lane is full and the task was rejected
+     */
+    public static boolean execute(Lane lane, Runnable command) {
+        if (command == null) {
+            return false;
+        }
+        if (lane == null) {
+            lane = Lane.LOAD;
+        }
+        synchronized (LOCK) {
+            LaneState state = LANES.get(lane);
+            if (state.mQueue.size() >= state.mQueueBound) {
+                state.mRejected++;
+                DeveloperLog.LogD(TAG, "execute rejected, lane " + lane + " is full: " + state.mQueue.size());
+                return false;
+            }
+            state.mQueue.offer(new Task(lane, command));
+            state.mSubmitted++;
+            if (state.mQueue.size() > state.mMaxQueueDepth) {
+                state.mMaxQueueDepth = state.mQueue.size();
+            }
+            if (sIdleWorkers > 0) {
+                LOCK.notifyAll();
+            }
+            spawnWorkersLocked();
+        }
+        return true;
+    }
+
+    /**
+     * Dispatches a task into a lane after the given delay
+     */
+    public static ScheduledFuture<?> schedule(final Lane lane, final Runnable command, long delay, TimeUnit unit) {
+        final AtomicBoolean dispatched = new AtomicBoolean(false);
+        final ScheduledFuture<?>[] holder = new ScheduledFuture<?>[1];
+        Runnable dispatcher = new Runnable() {
+            @Override
+            public void run() {
+                dispatched.set(true);
+                ScheduledFuture<?> future = holder[0];
+                if (future != null) {
+                    PENDING.remove(command, future);
+                }
+                execute(lane, command);
+            }
+        };
+        ScheduledFuture<?> future = TIMER.schedule(dispatcher, delay, unit);
+        holder[0] = future;
+        if (!dispatched.get()) {
+            PENDING.put(command, future);
+        }
+        return future;
+    }
+
+    /**
+     * Dispatches a task into a lane periodically. A new run is not dispatched while the previous
+     * one is still queued or running.
+     */
+    public static ScheduledFuture<?> scheduleWithFixedDelay(final Lane lane, final Runnable command,
+                                                            long initialDelay, long delay, TimeUnit unit) {
+        final AtomicBoolean inFlight = new AtomicBoolean(false);
+        final Runnable wrapper = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    command.run();
+                } finally {
+                    inFlight.set(false);
+                }
+            }
+        };
+        return TIMER.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if (inFlight.compareAndSet(false, true) && !execute(lane, wrapper)) {
+                    inFlight.set(false);
+                }
+            }
+        }, initialDelay, delay, unit);
+    }
+
+    /**
+     * Removes a task that is waiting on the timer or queued in a lane
+     */
+    public static void remove(Runnable command) {
+        if (command == null) {
+            return;
+        }
+        ScheduledFuture<?> future = PENDING.remove(command);
+        if (future != null) {
+            future.cancel(false);
+        }
+        synchronized (LOCK) {
+            for (Lane lane : LANE_ORDER) {
+                Iterator<Task> iterator = LANES.get(lane).mQueue.iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next().mCommand == command) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    public static int getQueueDepth(Lane lane) {
+        synchronized (LOCK) {
+            return LANES.get(lane).mQueue.size();
+        }
+    }
+
+    public static LaneMetrics getLaneMetrics(Lane lane) {
+        synchronized (LOCK) {
+            return new LaneMetrics(LANES.get(lane));
+        }
+    }
+
+    public static Map<Lane, LaneMetrics> getMetrics() {
+        Map<Lane, LaneMetrics> metrics = new EnumMap<>(Lane.class);
+        synchronized (LOCK) {
+            for (Lane lane : LANE_ORDER) {
+                metrics.put(lane, new LaneMetrics(LANES.get(lane)));
+            }
+        }
+        return metrics;
+    }
+
+    private static int laneConcurrencyLocked(Lane lane) {
+        switch (lane) {
+            case CRITICAL:
+                return sThreadBudget;
+            case LOAD:
+                return Math.max(1, sThreadBudget - 1);
+            case EVENT:
+                return Math.max(1, sThreadBudget / 4);
+            case UPLOAD:
+                return Math.max(2, sThreadBudget / 2);
+            case IO:
+                return Math.max(1, sThreadBudget / 3);
+            case DOWNLOAD:
+                return Math.max(1, sThreadBudget / 2);
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * @return number of queued tasks that could start now if there were workers for them
+     */
+    private static int runnableTaskCountLocked() {
+        int critical = 0;
+        int nonCritical = 0;
+        for (Lane lane : LANE_ORDER) {
+            LaneState state = LANES.get(lane);
+            int free = Math.min(state.mQueue.size(), laneConcurrencyLocked(lane) - state.mRunning);
+            if (free <= 0) {
+                continue;
+            }
+            if (lane == Lane.CRITICAL) {
+                critical += free;
+            } else {
+                nonCritical += free;
+            }
+        }
+        if (sThreadBudget >= 2) {
+            // one worker stays free for the critical lane
+            nonCritical = Math.min(nonCritical, Math.max(0, sThreadBudget - 1 - sRunningNonCritical));
+        }
+        return critical + nonCritical;
+    }
+
+    private static boolean canRunLocked(LaneState state) {
+        if (state.mRunning >= laneConcurrencyLocked(state.mLane)) {
+            return false;
+        }
+        // keep one worker free for the critical lane whenever the budget allows it
+        return state.mLane == Lane.CRITICAL || sThreadBudget < 2 || sRunningNonCritical < sThreadBudget - 1;
+    }
+
+    private static Task pollLocked() {
+        for (Lane lane : LANE_ORDER) {
+            LaneState state = LANES.get(lane);
+            if (!state.mQueue.isEmpty() && canRunLocked(state)) {
+                Task task = state.mQueue.poll();
+                state.mRunning++;
+                if (lane != Lane.CRITICAL) {
+                    sRunningNonCritical++;
+                }
+                long wait = System.nanoTime() - task.mEnqueueNanos;
+                state.mTotalWaitNanos += wait;
+                if (wait > state.mMaxWaitNanos) {
+                    state.mMaxWaitNanos = wait;
+                }
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Starts workers while runnable tasks outnumber the idle workers that will pick them up
+     */
+    private static void spawnWorkersLocked() {
+        while (sWorkers < sThreadBudget && runnableTaskCountLocked() > sIdleWorkers) {
+            sWorkers++;
+            sIdleWorkers++;
+            Thread thread = new Thread(new Worker(), "OmScheduler #" + THREAD_COUNT.getAndIncrement());
+            thread.start();
+        }
+    }
+
+    private static final class Worker implements Runnable {
+        private int mPriority = Integer.MIN_VALUE;
+
+        @Override
+        public void run() {
+            while (true) {
+                Task task;
+                synchronized (LOCK) {
+                    task = null;
+                    long idleDeadline = System.currentTimeMillis() + KEEP_ALIVE_MILLIS;
+                    while (sWorkers <= sThreadBudget && (task = pollLocked()) == null) {
+                        long remaining = idleDeadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        try {
+                            LOCK.wait(remaining);
+                        } catch (InterruptedException ignored) {
+                        }
+                    }
+                    if (task == null) {
+                        sIdleWorkers--;
+                        sWorkers--;
+                        return;
+                    }
+                    sIdleWorkers--;
+                    // more of a burst may be waiting behind this task
+                    spawnWorkersLocked();
+                }
+                runTask(task);
+                synchronized (LOCK) {
+                    sIdleWorkers++;
+                }
+            }
+        }
+
+        private void runTask(Task task) {
+            if (mPriority != task.mLane.mThreadPriority) {
+                mPriority = task.mLane.mThreadPriority;
+                try {
+                    Process.setThreadPriority(mPriority);
+                } catch (Throwable ignored) {
+                }
+            }
+            long start = System.nanoTime();
+            try {
+                task.mCommand.run();
+            } catch (Throwable e) {
+                DeveloperLog.LogE("SdkScheduler task error: " + e.getMessage());
+            } finally {
+                long cost = System.nanoTime() - start;
+                synchronized (LOCK) {
+                    LaneState state = LANES.get(task.mLane);
+                    state.mRunning--;
+                    state.mCompleted++;
+                    state.mTotalRunNanos += cost;
+                    if (task.mLane != Lane.CRITICAL) {
+                        sRunningNonCritical--;
+                    }
+                    // a lane slot just freed up, idle workers may now be able to take a capped lane
+                    if (sIdleWorkers > 0) {
+                        LOCK.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils;
+
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SDK-wide timer for timeouts, a hashed timing wheel on one low-priority thread.
+ * <p>
+ * A timeout is linked into the bucket of the tick it is due at, with the number of wheel
+ * rounds left before then, so scheduling and cancelling are O(1) whatever the number of
+ * pending timeouts. The thread only ticks while timeouts are pending. Timeouts fire at most
+ * one tick late. Expired tasks run on the timer thread and must only hand off: use
+ * {@link #schedule(SdkScheduler.Lane, Runnable, long, TimeUnit)} for work, or post to the UI
+ * thread for work that touches views. A timeout is never dropped: a task its lane rejects runs
+ * on the timer thread instead.
+ */
+public final class SdkTimer {
+
+    private static final String TAG = "SdkTimer";
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    /**
+     * buckets, a power of two so the bucket of a tick is a mask
+     */
+    private static final int WHEEL_SIZE = 512;
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_CANCELLED = 1;
+    private static final int STATE_EXPIRED = 2;
+
+    private static final Object LOCK = new Object();
+    private static final Timeout[] WHEEL = new Timeout[WHEEL_SIZE];
+    private static final long START_NANOS = System.nanoTime();
+
+    /**
+     * last tick whose bucket was expired
+     */
+    private static long sTick;
+    private static int sPending;
+    private static Thread sThread;
+
+    private SdkTimer() {
+    }
+
+    /**
+     * A scheduled task that can be cancelled until it expires
+     */
+    public static final class Timeout {
+        private final Runnable mTask;
+        private Timeout mPrev;
+        private Timeout mNext;
+        private int mBucket;
+        private long mRounds;
+        private int mState = STATE_PENDING;
+
+        private Timeout(Runnable task) {
+            mTask = task;
+        }
+
+        /**
+         * @return false if the task has already expired or been cancelled
+         */
+        public boolean cancel() {
+            synchronized (LOCK) {
+                if (mState != STATE_PENDING) {
+                    return false;
+                }
+                mState = STATE_CANCELLED;
+                unlinkLocked(this);
+                return true;
+            }
+        }
+
+        public boolean isCancelled() {
+            synchronized (LOCK) {
+                return mState == STATE_CANCELLED;
+            }
+        }
+
+        public boolean isExpired() {
+            synchronized (LOCK) {
+                return mState == STATE_EXPIRED;
+            }
+        }
+    }
+
+    /**
+     * Runs a task on the timer thread after the delay, the task must be short
+     */
+    public static Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (task == null) {
+            return null;
+        }
+        Timeout timeout = new Timeout(task);
+        long deadline = System.nanoTime() - START_NANOS + Math.max(0, unit.toNanos(delay));
+        // first tick at or after the deadline
+        long target = (deadline + TICK_NANOS - 1) / TICK_NANOS;
+        synchronized (LOCK) {
+            if (sPending == 0) {
+                // the wheel stood still while idle, skip the empty ticks
+                sTick = Math.max(sTick, currentTick() - 1);
+            }
+            if (target <= sTick) {
+                target = sTick + 1;
+            }
+            timeout.mRounds = (target - sTick - 1) / WHEEL_SIZE;
+            timeout.mBucket = (int) (target & MASK);
+            Timeout head = WHEEL[timeout.mBucket];
+            timeout.mNext = head;
+            if (head != null) {
+                head.mPrev = timeout;
+            }
+            WHEEL[timeout.mBucket] = timeout;
+            sPending++;
+            startThreadLocked();
+            LOCK.notifyAll();
+        }
+        return timeout;
+    }
+
+    /**
+     * Dispatches a task into a lane after the delay, or runs it on the timer thread if the lane
+     * is full
+     */
+    public static Timeout schedule(final SdkScheduler.Lane lane, final Runnable task, long delay, TimeUnit unit) {
+        if (task == null) {
+            return null;
+        }
+        return schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!SdkScheduler.execute(lane, task)) {
+                    DeveloperLog.LogW(TAG + " expired task rejected by lane " + lane + ", run inline");
+                    task.run();
+                }
+            }
+        }, delay, unit);
+    }
+
+    public static int getPendingCount() {
+        synchronized (LOCK) {
+            return sPending;
+        }
+    }
+
+    private static long currentTick() {
+        return (System.nanoTime() - START_NANOS) / TICK_NANOS;
+    }
+
+    private static void unlinkLocked(Timeout timeout) {
+        if (timeout.mPrev != null) {
+            timeout.mPrev.mNext = timeout.mNext;
+        } else {
+            WHEEL[timeout.mBucket] = timeout.mNext;
+        }
+        if (timeout.mNext != null) {
+            timeout.mNext.mPrev = timeout.mPrev;
+        }
+        timeout.mPrev = null;
+        timeout.mNext = null;
+        sPending--;
+    }
+
+    private static void startThreadLocked() {
+        if (sThread != null) {
+            return;
+        }
+        sThread = new Thread(new Worker(), "OmTimer");
+        sThread.setDaemon(true);
+        sThread.setPriority(Thread.MIN_PRIORITY);
+        sThread.start();
+    }
+
+    private static final class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            } catch (Throwable ignored) {
+            }
+            List<Timeout> expired = new ArrayList<>();
+            while (true) {
+                synchronized (LOCK) {
+                    if (!awaitTickLocked()) {
+                        continue;
+                    }
+                    sTick++;
+                    expireBucketLocked((int) (sTick & MASK), expired);
+                }
+                for (Timeout timeout : expired) {
+                    try {
+                        timeout.mTask.run();
+                    } catch (Throwable e) {
+                        DeveloperLog.LogE(TAG + " task error: " + e.getMessage());
+                    }
+                }
+                expired.clear();
+            }
+        }
+
+        /**
+         * Waits while nothing is pending or the next tick is not due
+         *
+         * @return true if the next tick is due
+         */
+        private boolean awaitTickLocked() {
+            try {
+                if (sPending == 0) {
+                    LOCK.wait();
+                    return false;
+                }
+                long wait = (sTick + 1) * TICK_NANOS - (System.nanoTime() - START_NANOS);
+                if (wait > 0) {
+                    LOCK.wait(TimeUnit.NANOSECONDS.toMillis(wait), (int) (wait % 1000000));
+                    return false;
+                }
+            } catch (InterruptedException ignored) {
+                return false;
+            }
+            return true;
+        }
+
+        private void expireBucketLocked(int bucket, List<Timeout> expired) {
+            Timeout timeout = WHEEL[bucket];
+            while (timeout != null) {
+                Timeout next = timeout.mNext;
+                if (timeout.mRounds <= 0) {
+                    timeout.mState = STATE_EXPIRED;
+                    unlinkLocked(timeout);
+                    expired.add(timeout);
+                } else {
+                    timeout.mRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+}
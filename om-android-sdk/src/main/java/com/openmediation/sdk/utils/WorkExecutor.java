@@ -3,44 +3,40 @@
 
 package com.openmediation.sdk.utils;
 
-import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * General purpose executor, backed by {@link SdkScheduler}. Tasks without an explicit lane run on
+ * {@link SdkScheduler.Lane#LOAD}.
+ */
 public final class WorkExecutor {
 
-    private final static ScheduledThreadPoolExecutor POOL;
-
-    static {
-        POOL = new ScheduledThreadPoolExecutor(12);
-        POOL.setKeepAliveTime(60, TimeUnit.SECONDS);
-        POOL.setRejectedExecutionHandler(new RejectedExecutionHandler() {
-            @Override
-            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-                DeveloperLog.LogD("execute rejected");
-            }
-        });
-    }
-
     private WorkExecutor() {
     }
 
 
     public static ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
-        return POOL.scheduleWithFixedDelay(command, initialDelay, delay, unit);
+        return SdkScheduler.scheduleWithFixedDelay(SdkScheduler.Lane.LOAD, command, initialDelay, delay, unit);
     }
 
     public static void execute(Runnable command) {
-        POOL.execute(command);
+        SdkScheduler.execute(SdkScheduler.Lane.LOAD, command);
+    }
+
+    public static void execute(SdkScheduler.Lane lane, Runnable command) {
+        SdkScheduler.execute(lane, command);
     }
 
     public static ScheduledFuture<?> execute(Runnable command, long delay, TimeUnit unit) {
-        return POOL.schedule(command, delay, unit);
+        return SdkScheduler.schedule(SdkScheduler.Lane.LOAD, command, delay, unit);
+    }
+
+    public static ScheduledFuture<?> execute(SdkScheduler.Lane lane, Runnable command, long delay, TimeUnit unit) {
+        return SdkScheduler.schedule(lane, command, delay, unit);
     }
 
     public static void remove(Runnable runnable) {
-        POOL.remove(runnable);
+        SdkScheduler.remove(runnable);
     }
 }
@@ -47,6 +47,10 @@ class DataBaseUtil {
         return mDataBaseHelper.execSQL(String.format("CREATE TABLE IF NOT EXISTS %s (_id INTEGER PRIMARY KEY AUTOINCREMENT,%s)", tableName, columnName));
     }
 
+    boolean dropTable(String tableName) {
+        return mDataBaseHelper.execSQL(String.format("DROP TABLE IF EXISTS %s", tableName));
+    }
+
     //
     boolean insert(String tableName, String columnName, String... values) {
         if (values == null || values.length == 0) {
@@ -10,25 +10,30 @@ import com.openmediation.sdk.utils.DeveloperLog;
 import com.openmediation.sdk.utils.constant.CommonConstants;
 import com.openmediation.sdk.utils.crash.CrashUtil;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * Operations on Data Cache
+ * Operations on Data Cache, persisted in a {@link KvStore} log
  */
 public class DataCache {
     private static String TABLE_NAME = "table_core";
     private static String TABLE_CREATE_COLUMN = "KEY VARCHAR(30),VALUE VARCHAR";
     private static String TABLE_COLUMN = "KEY,VALUE";
+    private static final String KV_FILE_NAME = "om_kv.log";
+    /**
+     * set once the rows of the old sqlite table are copied into the log
+     */
+    private static final String KEY_MIGRATED = "__om_kv_migrated";
 
     private Map<String, Object> mHashMap = new HashMap<>();
     private ReadWriteLock lock = new ReentrantReadWriteLock();
-    private DataBaseUtil mDataBaseUtil;
+    private KvStore mKvStore;
 
     private DataCache() {
     }
@@ -47,15 +52,31 @@ public class DataCache {
     }
 
     /**
-     * Creates db table; queries data into memory; inits memory data
+     * Opens the kv log; loads data into memory; migrates the old db table on first run.
+     * The log stays open across re-inits, memory already holds what it stores.
      *
      * @param context the context
      */
     public void init(Context context) {
-        this.mDataBaseUtil = DataBaseUtil.getSingleton();
-        this.mDataBaseUtil.init(context, CommonConstants.DB_NAME, CommonConstants.DB_VERSION);
-        this.mDataBaseUtil.createTable(TABLE_NAME, TABLE_CREATE_COLUMN);
-        hashSet();
+        lock.writeLock().lock();
+        try {
+            if (mKvStore == null) {
+                KvStore store = new KvStore(new File(context.getFilesDir(), KV_FILE_NAME));
+                Map<String, Object> values = store.open();
+                if (!values.containsKey(KEY_MIGRATED)) {
+                    migrateFromDataBase(context, store, values);
+                }
+                values.remove(KEY_MIGRATED);
+                mHashMap.putAll(values);
+                mKvStore = store;
+            }
+        } catch (Exception e) {
+            DeveloperLog.LogD("DataCache", e);
+            CrashUtil.getSingleton().saveException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        AdapterRepository.getInstance().syncMetaData();
     }
 
     /**
@@ -65,28 +86,20 @@ public class DataCache {
      * @param value the value
      */
     public void set(String key, Object value) {
-        if (mDataBaseUtil == null) {
+        if (mKvStore == null) {
             return;
         }
         lock.writeLock().lock();
         try {
-            if (!mHashMap.containsKey(key)) {
-                if (mDataBaseUtil.insert(TABLE_NAME, TABLE_COLUMN, String.format("\"%s\",\"%s\"", key, value))) {
-                    mHashMap.put(key, value);
-                }
-            } else {
-                Object oldValue = mHashMap.get(key);
-                if (oldValue != null && !oldValue.equals(value)) {
-                    if (mDataBaseUtil.update(TABLE_NAME, new String[]{String.format("%s=\"%s\"", "VALUE", value)}, String.format("%s=\"%s\"", "KEY", key))) {
-                        mHashMap.put(key, value);
-                    }
-                }
+            if (shouldWrite(key, value) && mKvStore.put(key, value)) {
+                mHashMap.put(key, value);
             }
         } catch (Exception e) {
             DeveloperLog.LogD("AdtAds init", e);
             CrashUtil.getSingleton().saveException(e);
+        } finally {
+            lock.writeLock().unlock();
         }
-        lock.writeLock().unlock();
     }
 
     /**
@@ -127,40 +140,24 @@ public class DataCache {
      * @param maps the maps
      */
     public void set(Map<String, Object> maps) {
-        lock.writeLock().lock();
-        ArrayList<String> deleteData = new ArrayList<>();
-        //finds data that needs to be updated; adds unchanged for deletion
-        Iterator<Map.Entry<String, Object>> it = maps.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<String, Object> entry = it.next();
-            String key = entry.getKey();
-            Object value = entry.getValue();
-            if (mHashMap.containsKey(key)) {
-                Object oldValue = mHashMap.get(key);
-                if (oldValue != null && !oldValue.equals(value)) {
-                    deleteData.add(key);
-                } else {
-                    it.remove();
-                }
-            }
-        }
-        //actual deletion
-        if (deleteData.size() != 0) {
-            delete(deleteData.toArray(new String[deleteData.size()]));
+        if (mKvStore == null) {
+            return;
         }
-        //inserts
-        if (maps.size() != 0) {
-            String[] inserts = new String[maps.size()];
-            int i = 0;
+        lock.writeLock().lock();
+        try {
             for (Map.Entry<String, Object> entry : maps.entrySet()) {
-                inserts[i] = String.format("\"%s\",\"%s\"", entry.getKey(), entry.getValue());
-                i++;
-            }
-            if (mDataBaseUtil.insert(TABLE_NAME, TABLE_COLUMN, inserts)) {
-                mHashMap.putAll(maps);
+                String key = entry.getKey();
+                Object value = entry.getValue();
+                if (shouldWrite(key, value) && mKvStore.put(key, value)) {
+                    mHashMap.put(key, value);
+                }
             }
+        } catch (Exception e) {
+            DeveloperLog.LogD("DataCache", e);
+            CrashUtil.getSingleton().saveException(e);
+        } finally {
+            lock.writeLock().unlock();
         }
-        lock.writeLock().unlock();
     }
 
     /**
@@ -169,30 +166,22 @@ public class DataCache {
      * @param keys the keys
      */
     public void delete(String... keys) {
-        if (mDataBaseUtil == null) {
+        if (mKvStore == null) {
             return;
         }
         lock.writeLock().lock();
         try {
-            ArrayList<String> deleteKey = new ArrayList<>();
             for (String key : keys) {
-                if (mHashMap.containsKey(key)) {
-                    deleteKey.add(key);
-                }
-            }
-            if (deleteKey.size() != 0) {
-                String[] deleteWhere = deleteKey.toArray(new String[deleteKey.size()]);
-                if (mDataBaseUtil.delete(TABLE_NAME, "KEY", deleteWhere)) {
-                    for (int i = 0; i < deleteKey.size(); i++) {
-                        mHashMap.remove(deleteKey.get(i));
-                    }
+                if (mHashMap.containsKey(key) && mKvStore.remove(key)) {
+                    mHashMap.remove(key);
                 }
             }
         } catch (Exception e) {
             DeveloperLog.LogD("AdtAds init", e);
             CrashUtil.getSingleton().saveException(e);
+        } finally {
+            lock.writeLock().unlock();
         }
-        lock.writeLock().unlock();
     }
 
     /**
@@ -206,21 +195,33 @@ public class DataCache {
     }
 
     /**
-     * saves db data in memory; no more db queries until app restarts
+     * New keys are written; existing keys only when the value changed
      */
-    private void hashSet() {
-        lock.readLock().lock();
-        ArrayList<String[]> dataArray = null;
+    private boolean shouldWrite(String key, Object value) {
+        if (!mHashMap.containsKey(key)) {
+            return true;
+        }
+        Object oldValue = mHashMap.get(key);
+        return oldValue != null && !oldValue.equals(value);
+    }
+
+    /**
+     * copies the rows of the old db table into the kv log, then drops the table
+     */
+    private void migrateFromDataBase(Context context, KvStore store, Map<String, Object> values) {
         try {
-            dataArray = mDataBaseUtil.query(TABLE_NAME, TABLE_COLUMN);
+            DataBaseUtil dataBaseUtil = DataBaseUtil.getSingleton();
+            dataBaseUtil.init(context, CommonConstants.DB_NAME, CommonConstants.DB_VERSION);
+            dataBaseUtil.createTable(TABLE_NAME, TABLE_CREATE_COLUMN);
+            ArrayList<String[]> dataArray = dataBaseUtil.query(TABLE_NAME, TABLE_COLUMN);
             if (dataArray != null) {
                 int keyIndex = 0;
                 int valueIndex = 0;
                 for (int i = 0; i < dataArray.size(); i++) {
-                    String[] values = dataArray.get(i);
+                    String[] row = dataArray.get(i);
                     if (i == 0) {
-                        for (int j = 0; j < values.length; j++) {
-                            String keyValue = values[j];
+                        for (int j = 0; j < row.length; j++) {
+                            String keyValue = row[j];
                             if (keyValue.equals("KEY")) {
                                 keyIndex = j;
                             }
@@ -228,17 +229,18 @@ public class DataCache {
                                 valueIndex = j;
                             }
                         }
-                    } else {
-                        mHashMap.put(values[keyIndex], values[valueIndex]);
+                    } else if (!values.containsKey(row[keyIndex]) && store.put(row[keyIndex], row[valueIndex])) {
+                        values.put(row[keyIndex], row[valueIndex]);
                     }
                 }
             }
+            store.put(KEY_MIGRATED, true);
+            store.flush();
+            dataBaseUtil.dropTable(TABLE_NAME);
         } catch (Exception e) {
             DeveloperLog.LogD("DataCache", e);
             CrashUtil.getSingleton().saveException(e);
         }
-        lock.readLock().unlock();
-        AdapterRepository.getInstance().syncMetaData();
     }
 
     /**
@@ -277,6 +279,10 @@ public class DataCache {
         T value = null;
         String toValue = null;
         try {
+            // values set in this session and values read back from the log keep their type
+            if (virtualType.isPrimitive() && isBoxOf(virtualType, realValue)) {
+                return (T) realValue;
+            }
             toValue = String.valueOf(realValue);
             if (virtualType == String.class) {
                 value = (T) toValue;
@@ -301,4 +307,19 @@ public class DataCache {
         }
         return value;
     }
+
+    private static boolean isBoxOf(Class<?> primitive, Object value) {
+        if (primitive == int.class) {
+            return value instanceof Integer;
+        } else if (primitive == long.class) {
+            return value instanceof Long;
+        } else if (primitive == float.class) {
+            return value instanceof Float;
+        } else if (primitive == boolean.class) {
+            return value instanceof Boolean;
+        } else if (primitive == double.class) {
+            return value instanceof Double;
+        }
+        return false;
+    }
 }
@@ -0,0 +1,432 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.cache;
+
+import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.IOUtil;
+import com.openmediation.sdk.utils.SdkScheduler;
+import com.openmediation.sdk.utils.crash.CrashUtil;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only key-value log in a memory-mapped file.
+ * <p>
+ * Every put or remove appends one record: [int length][int crc32][payload]. The payload is
+ * [byte op][short key length][key][byte type][value]. Values keep their primitive type. On open
+ * the log is replayed into an in-memory index. Replay stops at the first record that is
+ * incomplete or fails its crc, which is where a crash interrupted the last write. When dead
+ * records take more than half of the file, the log is rewritten on the IO lane.
+ */
+final class KvStore {
+
+    private static final int HEADER = 8;
+    private static final int INITIAL_SIZE = 64 * 1024;
+    private static final int COMPACT_MIN_SIZE = 256 * 1024;
+    private static final long FLUSH_DELAY = 1000L;
+    private static final int MAX_KEY_LENGTH = Short.MAX_VALUE;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_FLOAT = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_BOOLEAN = 6;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File mFile;
+    private final Map<String, Object> mValues = new HashMap<>();
+    /**
+     * size of the latest record of each key, to know how much of the log is live
+     */
+    private final Map<String, Integer> mRecordSizes = new HashMap<>();
+    private RandomAccessFile mRaf;
+    private FileChannel mChannel;
+    private MappedByteBuffer mBuffer;
+    private int mWritePos;
+    private int mLiveBytes;
+    private boolean isCompacting;
+    private boolean isFlushScheduled;
+
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (KvStore.this) {
+                isFlushScheduled = false;
+                if (mBuffer != null) {
+                    mBuffer.force();
+                }
+            }
+        }
+    };
+
+    KvStore(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Opens the log and replays it
+     *
+     * @return the stored values
+     */
+    synchronized Map<String, Object> open() throws Exception {
+        mRaf = new RandomAccessFile(mFile, "rw");
+        mChannel = mRaf.getChannel();
+        int size = (int) Math.max(mChannel.size(), INITIAL_SIZE);
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        replay();
+        return new HashMap<>(mValues);
+    }
+
+    synchronized boolean contains(String key) {
+        return mValues.containsKey(key);
+    }
+
+    synchronized boolean put(String key, Object value) {
+        byte[] record = encode(OP_PUT, key, value);
+        if (record == null || !append(record)) {
+            return false;
+        }
+        Integer old = mRecordSizes.put(key, record.length);
+        if (old != null) {
+            mLiveBytes -= old;
+        }
+        mLiveBytes += record.length;
+        mValues.put(key, storedValue(value));
+        afterWrite();
+        return true;
+    }
+
+    synchronized boolean remove(String key) {
+        if (!mValues.containsKey(key)) {
+            return true;
+        }
+        byte[] record = encode(OP_REMOVE, key, null);
+        if (record == null || !append(record)) {
+            return false;
+        }
+        Integer old = mRecordSizes.remove(key);
+        if (old != null) {
+            mLiveBytes -= old;
+        }
+        mValues.remove(key);
+        afterWrite();
+        return true;
+    }
+
+    /**
+     * Forces pending writes to disk
+     */
+    synchronized void flush() {
+        if (mBuffer != null) {
+            mBuffer.force();
+        }
+    }
+
+    private void replay() {
+        mBuffer.position(0);
+        int pos = 0;
+        int limit = mBuffer.capacity();
+        CRC32 crc = new CRC32();
+        while (pos + HEADER <= limit) {
+            int length = mBuffer.getInt(pos);
+            if (length <= 0 || pos + HEADER + length > limit) {
+                break;
+            }
+            int checksum = mBuffer.getInt(pos + 4);
+            byte[] payload = new byte[length];
+            mBuffer.position(pos + HEADER);
+            mBuffer.get(payload);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                DeveloperLog.LogD("KvStore: corrupted record at " + pos + ", log truncated");
+                break;
+            }
+            if (!apply(payload, HEADER + length)) {
+                break;
+            }
+            pos += HEADER + length;
+        }
+        mWritePos = pos;
+        // clears whatever an interrupted write left after the last valid record
+        if (pos + 4 <= limit) {
+            mBuffer.putInt(pos, 0);
+        }
+    }
+
+    private boolean apply(byte[] payload, int recordSize) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            byte op = buffer.get();
+            int keyLength = buffer.getShort() & 0xFFFF;
+            byte[] keyBytes = new byte[keyLength];
+            buffer.get(keyBytes);
+            String key = new String(keyBytes, UTF8);
+            Integer old;
+            if (op == OP_REMOVE) {
+                mValues.remove(key);
+                old = mRecordSizes.remove(key);
+            } else {
+                mValues.put(key, readValue(buffer));
+                old = mRecordSizes.put(key, recordSize);
+                mLiveBytes += recordSize;
+            }
+            if (old != null) {
+                mLiveBytes -= old;
+            }
+            return true;
+        } catch (Exception e) {
+            DeveloperLog.LogD("KvStore: bad record", e);
+            return false;
+        }
+    }
+
+    private boolean append(byte[] record) {
+        try {
+            ensureCapacity(mWritePos + record.length + 4);
+            mBuffer.position(mWritePos + 4);
+            mBuffer.put(record, 4, record.length - 4);
+            // an empty length word marks the end of the log
+            mBuffer.putInt(mWritePos + record.length, 0);
+            // the length is written last so a record is never visible half written
+            mBuffer.putInt(mWritePos, record.length - HEADER);
+            mWritePos += record.length;
+            return true;
+        } catch (Exception e) {
+            DeveloperLog.LogD("KvStore append error", e);
+            CrashUtil.getSingleton().saveException(e);
+            return false;
+        }
+    }
+
+    private void ensureCapacity(int required) throws Exception {
+        int capacity = mBuffer.capacity();
+        if (required <= capacity) {
+            return;
+        }
+        while (capacity < required) {
+            capacity *= 2;
+        }
+        mBuffer.force();
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void afterWrite() {
+        if (!isFlushScheduled) {
+            isFlushScheduled = true;
+            SdkScheduler.schedule(SdkScheduler.Lane.IO, mFlushTask, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+        if (!isCompacting && mWritePos > COMPACT_MIN_SIZE && mLiveBytes * 2 < mWritePos) {
+            isCompacting = true;
+            final Map<String, Object> snapshot = new HashMap<>(mValues);
+            final int snapshotPos = mWritePos;
+            SdkScheduler.execute(SdkScheduler.Lane.IO, new Runnable() {
+                @Override
+                public void run() {
+                    compact(snapshot, snapshotPos);
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes the snapshot to a new log without holding the lock, then copies the records
+     * appended meanwhile and swaps the files
+     */
+    private void compact(Map<String, Object> snapshot, int snapshotPos) {
+        File tmp = new File(mFile.getPath() + ".tmp");
+        RandomAccessFile tmpRaf = null;
+        try {
+            tmpRaf = new RandomAccessFile(tmp, "rw");
+            tmpRaf.setLength(0);
+            int live = 0;
+            for (Map.Entry<String, Object> entry : snapshot.entrySet()) {
+                byte[] record = encode(OP_PUT, entry.getKey(), entry.getValue());
+                if (record == null) {
+                    continue;
+                }
+                tmpRaf.write(record);
+                live += record.length;
+            }
+            synchronized (this) {
+                int tail = mWritePos - snapshotPos;
+                if (tail > 0) {
+                    byte[] bytes = new byte[tail];
+                    mBuffer.position(snapshotPos);
+                    mBuffer.get(bytes);
+                    tmpRaf.write(bytes);
+                }
+                int newPos = (int) tmpRaf.length();
+                tmpRaf.writeInt(0);
+                tmpRaf.getFD().sync();
+                IOUtil.closeQuietly(tmpRaf);
+                tmpRaf = null;
+                mBuffer.force();
+                IOUtil.closeQuietly(mChannel);
+                IOUtil.closeQuietly(mRaf);
+                if (!tmp.renameTo(mFile)) {
+                    throw new IllegalStateException("rename failed");
+                }
+                mRaf = new RandomAccessFile(mFile, "rw");
+                mChannel = mRaf.getChannel();
+                int size = Math.max(INITIAL_SIZE, newPos + 4);
+                mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, (int) mChannel.size()));
+                // records appended after the snapshot are counted again by the replay below
+                mValues.clear();
+                mRecordSizes.clear();
+                mLiveBytes = 0;
+                replay();
+                DeveloperLog.LogD("KvStore compacted: " + snapshotPos + " -> " + mWritePos
+                        + " bytes, snapshot live " + live + ", keys " + snapshot.size());
+                isCompacting = false;
+            }
+        } catch (Throwable e) {
+            DeveloperLog.LogD("KvStore compact error", e);
+            CrashUtil.getSingleton().saveException(e);
+            IOUtil.closeQuietly(tmpRaf);
+            tmp.delete();
+            synchronized (this) {
+                isCompacting = false;
+                if (mBuffer == null || !mChannel.isOpen()) {
+                    reopen();
+                }
+            }
+        }
+    }
+
+    private void reopen() {
+        try {
+            mValues.clear();
+            mRecordSizes.clear();
+            mLiveBytes = 0;
+            open();
+        } catch (Exception e) {
+            DeveloperLog.LogD("KvStore reopen error", e);
+            CrashUtil.getSingleton().saveException(e);
+        }
+    }
+
+    private static byte[] encode(byte op, String key, Object value) {
+        byte[] keyBytes = key.getBytes(UTF8);
+        if (keyBytes.length > MAX_KEY_LENGTH) {
+            return null;
+        }
+        byte type = TYPE_NULL;
+        byte[] valueBytes = null;
+        int valueLength = 0;
+        if (op == OP_PUT) {
+            if (value == null) {
+                type = TYPE_NULL;
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                type = TYPE_INT;
+                valueLength = 4;
+            } else if (value instanceof Long) {
+                type = TYPE_LONG;
+                valueLength = 8;
+            } else if (value instanceof Float) {
+                type = TYPE_FLOAT;
+                valueLength = 4;
+            } else if (value instanceof Double) {
+                type = TYPE_DOUBLE;
+                valueLength = 8;
+            } else if (value instanceof Boolean) {
+                type = TYPE_BOOLEAN;
+                valueLength = 1;
+            } else {
+                type = TYPE_STRING;
+                valueBytes = String.valueOf(value).getBytes(UTF8);
+                valueLength = 4 + valueBytes.length;
+            }
+        }
+        int payloadLength = 1 + 2 + keyBytes.length + (op == OP_PUT ? 1 + valueLength : 0);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER + payloadLength);
+        buffer.putInt(payloadLength);
+        buffer.putInt(0);
+        buffer.put(op);
+        buffer.putShort((short) keyBytes.length);
+        buffer.put(keyBytes);
+        if (op == OP_PUT) {
+            buffer.put(type);
+            switch (type) {
+                case TYPE_INT:
+                    buffer.putInt(((Number) value).intValue());
+                    break;
+                case TYPE_LONG:
+                    buffer.putLong((Long) value);
+                    break;
+                case TYPE_FLOAT:
+                    buffer.putFloat((Float) value);
+                    break;
+                case TYPE_DOUBLE:
+                    buffer.putDouble((Double) value);
+                    break;
+                case TYPE_BOOLEAN:
+                    buffer.put((byte) ((Boolean) value ? 1 : 0));
+                    break;
+                case TYPE_STRING:
+                    buffer.putInt(valueBytes.length);
+                    buffer.put(valueBytes);
+                    break;
+                default:
+                    break;
+            }
+        }
+        byte[] record = buffer.array();
+        CRC32 crc = new CRC32();
+        crc.update(record, HEADER, payloadLength);
+        ByteBuffer.wrap(record).putInt(4, (int) crc.getValue());
+        return record;
+    }
+
+    private static Object readValue(ByteBuffer buffer) {
+        byte type = buffer.get();
+        switch (type) {
+            case TYPE_INT:
+                return buffer.getInt();
+            case TYPE_LONG:
+                return buffer.getLong();
+            case TYPE_FLOAT:
+                return buffer.getFloat();
+            case TYPE_DOUBLE:
+                return buffer.getDouble();
+            case TYPE_BOOLEAN:
+                return buffer.get() != 0;
+            case TYPE_STRING:
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                return new String(bytes, UTF8);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the value as it reads back after a restart
+     */
+    private static Object storedValue(Object value) {
+        if (value == null || value instanceof Integer || value instanceof Long || value instanceof Float
+                || value instanceof Double || value instanceof Boolean || value instanceof String) {
+            return value;
+        }
+        if (value instanceof Short || value instanceof Byte) {
+            return ((Number) value).intValue();
+        }
+        return String.valueOf(value);
+    }
+}
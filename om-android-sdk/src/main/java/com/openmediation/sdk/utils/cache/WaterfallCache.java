@@ -0,0 +1,430 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.cache;
+
+import android.content.Context;
+
+import com.openmediation.sdk.utils.AdtUtil;
+import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.IOUtil;
+import com.openmediation.sdk.utils.SdkScheduler;
+import com.openmediation.sdk.utils.crash.CrashUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Last waterfall response of each placement, kept in its own files rather than in DataCache.
+ * <p>
+ * A response younger than {@link #FRESH_TTL} is served as it is. An older one is still served
+ * up to {@link #MAX_STALE}, while the caller requests a new one in the background; anything older
+ * is dropped when it is read, and the files are pruned on the housekeeping lane. Writes are
+ * collected in memory and flushed together on the IO lane. Each file is
+ * [int magic][int version][int payload length][long crc32][payload], the payload is
+ * [long saved time][key][int response length][deflated response], and is written to a
+ * temporary file and renamed.
+ */
+public final class WaterfallCache {
+
+    /**
+     * A response is served without a refresh for this long
+     */
+    public static final long FRESH_TTL = 5 * 60 * 1000L;
+    /**
+     * A response is served while it is refreshed up to this age
+     */
+    public static final long MAX_STALE = 24 * 60 * 60 * 1000L;
+
+    private static final int MAGIC = 0x4F4D5746;
+    private static final int VERSION = 1;
+    private static final int HEADER = 20;
+    private static final String DIR = "om_wf";
+    private static final int MAX_ENTRIES = 32;
+    private static final long FLUSH_DELAY = 1000L;
+    /**
+     * The files are pruned this long after the cache is first used, out of the way of startup
+     */
+    private static final long PRUNE_DELAY = 30 * 1000L;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Map<String, Entry> mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final Map<String, Entry> mPending = new HashMap<>();
+    private final Object mWriteLock = new Object();
+    private boolean isFlushScheduled;
+    private final AtomicBoolean isPruneScheduled = new AtomicBoolean();
+
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final Runnable mPruneTask = new Runnable() {
+        @Override
+        public void run() {
+            prune();
+        }
+    };
+
+    private static final class Holder {
+        private static final WaterfallCache INSTANCE = new WaterfallCache();
+    }
+
+    private WaterfallCache() {
+    }
+
+    public static WaterfallCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * A cached waterfall response
+     */
+    public static final class Entry {
+        private final String mKey;
+        private final String mResponse;
+        private final long mSavedTime;
+
+        Entry(String key, String response, long savedTime) {
+            mKey = key;
+            mResponse = response;
+            mSavedTime = savedTime;
+        }
+
+        public String getResponse() {
+            return mResponse;
+        }
+
+        /**
+         * @return ms since the response was saved
+         */
+        public long getAge() {
+            return Math.max(0, System.currentTimeMillis() - mSavedTime);
+        }
+
+        public boolean isFresh() {
+            return getAge() < FRESH_TTL;
+        }
+    }
+
+    /**
+     * Saves a response, the file is written shortly after
+     *
+     * @param key      placement and request context
+     * @param response the waterfall response
+     */
+    public void put(String key, String response) {
+        put(key, response, System.currentTimeMillis());
+    }
+
+    /**
+     * Saves a response that was received at savedTime
+     */
+    public void put(String key, String response, long savedTime) {
+        if (key == null || response == null) {
+            return;
+        }
+        schedulePrune();
+        Entry entry = new Entry(key, response, savedTime);
+        synchronized (this) {
+            mEntries.put(key, entry);
+            mPending.put(key, entry);
+            if (isFlushScheduled) {
+                return;
+            }
+            isFlushScheduled = true;
+        }
+        SdkScheduler.schedule(SdkScheduler.Lane.IO, mFlushTask, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param key placement and request context
+     * @return the response saved for key, or null if there is none or it is older than
+     * {@link #MAX_STALE}
+     */
+    public Entry get(String key) {
+        if (key == null) {
+            return null;
+        }
+        schedulePrune();
+        Entry entry;
+        synchronized (this) {
+            entry = mEntries.get(key);
+        }
+        if (entry == null) {
+            entry = read(key);
+            if (entry != null) {
+                synchronized (this) {
+                    if (!mEntries.containsKey(key)) {
+                        mEntries.put(key, entry);
+                    }
+                }
+            }
+        }
+        if (entry != null && entry.getAge() > MAX_STALE) {
+            remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    public void remove(final String key) {
+        synchronized (this) {
+            mEntries.remove(key);
+            mPending.remove(key);
+        }
+        SdkScheduler.execute(SdkScheduler.Lane.IO, new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mWriteLock) {
+                    File file = getFile(key);
+                    if (file != null) {
+                        file.delete();
+                    }
+                }
+            }
+        });
+    }
+
+    private void schedulePrune() {
+        if (isPruneScheduled.compareAndSet(false, true)) {
+            SdkScheduler.schedule(SdkScheduler.Lane.HOUSEKEEPING, mPruneTask, PRUNE_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Deletes the responses older than {@link #MAX_STALE}, and the files that can not be read,
+     * such as those of a request context that is not used any more
+     */
+    private void prune() {
+        synchronized (this) {
+            Iterator<Entry> iterator = mEntries.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getAge() > MAX_STALE) {
+                    iterator.remove();
+                }
+            }
+        }
+        Context context = AdtUtil.getInstance().getApplicationContext();
+        if (context == null) {
+            return;
+        }
+        File[] files = new File(context.getFilesDir(), DIR).listFiles();
+        if (files == null) {
+            return;
+        }
+        int pruned = 0;
+        synchronized (mWriteLock) {
+            for (File file : files) {
+                long savedTime = readSavedTime(file);
+                if (savedTime < 0 || System.currentTimeMillis() - savedTime > MAX_STALE) {
+                    if (file.delete()) {
+                        pruned++;
+                    }
+                }
+            }
+        }
+        DeveloperLog.LogD("WaterfallCache pruned " + pruned + " files");
+    }
+
+    /**
+     * @return the saved time in the file, or -1 if it is not a complete response file
+     */
+    private static long readSavedTime(File file) {
+        if (!file.getName().endsWith(".wf") || file.length() < HEADER + 8) {
+            return -1;
+        }
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new FileInputStream(file));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return -1;
+            }
+            int length = input.readInt();
+            if (length != file.length() - HEADER) {
+                return -1;
+            }
+            input.readLong();
+            return input.readLong();
+        } catch (Exception e) {
+            DeveloperLog.LogD("WaterfallCache read error", e);
+            return -1;
+        } finally {
+            IOUtil.closeQuietly(input);
+        }
+    }
+
+    private void flush() {
+        Map<String, Entry> pending;
+        synchronized (this) {
+            isFlushScheduled = false;
+            if (mPending.isEmpty()) {
+                return;
+            }
+            pending = new HashMap<>(mPending);
+            mPending.clear();
+        }
+        synchronized (mWriteLock) {
+            for (Entry entry : pending.values()) {
+                write(entry);
+            }
+        }
+        DeveloperLog.LogD("WaterfallCache flushed " + pending.size() + " responses");
+    }
+
+    private static void write(Entry entry) {
+        File file = getFile(entry.mKey);
+        if (file == null) {
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream output = null;
+        try {
+            byte[] payload = encode(entry);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(VERSION).putInt(payload.length).putLong(crc.getValue());
+            output = new FileOutputStream(tmp);
+            output.write(header.array());
+            output.write(payload);
+            output.flush();
+            IOUtil.closeQuietly(output);
+            output = null;
+            if (!tmp.renameTo(file)) {
+                throw new IOException("rename failed: " + file);
+            }
+        } catch (Exception e) {
+            DeveloperLog.LogD("WaterfallCache write error", e);
+            CrashUtil.getSingleton().saveException(e);
+            tmp.delete();
+        } finally {
+            IOUtil.closeQuietly(output);
+        }
+    }
+
+    private static Entry read(String key) {
+        File file = getFile(key);
+        if (file == null || !file.exists() || file.length() < HEADER) {
+            return null;
+        }
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new FileInputStream(file));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return null;
+            }
+            int length = input.readInt();
+            long checksum = input.readLong();
+            if (length < 0 || length != file.length() - HEADER) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            input.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (crc.getValue() != checksum) {
+                DeveloperLog.LogD("WaterfallCache checksum mismatch: " + file);
+                return null;
+            }
+            return decode(key, payload);
+        } catch (Exception e) {
+            DeveloperLog.LogD("WaterfallCache read error", e);
+            return null;
+        } finally {
+            IOUtil.closeQuietly(input);
+        }
+    }
+
+    private static byte[] encode(Entry entry) throws IOException {
+        byte[] raw = entry.mResponse.getBytes(UTF8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(raw.length / 4 + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(entry.mSavedTime);
+        out.writeUTF(entry.mKey);
+        out.writeInt(raw.length);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] chunk = new byte[4096];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(chunk);
+                out.write(chunk, 0, count);
+            }
+        } finally {
+            deflater.end();
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Entry decode(String key, byte[] payload) throws Exception {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        long savedTime = in.getLong();
+        int keyLength = in.getShort() & 0xFFFF;
+        // writeUTF is plain utf-8 for the keys built here
+        String savedKey = new String(payload, in.position(), keyLength, UTF8);
+        if (!key.equals(savedKey)) {
+            // another key with the same file name
+            return null;
+        }
+        in.position(in.position() + keyLength);
+        int rawLength = in.getInt();
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(payload, in.position(), in.remaining());
+            int count = 0;
+            while (count < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, count, rawLength - count);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return null;
+                }
+                count += inflated;
+            }
+            if (count != rawLength) {
+                return null;
+            }
+        } finally {
+            inflater.end();
+        }
+        return new Entry(key, new String(raw, UTF8), savedTime);
+    }
+
+    private static File getFile(String key) {
+        Context context = AdtUtil.getInstance().getApplicationContext();
+        if (context == null || key == null) {
+            return null;
+        }
+        File dir = new File(context.getFilesDir(), DIR);
+        if (!dir.exists() && !dir.mkdirs()) {
+            return null;
+        }
+        return new File(dir, Integer.toHexString(key.hashCode()) + ".wf");
+    }
+}
@@ -0,0 +1,127 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.crash;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * One distinct exception: the stack trace of its first occurrence and how often it was seen since.
+ * <p>
+ * Encoded as [long fingerprint][long first ts][long last ts][int count][short type length][type]
+ * [int error length][error], strings in UTF-8.
+ */
+final class CrashRecord {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int FIXED_SIZE = 8 + 8 + 8 + 4 + 2 + 4;
+
+    private final long mFingerprint;
+    private final String mType;
+    private final String mError;
+    private final long mFirstTs;
+    private long mLastTs;
+    private int mCount;
+
+    CrashRecord(long fingerprint, String type, String error, long ts) {
+        this(fingerprint, type, error, ts, ts, 1);
+    }
+
+    private CrashRecord(long fingerprint, String type, String error, long firstTs, long lastTs, int count) {
+        mFingerprint = fingerprint;
+        mType = type == null ? "" : type;
+        mError = error == null ? "" : error;
+        mFirstTs = firstTs;
+        mLastTs = lastTs;
+        mCount = count;
+    }
+
+    long getFingerprint() {
+        return mFingerprint;
+    }
+
+    String getType() {
+        return mType;
+    }
+
+    String getError() {
+        return mError;
+    }
+
+    long getFirstTs() {
+        return mFirstTs;
+    }
+
+    long getLastTs() {
+        return mLastTs;
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    void setCount(int count) {
+        mCount = count;
+    }
+
+    /**
+     * Counts one more occurrence
+     */
+    void hit(long ts) {
+        if (mCount < Integer.MAX_VALUE) {
+            mCount++;
+        }
+        mLastTs = Math.max(mLastTs, ts);
+    }
+
+    CrashRecord copy() {
+        return new CrashRecord(mFingerprint, mType, mError, mFirstTs, mLastTs, mCount);
+    }
+
+    /**
+     * @param maxSize max encoded size, the error is cut to fit
+     */
+    byte[] encode(int maxSize) {
+        byte[] type = mType.getBytes(UTF8);
+        if (type.length > Short.MAX_VALUE) {
+            type = new byte[0];
+        }
+        byte[] error = mError.getBytes(UTF8);
+        int errorLength = Math.max(0, Math.min(error.length, maxSize - FIXED_SIZE - type.length));
+        // do not cut a character in two
+        while (errorLength > 0 && errorLength < error.length && (error[errorLength] & 0xC0) == 0x80) {
+            errorLength--;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_SIZE + type.length + errorLength);
+        buffer.putLong(mFingerprint);
+        buffer.putLong(mFirstTs);
+        buffer.putLong(mLastTs);
+        buffer.putInt(mCount);
+        buffer.putShort((short) type.length);
+        buffer.put(type);
+        buffer.putInt(errorLength);
+        buffer.put(error, 0, errorLength);
+        return buffer.array();
+    }
+
+    /**
+     * @return the record, or null if the bytes are not one
+     */
+    static CrashRecord decode(ByteBuffer buffer) {
+        try {
+            long fingerprint = buffer.getLong();
+            long firstTs = buffer.getLong();
+            long lastTs = buffer.getLong();
+            int count = buffer.getInt();
+            byte[] type = new byte[buffer.getShort()];
+            buffer.get(type);
+            byte[] error = new byte[buffer.getInt()];
+            buffer.get(error);
+            return new CrashRecord(fingerprint, new String(type, UTF8), new String(error, UTF8),
+                    firstTs, lastTs, count);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
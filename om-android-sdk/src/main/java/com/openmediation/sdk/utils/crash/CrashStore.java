@@ -0,0 +1,233 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.crash;
+
+import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.SdkScheduler;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Distinct exceptions in a file of fixed slots, one {@link CrashRecord} per slot.
+ * <p>
+ * A slot is [int length][int crc32][record], a length of 0 marks it free. A new exception takes a
+ * free slot, or the slot of the exception seen least recently, so the file never grows. Repeats
+ * of a stored exception only raise its count, written at most once per {@link #WRITE_INTERVAL}
+ * per slot, and no more than {@link #MAX_NEW_PER_WINDOW} new caught exceptions are taken per
+ * {@link #NEW_WINDOW}, the one that kills the process is always taken. Methods do not report their own errors to {@link CrashUtil}.
+ */
+final class CrashStore {
+
+    private static final int SLOTS = 16;
+    private static final int SLOT_SIZE = 4 * 1024;
+    private static final int HEADER = 8;
+    private static final long WRITE_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+    private static final long NEW_WINDOW = TimeUnit.MINUTES.toMillis(1);
+    private static final int MAX_NEW_PER_WINDOW = 5;
+
+    private final File mFile;
+    private final CrashRecord[] mRecords = new CrashRecord[SLOTS];
+    private final long[] mWrittenAt = new long[SLOTS];
+    private final boolean[] isDirty = new boolean[SLOTS];
+    private RandomAccessFile mRaf;
+    private boolean isFlushScheduled;
+    private long mWindowStart;
+    private int mNewInWindow;
+
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (CrashStore.this) {
+                isFlushScheduled = false;
+                flush();
+            }
+        }
+    };
+
+    CrashStore(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Opens the file and reads the stored records
+     */
+    synchronized void open() throws Exception {
+        mRaf = new RandomAccessFile(mFile, "rw");
+        if (mRaf.length() < SLOTS * SLOT_SIZE) {
+            mRaf.setLength(SLOTS * SLOT_SIZE);
+        }
+        byte[] slot = new byte[SLOT_SIZE];
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < SLOTS; i++) {
+            mRaf.seek((long) i * SLOT_SIZE);
+            mRaf.readFully(slot);
+            ByteBuffer buffer = ByteBuffer.wrap(slot);
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > SLOT_SIZE - HEADER) {
+                continue;
+            }
+            crc.reset();
+            crc.update(slot, HEADER, length);
+            if ((int) crc.getValue() != checksum) {
+                // a write the process did not live to finish
+                continue;
+            }
+            buffer.limit(HEADER + length);
+            mRecords[i] = CrashRecord.decode(buffer);
+        }
+    }
+
+    /**
+     * Counts a repeat of a stored exception
+     *
+     * @return false if the exception is not stored
+     */
+    synchronized boolean hit(long fingerprint, long ts) {
+        int slot = indexOf(fingerprint);
+        if (slot < 0) {
+            return false;
+        }
+        mRecords[slot].hit(ts);
+        if (now() - mWrittenAt[slot] >= WRITE_INTERVAL) {
+            write(slot);
+        } else {
+            isDirty[slot] = true;
+            if (!isFlushScheduled) {
+                isFlushScheduled = true;
+                SdkScheduler.schedule(SdkScheduler.Lane.HOUSEKEEPING, mFlushTask, WRITE_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores a new exception, in place of the one seen least recently if the file is full
+     *
+     * @param isFatal whether the exception kills the process, it is stored whatever came in lately
+     * @return false if too many new exceptions came in lately
+     */
+    synchronized boolean add(CrashRecord record, boolean isFatal) {
+        if (!isFatal) {
+            long now = now();
+            if (now - mWindowStart >= NEW_WINDOW) {
+                mWindowStart = now;
+                mNewInWindow = 0;
+            }
+            if (mNewInWindow >= MAX_NEW_PER_WINDOW) {
+                return false;
+            }
+            mNewInWindow++;
+        }
+        int slot = indexOf(record.getFingerprint());
+        if (slot < 0) {
+            slot = 0;
+            for (int i = 0; i < SLOTS; i++) {
+                if (mRecords[i] == null) {
+                    slot = i;
+                    break;
+                }
+                if (mRecords[i].getLastTs() < mRecords[slot].getLastTs()) {
+                    slot = i;
+                }
+            }
+        }
+        mRecords[slot] = record;
+        write(slot);
+        return true;
+    }
+
+    /**
+     * Writes the counts not written yet
+     */
+    synchronized void flush() {
+        for (int i = 0; i < SLOTS; i++) {
+            if (isDirty[i]) {
+                write(i);
+            }
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        for (CrashRecord record : mRecords) {
+            if (record != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return copies of the stored records
+     */
+    synchronized List<CrashRecord> snapshot() {
+        List<CrashRecord> records = new ArrayList<>();
+        for (CrashRecord record : mRecords) {
+            if (record != null) {
+                records.add(record.copy());
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Frees the uploaded records, keeping the occurrences counted since the snapshot
+     */
+    synchronized void acknowledge(List<CrashRecord> uploaded) {
+        for (CrashRecord record : uploaded) {
+            int slot = indexOf(record.getFingerprint());
+            if (slot < 0) {
+                continue;
+            }
+            CrashRecord current = mRecords[slot];
+            if (current.getCount() <= record.getCount()) {
+                mRecords[slot] = null;
+            } else {
+                current.setCount(current.getCount() - record.getCount());
+            }
+            write(slot);
+        }
+    }
+
+    private int indexOf(long fingerprint) {
+        for (int i = 0; i < SLOTS; i++) {
+            if (mRecords[i] != null && mRecords[i].getFingerprint() == fingerprint) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void write(int slot) {
+        isDirty[slot] = false;
+        mWrittenAt[slot] = now();
+        if (mRaf == null) {
+            return;
+        }
+        try {
+            CrashRecord record = mRecords[slot];
+            byte[] payload = record == null ? new byte[0] : record.encode(SLOT_SIZE - HEADER);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER + payload.length);
+            buffer.putInt(payload.length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(payload);
+            mRaf.seek((long) slot * SLOT_SIZE);
+            mRaf.write(buffer.array());
+        } catch (Exception e) {
+            DeveloperLog.LogD("CrashStore write error", e);
+        }
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
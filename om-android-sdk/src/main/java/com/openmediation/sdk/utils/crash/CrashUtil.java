@@ -4,11 +4,12 @@
 package com.openmediation.sdk.utils.crash;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.text.TextUtils;
 
 import com.openmediation.sdk.utils.AdtUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.IOUtil;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.WorkExecutor;
 import com.openmediation.sdk.utils.constant.CommonConstants;
 import com.openmediation.sdk.utils.constant.KeyConstants;
@@ -18,12 +19,18 @@ import com.openmediation.sdk.utils.request.RequestBuilder;
 import com.openmediation.sdk.utils.request.network.AdRequest;
 import com.openmediation.sdk.utils.request.network.ByteRequestBody;
 import com.openmediation.sdk.utils.request.network.Headers;
+import com.openmediation.sdk.utils.request.network.Request;
+import com.openmediation.sdk.utils.request.network.Response;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.net.UnknownHostException;
-import java.util.Map;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -31,10 +38,23 @@ import static java.util.regex.Pattern.*;
 
 /**
  * The type Crash util.
+ * <p>
+ * Exceptions are told apart by a fingerprint of their types and top frames. The first occurrence
+ * of an exception is kept with its stack trace in a {@link CrashStore}, later ones only raise its
+ * count, and all of them are uploaded in one request.
  */
 public class CrashUtil implements Thread.UncaughtExceptionHandler {
     private static final String SP_NAME = "OMCrashSP";
-    private SharedPreferences mCrashSp;
+    private static final String FILE_NAME = "om_crash";
+    /**
+     * frames of each exception in a chain that make up its fingerprint
+     */
+    private static final int FINGERPRINT_FRAMES = 3;
+    private static final int MAX_CAUSE_DEPTH = 8;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private volatile CrashStore mStore;
     private Thread.UncaughtExceptionHandler mDefaultEh;
     private boolean isNe = true;
 
@@ -59,8 +79,15 @@ public class CrashUtil implements Thread.UncaughtExceptionHandler {
      */
     public void init() {
         try {
-            //inits SP
-            mCrashSp = AdtUtil.getInstance().getApplicationContext().getSharedPreferences(SP_NAME, Context.MODE_PRIVATE);
+            final Context context = AdtUtil.getInstance().getApplicationContext();
+            if (mStore == null) {
+                WorkExecutor.execute(SdkScheduler.Lane.HOUSEKEEPING, new Runnable() {
+                    @Override
+                    public void run() {
+                        openStore(context);
+                    }
+                });
+            }
             //gets exception handler if set by app
             if (!(Thread.getDefaultUncaughtExceptionHandler() instanceof CrashUtil)) {
                 mDefaultEh = Thread.getDefaultUncaughtExceptionHandler();
@@ -71,6 +98,21 @@ public class CrashUtil implements Thread.UncaughtExceptionHandler {
         }
     }
 
+    private synchronized void openStore(Context context) {
+        if (mStore != null) {
+            return;
+        }
+        try {
+            CrashStore store = new CrashStore(new File(context.getFilesDir(), FILE_NAME));
+            store.open();
+            mStore = store;
+            // entries of the former one-per-exception store are not carried over
+            context.getSharedPreferences(SP_NAME, Context.MODE_PRIVATE).edit().clear().apply();
+        } catch (Exception e) {
+            DeveloperLog.LogD("CrashUtil", e);
+        }
+    }
+
     /**
      * called for uncaught exceptions
      */
@@ -80,7 +122,14 @@ public class CrashUtil implements Thread.UncaughtExceptionHandler {
             if (throwable == null || throwable instanceof UndeclaredThrowableException) {
                 return;
             }
-            saveException(throwable);
+            if (isNe) {
+                // the process is about to die, write now
+                record(throwable, true);
+                CrashStore store = mStore;
+                if (store != null) {
+                    store.flush();
+                }
+            }
             //passes to exception handler if set by app developer
             if (mDefaultEh != null && mDefaultEh != this && !(mDefaultEh instanceof CrashUtil)) {
                 mDefaultEh.uncaughtException(thread, throwable);
@@ -105,32 +154,48 @@ public class CrashUtil implements Thread.UncaughtExceptionHandler {
      * @param throwable the throwable
      */
     public void saveException(final Throwable throwable) {
-        if (!isNe) {
+        if (!isNe || throwable == null || mStore == null) {
             return;
         }
         Runnable runnable = new Runnable() {
             @Override
             public void run() {
-                if (throwable == null || mCrashSp == null) {
-                    return;
-                }
-                if (mCrashSp.getAll() != null && mCrashSp.getAll().size() >= 10) {
-                    return;
-                }
                 try {
-                    String errorInfo = CommonConstants.SDK_VERSION_NAME.concat(":").concat(getStackTraceString(throwable));
-                    if (TextUtils.isEmpty(errorInfo)) {
-                        return;
-                    }
-                    SharedPreferences.Editor editor = mCrashSp.edit();
-                    editor.putString(Long.toString(System.currentTimeMillis()), errorInfo.trim());
-                    editor.apply();
+                    record(throwable, false);
                 } catch (Exception e) {
                     DeveloperLog.LogD("CrashUtil", e);
                 }
             }
         };
-        WorkExecutor.execute(runnable);
+        WorkExecutor.execute(SdkScheduler.Lane.HOUSEKEEPING, runnable);
+    }
+
+    /**
+     * Counts the exception if it is known, or stores it with its stack trace
+     *
+     * @param isFatal whether it is the uncaught exception that kills the process
+     */
+    private void record(Throwable throwable, boolean isFatal) {
+        CrashStore store = mStore;
+        if (store == null || isUnknownHost(throwable)) {
+            return;
+        }
+        long fingerprint = fingerprint(throwable);
+        if (fingerprint == 0) {
+            return;
+        }
+        long ts = System.currentTimeMillis();
+        if (store.hit(fingerprint, ts)) {
+            return;
+        }
+        String errorInfo = CommonConstants.SDK_VERSION_NAME.concat(":").concat(getStackTraceString(throwable)).trim();
+        String errorType = getErrorType(errorInfo);
+        if (TextUtils.isEmpty(errorType)) {
+            errorType = "UnknownError";
+        }
+        if (!store.add(new CrashRecord(fingerprint, errorType, errorInfo, ts), isFatal)) {
+            DeveloperLog.LogD("CrashUtil too many new exceptions, dropped " + errorType);
+        }
     }
 
     /**
@@ -140,7 +205,8 @@ public class CrashUtil implements Thread.UncaughtExceptionHandler {
      * @param appKey the app key
      */
     public void uploadException(final Configurations config, final String appKey) {
-        if (mCrashSp == null || config == null || config.getApi() == null) {
+        final CrashStore store = mStore;
+        if (store == null || config == null || config.getApi() == null) {
             return;
         }
         if (TextUtils.isEmpty(config.getApi().getEr())) {
@@ -149,44 +215,58 @@ public class CrashUtil implements Thread.UncaughtExceptionHandler {
         if (TextUtils.isEmpty(appKey)) {
             return;
         }
-        final Map<String, ?> errorMap = mCrashSp.getAll();
-        if (errorMap.size() == 0) {
+        if (store.isEmpty()) {
             return;
         }
 
-        WorkExecutor.execute(new Runnable() {
+        WorkExecutor.execute(SdkScheduler.Lane.HOUSEKEEPING, new Runnable() {
             @Override
             public void run() {
                 try {
-                    //clears SP after successful uploads
-                    mCrashSp.edit().clear().apply();
+                    final List<CrashRecord> records = store.snapshot();
+                    if (records.isEmpty()) {
+                        return;
+                    }
                     String xrUrl = config.getApi().getEr().concat("?").concat(new RequestBuilder()
                             .p(KeyConstants.Request.KEY_API_VERSION, CommonConstants.API_VERSION)
                             .p(KeyConstants.Request.KEY_PLATFORM, CommonConstants.PLAT_FORM_ANDROID)
                             .p(KeyConstants.Request.KEY_SDK_VERSION, CommonConstants.SDK_VERSION_NAME)
                             .p(KeyConstants.Request.KEY_APP_KEY, appKey)
                             .format());
-                    for (Map.Entry<String, ?> nv : errorMap.entrySet()) {
-                        String errorInfo = (String) nv.getValue();
-                        if (TextUtils.isEmpty(errorInfo) || !errorInfo.contains(CommonConstants.PKG_SDK)) {
-                            continue;
-                        }
-
-                        String errorType = getErrorType(errorInfo);
-                        if (TextUtils.isEmpty(errorType)) {
-                            errorType = "UnknownError";
-                        }
-                        errorInfo = errorInfo.replaceAll("\u0001", " ");
-                        byte[] body = RequestBuilder.buildErrorRequestBody(errorType, errorInfo);
-                        Headers headers = HeaderUtils.getBaseHeaders();
-                        AdRequest.post()
-                                .body(new ByteRequestBody(body))
-                                .headers(headers)
-                                .url(xrUrl)
-                                .connectTimeout(30000)
-                                .readTimeout(60000)
-                                .performRequest(AdtUtil.getInstance().getApplicationContext());
+                    JSONArray errors = new JSONArray();
+                    for (CrashRecord record : records) {
+                        JSONObject error = new JSONObject();
+                        error.put("tag", record.getType());
+                        error.put("error", record.getError().replaceAll("\u0001", " "));
+                        error.put("count", record.getCount());
+                        error.put("fts", record.getFirstTs());
+                        error.put("lts", record.getLastTs());
+                        errors.put(error);
                     }
+                    byte[] body = RequestBuilder.buildErrorRequestBody(errors);
+                    Headers headers = HeaderUtils.getBaseHeaders();
+                    AdRequest.post()
+                            .body(new ByteRequestBody(body))
+                            .headers(headers)
+                            .url(xrUrl)
+                            .connectTimeout(30000)
+                            .readTimeout(60000)
+                            .callback(new Request.OnRequestCallback() {
+                                @Override
+                                public void onRequestSuccess(Response response) {
+                                    IOUtil.closeQuietly(response);
+                                    //clears uploaded exceptions after successful uploads, already on
+                                    //the request's lane where a full lane cannot drop it
+                                    store.acknowledge(records);
+                                }
+
+                                @Override
+                                public void onRequestFailed(String error) {
+                                    DeveloperLog.LogD("CrashUtil upload error : " + error);
+                                }
+                            })
+                            .lane(SdkScheduler.Lane.HOUSEKEEPING)
+                            .performRequest(AdtUtil.getInstance().getApplicationContext());
                 } catch (Throwable e) {
                     DeveloperLog.LogD("CrashUtil", e);
                 }
@@ -194,18 +274,69 @@ public class CrashUtil implements Thread.UncaughtExceptionHandler {
         });
     }
 
+    /**
+     * Hashes the types and top frames of the exception and its causes, so the same failure
+     * gets the same fingerprint whatever its message
+     *
+     * @return the fingerprint, or 0 if no frame is in the sdk
+     */
+    private static long fingerprint(Throwable throwable) {
+        long hash = FNV_OFFSET;
+        boolean isSdk = false;
+        Throwable t = throwable;
+        for (int depth = 0; t != null && depth < MAX_CAUSE_DEPTH; depth++) {
+            hash = fnv(hash, t.getClass().getName());
+            StackTraceElement[] frames = t.getStackTrace();
+            for (int i = 0; i < frames.length; i++) {
+                StackTraceElement frame = frames[i];
+                String className = frame.getClassName();
+                if (!isSdk && className != null && className.startsWith(CommonConstants.PKG_SDK)) {
+                    isSdk = true;
+                }
+                if (i < FINGERPRINT_FRAMES) {
+                    hash = fnv(hash, className);
+                    hash = fnv(hash, frame.getMethodName());
+                    hash = fnv(hash, Integer.toString(frame.getLineNumber()));
+                }
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+            t = t.getCause();
+        }
+        if (!isSdk) {
+            return 0;
+        }
+        return hash == 0 ? 1 : hash;
+    }
 
-    private static String getStackTraceString(Throwable tr) {
-        if (tr == null) {
-            return "";
+    private static long fnv(long hash, String value) {
+        if (value == null) {
+            return hash * FNV_PRIME;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
         }
-        Throwable t = new Throwable(CommonConstants.SDK_VERSION_NAME, tr);
-        while (t != null) {
+        // separator, so that "ab"+"c" and "a"+"bc" differ
+        return (hash ^ 0xff) * FNV_PRIME;
+    }
+
+    private static boolean isUnknownHost(Throwable tr) {
+        Throwable t = tr;
+        for (int depth = 0; t != null && depth < MAX_CAUSE_DEPTH; depth++) {
             if (t instanceof UnknownHostException) {
-                return "";
+                return true;
             }
             t = t.getCause();
         }
+        return false;
+    }
+
+    private static String getStackTraceString(Throwable tr) {
+        if (tr == null) {
+            return "";
+        }
         StringWriter sw = new StringWriter();
         PrintWriter pw = new PrintWriter(sw);
         tr.printStackTrace(pw);
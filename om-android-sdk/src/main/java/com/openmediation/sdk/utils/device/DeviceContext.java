@@ -0,0 +1,323 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.device;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.openmediation.sdk.utils.AFManager;
+import com.openmediation.sdk.utils.AdtUtil;
+import com.openmediation.sdk.utils.DensityUtil;
+import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.SdkScheduler;
+import com.openmediation.sdk.utils.constant.CommonConstants;
+import com.openmediation.sdk.utils.constant.KeyConstants;
+import com.openmediation.sdk.utils.request.network.util.NetworkChecker;
+
+import org.json.JSONObject;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Immutable snapshot of the device fields shared by every request body.
+ * <p>
+ * Fields that cannot change while the process lives (install time, uid, root, build, system
+ * properties...) are computed once. Fields that can (network, ip, battery, free disk, locale...)
+ * are refreshed in the background when a connectivity, locale or time zone broadcast arrives, a
+ * configuration change moves the screen size or locale, or when the snapshot is older than
+ * {@link #REFRESH_INTERVAL}. Battery changes are left to the interval, the broadcast comes with
+ * every percent. Readers never wait for a refresh, they get the last snapshot.
+ */
+public final class DeviceContext {
+
+    private static final long REFRESH_INTERVAL = 60 * 1000L;
+
+    private static final Object LOCK = new Object();
+    private static final AtomicBoolean REFRESHING = new AtomicBoolean(false);
+    private static volatile DeviceContext sCurrent;
+    private static volatile boolean sDirty;
+    private static JSONObject sStaticJson;
+    private static JSONObject sStaticAndroidJson;
+    private static BroadcastReceiver sReceiver;
+
+    private final JSONObject mBaseJson;
+    private final String[] mBaseNames;
+    private final JSONObject mAndroidJson;
+    private final String[] mAndroidNames;
+    private final byte[] mBaseJsonPrefix;
+    private final int mConnectType;
+    private final long mCreatedAt;
+
+    private DeviceContext(JSONObject baseJson, JSONObject androidJson, int connectType) {
+        mBaseJson = baseJson;
+        mBaseNames = names(baseJson);
+        mAndroidJson = androidJson;
+        mAndroidNames = names(androidJson);
+        String json = baseJson.toString();
+        mBaseJsonPrefix = json.substring(0, json.length() - 1).getBytes(Charset.forName(CommonConstants.CHARTSET_UTF8));
+        mConnectType = connectType;
+        mCreatedAt = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Returns the current snapshot. Only the very first call builds it on the calling thread.
+     */
+    public static DeviceContext get() {
+        DeviceContext current = sCurrent;
+        if (current == null) {
+            synchronized (LOCK) {
+                if (sCurrent == null) {
+                    sCurrent = build();
+                    registerReceiver();
+                }
+                return sCurrent;
+            }
+        }
+        if (sDirty || SystemClock.elapsedRealtime() - current.mCreatedAt > REFRESH_INTERVAL) {
+            refreshAsync();
+        }
+        return current;
+    }
+
+    /**
+     * Marks the volatile fields as outdated, the next {@link #get()} triggers a refresh
+     */
+    public static void invalidate() {
+        sDirty = true;
+    }
+
+    /**
+     * @return a new mutable copy of the base request fields
+     */
+    public JSONObject newBaseJson() throws Exception {
+        return new JSONObject(mBaseJson, mBaseNames);
+    }
+
+    /**
+     * @return a new mutable copy of the "android" object sent with the init request
+     */
+    public JSONObject newAndroidJson() throws Exception {
+        return new JSONObject(mAndroidJson, mAndroidNames);
+    }
+
+    /**
+     * The base fields pre-encoded as UTF-8: an opening brace followed by the fields, without the
+     * closing brace. Append a comma, the per-request fields and a closing brace.
+     */
+    public byte[] getBaseJsonPrefix() {
+        return mBaseJsonPrefix;
+    }
+
+    public int getConnectType() {
+        return mConnectType;
+    }
+
+    /**
+     * @return true if the screen size or locale differs from the snapshot's
+     */
+    private boolean isConfigurationChanged(Context context) {
+        Locale locale = Locale.getDefault();
+        return DensityUtil.getPhoneWidth(context) != mBaseJson.optInt(KeyConstants.RequestBody.KEY_W)
+                || DensityUtil.getPhoneHeight(context) != mBaseJson.optInt(KeyConstants.RequestBody.KEY_H)
+                || !locale.getLanguage().equals(mBaseJson.optString(KeyConstants.RequestBody.KEY_LANG))
+                || !locale.getCountry().equals(mBaseJson.optString(KeyConstants.RequestBody.KEY_LCOUNTRY));
+    }
+
+    private static void refreshAsync() {
+        if (!REFRESHING.compareAndSet(false, true)) {
+            return;
+        }
+        SdkScheduler.execute(SdkScheduler.Lane.HOUSEKEEPING, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sDirty = false;
+                    DeviceContext context = build();
+                    synchronized (LOCK) {
+                        sCurrent = context;
+                    }
+                } catch (Throwable e) {
+                    DeveloperLog.LogD("DeviceContext refresh error", e);
+                } finally {
+                    REFRESHING.set(false);
+                }
+            }
+        });
+    }
+
+    private static DeviceContext build() {
+        Context context = AdtUtil.getInstance().getApplicationContext();
+        JSONObject base = new JSONObject();
+        JSONObject android = new JSONObject();
+        int connectType = NetworkChecker.getConnectType(context);
+        try {
+            JSONObject staticJson = getStaticJson(context);
+            copy(staticJson, base);
+            JSONObject staticAndroid = getStaticAndroidJson(context);
+            copy(staticAndroid, android);
+
+            Map<String, Object> locale = DeviceUtil.getLocaleInfo();
+            base.put(KeyConstants.RequestBody.KEY_ZO, DeviceUtil.getTimeZoneOffset());
+            base.put(KeyConstants.RequestBody.KEY_TZ, DeviceUtil.getTimeZone());
+            base.put(KeyConstants.RequestBody.KEY_LANG, locale.get(KeyConstants.RequestBody.KEY_LANG));
+            base.put(KeyConstants.RequestBody.KEY_LANG_NAME, locale.get(KeyConstants.RequestBody.KEY_LANG_NAME));
+            base.put(KeyConstants.RequestBody.KEY_LCOUNTRY, locale.get(KeyConstants.RequestBody.KEY_LCOUNTRY));
+            base.put(KeyConstants.RequestBody.KEY_W, DensityUtil.getPhoneWidth(context));
+            base.put(KeyConstants.RequestBody.KEY_H, DensityUtil.getPhoneHeight(context));
+            base.put(KeyConstants.RequestBody.KEY_CONT, connectType);
+            base.put(KeyConstants.RequestBody.KEY_CARRIER, NetworkChecker.getNetworkOperator(context));
+            base.put(KeyConstants.RequestBody.KEY_LIP, DeviceUtil.getHostIp());
+            base.put(KeyConstants.RequestBody.KEY_FM, DeviceUtil.getFm());
+            base.put(KeyConstants.RequestBody.KEY_AF_ID, AFManager.getAfId(context));
+            base.put(KeyConstants.RequestBody.KEY_GCY, context != null ? DeviceUtil.getNetworkCountryIso(context) : "");
+            Map<String, Integer> battery = DeviceUtil.getBatteryInfo(context);
+            if (battery != null) {
+                for (Map.Entry<String, Integer> integerEntry : battery.entrySet()) {
+                    if (integerEntry == null) {
+                        continue;
+                    }
+                    base.put(integerEntry.getKey(), integerEntry.getValue());
+                }
+            }
+            if (!base.has(KeyConstants.RequestBody.KEY_BATTERY)) {
+                base.put(KeyConstants.RequestBody.KEY_BATTERY, 0);
+            }
+        } catch (Exception e) {
+            DeveloperLog.LogD("DeviceContext build error", e);
+        }
+        return new DeviceContext(base, android, connectType);
+    }
+
+    private static JSONObject getStaticJson(Context context) throws Exception {
+        synchronized (LOCK) {
+            if (sStaticJson != null) {
+                return sStaticJson;
+            }
+            JSONObject body = new JSONObject();
+            body.put(KeyConstants.RequestBody.KEY_FIT, DeviceUtil.getFit());
+            body.put(KeyConstants.RequestBody.KEY_SESSION, DeviceUtil.getSessionId());
+            body.put(KeyConstants.RequestBody.KEY_UID, DeviceUtil.getUid());
+            body.put(KeyConstants.RequestBody.KEY_FLT, DeviceUtil.getFlt());
+            body.put(KeyConstants.RequestBody.KEY_JB, DeviceUtil.isRoot() ? 1 : 0);
+            body.put(KeyConstants.RequestBody.KEY_BUNDLE, context != null ? context.getPackageName() : "");
+            body.put(KeyConstants.RequestBody.KEY_MAKE, Build.MANUFACTURER);
+            body.put(KeyConstants.RequestBody.KEY_BRAND, Build.BRAND);
+            body.put(KeyConstants.RequestBody.KEY_MODEL, Build.MODEL);
+            body.put(KeyConstants.RequestBody.KEY_OSV, Build.VERSION.RELEASE);
+            body.put(KeyConstants.RequestBody.KEY_BUILD, Build.DISPLAY);
+            body.put(KeyConstants.RequestBody.KEY_APPV, DeviceUtil.getVersionName(context));
+            sStaticJson = body;
+            return body;
+        }
+    }
+
+    private static JSONObject getStaticAndroidJson(Context context) throws Exception {
+        synchronized (LOCK) {
+            if (sStaticAndroidJson != null) {
+                return sStaticAndroidJson;
+            }
+            JSONObject androidBody = new JSONObject();
+            androidBody.put(KeyConstants.Android.KEY_DEVICE, Build.DEVICE);
+            androidBody.put(KeyConstants.Android.KEY_PRODUCE, Build.PRODUCT);
+            androidBody.put(KeyConstants.Android.KEY_SD, DensityUtil.getScreenDensity());
+            androidBody.put(KeyConstants.Android.KEY_SS, DensityUtil.getScreenSize());
+            androidBody.put(KeyConstants.Android.KEY_CPU_ABI, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_CPU_ABI));
+            androidBody.put(KeyConstants.Android.KEY_CPU_ABI2, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_CPU_ABI2));
+            androidBody.put(KeyConstants.Android.KEY_CPU_ABI_LIST, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_CPU_ABI_LIST));
+            androidBody.put(KeyConstants.Android.KEY_CPU_ABI_LIST_32, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_CPU_ABI_LIST_32));
+            androidBody.put(KeyConstants.Android.KEY_CPU_ABI_LIST_64, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_CPU_ABI_LIST_64));
+            androidBody.put(KeyConstants.Android.KEY_API_LEVEL, Build.VERSION.SDK_INT);
+            androidBody.put(KeyConstants.Android.KEY_D_DPI, DensityUtil.getDensityDpi(context));
+            androidBody.put(KeyConstants.Android.KEY_DIM_SIZE, DensityUtil.getDimSize());
+            androidBody.put(KeyConstants.Android.KEY_XDP, Integer.toString(DensityUtil.getXdpi(context)));
+            androidBody.put(KeyConstants.Android.KEY_YDP, Integer.toString(DensityUtil.getYdpi(context)));
+            androidBody.put(KeyConstants.Android.KEY_DFPID, DeviceUtil.getUniquePsuedoId());
+            androidBody.put(KeyConstants.Android.KEY_ARCH, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_ARCH));
+            androidBody.put(KeyConstants.Android.KEY_CHIPNAME, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_CHIPNAME));
+            androidBody.put(KeyConstants.Android.KEY_BRIDGE, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_BRIDGE));
+            androidBody.put(KeyConstants.Android.KEY_NATIVE_BRIDGE, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_NATIVE_BRIDGE));
+            androidBody.put(KeyConstants.Android.KEY_BRIDGE_EXEC, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_BRIDGE_EXEC));
+            androidBody.put(KeyConstants.Android.KEY_ISA_X86_FEATURES, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_ISA_X86_FEATURES));
+            androidBody.put(KeyConstants.Android.KEY_ISA_X86_VARIANT, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_ISA_X86_VARIANT));
+            androidBody.put(KeyConstants.Android.KEY_ZYGOTE, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_ZYGOTE));
+            androidBody.put(KeyConstants.Android.KEY_MOCK_LOCATION, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_MOCK_LOCATION));
+            androidBody.put(KeyConstants.Android.KEY_ISA_ARM, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_ISA_ARM));
+            androidBody.put(KeyConstants.Android.KEY_ISA_ARM_FEATURES, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_ISA_ARM_FEATURES));
+            androidBody.put(KeyConstants.Android.KEY_ISA_ARM_VARIANT, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_ISA_ARM_VARIANT));
+            androidBody.put(KeyConstants.Android.KEY_ISA_ARM64_FEATURES, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_ISA_ARM64_FEATURES));
+            androidBody.put(KeyConstants.Android.KEY_ISA_ARM64_VARIANT, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_ISA_ARM64_VARIANT));
+            androidBody.put(KeyConstants.Android.KEY_BUILD_USER, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_BUILD_USER));
+            androidBody.put(KeyConstants.Android.KEY_KERNEL_QEMU, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_KERNEL_QEMU));
+            androidBody.put(KeyConstants.Android.KEY_HARDWARE, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_HARDWARE));
+            androidBody.put(KeyConstants.RequestBody.KEY_TDM, DeviceUtil.disk());
+            androidBody.put(KeyConstants.RequestBody.KEY_IFGP, DeviceUtil.ifGp(context));
+            sStaticAndroidJson = androidBody;
+            return androidBody;
+        }
+    }
+
+    private static void registerReceiver() {
+        Context context = AdtUtil.getInstance().getApplicationContext();
+        if (context == null || sReceiver != null) {
+            return;
+        }
+        try {
+            IntentFilter filter = new IntentFilter();
+            filter.addAction("android.net.conn.CONNECTIVITY_CHANGE");
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_CONFIGURATION_CHANGED);
+            sReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    if (isInitialStickyBroadcast()) {
+                        return;
+                    }
+                    if (Intent.ACTION_CONFIGURATION_CHANGED.equals(intent.getAction())) {
+                        // also sent for night mode, font scale, keyboard...
+                        DeviceContext current = sCurrent;
+                        try {
+                            if (current != null && !current.isConfigurationChanged(context)) {
+                                return;
+                            }
+                        } catch (Throwable e) {
+                            DeveloperLog.LogD("DeviceContext configuration error", e);
+                        }
+                    }
+                    invalidate();
+                }
+            };
+            context.registerReceiver(sReceiver, filter);
+        } catch (Throwable e) {
+            DeveloperLog.LogD("DeviceContext register receiver error", e);
+        }
+    }
+
+    private static void copy(JSONObject from, JSONObject to) throws Exception {
+        Iterator<String> keys = from.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            to.put(key, from.opt(key));
+        }
+    }
+
+    private static String[] names(JSONObject object) {
+        List<String> names = new ArrayList<>(object.length());
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            names.add(keys.next());
+        }
+        return names.toArray(new String[0]);
+    }
+}
@@ -10,6 +10,7 @@ import android.hardware.SensorEventListener;
 
 import com.openmediation.sdk.utils.AdtUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.WorkExecutor;
 import com.openmediation.sdk.utils.crash.CrashUtil;
 
@@ -45,8 +46,8 @@ public class SensorManager {
             mSensorsType.set(2);
             mSensorsType.set(4);
             mSensorManager = (android.hardware.SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
-            WorkExecutor.execute(new RegisterSensorListenerRunnable());
-            WorkExecutor.execute(new UnRegisterSensorListenerRunnable(), 10, TimeUnit.SECONDS);
+            WorkExecutor.execute(SdkScheduler.Lane.HOUSEKEEPING, new RegisterSensorListenerRunnable());
+            WorkExecutor.execute(SdkScheduler.Lane.HOUSEKEEPING, new UnRegisterSensorListenerRunnable(), 10, TimeUnit.SECONDS);
         } catch (Throwable t) {
             CrashUtil.getSingleton().saveException(t);
             DeveloperLog.LogE("SensorManager error:", t);
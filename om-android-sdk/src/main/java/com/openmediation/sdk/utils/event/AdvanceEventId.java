@@ -103,4 +103,10 @@ public interface AdvanceEventId {
     int CODE_PLACEMENT_LOAD_DUR = 10031;
     String MSG_PLACEMENT_LOAD_DUR = "Placement load duration: ";
 
+    int CODE_S2S_TOKEN_DUR = 10032;
+    String MSG_S2S_TOKEN_DUR = "S2S get token duration: ";
+
+    int CODE_S2S_TOKEN_TIMEOUT = 10033;
+    String MSG_S2S_TOKEN_TIMEOUT = "S2S get token timeout: ";
+
 }
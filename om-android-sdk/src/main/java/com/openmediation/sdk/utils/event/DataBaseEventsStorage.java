@@ -6,25 +6,36 @@ package com.openmediation.sdk.utils.event;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 
 import com.openmediation.sdk.utils.DeveloperLog;
 import com.openmediation.sdk.utils.cache.DataBaseHelper;
 import com.openmediation.sdk.utils.crash.CrashUtil;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
-
 /**
- * DB helper for saving events and reporting; different table from key-value in the same DB
+ * DB helper for saving events and reporting; different table from key-value in the same DB.
+ * <p>
+ * The table is an append-only log: every event gets a monotonically increasing sequence id
+ * ({@code _id AUTOINCREMENT}), batches are read by sequence range and deleted by range once the
+ * server has acknowledged them. The log is bounded by row count and payload bytes, oldest first.
  */
 public class DataBaseEventsStorage extends DataBaseHelper {
 
     private static DataBaseEventsStorage mInstance;
     private static final String DB_TABLE_NAME = "events";
+    private static final String DB_COLUMN_ID = "_id";
     private static final String DB_COLUMN_EVENT = "event";
 
+    /**
+     * Max events kept on disk
+     */
+    static final int MAX_STORED_EVENTS = 20000;
+    /**
+     * Max event payload bytes kept on disk
+     */
+    static final long MAX_STORED_BYTES = 8 * 1024 * 1024;
+
     private DataBaseEventsStorage(Context context, String databaseName, int databaseVersion) {
         super(context, databaseName, databaseVersion);
     }
@@ -53,48 +64,62 @@ public class DataBaseEventsStorage extends DataBaseHelper {
     void createTable() {
         try {
             getWritableDatabase();
-            mSQLiteDatabase.execSQL(String.format("CREATE TABLE IF NOT EXISTS %s (_id INTEGER PRIMARY KEY AUTOINCREMENT,%s)",
-                    DB_TABLE_NAME, DB_COLUMN_EVENT));
+            mSQLiteDatabase.execSQL(String.format("CREATE TABLE IF NOT EXISTS %s (%s INTEGER PRIMARY KEY AUTOINCREMENT,%s)",
+                    DB_TABLE_NAME, DB_COLUMN_ID, DB_COLUMN_EVENT));
         } catch (Exception e) {
             CrashUtil.getSingleton().saveException(e);
         }
     }
 
-    synchronized void addEvent(Event event) {
-        if (event != null) {
-            try {
-                getWritableDatabase();
-                if (!isRead()) {
-                    return;
-                }
-                ContentValues values = getContentValuesForEvent(event);
-                mSQLiteDatabase.insert(DB_TABLE_NAME, null, values);
-            } catch (Throwable throwable) {
-                DeveloperLog.LogE("Exception while saving events: ", throwable);
+    /**
+     * Appends an event to the log
+     *
+     * @return the event's sequence id, or -1 if it could not be stored
+     */
+    synchronized long addEvent(Event event) {
+        if (event == null) {
+            return -1;
+        }
+        try {
+            getWritableDatabase();
+            if (!isRead()) {
+                return -1;
             }
+            ContentValues values = new ContentValues(1);
+            values.put(DB_COLUMN_EVENT, event.toJson());
+            return mSQLiteDatabase.insert(DB_TABLE_NAME, null, values);
+        } catch (Throwable throwable) {
+            DeveloperLog.LogE("Exception while saving events: ", throwable);
         }
+        return -1;
     }
 
-    synchronized List<Event> loadEvents() {
-        List<Event> events = new ArrayList<>();
+    /**
+     * Reads the oldest events whose sequence id is greater than afterSeq
+     *
+     * @param afterSeq exclusive lower bound of the range
+     * @param limit    max events to read
+     */
+    synchronized EventBatch loadEvents(long afterSeq, int limit) {
+        EventBatch batch = new EventBatch();
         Cursor cursor = null;
         try {
             getReadableDatabase();
             if (!isRead()) {
-                return events;
+                return batch;
             }
-            cursor = mSQLiteDatabase.query(DB_TABLE_NAME, null, null, null
-                    , null, null, null);
-            if (cursor.getCount() > 0) {
-                cursor.moveToFirst();
-
-                while (!cursor.isAfterLast()) {
-                    String data = cursor.getString(cursor.getColumnIndex(DB_COLUMN_EVENT));
-                    Event event = new Event(data);
-                    events.add(event);
-                    cursor.moveToNext();
+            cursor = mSQLiteDatabase.query(DB_TABLE_NAME, new String[]{DB_COLUMN_ID, DB_COLUMN_EVENT},
+                    DB_COLUMN_ID + ">?", new String[]{String.valueOf(afterSeq)},
+                    null, null, DB_COLUMN_ID + " ASC", String.valueOf(limit));
+            while (cursor.moveToNext()) {
+                long seq = cursor.getLong(0);
+                try {
+                    batch.add(seq, new Event(cursor.getString(1)));
+                } catch (Exception e) {
+                    // keep the range contiguous, a broken row is acknowledged with its batch
+                    DeveloperLog.LogD("skip broken event " + seq);
+                    batch.skip(seq);
                 }
-                cursor.close();
             }
         } catch (Throwable throwable) {
             DeveloperLog.LogE("Exception while loading events: ", throwable);
@@ -103,37 +128,86 @@ public class DataBaseEventsStorage extends DataBaseHelper {
                 cursor.close();
             }
         }
-        DeveloperLog.LogD("loading events: " + events.size());
-        return events;
+        return batch;
     }
 
-    synchronized void clearEvents(ConcurrentLinkedQueue<Event> events) {
+    /**
+     * Deletes the acknowledged range [fromSeq, toSeq]
+     */
+    synchronized void deleteEvents(long fromSeq, long toSeq) {
         try {
-            DeveloperLog.LogD("clearing events: " + events.size());
             getWritableDatabase();
             if (!isRead()) {
                 return;
             }
-            mSQLiteDatabase.beginTransaction();
-            for (Event event : events) {
-                mSQLiteDatabase.delete(DB_TABLE_NAME, DB_COLUMN_EVENT + "=?", new String[]{event.toJson()});
-            }
-            mSQLiteDatabase.setTransactionSuccessful();
+            int count = mSQLiteDatabase.delete(DB_TABLE_NAME, DB_COLUMN_ID + " BETWEEN ? AND ?",
+                    new String[]{String.valueOf(fromSeq), String.valueOf(toSeq)});
+            DeveloperLog.LogD("clearing events: " + count);
         } catch (Throwable throwable) {
-            throwable.printStackTrace();
             DeveloperLog.LogE("Exception while clearing events: ", throwable);
-        } finally {
-            mSQLiteDatabase.endTransaction();
         }
     }
 
-    private ContentValues getContentValuesForEvent(Event event) {
-        ContentValues values = null;
-        if (event != null) {
-            values = new ContentValues(4);
-            values.put(DB_COLUMN_EVENT, event.toJson());
+    /**
+     * @return number of events in the log
+     */
+    synchronized int count() {
+        try {
+            getReadableDatabase();
+            if (!isRead()) {
+                return 0;
+            }
+            return (int) DatabaseUtils.queryNumEntries(mSQLiteDatabase, DB_TABLE_NAME);
+        } catch (Throwable throwable) {
+            DeveloperLog.LogE("Exception while counting events: ", throwable);
         }
+        return 0;
+    }
 
-        return values;
+    /**
+     * Evicts the oldest events until the log fits into maxEvents and maxBytes
+     *
+     * @return number of evicted events
+     */
+    synchronized int trim(int maxEvents, long maxBytes) {
+        Cursor cursor = null;
+        long cutoff = -1;
+        try {
+            getWritableDatabase();
+            if (!isRead()) {
+                return 0;
+            }
+            cursor = mSQLiteDatabase.query(DB_TABLE_NAME,
+                    new String[]{DB_COLUMN_ID, "LENGTH(" + DB_COLUMN_EVENT + ")"},
+                    null, null, null, null, DB_COLUMN_ID + " DESC");
+            int rows = 0;
+            long bytes = 0;
+            while (cursor.moveToNext()) {
+                rows++;
+                bytes += cursor.getLong(1);
+                if (rows > maxEvents || bytes > maxBytes) {
+                    cutoff = cursor.getLong(0);
+                    break;
+                }
+            }
+        } catch (Throwable throwable) {
+            DeveloperLog.LogE("Exception while trimming events: ", throwable);
+        } finally {
+            if (cursor != null && !cursor.isClosed()) {
+                cursor.close();
+            }
+        }
+        if (cutoff < 0) {
+            return 0;
+        }
+        try {
+            int count = mSQLiteDatabase.delete(DB_TABLE_NAME, DB_COLUMN_ID + "<=?",
+                    new String[]{String.valueOf(cutoff)});
+            DeveloperLog.LogD("evicted oldest events: " + count);
+            return count;
+        } catch (Throwable throwable) {
+            DeveloperLog.LogE("Exception while trimming events: ", throwable);
+        }
+        return 0;
     }
 }
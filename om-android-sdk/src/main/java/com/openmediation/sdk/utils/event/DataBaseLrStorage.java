@@ -0,0 +1,227 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.event;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.cache.DataBaseHelper;
+import com.openmediation.sdk.utils.crash.CrashUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DB helper for LR reports that could not be sent yet; a table next to the events in the same DB.
+ * <p>
+ * Like {@link DataBaseEventsStorage} the table is an append-only log read and deleted by sequence
+ * range, bounded by row count with the oldest reports evicted first.
+ */
+class DataBaseLrStorage extends DataBaseHelper {
+
+    private static DataBaseLrStorage mInstance;
+    private static final String DB_TABLE_NAME = "lrs";
+    private static final String DB_COLUMN_ID = "_id";
+    private static final String DB_COLUMN_LR = "lr";
+
+    /**
+     * Max reports kept on disk
+     */
+    static final int MAX_STORED_RECORDS = 5000;
+
+    private DataBaseLrStorage(Context context, String databaseName, int databaseVersion) {
+        super(context, databaseName, databaseVersion);
+    }
+
+    static synchronized DataBaseLrStorage getInstance(Context context, String databaseName, int databaseVersion) {
+        if (mInstance == null) {
+            mInstance = new DataBaseLrStorage(context, databaseName, databaseVersion);
+        }
+        return mInstance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        mSQLiteDatabase = db;
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + DB_TABLE_NAME);
+        this.onCreate(db);
+    }
+
+    void createTable() {
+        try {
+            getWritableDatabase();
+            mSQLiteDatabase.execSQL(String.format("CREATE TABLE IF NOT EXISTS %s (%s INTEGER PRIMARY KEY AUTOINCREMENT,%s)",
+                    DB_TABLE_NAME, DB_COLUMN_ID, DB_COLUMN_LR));
+        } catch (Exception e) {
+            CrashUtil.getSingleton().saveException(e);
+        }
+    }
+
+    /**
+     * Appends the reports to the log in one transaction
+     *
+     * @return number of reports stored
+     */
+    synchronized int add(List<LrRecord> records) {
+        if (records == null || records.isEmpty()) {
+            return 0;
+        }
+        try {
+            getWritableDatabase();
+            if (!isRead()) {
+                return 0;
+            }
+            int count = 0;
+            mSQLiteDatabase.beginTransaction();
+            try {
+                ContentValues values = new ContentValues(1);
+                for (LrRecord record : records) {
+                    values.put(DB_COLUMN_LR, record.toJson());
+                    if (mSQLiteDatabase.insert(DB_TABLE_NAME, null, values) >= 0) {
+                        count++;
+                    }
+                }
+                mSQLiteDatabase.setTransactionSuccessful();
+            } finally {
+                mSQLiteDatabase.endTransaction();
+            }
+            return count;
+        } catch (Throwable throwable) {
+            DeveloperLog.LogE("Exception while saving lrs: ", throwable);
+        }
+        return 0;
+    }
+
+    /**
+     * Reads the oldest reports
+     *
+     * @param limit max reports to read
+     */
+    synchronized Batch load(int limit) {
+        Batch batch = new Batch();
+        Cursor cursor = null;
+        try {
+            getReadableDatabase();
+            if (!isRead()) {
+                return batch;
+            }
+            cursor = mSQLiteDatabase.query(DB_TABLE_NAME, new String[]{DB_COLUMN_ID, DB_COLUMN_LR},
+                    null, null, null, null, DB_COLUMN_ID + " ASC", String.valueOf(limit));
+            while (cursor.moveToNext()) {
+                long seq = cursor.getLong(0);
+                if (batch.mFirstSeq < 0) {
+                    batch.mFirstSeq = seq;
+                }
+                batch.mLastSeq = seq;
+                try {
+                    batch.mRecords.add(new LrRecord(cursor.getString(1)));
+                } catch (Exception e) {
+                    // a broken row is deleted with its batch
+                    DeveloperLog.LogD("skip broken lr " + seq);
+                }
+            }
+        } catch (Throwable throwable) {
+            DeveloperLog.LogE("Exception while loading lrs: ", throwable);
+        } finally {
+            if (cursor != null && !cursor.isClosed()) {
+                cursor.close();
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Deletes the acknowledged range [fromSeq, toSeq]
+     */
+    synchronized void delete(long fromSeq, long toSeq) {
+        try {
+            getWritableDatabase();
+            if (!isRead()) {
+                return;
+            }
+            int count = mSQLiteDatabase.delete(DB_TABLE_NAME, DB_COLUMN_ID + " BETWEEN ? AND ?",
+                    new String[]{String.valueOf(fromSeq), String.valueOf(toSeq)});
+            DeveloperLog.LogD("clearing lrs: " + count);
+        } catch (Throwable throwable) {
+            DeveloperLog.LogE("Exception while clearing lrs: ", throwable);
+        }
+    }
+
+    /**
+     * @return number of reports in the log
+     */
+    synchronized int count() {
+        try {
+            getReadableDatabase();
+            if (!isRead()) {
+                return 0;
+            }
+            return (int) DatabaseUtils.queryNumEntries(mSQLiteDatabase, DB_TABLE_NAME);
+        } catch (Throwable throwable) {
+            DeveloperLog.LogE("Exception while counting lrs: ", throwable);
+        }
+        return 0;
+    }
+
+    /**
+     * Evicts the oldest reports until the log fits into maxRecords
+     *
+     * @return number of evicted reports
+     */
+    synchronized int trim(int maxRecords) {
+        try {
+            getWritableDatabase();
+            if (!isRead()) {
+                return 0;
+            }
+            int count = mSQLiteDatabase.delete(DB_TABLE_NAME, DB_COLUMN_ID + " NOT IN (SELECT "
+                            + DB_COLUMN_ID + " FROM " + DB_TABLE_NAME + " ORDER BY " + DB_COLUMN_ID
+                            + " DESC LIMIT ?)",
+                    new String[]{String.valueOf(maxRecords)});
+            if (count > 0) {
+                DeveloperLog.LogD("evicted oldest lrs: " + count);
+            }
+            return count;
+        } catch (Throwable throwable) {
+            DeveloperLog.LogE("Exception while trimming lrs: ", throwable);
+        }
+        return 0;
+    }
+
+    /**
+     * A contiguous range of the log
+     */
+    static final class Batch {
+        private final List<LrRecord> mRecords = new ArrayList<>();
+        private long mFirstSeq = -1;
+        private long mLastSeq = -1;
+
+        List<LrRecord> getRecords() {
+            return mRecords;
+        }
+
+        long getFirstSeq() {
+            return mFirstSeq;
+        }
+
+        long getLastSeq() {
+            return mLastSeq;
+        }
+
+        /**
+         * @return true if no row was read, broken or not
+         */
+        boolean isEmpty() {
+            return mFirstSeq < 0;
+        }
+    }
+}
@@ -3,11 +3,15 @@
 
 package com.openmediation.sdk.utils.event;
 
+import android.util.JsonWriter;
+
 import com.openmediation.sdk.utils.DeveloperLog;
 import com.openmediation.sdk.utils.JsonUtil;
 
 import org.json.JSONObject;
 
+import java.io.IOException;
+
 /**
  * Event reporting
  */
@@ -119,6 +123,37 @@ public class Event {
         return jsonObject;
     }
 
+    /**
+     * Streams the event as a JSON object, same fields as {@link #toJSONObject()}
+     */
+    void writeTo(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        JsonUtil.write(writer, "ts", ts);
+        JsonUtil.write(writer, "eid", eid);
+        JsonUtil.write(writer, "msg", msg);
+        JsonUtil.write(writer, "pid", pid);
+        JsonUtil.write(writer, "mid", mid);
+        JsonUtil.write(writer, "iid", iid);
+        JsonUtil.write(writer, "adapterv", adapterv);
+        JsonUtil.write(writer, "msdkv", msdkv);
+        JsonUtil.write(writer, "scene", scene);
+        JsonUtil.write(writer, "ot", ot);
+        JsonUtil.write(writer, "duration", duration);
+        JsonUtil.write(writer, "priority", priority);
+        JsonUtil.write(writer, "cs", cs);
+        JsonUtil.write(writer, "abt", abt);
+        JsonUtil.write(writer, "abtId", abtId);
+        JsonUtil.write(writer, "code", code);
+        JsonUtil.write(writer, "bid", bid);
+        JsonUtil.write(writer, "price", price);
+        JsonUtil.write(writer, "cur", cur);
+        JsonUtil.write(writer, "reqId", reqId);
+        JsonUtil.write(writer, "ruleId", ruleId);
+        JsonUtil.write(writer, "data", data);
+        JsonUtil.write(writer, "payload", payload);
+        writer.endObject();
+    }
+
     String toJson() {
         return toJSONObject().toString();
     }
@@ -0,0 +1,57 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.event;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A contiguous range of the event log, identified by its first and last sequence id
+ */
+class EventBatch {
+
+    private final List<Event> mEvents = new ArrayList<>();
+    private long mFirstSeq = -1;
+    private long mLastSeq = -1;
+    private int mRows;
+
+    void add(long seq, Event event) {
+        skip(seq);
+        mEvents.add(event);
+    }
+
+    /**
+     * Extends the range over a row that could not be decoded
+     */
+    void skip(long seq) {
+        if (mFirstSeq < 0) {
+            mFirstSeq = seq;
+        }
+        mLastSeq = seq;
+        mRows++;
+    }
+
+    List<Event> getEvents() {
+        return mEvents;
+    }
+
+    long getFirstSeq() {
+        return mFirstSeq;
+    }
+
+    long getLastSeq() {
+        return mLastSeq;
+    }
+
+    boolean isEmpty() {
+        return mEvents.isEmpty();
+    }
+
+    /**
+     * @return number of log rows covered by the range, decoded or not
+     */
+    int rows() {
+        return mRows;
+    }
+}
@@ -4,44 +4,37 @@
 package com.openmediation.sdk.utils.event;
 
 import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.SdkScheduler;
 
-import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 class EventExecutor {
-    private final static ScheduledThreadPoolExecutor POOL;
-
-    static {
-        POOL = new ScheduledThreadPoolExecutor(30);
-        POOL.setKeepAliveTime(60, TimeUnit.SECONDS);
-        POOL.setRejectedExecutionHandler(new RejectedExecutionHandler() {
-            @Override
-            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-                DeveloperLog.LogD("execute rejected");
-            }
-        });
-    }
 
     private EventExecutor() {
     }
 
 
     public static ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
-        return POOL.scheduleWithFixedDelay(command, initialDelay, delay, unit);
+        return SdkScheduler.scheduleWithFixedDelay(SdkScheduler.Lane.EVENT, command, initialDelay, delay, unit);
     }
 
-    public static void execute(Runnable command) {
-        POOL.execute(command);
+    /**
+     * @return false if the event lane is full and the command was dropped
+     */
+    public static boolean execute(Runnable command) {
+        if (SdkScheduler.execute(SdkScheduler.Lane.EVENT, command)) {
+            return true;
+        }
+        DeveloperLog.LogW("EventExecutor event lane is full, dropped " + command);
+        return false;
     }
 
     public static ScheduledFuture<?> execute(Runnable command, long delay, TimeUnit unit) {
-        return POOL.schedule(command, delay, unit);
+        return SdkScheduler.schedule(SdkScheduler.Lane.EVENT, command, delay, unit);
     }
 
     public static void remove(Runnable runnable) {
-        POOL.remove(runnable);
+        SdkScheduler.remove(runnable);
     }
 }
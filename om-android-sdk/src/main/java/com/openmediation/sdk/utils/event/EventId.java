@@ -24,6 +24,9 @@ public interface EventId {
     int NO_MORE_OFFERS = 112;
     int AVAILABLE_FROM_CACHE = 113;
     int LOAD_BLOCKED = 114;
+    int WATERFALL_CACHE_HIT = 115;
+    int WATERFALL_CACHE_STALE = 116;
+    int WATERFALL_CACHE_MISS = 117;
     int ADVANCE = 119;
 
 
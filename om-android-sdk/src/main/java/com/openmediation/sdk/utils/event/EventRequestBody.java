@@ -0,0 +1,126 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.event;
+
+import android.util.JsonWriter;
+
+import com.openmediation.sdk.utils.JsonUtil;
+import com.openmediation.sdk.utils.cache.DataCache;
+import com.openmediation.sdk.utils.constant.CommonConstants;
+import com.openmediation.sdk.utils.constant.KeyConstants;
+import com.openmediation.sdk.utils.device.DeviceContext;
+import com.openmediation.sdk.utils.request.RequestBuilder;
+import com.openmediation.sdk.utils.request.network.Headers;
+import com.openmediation.sdk.utils.request.network.RequestBody;
+
+import org.json.JSONObject;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Event upload body that is encoded while it is written: the pre-encoded device fields of the
+ * {@link DeviceContext} snapshot and the events are streamed as JSON straight into a gzip stream
+ * on top of the connection, so no String or JSONObject tree of the batch is ever built. The
+ * length is unknown up front, the connection sends it chunked.
+ */
+class EventRequestBody implements RequestBody {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final List<Event> mEvents;
+    private long mWrittenBytes;
+
+    EventRequestBody(List<Event> events) {
+        mEvents = events;
+    }
+
+    @Override
+    public long length() {
+        return -1;
+    }
+
+    @Override
+    public String contentType() {
+        return Headers.VALUE_APPLICATION_JSON;
+    }
+
+    @Override
+    public void writeTo(OutputStream writer) throws IOException {
+        CountingOutputStream counting = new CountingOutputStream(writer);
+        GZIPOutputStream gzip = new GZIPOutputStream(counting, BUFFER_SIZE);
+        // the device fields are encoded once per snapshot, only the per-request ones are built here
+        byte[] prefix = DeviceContext.get().getBaseJsonPrefix();
+        String fields;
+        try {
+            JSONObject requestFields = new JSONObject();
+            RequestBuilder.appendRequestFields(requestFields);
+            JsonUtil.put(requestFields, KeyConstants.RequestBody.KEY_APPK,
+                    DataCache.getInstance().getFromMem(KeyConstants.KEY_APP_KEY, String.class));
+            fields = requestFields.toString();
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        gzip.write(prefix);
+        boolean hasMembers = prefix.length > 1;
+        Writer out = new OutputStreamWriter(gzip, Charset.forName(CommonConstants.CHARTSET_UTF8));
+        if (fields.length() > 2) {
+            if (hasMembers) {
+                out.write(',');
+            }
+            // the members without the braces
+            out.write(fields, 1, fields.length() - 2);
+            hasMembers = true;
+        }
+        if (hasMembers) {
+            out.write(',');
+        }
+        out.write("\"events\":");
+        JsonWriter json = new JsonWriter(out);
+        json.beginArray();
+        for (Event event : mEvents) {
+            event.writeTo(json);
+        }
+        json.endArray();
+        json.flush();
+        out.write('}');
+        out.flush();
+        gzip.finish();
+        counting.flush();
+        mWrittenBytes = counting.mCount;
+    }
+
+    /**
+     * @return compressed bytes written by the last {@link #writeTo(OutputStream)}
+     */
+    long getWrittenBytes() {
+        return mWrittenBytes;
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long mCount;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            mCount += len;
+        }
+    }
+}
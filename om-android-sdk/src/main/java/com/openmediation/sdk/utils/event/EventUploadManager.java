@@ -4,10 +4,13 @@
 package com.openmediation.sdk.utils.event;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.text.TextUtils;
 
 import com.openmediation.sdk.utils.AdtUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.IOUtil;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.constant.CommonConstants;
 import com.openmediation.sdk.utils.crash.CrashUtil;
 import com.openmediation.sdk.utils.model.Configurations;
@@ -15,33 +18,49 @@ import com.openmediation.sdk.utils.model.Events;
 import com.openmediation.sdk.utils.request.HeaderUtils;
 import com.openmediation.sdk.utils.request.RequestBuilder;
 import com.openmediation.sdk.utils.request.network.AdRequest;
-import com.openmediation.sdk.utils.request.network.ByteRequestBody;
 import com.openmediation.sdk.utils.request.network.Headers;
 import com.openmediation.sdk.utils.request.network.Request;
+import com.openmediation.sdk.utils.request.network.RequestBody;
 import com.openmediation.sdk.utils.request.network.Response;
 
 import org.json.JSONObject;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The type Event upload manager.
  */
-public class EventUploadManager implements Request.OnRequestCallback {
+public class EventUploadManager {
 
-    private AtomicBoolean isReporting = new AtomicBoolean(false);
-    private AtomicInteger mMaxReportEventsCount = new AtomicInteger(5);
-    private ConcurrentLinkedQueue<Event> mEvents;
+    private static final int TRIM_CHECK_INTERVAL = 200;
+
+    private EventUploadPolicy mUploadPolicy = new EventUploadPolicy();
+    /**
+     * Events in the log that have not been acknowledged by the server
+     */
+    private AtomicInteger mPendingCount = new AtomicInteger(0);
+    /**
+     * Uploads waiting for the server and the log rows they cover
+     */
+    private AtomicInteger mInFlight = new AtomicInteger(0);
+    private AtomicInteger mInFlightRows = new AtomicInteger(0);
+    /**
+     * Failed batches, sent again before anything new is read from the log
+     */
+    private ConcurrentLinkedQueue<EventBatch> mRetryBatches = new ConcurrentLinkedQueue<>();
+    /**
+     * Highest sequence id handed to an upload, the next batch starts after it
+     */
+    private AtomicLong mDispatchedSeq = new AtomicLong(0);
+    private AtomicInteger mAddedSinceTrim = new AtomicInteger(0);
     private ConcurrentLinkedQueue<Event> mDelayEvents;
     private DataBaseEventsStorage mEventDataBase;
     private List<Integer> mAllowedEvents;
-    private ConcurrentLinkedQueue<Event> mReportEvents;
     private Events mEventsSettings;
 
     private EventUploadManager() {
@@ -66,9 +85,7 @@ public class EventUploadManager implements Request.OnRequestCallback {
      * @param context the context
      */
     public void init(final Context context) {
-        mEvents = new ConcurrentLinkedQueue<>();
         mDelayEvents = new ConcurrentLinkedQueue<>();
-        mReportEvents = new ConcurrentLinkedQueue<>();
         if (mEventDataBase == null) {
             mEventDataBase = DataBaseEventsStorage.getInstance(context, CommonConstants.DB_NAME, CommonConstants.DB_VERSION);
             mEventDataBase.createTable();
@@ -77,13 +94,12 @@ public class EventUploadManager implements Request.OnRequestCallback {
     }
 
     /**
-     *
+     * Events left from the last session stay on disk, only the log size is restored
      */
     private void loadEvents() {
-        if (mEvents == null) {
-            mEvents = new ConcurrentLinkedQueue<>();
-        }
-        mEvents.addAll(mEventDataBase.loadEvents());
+        mEventDataBase.trim(DataBaseEventsStorage.MAX_STORED_EVENTS, DataBaseEventsStorage.MAX_STORED_BYTES);
+        mPendingCount.set(mEventDataBase.count());
+        DeveloperLog.LogD("pending events: " + mPendingCount.get());
     }
 
     /**
@@ -148,33 +164,46 @@ public class EventUploadManager implements Request.OnRequestCallback {
         if (!mAllowedEvents.contains(event.getEid())) {//not in allowed list
             return;
         }
-        if (mEvents == null) {
-            mEvents = new ConcurrentLinkedQueue<>();
-        }
-        DeveloperLog.LogD("save event " + event.toString());
-        mEvents.add(event);
-        if (mEventDataBase != null) {
-            mEventDataBase.addEvent(event);
+        if (!saveEvent(event)) {
+            return;
         }
-        if (mEvents.size() >= mMaxReportEventsCount.get()/* && NetworkChecker.isAvailable(AdtUtil.getApplication())*/) {
+        if (hasEnoughUnsentEvents()/* && NetworkChecker.isAvailable(AdtUtil.getApplication())*/) {
             DeveloperLog.LogD("update events by reached max events count");
             uploadEvents();
         }
     }
 
     private void flushEvents(Event event) {
-        if (mEvents == null) {
-            mEvents = new ConcurrentLinkedQueue<>();
-        }
-        DeveloperLog.LogD("save event " + event.toString());
-        mEvents.add(event);
-        if (mEventDataBase != null) {
-            mEventDataBase.addEvent(event);
+        if (!saveEvent(event)) {
+            return;
         }
         DeveloperLog.LogD("update events by reached max events count");
         uploadEvents();
     }
 
+    /**
+     * Appends the event to the log, evicting the oldest events once in a while to keep it bounded
+     */
+    private boolean saveEvent(Event event) {
+        if (mEventDataBase == null) {
+            return false;
+        }
+        DeveloperLog.LogD("save event " + event.toString());
+        if (mEventDataBase.addEvent(event) < 0) {
+            return false;
+        }
+        mPendingCount.incrementAndGet();
+        if (mAddedSinceTrim.incrementAndGet() >= TRIM_CHECK_INTERVAL) {
+            mAddedSinceTrim.set(0);
+            int evicted = mEventDataBase.trim(DataBaseEventsStorage.MAX_STORED_EVENTS,
+                    DataBaseEventsStorage.MAX_STORED_BYTES);
+            if (evicted > 0) {
+                mPendingCount.set(mEventDataBase.count());
+            }
+        }
+        return true;
+    }
+
     /**
      * Update report settings.
      *
@@ -186,7 +215,7 @@ public class EventUploadManager implements Request.OnRequestCallback {
             return;
         }
         mEventsSettings = configurations.getEvents();
-        mMaxReportEventsCount.set(mEventsSettings.getMn());
+        mUploadPolicy.setBaseBatchSize(mEventsSettings.getMn());
         if (mEventsSettings.getIds() != null) {
             mAllowedEvents.addAll(mEventsSettings.getIds());
         }
@@ -222,93 +251,115 @@ public class EventUploadManager implements Request.OnRequestCallback {
         return event;
     }
 
-    private void internalUpload(byte[] body) {
+    private boolean internalUpload(RequestBody body, Request.OnRequestCallback callback) {
         String url = RequestBuilder.buildEventUrl(mEventsSettings.getUrl());
         if (TextUtils.isEmpty(url)) {
-            return;
+            return false;
         }
-        ByteRequestBody requestBody = new ByteRequestBody(body);
         Headers headers = HeaderUtils.getBaseHeaders();
-        AdRequest.post().url(url).body(requestBody).headers(headers).connectTimeout(50000)
+        AdRequest.post().url(url).body(body).headers(headers).connectTimeout(50000)
                 .readTimeout(100000)
-                .callback(this)
+                .callback(callback)
+                .lane(SdkScheduler.Lane.UPLOAD)
                 .performRequest(AdtUtil.getInstance().getApplicationContext());
+        return true;
+    }
+
+    private boolean hasEnoughUnsentEvents() {
+        return mPendingCount.get() - mInFlightRows.get() >= mUploadPolicy.getThreshold();
     }
 
     /**
-     *
+     * Starts uploads until the in-flight limit of the current network is reached. Failed batches
+     * go first, then the oldest events after the upload cursor. A batch stays in the log until
+     * the server acknowledges it.
      */
-    private void uploadEvents() {
+    private synchronized void uploadEvents() {
         try {
             if (mEventsSettings == null || TextUtils.isEmpty(mEventsSettings.getUrl())
-                    || mEvents == null || mEvents.isEmpty() || isReporting.get()) {
+                    || mEventDataBase == null || mPendingCount.get() <= 0) {
                 return;
             }
-            isReporting.set(true);
-            Iterator<Event> iterator = mEvents.iterator();
-            int i = 0;
-            while (i < mMaxReportEventsCount.get()) {
-                if (iterator.hasNext()) {
-                    mReportEvents.add(iterator.next());
+            int maxInFlight = mUploadPolicy.getMaxInFlight();
+            while (mInFlight.get() < maxInFlight) {
+                EventBatch batch = mRetryBatches.poll();
+                if (batch == null) {
+                    batch = mEventDataBase.loadEvents(mDispatchedSeq.get(), mUploadPolicy.getBatchSize());
+                    if (batch.rows() == 0) {
+                        return;
+                    }
+                    mDispatchedSeq.set(batch.getLastSeq());
+                }
+                mInFlight.incrementAndGet();
+                mInFlightRows.addAndGet(batch.rows());
+                EventRequestBody body = new EventRequestBody(batch.getEvents());
+                if (!internalUpload(body, new BatchCallback(batch, body))) {
+                    finishBatch(batch);
+                    mRetryBatches.offer(batch);
+                    return;
                 }
-                i++;
-            }
-            if (mReportEvents.isEmpty()) {
-                return;
-            }
-            byte[] body = RequestBuilder.buildEventRequestBody(mReportEvents);
-            if (body == null) {
-                DeveloperLog.LogD("build events request data error");
-                return;
             }
-
-            internalUpload(body);
-            clearEvents();
         } catch (Exception e) {
-            isReporting.set(false);
             DeveloperLog.LogD("update events exception : " + e.getMessage());
             CrashUtil.getSingleton().saveException(e);
         }
     }
 
-    /**
-     *
-     */
-    private void clearEvents() {
-        if (mReportEvents.isEmpty()) {
-            return;
-        }
-        if (mEvents != null) {
-            mEvents.removeAll(mReportEvents);
-        }
-        if (mEventDataBase != null) {
-            mEventDataBase.clearEvents(mReportEvents);
-        }
-
-        mReportEvents.clear();
+    private void finishBatch(EventBatch batch) {
+        mInFlight.decrementAndGet();
+        mInFlightRows.addAndGet(-batch.rows());
     }
 
-    @Override
-    public void onRequestSuccess(Response response) {
-        isReporting.set(false);
-        if (mEvents.size() >= mMaxReportEventsCount.get() /*&& NetworkChecker.isAvailable(AdtUtil.getApplication())*/) {
-            DeveloperLog.LogD("update events after upload success");
-            uploadEvents();
+    private class BatchCallback implements Request.OnRequestCallback {
+        private final EventBatch mBatch;
+        private final EventRequestBody mBody;
+        private final long mStart;
+
+        BatchCallback(EventBatch batch, EventRequestBody body) {
+            mBatch = batch;
+            mBody = body;
+            mStart = SystemClock.elapsedRealtime();
         }
-    }
 
-    @Override
-    public void onRequestFailed(String error) {
-        //
-        DeveloperLog.LogD("uploadEvent error : " + error);
-        //
-        isReporting.set(false);
+        @Override
+        public void onRequestSuccess(Response response) {
+            IOUtil.closeQuietly(response);
+            long latency = SystemClock.elapsedRealtime() - mStart;
+            // acknowledged inline, a small delete, so a full event lane cannot drop it and leave
+            // the batch in flight
+            mEventDataBase.deleteEvents(mBatch.getFirstSeq(), mBatch.getLastSeq());
+            finishBatch(mBatch);
+            if (mPendingCount.addAndGet(-mBatch.rows()) < 0) {
+                mPendingCount.set(mEventDataBase.count());
+            }
+            mUploadPolicy.onUploadSuccess(mBatch.rows(), mBody.getWrittenBytes(), latency);
+            if (hasEnoughUnsentEvents() || !mRetryBatches.isEmpty()/* && NetworkChecker.isAvailable(AdtUtil.getApplication())*/) {
+                DeveloperLog.LogD("update events after upload success");
+                // if the lane is full the interval upload sends the next batch
+                EventExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        uploadEvents();
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void onRequestFailed(String error) {
+            //
+            DeveloperLog.LogD("uploadEvent error : " + error);
+            //
+            mUploadPolicy.onUploadFailed();
+            finishBatch(mBatch);
+            mRetryBatches.offer(mBatch);
+        }
     }
 
     private class EventRunnable implements Runnable {
         @Override
         public void run() {
-            if (!mEvents.isEmpty()) {
+            if (mPendingCount.get() - mInFlightRows.get() > 0 || !mRetryBatches.isEmpty()) {
                 DeveloperLog.LogD("upload events by reached interval");
                 uploadEvents();
             }
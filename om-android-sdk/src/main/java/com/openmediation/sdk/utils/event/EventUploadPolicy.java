@@ -0,0 +1,103 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.event;
+
+import com.openmediation.sdk.utils.AdtUtil;
+import com.openmediation.sdk.utils.request.network.util.NetworkChecker;
+
+/**
+ * Adapts the event batch size and the number of concurrent uploads to the measured upload
+ * latency, the compressed bytes per event and the current network type. The server's mn is the
+ * starting point: fast uploads grow the batch, slow or failed ones halve it.
+ */
+class EventUploadPolicy {
+
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final double EWMA_WEIGHT = 0.3;
+
+    private int mBaseSize = 5;
+    private int mBatchSize = 5;
+    private double mBytesPerEvent = -1;
+    private double mLatency = -1;
+
+    synchronized void setBaseBatchSize(int mn) {
+        mBaseSize = Math.max(1, mn);
+        mBatchSize = mBaseSize;
+    }
+
+    /**
+     * Pending events needed before an upload is triggered
+     */
+    synchronized int getThreshold() {
+        return mBaseSize;
+    }
+
+    synchronized int getBatchSize() {
+        NetProfile profile = currentProfile();
+        int size = mBatchSize;
+        if (mBytesPerEvent > 0) {
+            size = Math.min(size, (int) (profile.mByteBudget / mBytesPerEvent));
+        }
+        return clamp(size);
+    }
+
+    int getMaxInFlight() {
+        return currentProfile().mMaxInFlight;
+    }
+
+    synchronized void onUploadSuccess(int events, long bytes, long latencyMillis) {
+        if (events <= 0) {
+            return;
+        }
+        if (bytes > 0) {
+            double perEvent = (double) bytes / events;
+            mBytesPerEvent = mBytesPerEvent < 0 ? perEvent : mBytesPerEvent + EWMA_WEIGHT * (perEvent - mBytesPerEvent);
+        }
+        mLatency = mLatency < 0 ? latencyMillis : mLatency + EWMA_WEIGHT * (latencyMillis - mLatency);
+        long target = currentProfile().mTargetLatency;
+        if (mLatency < target) {
+            mBatchSize = clamp(mBatchSize + Math.max(1, mBatchSize / 2));
+        } else if (mLatency > target * 2) {
+            mBatchSize = clamp(mBatchSize / 2);
+        }
+    }
+
+    synchronized void onUploadFailed() {
+        mBatchSize = clamp(mBatchSize / 2);
+    }
+
+    private int clamp(int size) {
+        int min = Math.max(1, mBaseSize / 4);
+        int max = Math.min(MAX_BATCH_SIZE, mBaseSize * 8);
+        return Math.max(min, Math.min(max, size));
+    }
+
+    private static NetProfile currentProfile() {
+        int type = NetworkChecker.getConnectType(AdtUtil.getInstance().getApplicationContext());
+        if (type == NetworkChecker.NetType.WIFI.getValue()
+                || type == NetworkChecker.NetType.ETHERNET.getValue()
+                || type >= NetworkChecker.NetType.MOBILE_4G.getValue()) {
+            return NetProfile.FAST;
+        } else if (type == NetworkChecker.NetType.MOBILE_3G.getValue()) {
+            return NetProfile.MEDIUM;
+        }
+        return NetProfile.SLOW;
+    }
+
+    private enum NetProfile {
+        FAST(256 * 1024, 3000, 3),
+        MEDIUM(64 * 1024, 5000, 2),
+        SLOW(16 * 1024, 8000, 1);
+
+        private final long mByteBudget;
+        private final long mTargetLatency;
+        private final int mMaxInFlight;
+
+        NetProfile(long byteBudget, long targetLatency, int maxInFlight) {
+            mByteBudget = byteBudget;
+            mTargetLatency = targetLatency;
+            mMaxInFlight = maxInFlight;
+        }
+    }
+}
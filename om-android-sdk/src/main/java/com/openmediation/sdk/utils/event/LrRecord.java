@@ -0,0 +1,111 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.event;
+
+import android.util.JsonWriter;
+
+import com.openmediation.sdk.utils.JsonUtil;
+import com.openmediation.sdk.utils.constant.KeyConstants;
+import com.openmediation.sdk.utils.model.BaseInstance;
+import com.openmediation.sdk.utils.model.MediationRule;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * One LR report, with the values it had when it was reported.
+ * <p>
+ * The fields are the ones a single LR request used to carry on top of the base body, plus the
+ * time it was reported at, so a record keeps its meaning while it waits in a batch or on disk.
+ */
+class LrRecord {
+
+    private final JSONObject mFields;
+    private final long mTs;
+    private final int mSize;
+
+    LrRecord(String reqId, int ruleId, BaseInstance instance, int placementId, int sceneId,
+             int loadType, int mediationId, int instanceId, int abt, int abtId, int reportType, int bid) {
+        mFields = new JSONObject();
+        if (instance != null) {
+            JsonUtil.put(mFields, KeyConstants.RequestBody.KEY_REQ_ID, instance.getReqId());
+            JsonUtil.put(mFields, KeyConstants.RequestBody.KEY_INSTANCE_REVENUE, instance.getRevenue());
+            JsonUtil.put(mFields, KeyConstants.RequestBody.KEY_INSTANCE_PRECISION, instance.getRevenuePrecision());
+            JsonUtil.put(mFields, KeyConstants.RequestBody.KEY_INSTANCE_PRIORITY, instance.getPriority());
+            MediationRule rule = instance.getMediationRule();
+            if (rule != null) {
+                JsonUtil.put(mFields, KeyConstants.RequestBody.KEY_RULE_ID, rule.getId());
+            }
+        } else {
+            JsonUtil.put(mFields, KeyConstants.RequestBody.KEY_REQ_ID, reqId);
+            JsonUtil.put(mFields, KeyConstants.RequestBody.KEY_RULE_ID, ruleId);
+        }
+        JsonUtil.put(mFields, KeyConstants.RequestBody.KEY_PID, placementId);
+        JsonUtil.put(mFields, KeyConstants.RequestBody.KEY_SCENE, sceneId);
+        JsonUtil.put(mFields, KeyConstants.RequestBody.KEY_ACT, loadType);
+        JsonUtil.put(mFields, KeyConstants.RequestBody.KEY_MID, mediationId);
+        JsonUtil.put(mFields, KeyConstants.RequestBody.KEY_IID, instanceId);
+        JsonUtil.put(mFields, "abt", abt);
+        JsonUtil.put(mFields, KeyConstants.RequestBody.KEY_TYPE, reportType);
+        if (bid == 1) {
+            JsonUtil.put(mFields, KeyConstants.RequestBody.KEY_BID, bid);
+        }
+        JsonUtil.put(mFields, "abtId", abtId);
+        mTs = System.currentTimeMillis();
+        JsonUtil.put(mFields, KeyConstants.RequestBody.KEY_TS, mTs);
+        mSize = mFields.toString().length();
+    }
+
+    /**
+     * Restores a record saved by {@link #toJson()}
+     */
+    LrRecord(String jsonStr) throws Exception {
+        mFields = new JSONObject(jsonStr);
+        mTs = mFields.optLong(KeyConstants.RequestBody.KEY_TS, System.currentTimeMillis());
+        mSize = jsonStr.length();
+    }
+
+    /**
+     * @return the time the record was reported at, in millis
+     */
+    long getTs() {
+        return mTs;
+    }
+
+    /**
+     * @return approximate json length of the record
+     */
+    int size() {
+        return mSize;
+    }
+
+    void writeTo(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        JsonUtil.writeFields(writer, mFields);
+        writer.endObject();
+    }
+
+    /**
+     * Puts the fields into the body of a single LR request
+     */
+    void putTo(JSONObject body) throws JSONException {
+        Iterator<String> keys = mFields.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            body.put(key, mFields.opt(key));
+        }
+    }
+
+    String toJson() {
+        return mFields.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
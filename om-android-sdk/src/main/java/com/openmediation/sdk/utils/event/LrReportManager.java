@@ -0,0 +1,529 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.event;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import com.openmediation.sdk.utils.AdtUtil;
+import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.IOUtil;
+import com.openmediation.sdk.utils.SdkScheduler;
+import com.openmediation.sdk.utils.SdkTimer;
+import com.openmediation.sdk.utils.cache.DataCache;
+import com.openmediation.sdk.utils.constant.CommonConstants;
+import com.openmediation.sdk.utils.constant.KeyConstants;
+import com.openmediation.sdk.utils.crash.CrashUtil;
+import com.openmediation.sdk.utils.model.BaseInstance;
+import com.openmediation.sdk.utils.model.Configurations;
+import com.openmediation.sdk.utils.request.HeaderUtils;
+import com.openmediation.sdk.utils.request.RequestBuilder;
+import com.openmediation.sdk.utils.request.network.AdRequest;
+import com.openmediation.sdk.utils.request.network.Request;
+import com.openmediation.sdk.utils.request.network.Response;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collects LR reports and posts them, one per request or in batches if the config enables it.
+ * <p>
+ * Reports, upload results and flush timeouts are handed to a single drain task on the event lane.
+ * A hand-off the lane rejects stays pending and is posted again later, so no report is lost to a
+ * full lane. Reports wait in a bounded queue and are sent with one request in flight: each on its
+ * own, or with {@link Configurations#lrBatchEnabled()} together once {@link #BATCH_COUNT} of them
+ * or {@link #BATCH_BYTES} of json have queued up, or {@link #FLUSH_DELAY} after the first one.
+ * Reports that could not be sent, or that overflow the queue, go to {@link DataBaseLrStorage} and
+ * are sent first, oldest first, with the retries backing off exponentially. The time from report
+ * to server ack of every report is kept in {@link Metrics}.
+ */
+public class LrReportManager {
+
+    private static final String TAG = "LrReportManager";
+
+    /**
+     * Reports kept in memory before they are moved to disk
+     */
+    private static final int MAX_QUEUED = 200;
+    private static final int BATCH_COUNT = 20;
+    private static final int BATCH_BYTES = 32 * 1024;
+    /**
+     * Max reports per request when catching up from disk
+     */
+    private static final int MAX_BATCH_COUNT = 100;
+    private static final long FLUSH_DELAY = TimeUnit.SECONDS.toMillis(5);
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(10);
+    /**
+     * Reports acked later than this after being reported are counted as late
+     */
+    private static final long LATENCY_SLA = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Reports and upload results handed over by other threads, taken by the drain task
+     */
+    private final ConcurrentLinkedQueue<LrRecord> mIncoming = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<UploadCallback> mDone = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean isDrainPosted = new AtomicBoolean();
+
+    private final ArrayDeque<LrRecord> mQueue = new ArrayDeque<>();
+    private int mQueuedBytes;
+    private DataBaseLrStorage mStorage;
+    private boolean isStorageOpened;
+    private int mStoredCount;
+    private boolean isInFlight;
+    private SdkTimer.Timeout mFlushTimeout;
+    /**
+     * Failed uploads in a row
+     */
+    private int mFailures;
+
+    private long mSent;
+    private long mFailedUploads;
+    private long mDropped;
+    private long mTotalLatency;
+    private long mMaxLatency;
+    private long mLastLatency;
+    private long mLate;
+
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            isDrainPosted.set(false);
+            drain();
+        }
+    };
+
+    /**
+     * Runs on the timer thread
+     */
+    private final Runnable mDispatchTask = new Runnable() {
+        @Override
+        public void run() {
+            dispatchDrain();
+        }
+    };
+
+    /**
+     * Runs on the timer thread when a flush is due
+     */
+    private final Runnable mFlushDueTask = new Runnable() {
+        @Override
+        public void run() {
+            postDrain();
+        }
+    };
+
+    private LrReportManager() {
+    }
+
+    private static class LrReportHolder {
+        private static final LrReportManager INSTANCE = new LrReportManager();
+    }
+
+    public static LrReportManager getInstance() {
+        return LrReportHolder.INSTANCE;
+    }
+
+    /**
+     * Opens the storage and sends the reports left from the last session
+     *
+     * @param context the context
+     */
+    public void init(Context context) {
+        synchronized (this) {
+            if (mStorage != null) {
+                return;
+            }
+            mStorage = DataBaseLrStorage.getInstance(context, CommonConstants.DB_NAME, CommonConstants.DB_VERSION);
+        }
+        postDrain();
+    }
+
+    /**
+     * Queues a report, the values are taken now
+     */
+    public void report(String reqId, int ruleId, BaseInstance instance, int placementId, int sceneId,
+                       int loadType, int mediationId, int instanceId, int abt, int abtId,
+                       int reportType, int bid) {
+        final LrRecord record = new LrRecord(reqId, ruleId, instance, placementId, sceneId, loadType,
+                mediationId, instanceId, abt, abtId, reportType, bid);
+        DeveloperLog.LogD("lr params:" + record);
+        mIncoming.add(record);
+        postDrain();
+    }
+
+    public synchronized Metrics getMetrics() {
+        return new Metrics(this);
+    }
+
+    /**
+     * Posts the drain task unless it is pending already
+     */
+    private void postDrain() {
+        if (isDrainPosted.compareAndSet(false, true)) {
+            dispatchDrain();
+        }
+    }
+
+    /**
+     * Posts the pending drain task, or tries again later if the event lane is full
+     */
+    private void dispatchDrain() {
+        if (!EventExecutor.execute(mDrainTask)) {
+            SdkTimer.schedule(mDispatchTask, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Takes everything handed over since the last run, on the event lane
+     */
+    private synchronized void drain() {
+        if (mStorage != null && !isStorageOpened) {
+            openStorage();
+        }
+        UploadCallback done;
+        while ((done = mDone.poll()) != null) {
+            if (done.isSuccess) {
+                onUploadSuccess(done.mRecords, done.mStored);
+            } else {
+                onUploadFailed(done.mRecords, done.mStored);
+            }
+        }
+        LrRecord record;
+        while ((record = mIncoming.poll()) != null) {
+            enqueue(record);
+        }
+        if (mFlushTimeout != null && mFlushTimeout.isExpired()) {
+            mFlushTimeout = null;
+            flush();
+        }
+    }
+
+    private void openStorage() {
+        isStorageOpened = true;
+        mStorage.createTable();
+        mDropped += mStorage.trim(DataBaseLrStorage.MAX_STORED_RECORDS);
+        mStoredCount = mStorage.count();
+        DeveloperLog.LogD(TAG + " stored lrs: " + mStoredCount);
+        if (mStoredCount > 0 && mFlushTimeout == null) {
+            scheduleFlush(FLUSH_DELAY);
+        }
+    }
+
+    private void enqueue(LrRecord record) {
+        if (mQueue.size() >= MAX_QUEUED) {
+            spill();
+        }
+        mQueue.add(record);
+        mQueuedBytes += record.size();
+        if (mFailures == 0 && (!isBatchEnabled() || isBatchFull())) {
+            flush();
+        } else if (mFlushTimeout == null) {
+            scheduleFlush(FLUSH_DELAY);
+        }
+    }
+
+    /**
+     * Moves the queue to disk, or drops the oldest report without storage
+     */
+    private void spill() {
+        if (mStorage == null) {
+            LrRecord oldest = mQueue.poll();
+            if (oldest != null) {
+                mQueuedBytes -= oldest.size();
+                mDropped++;
+            }
+            return;
+        }
+        store(new ArrayList<>(mQueue));
+        mQueue.clear();
+        mQueuedBytes = 0;
+    }
+
+    private void store(List<LrRecord> records) {
+        int stored = mStorage.add(records);
+        mDropped += records.size() - stored;
+        mStoredCount += stored;
+        if (mStoredCount > DataBaseLrStorage.MAX_STORED_RECORDS) {
+            int evicted = mStorage.trim(DataBaseLrStorage.MAX_STORED_RECORDS);
+            mDropped += evicted;
+            mStoredCount -= evicted;
+        }
+    }
+
+    private void scheduleFlush(long delay) {
+        if (mFlushTimeout != null) {
+            mFlushTimeout.cancel();
+        }
+        mFlushTimeout = SdkTimer.schedule(mFlushDueTask, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean isBatchFull() {
+        return mQueue.size() >= BATCH_COUNT || mQueuedBytes >= BATCH_BYTES;
+    }
+
+    /**
+     * Sends the next report, or batch of them, unless a request is in flight: stored reports
+     * first, then the queue
+     */
+    private void flush() {
+        if (mFlushTimeout != null) {
+            mFlushTimeout.cancel();
+            mFlushTimeout = null;
+        }
+        if (isInFlight || (mQueue.isEmpty() && mStoredCount <= 0)) {
+            return;
+        }
+        DataBaseLrStorage.Batch stored = null;
+        List<LrRecord> records = null;
+        try {
+            String lrUrl = getLrUrl();
+            if (TextUtils.isEmpty(lrUrl)) {
+                // not initialized yet
+                scheduleFlush(FLUSH_DELAY);
+                return;
+            }
+            boolean batch = isBatchEnabled();
+            int limit = batch ? MAX_BATCH_COUNT : 1;
+            while (mStoredCount > 0 && mStorage != null) {
+                stored = mStorage.load(limit);
+                if (stored.isEmpty()) {
+                    mStoredCount = 0;
+                    stored = null;
+                    break;
+                }
+                if (!stored.getRecords().isEmpty()) {
+                    records = stored.getRecords();
+                    break;
+                }
+                mStorage.delete(stored.getFirstSeq(), stored.getLastSeq());
+                mStoredCount = mStorage.count();
+                stored = null;
+            }
+            if (records == null) {
+                records = new ArrayList<>();
+                while (!mQueue.isEmpty() && records.size() < limit) {
+                    LrRecord record = mQueue.poll();
+                    mQueuedBytes -= record.size();
+                    records.add(record);
+                }
+            }
+            if (records.isEmpty()) {
+                return;
+            }
+            isInFlight = true;
+            AdRequest.post()
+                    .url(lrUrl)
+                    .headers(HeaderUtils.getBaseHeaders())
+                    .body(batch ? new LrRequestBody(records) : new LrRequestBody(records.get(0)))
+                    .connectTimeout(30000)
+                    .readTimeout(60000)
+                    .instanceFollowRedirects(true)
+                    .callback(new UploadCallback(records, stored))
+                    .lane(SdkScheduler.Lane.UPLOAD)
+                    .performRequest(AdtUtil.getInstance().getApplicationContext());
+        } catch (Exception e) {
+            DeveloperLog.LogE("httpLr error ", e);
+            CrashUtil.getSingleton().saveException(e);
+            if (records != null && !records.isEmpty()) {
+                // the reports are off the queue already, kept and retried like a failed upload
+                onUploadFailed(records, stored);
+            } else {
+                isInFlight = false;
+            }
+        }
+    }
+
+    private String getLrUrl() {
+        Configurations config = DataCache.getInstance().getFromMem(KeyConstants.KEY_CONFIGURATION, Configurations.class);
+        if (config == null || config.getApi() == null || TextUtils.isEmpty(config.getApi().getLr())) {
+            return null;
+        }
+        return RequestBuilder.buildLrUrl(config.getApi().getLr());
+    }
+
+    private boolean isBatchEnabled() {
+        Configurations config = DataCache.getInstance().getFromMem(KeyConstants.KEY_CONFIGURATION, Configurations.class);
+        return config != null && config.lrBatchEnabled();
+    }
+
+    private void onUploadSuccess(List<LrRecord> records, DataBaseLrStorage.Batch stored) {
+        isInFlight = false;
+        mFailures = 0;
+        if (stored != null) {
+            mStorage.delete(stored.getFirstSeq(), stored.getLastSeq());
+            mStoredCount = mStorage.count();
+        }
+        long now = System.currentTimeMillis();
+        for (LrRecord record : records) {
+            long latency = Math.max(0, now - record.getTs());
+            mSent++;
+            mTotalLatency += latency;
+            mMaxLatency = Math.max(mMaxLatency, latency);
+            mLastLatency = latency;
+            if (latency > LATENCY_SLA) {
+                mLate++;
+            }
+        }
+        DeveloperLog.LogD(TAG + " " + new Metrics(this));
+        if (mStoredCount > 0 || (!mQueue.isEmpty() && !isBatchEnabled()) || isBatchFull()) {
+            flush();
+        } else if (!mQueue.isEmpty() && mFlushTimeout == null) {
+            scheduleFlush(FLUSH_DELAY);
+        }
+    }
+
+    private void onUploadFailed(List<LrRecord> records, DataBaseLrStorage.Batch stored) {
+        isInFlight = false;
+        mFailedUploads++;
+        mFailures++;
+        if (stored == null) {
+            if (mStorage != null) {
+                // keep the batch and whatever queued up behind it through an offline period
+                store(records);
+                spill();
+            } else {
+                for (int i = records.size() - 1; i >= 0; i--) {
+                    mQueue.addFirst(records.get(i));
+                    mQueuedBytes += records.get(i).size();
+                }
+                while (mQueue.size() > MAX_QUEUED) {
+                    mQueuedBytes -= mQueue.pollLast().size();
+                    mDropped++;
+                }
+            }
+        }
+        long delay = FLUSH_DELAY << Math.min(mFailures - 1, 16);
+        scheduleFlush(Math.min(delay, MAX_RETRY_DELAY));
+    }
+
+    /**
+     * Hands the result of an upload over to the drain task
+     */
+    private class UploadCallback implements Request.OnRequestCallback {
+        private final List<LrRecord> mRecords;
+        private final DataBaseLrStorage.Batch mStored;
+        private boolean isSuccess;
+
+        UploadCallback(List<LrRecord> records, DataBaseLrStorage.Batch stored) {
+            mRecords = records;
+            mStored = stored;
+        }
+
+        @Override
+        public void onRequestSuccess(Response response) {
+            IOUtil.closeQuietly(response);
+            isSuccess = true;
+            mDone.add(this);
+            postDrain();
+        }
+
+        @Override
+        public void onRequestFailed(final String error) {
+            DeveloperLog.LogD("httpLr error : " + error);
+            mDone.add(this);
+            postDrain();
+        }
+    }
+
+    /**
+     * Point-in-time metrics of LR reporting
+     */
+    public static final class Metrics {
+        private final int mQueued;
+        private final int mStored;
+        private final long mSent;
+        private final long mFailedUploads;
+        private final long mDropped;
+        private final long mAvgLatencyMillis;
+        private final long mMaxLatencyMillis;
+        private final long mLastLatencyMillis;
+        private final long mLate;
+
+        private Metrics(LrReportManager manager) {
+            mQueued = manager.mQueue.size() + manager.mIncoming.size();
+            mStored = manager.mStoredCount;
+            mSent = manager.mSent;
+            mFailedUploads = manager.mFailedUploads;
+            mDropped = manager.mDropped;
+            mAvgLatencyMillis = manager.mSent == 0 ? 0 : manager.mTotalLatency / manager.mSent;
+            mMaxLatencyMillis = manager.mMaxLatency;
+            mLastLatencyMillis = manager.mLastLatency;
+            mLate = manager.mLate;
+        }
+
+        /**
+         * @return reports waiting in memory
+         */
+        public int getQueued() {
+            return mQueued;
+        }
+
+        /**
+         * @return reports waiting on disk
+         */
+        public int getStored() {
+            return mStored;
+        }
+
+        /**
+         * @return reports acked by the server
+         */
+        public long getSent() {
+            return mSent;
+        }
+
+        public long getFailedUploads() {
+            return mFailedUploads;
+        }
+
+        /**
+         * @return reports evicted before they could be sent
+         */
+        public long getDropped() {
+            return mDropped;
+        }
+
+        /**
+         * @return average time from report to server ack
+         */
+        public long getAvgLatencyMillis() {
+            return mAvgLatencyMillis;
+        }
+
+        public long getMaxLatencyMillis() {
+            return mMaxLatencyMillis;
+        }
+
+        public long getLastLatencyMillis() {
+            return mLastLatencyMillis;
+        }
+
+        /**
+         * @return reports acked more than 30 seconds after being reported
+         */
+        public long getLate() {
+            return mLate;
+        }
+
+        @Override
+        public String toString() {
+            return "Metrics{" +
+                    "queued=" + mQueued +
+                    ", stored=" + mStored +
+                    ", sent=" + mSent +
+                    ", failedUploads=" + mFailedUploads +
+                    ", dropped=" + mDropped +
+                    ", avgLatencyMillis=" + mAvgLatencyMillis +
+                    ", maxLatencyMillis=" + mMaxLatencyMillis +
+                    ", lastLatencyMillis=" + mLastLatencyMillis +
+                    ", late=" + mLate +
+                    '}';
+        }
+    }
+}
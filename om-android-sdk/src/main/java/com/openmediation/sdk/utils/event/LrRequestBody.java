@@ -0,0 +1,86 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.event;
+
+import android.util.JsonWriter;
+
+import com.openmediation.sdk.utils.JsonUtil;
+import com.openmediation.sdk.utils.constant.CommonConstants;
+import com.openmediation.sdk.utils.request.RequestBuilder;
+import com.openmediation.sdk.utils.request.network.Headers;
+import com.openmediation.sdk.utils.request.network.RequestBody;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * LR upload body: the base body once, followed by the batch as an "lrs" array, streamed as
+ * JSON straight into gzip like {@link EventRequestBody}. A single report is sent the way LR
+ * requests always were, its fields on top of the base body.
+ */
+class LrRequestBody implements RequestBody {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final List<LrRecord> mRecords;
+    private final boolean isBatch;
+
+    LrRequestBody(List<LrRecord> records) {
+        mRecords = records;
+        isBatch = true;
+    }
+
+    LrRequestBody(LrRecord record) {
+        mRecords = Collections.singletonList(record);
+        isBatch = false;
+    }
+
+    @Override
+    public long length() {
+        return -1;
+    }
+
+    @Override
+    public String contentType() {
+        return Headers.VALUE_APPLICATION_JSON;
+    }
+
+    @Override
+    public void writeTo(OutputStream writer) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(writer, BUFFER_SIZE);
+        JsonWriter json = new JsonWriter(new OutputStreamWriter(gzip, Charset.forName(CommonConstants.CHARTSET_UTF8)));
+        json.beginObject();
+        try {
+            JSONObject base = RequestBuilder.getRequestBodyBaseJson();
+            if (!isBatch) {
+                // the record's ts replaces the base one
+                mRecords.get(0).putTo(base);
+            }
+            JsonUtil.writeFields(json, base);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        if (isBatch) {
+            json.name("lrs");
+            json.beginArray();
+            for (LrRecord record : mRecords) {
+                record.writeTo(json);
+            }
+            json.endArray();
+        }
+        json.endObject();
+        json.flush();
+        gzip.finish();
+        writer.flush();
+    }
+}
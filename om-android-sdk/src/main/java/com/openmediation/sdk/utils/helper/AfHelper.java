@@ -3,6 +3,7 @@ package com.openmediation.sdk.utils.helper;
 import android.text.TextUtils;
 
 import com.openmediation.sdk.utils.AdtUtil;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.WorkExecutor;
 import com.openmediation.sdk.utils.cache.DataCache;
 import com.openmediation.sdk.utils.constant.KeyConstants;
@@ -20,7 +21,7 @@ public class AfHelper {
         if (data == null) {
             return;
         }
-        WorkExecutor.execute(new Runnable() {
+        WorkExecutor.execute(SdkScheduler.Lane.HOUSEKEEPING, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -41,6 +42,7 @@ public class AfHelper {
                             .body(requestBody)
                             .connectTimeout(30000)
                             .readTimeout(60000)
+                            .lane(SdkScheduler.Lane.UPLOAD)
                             .performRequest(AdtUtil.getInstance().getApplicationContext());
                 } catch (Exception e) {
                     CrashUtil.getSingleton().saveException(e);
@@ -0,0 +1,407 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.helper;
+
+import android.content.Context;
+import android.util.SparseArray;
+
+import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.IOUtil;
+import com.openmediation.sdk.utils.crash.CrashUtil;
+import com.openmediation.sdk.utils.model.ApiConfigurations;
+import com.openmediation.sdk.utils.model.Configurations;
+import com.openmediation.sdk.utils.model.Events;
+import com.openmediation.sdk.utils.model.Mediation;
+import com.openmediation.sdk.utils.model.Placement;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of the init config, read at cold start instead of parsing the init response.
+ * <p>
+ * The file is [int magic][int version][int payload length][long crc32][payload], and is
+ * written to a temporary file and renamed so a crash never leaves half a snapshot. The payload
+ * holds the top level config field by field, then a directory of placements and finally every
+ * placement's json. Reading maps the file, checks it and decodes the top level only; a
+ * placement is decoded from its slice the first time it is used. A snapshot of another schema
+ * version or with a bad checksum is ignored.
+ */
+public final class ConfigSnapshot {
+
+    private static final int MAGIC = 0x4F4D4346;
+    private static final int VERSION = 3;
+    private static final int HEADER = 20;
+    private static final String DIR = "om_config";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private ConfigSnapshot() {
+    }
+
+    /**
+     * Writes the snapshot of config
+     *
+     * @param context the context
+     * @param key     identifies the config, the init url
+     * @param config  the parsed config
+     * @return true if it was written
+     */
+    public static boolean write(Context context, String key, Configurations config) {
+        File file = getFile(context, key);
+        if (file == null || config == null) {
+            return false;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream output = null;
+        try {
+            byte[] payload = encode(key, config);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(VERSION).putInt(payload.length).putLong(crc.getValue());
+            output = new FileOutputStream(tmp);
+            output.write(header.array());
+            output.write(payload);
+            output.flush();
+            output.getFD().sync();
+            IOUtil.closeQuietly(output);
+            output = null;
+            if (!tmp.renameTo(file)) {
+                throw new IOException("rename failed: " + file);
+            }
+            return true;
+        } catch (Exception e) {
+            DeveloperLog.LogD("ConfigSnapshot write error", e);
+            CrashUtil.getSingleton().saveException(e);
+            tmp.delete();
+            return false;
+        } finally {
+            IOUtil.closeQuietly(output);
+        }
+    }
+
+    /**
+     * Reads the snapshot
+     *
+     * @param context the context
+     * @param key     identifies the config, the init url
+     * @return the config with its placements not decoded yet, or null if there is no valid
+     * snapshot
+     */
+    public static Configurations read(Context context, String key) {
+        File file = getFile(context, key);
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            if (channel.size() < HEADER) {
+                return null;
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                DeveloperLog.LogD("ConfigSnapshot unknown format: " + file);
+                return null;
+            }
+            int length = buffer.getInt();
+            long checksum = buffer.getLong();
+            if (length < 0 || length != buffer.remaining()) {
+                return null;
+            }
+            ByteBuffer payload = buffer.slice();
+            if (crc(payload) != checksum) {
+                DeveloperLog.LogD("ConfigSnapshot checksum mismatch: " + file);
+                return null;
+            }
+            return decode(key, payload);
+        } catch (Exception e) {
+            DeveloperLog.LogD("ConfigSnapshot read error", e);
+            CrashUtil.getSingleton().saveException(e);
+            return null;
+        } finally {
+            // the mapping stays valid after the file is closed
+            IOUtil.closeQuietly(raf);
+        }
+    }
+
+    public static void delete(Context context, String key) {
+        File file = getFile(context, key);
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    private static File getFile(Context context, String key) {
+        if (context == null || key == null) {
+            return null;
+        }
+        File dir = new File(context.getFilesDir(), DIR);
+        if (!dir.exists() && !dir.mkdirs()) {
+            return null;
+        }
+        return new File(dir, Integer.toHexString(key.hashCode()) + ".snap");
+    }
+
+    private static long crc(ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[8192];
+        ByteBuffer view = payload.duplicate();
+        while (view.hasRemaining()) {
+            int count = Math.min(chunk.length, view.remaining());
+            view.get(chunk, 0, count);
+            crc.update(chunk, 0, count);
+        }
+        return crc.getValue();
+    }
+
+    private static byte[] encode(String key, Configurations config) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, key);
+        out.writeInt(config.getD());
+        out.writeInt(config.getRi());
+        out.writeInt(config.getCoa());
+        out.writeInt(config.auctionEnabled() ? 1 : 0);
+        out.writeInt(config.lrBatchEnabled() ? 1 : 0);
+
+        ApiConfigurations api = config.getApi();
+        out.writeBoolean(api != null);
+        if (api != null) {
+            writeString(out, api.getWf());
+            writeString(out, api.getLr());
+            writeString(out, api.getEr());
+            writeString(out, api.getIc());
+            writeString(out, api.getIap());
+            writeString(out, api.getCd());
+            writeString(out, api.getHb());
+            writeString(out, api.getCpcl());
+            writeString(out, api.getCppl());
+        }
+
+        Events events = config.getEvents();
+        out.writeBoolean(events != null);
+        if (events != null) {
+            writeString(out, events.getUrl());
+            out.writeInt(events.getMn());
+            out.writeInt(events.getCi());
+            writeInts(out, events.getIds());
+            writeInts(out, events.getFids());
+        }
+
+        SparseArray<Mediation> mediations = config.getMs();
+        int mediationCount = mediations == null ? 0 : mediations.size();
+        out.writeInt(mediationCount);
+        for (int i = 0; i < mediationCount; i++) {
+            Mediation mediation = mediations.valueAt(i);
+            out.writeInt(mediation.getId());
+            writeString(out, mediation.getK());
+            writeString(out, mediation.getN());
+            writeString(out, mediation.getNn());
+            out.writeLong(mediation.getEt());
+        }
+
+        List<Double> uarx = config.getTopXRevenue();
+        out.writeInt(uarx == null ? -1 : uarx.size());
+        if (uarx != null) {
+            for (Double value : uarx) {
+                out.writeDouble(value == null ? 0 : value);
+            }
+        }
+
+        // directory, then the slices
+        Map<String, Placement> placements = config.getPls();
+        List<byte[]> slices = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        List<Integer> types = new ArrayList<>();
+        List<Boolean> bids = new ArrayList<>();
+        if (placements instanceof LazyPlacements) {
+            // placements that were not used are written without building them
+            LazyPlacements lazyPlacements = (LazyPlacements) placements;
+            for (String id : lazyPlacements.keySet()) {
+                String json = lazyPlacements.getJson(id);
+                if (json == null) {
+                    continue;
+                }
+                ids.add(id);
+                types.add(lazyPlacements.getType(id));
+                bids.add(lazyPlacements.isBid(id));
+                slices.add(json.getBytes(UTF8));
+            }
+        } else if (placements != null) {
+            for (Map.Entry<String, Placement> entry : placements.entrySet()) {
+                Placement placement = entry.getValue();
+                if (placement == null || placement.getOriData() == null) {
+                    continue;
+                }
+                ids.add(entry.getKey());
+                types.add(placement.getT());
+                bids.add(ConfigurationHelper.hasBidInstance(new JSONObject(placement.getOriData())));
+                slices.add(placement.getOriData().getBytes(UTF8));
+            }
+        }
+        out.writeInt(ids.size());
+        int offset = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            writeString(out, ids.get(i));
+            out.writeInt(types.get(i));
+            out.writeBoolean(bids.get(i));
+            out.writeInt(offset);
+            out.writeInt(slices.get(i).length);
+            offset += slices.get(i).length;
+        }
+        for (byte[] slice : slices) {
+            out.write(slice);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Configurations decode(String key, ByteBuffer in) {
+        if (!key.equals(readString(in))) {
+            return null;
+        }
+        Configurations config = new Configurations();
+        config.setD(in.getInt());
+        config.setRi(in.getInt());
+        config.setCoa(in.getInt());
+        config.setIcs(in.getInt());
+        config.setLrb(in.getInt());
+
+        if (in.get() != 0) {
+            ApiConfigurations api = new ApiConfigurations();
+            api.setWf(readString(in));
+            api.setLr(readString(in));
+            api.setEr(readString(in));
+            api.setIc(readString(in));
+            api.setIap(readString(in));
+            api.setCd(readString(in));
+            api.setHb(readString(in));
+            api.setCpcl(readString(in));
+            api.setCppl(readString(in));
+            config.setApi(api);
+        }
+
+        Events events = new Events();
+        if (in.get() != 0) {
+            events.setUrl(readString(in));
+            events.setMn(in.getInt());
+            events.setCi(in.getInt());
+            events.setIds(readInts(in));
+            events.setFids(readInts(in));
+        }
+        config.setEvents(events);
+
+        SparseArray<Mediation> mediations = new SparseArray<>();
+        int mediationCount = in.getInt();
+        for (int i = 0; i < mediationCount; i++) {
+            Mediation mediation = new Mediation();
+            mediation.setId(in.getInt());
+            mediation.setK(readString(in));
+            mediation.setN(readString(in));
+            mediation.setNn(readString(in));
+            mediation.setEt(in.getLong());
+            mediations.put(mediation.getId(), mediation);
+        }
+        config.setMs(mediations);
+
+        int uarxCount = in.getInt();
+        if (uarxCount >= 0) {
+            List<Double> uarx = new ArrayList<>(uarxCount);
+            for (int i = 0; i < uarxCount; i++) {
+                uarx.add(in.getDouble());
+            }
+            config.setUarX(uarx);
+        }
+
+        int placementCount = in.getInt();
+        final Map<String, int[]> slices = new HashMap<>(placementCount * 2);
+        Map<String, Integer> types = new LinkedHashMap<>(placementCount * 2);
+        Set<String> bidIds = new HashSet<>();
+        for (int i = 0; i < placementCount; i++) {
+            String id = readString(in);
+            types.put(id, in.getInt());
+            if (in.get() != 0) {
+                bidIds.add(id);
+            }
+            slices.put(id, new int[]{in.getInt(), in.getInt()});
+        }
+        final ByteBuffer blobs = in.slice();
+        config.setPls(new LazyPlacements(mediations, types, bidIds, new LazyPlacements.Source() {
+            @Override
+            public String open(String placementId, boolean release) {
+                int[] slice = slices.get(placementId);
+                if (slice == null) {
+                    return null;
+                }
+                byte[] json = new byte[slice[1]];
+                ByteBuffer view = blobs.duplicate();
+                view.position(slice[0]);
+                view.get(json);
+                return new String(json, UTF8);
+            }
+        }));
+        return config;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static void writeInts(DataOutputStream out, List<Integer> values) throws IOException {
+        out.writeInt(values == null ? -1 : values.size());
+        if (values != null) {
+            for (Integer value : values) {
+                out.writeInt(value == null ? 0 : value);
+            }
+        }
+    }
+
+    private static List<Integer> readInts(ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0) {
+            return null;
+        }
+        List<Integer> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(in.getInt());
+        }
+        return values;
+    }
+}
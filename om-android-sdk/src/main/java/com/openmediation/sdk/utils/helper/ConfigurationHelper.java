@@ -36,9 +36,12 @@ import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 /**
@@ -118,6 +121,7 @@ public class ConfigurationHelper {
             configurations.setRi(configJson.optInt("ri"));
             configurations.setCoa(configJson.optInt("coa"));
             configurations.setIcs(configJson.optInt("ics"));
+            configurations.setLrb(configJson.optInt("lrb"));
             configurations.setApi(parseApiConfiguration(configJson.optJSONObject("api")));
             //Events
             JSONObject events = configJson.optJSONObject("events");
@@ -159,48 +163,151 @@ public class ConfigurationHelper {
         return configurations;
     }
 
+    /**
+     * Keeps every placement's json and ad type, placements are built when first used
+     */
     private static Map<String, Placement> formatPlacement(SparseArray<Mediation> mapps, JSONArray placementArray) {
-        Map<String, Placement> placementMap = new HashMap<>();
+        final Map<String, String> raw = new HashMap<>();
+        Map<String, Integer> types = new LinkedHashMap<>();
+        Set<String> bidIds = new HashSet<>();
         int len = placementArray.length();
-        if (len == 0) {
-            return placementMap;
-        }
         for (int i = 0; i < len; i++) {
             JSONObject placementObject = placementArray.optJSONObject(i);
+            if (placementObject == null) {
+                continue;
+            }
             String placementId = String.valueOf(placementObject.optInt("id"));
-            int adType = placementObject.optInt("t");
-            Placement placement = new Placement();
-            placement.setOriData(placementObject.toString());
-            placement.setId(placementId);
-            placement.setName(placementObject.optString("n"));
-            placement.setT(adType);
-            placement.setFrequencyCap(placementObject.optInt("fc"));
-            placement.setFrequencyUnit(placementObject.optInt("fu") * 60 * 60 * 1000);
-            placement.setFrequencyInterval(placementObject.optInt("fi") * 1000);
-            placement.setRf(placementObject.optInt("rf"));
-            JSONObject rfsObject = placementObject.optJSONObject("rfs");
-            if (rfsObject != null) {
-                Map<Integer, Integer> rfsMap = new TreeMap<>();
-                Iterator<String> keys = rfsObject.keys();
-                while (keys.hasNext()) {
-                    String key = keys.next();
-                    int value = rfsObject.optInt(key);
-                    rfsMap.put(Integer.valueOf(key), value);
+            types.put(placementId, placementObject.optInt("t"));
+            raw.put(placementId, placementObject.toString());
+            if (hasBidInstance(placementObject)) {
+                bidIds.add(placementId);
+            }
+        }
+        return new LazyPlacements(mapps, types, bidIds, new LazyPlacements.Source() {
+            @Override
+            public String open(String placementId, boolean release) {
+                synchronized (raw) {
+                    return release ? raw.remove(placementId) : raw.get(placementId);
                 }
-                placement.setRfs(rfsMap);
             }
-            placement.setCs(placementObject.optInt("cs", 1));
-            placement.setBs(placementObject.optInt("bs"));
-            placement.setFo(placementObject.optInt("fo"));
-            placement.setPt(placementObject.optInt("pt"));
-            placement.setRlw(placementObject.optInt("rlw"));
-            placement.setHasHb(placementObject.optInt("hb") == 1);
-            placement.setMain(placementObject.optInt("main"));
-            placement.setScenes(formatScenes(placementObject.optJSONArray("scenes")));
-            placement.setInsMap(formatInstances(placementId, mapps, adType, placementObject.optJSONArray("ins")));
-            placementMap.put(placementId, placement);
+        });
+    }
+
+    static boolean hasBidInstance(JSONObject placementObject) {
+        if (placementObject.optInt("hb") == 1) {
+            return true;
+        }
+        JSONArray insArray = placementObject.optJSONArray("ins");
+        if (insArray == null) {
+            return false;
+        }
+        for (int i = 0; i < insArray.length(); i++) {
+            JSONObject insObject = insArray.optJSONObject(i);
+            if (insObject != null && insObject.optInt("hb") == 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds the placements with header bidding instances now instead of on first use, so
+     * {@link OnPlacementBuiltListener}s see them at init
+     *
+     * @param placements the config's placements
+     */
+    public static void buildBidPlacements(Map<String, Placement> placements) {
+        if (placements instanceof LazyPlacements) {
+            ((LazyPlacements) placements).buildBidPlacements();
+        }
+    }
+
+    /**
+     * Notified when a placement of the config is built
+     */
+    public interface OnPlacementBuiltListener {
+        void onPlacementBuilt(Placement placement);
+    }
+
+    /**
+     * Calls listener for every placement as it is built, and right away for those built already
+     *
+     * @param placements the config's placements
+     * @param listener   the listener
+     */
+    public static void observePlacements(Map<String, Placement> placements, OnPlacementBuiltListener listener) {
+        if (placements == null || listener == null) {
+            return;
+        }
+        if (placements instanceof LazyPlacements) {
+            ((LazyPlacements) placements).setListener(listener);
+            return;
+        }
+        for (Placement placement : placements.values()) {
+            if (placement != null) {
+                listener.onPlacementBuilt(placement);
+            }
+        }
+    }
+
+    /**
+     * Gets a placement's ad type without building it
+     *
+     * @param placements  the config's placements
+     * @param placementId the placement id
+     * @return the ad type, -1 if there is no such placement
+     */
+    public static int getPlacementType(Map<String, Placement> placements, String placementId) {
+        if (placements == null) {
+            return -1;
+        }
+        if (placements instanceof LazyPlacements) {
+            return ((LazyPlacements) placements).getType(placementId);
+        }
+        Placement placement = placements.get(placementId);
+        return placement == null ? -1 : placement.getT();
+    }
+
+    /**
+     * Builds one placement and its instances
+     *
+     * @param mapps           the mediations, by id
+     * @param placementObject the placement's json
+     * @return the placement
+     */
+    static Placement parsePlacement(SparseArray<Mediation> mapps, JSONObject placementObject) {
+        String placementId = String.valueOf(placementObject.optInt("id"));
+        int adType = placementObject.optInt("t");
+        Placement placement = new Placement();
+        placement.setOriData(placementObject.toString());
+        placement.setId(placementId);
+        placement.setName(placementObject.optString("n"));
+        placement.setT(adType);
+        placement.setFrequencyCap(placementObject.optInt("fc"));
+        placement.setFrequencyUnit(placementObject.optInt("fu") * 60 * 60 * 1000);
+        placement.setFrequencyInterval(placementObject.optInt("fi") * 1000);
+        placement.setRf(placementObject.optInt("rf"));
+        JSONObject rfsObject = placementObject.optJSONObject("rfs");
+        if (rfsObject != null) {
+            Map<Integer, Integer> rfsMap = new TreeMap<>();
+            Iterator<String> keys = rfsObject.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                int value = rfsObject.optInt(key);
+                rfsMap.put(Integer.valueOf(key), value);
+            }
+            placement.setRfs(rfsMap);
         }
-        return placementMap;
+        placement.setCs(placementObject.optInt("cs", 1));
+        placement.setBs(placementObject.optInt("bs"));
+        placement.setFo(placementObject.optInt("fo"));
+        placement.setPt(placementObject.optInt("pt"));
+        placement.setRlw(placementObject.optInt("rlw"));
+        placement.setHasHb(placementObject.optInt("hb") == 1);
+        placement.setMain(placementObject.optInt("main"));
+        placement.setScenes(formatScenes(placementObject.optJSONArray("scenes")));
+        placement.setInsMap(formatInstances(placementId, mapps, adType, placementObject.optJSONArray("ins")));
+        return placement;
     }
 
     private static Map<String, Scene> formatScenes(JSONArray scenes) {
@@ -7,6 +7,7 @@ import android.text.TextUtils;
 
 import com.openmediation.sdk.utils.AdtUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.WorkExecutor;
 import com.openmediation.sdk.utils.cache.DataCache;
 import com.openmediation.sdk.utils.constant.KeyConstants;
@@ -97,7 +98,7 @@ public class IapHelper {
     }
 
     private static void iapReport(final String iapCount, final String currency, final String iapt, final Request.OnRequestCallback callback) {
-        WorkExecutor.execute(new Runnable() {
+        WorkExecutor.execute(SdkScheduler.Lane.HOUSEKEEPING, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -133,6 +134,7 @@ public class IapHelper {
                             .connectTimeout(30000)
                             .readTimeout(60000)
                             .callback(callback)
+                            .lane(SdkScheduler.Lane.UPLOAD)
                             .performRequest(AdtUtil.getInstance().getApplicationContext());
 
                 } catch (Exception e) {
@@ -7,6 +7,7 @@ import android.text.TextUtils;
 
 import com.openmediation.sdk.utils.AdtUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.cache.DataCache;
 import com.openmediation.sdk.utils.constant.KeyConstants;
 import com.openmediation.sdk.utils.crash.CrashUtil;
@@ -52,6 +53,7 @@ public class IcHelper {
                     .connectTimeout(30000)
                     .readTimeout(60000)
                     .instanceFollowRedirects(true)
+                    .lane(SdkScheduler.Lane.UPLOAD)
                     .performRequest(AdtUtil.getInstance().getApplicationContext());
         } catch (Exception e) {
             DeveloperLog.LogE("icReport error ", e);
@@ -0,0 +1,208 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.helper;
+
+import android.util.SparseArray;
+
+import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.crash.CrashUtil;
+import com.openmediation.sdk.utils.model.Mediation;
+import com.openmediation.sdk.utils.model.Placement;
+
+import org.json.JSONObject;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only placement map that builds a placement, with its scenes and instances, the first
+ * time it is asked for. Until then only the placement's raw json is kept, and its ad type so
+ * placements can be filtered by type without building them. Placements with header bidding
+ * instances are built by {@link #buildBidPlacements()} at init, so their bidders are ready
+ * before the first load.
+ * <p>
+ * A placement is built once, later lookups return the same object, so state kept on its
+ * instances is shared as with an eagerly built map.
+ */
+final class LazyPlacements extends AbstractMap<String, Placement> {
+
+    /**
+     * Gives the json of a placement that has not been built yet
+     */
+    interface Source {
+        /**
+         * @param placementId the placement
+         * @param release     true if the json is no longer needed after this call
+         * @return the placement's json, or null
+         */
+        String open(String placementId, boolean release) throws Exception;
+    }
+
+    private final SparseArray<Mediation> mMediations;
+    private final Source mSource;
+    /**
+     * ad type of every placement, in config order
+     */
+    private final Map<String, Integer> mTypes;
+    /**
+     * placements with header bidding instances
+     */
+    private final Set<String> mBidIds;
+    private final Map<String, Placement> mBuilt = new HashMap<>();
+    private ConfigurationHelper.OnPlacementBuiltListener mListener;
+
+    LazyPlacements(SparseArray<Mediation> mediations, Map<String, Integer> types, Set<String> bidIds,
+                   Source source) {
+        mMediations = mediations;
+        mTypes = Collections.unmodifiableMap(new LinkedHashMap<>(types));
+        mBidIds = Collections.unmodifiableSet(new HashSet<>(bidIds));
+        mSource = source;
+    }
+
+    /**
+     * @return true if the placement has header bidding instances
+     */
+    boolean isBid(String placementId) {
+        return mBidIds.contains(placementId);
+    }
+
+    /**
+     * Builds the placements with header bidding instances
+     */
+    void buildBidPlacements() {
+        for (String placementId : mBidIds) {
+            get(placementId);
+        }
+    }
+
+    /**
+     * @return the ad type of the placement without building it, -1 if there is no such placement
+     */
+    int getType(String placementId) {
+        Integer type = mTypes.get(placementId);
+        return type == null ? -1 : type;
+    }
+
+    /**
+     * Sets the listener and calls it for the placements built so far
+     */
+    void setListener(ConfigurationHelper.OnPlacementBuiltListener listener) {
+        List<Placement> built;
+        synchronized (mBuilt) {
+            mListener = listener;
+            built = new ArrayList<>(mBuilt.values());
+        }
+        if (listener != null) {
+            for (Placement placement : built) {
+                listener.onPlacementBuilt(placement);
+            }
+        }
+    }
+
+    /**
+     * @return the placement's json without building it
+     */
+    String getJson(String placementId) throws Exception {
+        synchronized (mBuilt) {
+            Placement placement = mBuilt.get(placementId);
+            if (placement != null) {
+                return placement.getOriData();
+            }
+            return mSource.open(placementId, false);
+        }
+    }
+
+    @Override
+    public Placement get(Object key) {
+        if (!(key instanceof String) || !mTypes.containsKey(key)) {
+            return null;
+        }
+        String placementId = (String) key;
+        Placement placement;
+        ConfigurationHelper.OnPlacementBuiltListener listener;
+        synchronized (mBuilt) {
+            placement = mBuilt.get(placementId);
+            if (placement != null) {
+                return placement;
+            }
+            try {
+                String json = mSource.open(placementId, true);
+                if (json == null) {
+                    return null;
+                }
+                placement = ConfigurationHelper.parsePlacement(mMediations, new JSONObject(json));
+                mBuilt.put(placementId, placement);
+                listener = mListener;
+                DeveloperLog.LogD("LazyPlacements build placement: " + placementId);
+            } catch (Exception e) {
+                DeveloperLog.LogD("LazyPlacements build placement error", e);
+                CrashUtil.getSingleton().saveException(e);
+                return null;
+            }
+        }
+        if (listener != null) {
+            listener.onPlacementBuilt(placement);
+        }
+        return placement;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return mTypes.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return mTypes.size();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return mTypes.keySet();
+    }
+
+    /**
+     * Iterating the entries builds every placement
+     */
+    @Override
+    public Set<Entry<String, Placement>> entrySet() {
+        return new AbstractSet<Entry<String, Placement>>() {
+            @Override
+            public Iterator<Entry<String, Placement>> iterator() {
+                final Iterator<String> keys = mTypes.keySet().iterator();
+                return new Iterator<Entry<String, Placement>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return keys.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Placement> next() {
+                        String key = keys.next();
+                        return new SimpleImmutableEntry<>(key, get(key));
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return mTypes.size();
+            }
+        };
+    }
+}
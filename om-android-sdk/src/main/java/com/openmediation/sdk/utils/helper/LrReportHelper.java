@@ -3,24 +3,13 @@
 
 package com.openmediation.sdk.utils.helper;
 
-import android.text.TextUtils;
-
-import com.openmediation.sdk.utils.AdtUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
-import com.openmediation.sdk.utils.WorkExecutor;
-import com.openmediation.sdk.utils.cache.DataCache;
-import com.openmediation.sdk.utils.constant.KeyConstants;
 import com.openmediation.sdk.utils.crash.CrashUtil;
-import com.openmediation.sdk.utils.model.Configurations;
+import com.openmediation.sdk.utils.event.LrReportManager;
 import com.openmediation.sdk.utils.model.BaseInstance;
-import com.openmediation.sdk.utils.request.HeaderUtils;
-import com.openmediation.sdk.utils.request.RequestBuilder;
-import com.openmediation.sdk.utils.request.network.AdRequest;
-import com.openmediation.sdk.utils.request.network.ByteRequestBody;
-import com.openmediation.sdk.utils.request.network.Headers;
 
 /**
- *
+ * Reports are batched by {@link LrReportManager}
  */
 public final class LrReportHelper {
 
@@ -44,51 +33,16 @@ public final class LrReportHelper {
                 instance.getId(), instance.getMediationId(), abt, abtId, reportType, bid);
     }
 
-    private static void report(final String reqId, final int ruleId, final BaseInstance instance,
-                               final String placementId, final int sceneId, final int loadType,
-                               final int instanceId, final int mediationId, final int abt,
-                               final int abtId, final int reportType, final int bid) {
-        WorkExecutor.execute(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    Configurations config = DataCache.getInstance().getFromMem(KeyConstants.KEY_CONFIGURATION, Configurations.class);
-                    if (config == null || config.getApi() == null || TextUtils.isEmpty(config.getApi().getLr())) {
-                        return;
-                    }
-                    String lrUrl = RequestBuilder.buildLrUrl(config.getApi().getLr());
-
-                    if (TextUtils.isEmpty(lrUrl)) {
-                        return;
-                    }
-
-                    Headers headers = HeaderUtils.getBaseHeaders();
-                    AdRequest.post()
-                            .url(lrUrl)
-                            .headers(headers)
-                            .body(new ByteRequestBody(RequestBuilder.buildLrRequestBody(
-                                    reqId,
-                                    ruleId,
-                                    instance,
-                                    Integer.parseInt(placementId),
-                                    sceneId,
-                                    loadType,
-                                    mediationId,
-                                    instanceId,
-                                    abt,
-                                    reportType,
-                                    bid,
-                                    abtId)
-                            ))
-                            .connectTimeout(30000)
-                            .readTimeout(60000)
-                            .instanceFollowRedirects(true)
-                            .performRequest(AdtUtil.getInstance().getApplicationContext());
-                } catch (Exception e) {
-                    DeveloperLog.LogE("httpLr error ", e);
-                    CrashUtil.getSingleton().saveException(e);
-                }
-            }
-        });
+    private static void report(String reqId, int ruleId, BaseInstance instance,
+                               String placementId, int sceneId, int loadType,
+                               int instanceId, int mediationId, int abt,
+                               int abtId, int reportType, int bid) {
+        try {
+            LrReportManager.getInstance().report(reqId, ruleId, instance, Integer.parseInt(placementId),
+                    sceneId, loadType, mediationId, instanceId, abt, abtId, reportType, bid);
+        } catch (Exception e) {
+            DeveloperLog.LogE("httpLr error ", e);
+            CrashUtil.getSingleton().saveException(e);
+        }
     }
 }
@@ -12,6 +12,7 @@ import com.openmediation.sdk.utils.AdsUtil;
 import com.openmediation.sdk.utils.AdtUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
 import com.openmediation.sdk.utils.PlacementUtils;
+import com.openmediation.sdk.utils.SdkScheduler;
 import com.openmediation.sdk.utils.WorkExecutor;
 import com.openmediation.sdk.utils.cache.DataCache;
 import com.openmediation.sdk.utils.constant.KeyConstants;
@@ -19,9 +20,9 @@ import com.openmediation.sdk.utils.crash.CrashUtil;
 import com.openmediation.sdk.utils.model.BaseInstance;
 import com.openmediation.sdk.utils.model.Configurations;
 import com.openmediation.sdk.utils.model.InstanceLoadStatus;
-import com.openmediation.sdk.utils.model.MediationRule;
 import com.openmediation.sdk.utils.model.Placement;
 import com.openmediation.sdk.utils.model.PlacementInfo;
+import com.openmediation.sdk.utils.model.WaterfallResult;
 import com.openmediation.sdk.utils.request.HeaderUtils;
 import com.openmediation.sdk.utils.request.RequestBuilder;
 import com.openmediation.sdk.utils.request.network.AdRequest;
@@ -29,9 +30,6 @@ import com.openmediation.sdk.utils.request.network.ByteRequestBody;
 import com.openmediation.sdk.utils.request.network.Headers;
 import com.openmediation.sdk.utils.request.network.Request;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -40,7 +38,6 @@ import java.util.Map;
  * The type Water fall helper.
  */
 public class WaterFallHelper {
-    private static final String AUCTION_PRICE = "${AUCTION_PRICE}";
     //testing instance
     private static final Map<String, List<BaseInstance>> testInstanceMap = new HashMap<>();
 
@@ -81,7 +78,7 @@ public class WaterFallHelper {
                                  final String reqId,
                                  final Request.OnRequestCallback callback) {
 
-        WorkExecutor.execute(new Runnable() {
+        WorkExecutor.execute(SdkScheduler.Lane.CRITICAL, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -117,45 +114,18 @@ public class WaterFallHelper {
         });
     }
 
-    public static Map<Integer, BidResponse> getS2sBidResponse(Placement placement, JSONObject clInfo) {
-        if (clInfo == null) {
-            return null;
-        }
-        JSONArray bidresp = clInfo.optJSONArray("bidresp");
-        if (bidresp == null || bidresp.length() == 0) {
+    /**
+     * Sets the s2s bid responses of the waterfall on their instances
+     *
+     * @return bid responses by instance id, or null if there is none
+     */
+    public static Map<Integer, BidResponse> getS2sBidResponse(Placement placement, WaterfallResult wfResult) {
+        if (wfResult == null || wfResult.getBidResponses().isEmpty()) {
             return null;
         }
         Map<Integer, BidResponse> bidResponses = new HashMap<>();
-        int len = bidresp.length();
-        for (int i = 0; i < len; i++) {
-            JSONObject object = bidresp.optJSONObject(i);
-            if (object == null) {
-                continue;
-            }
-            int iid = object.optInt("iid");
-            String adm = object.optString("adm");
-            if (TextUtils.isEmpty(adm)) {
-                int nbr = object.optInt("nbr");
-                String err = object.optString("err");
-                DeveloperLog.LogD("Ins : " + iid + " bid failed cause" + " nbr : " + nbr + " err : " + err);
-                continue;
-            }
-            BidResponse response = new BidResponse();
-            response.setIid(iid);
-            response.setPayLoad(adm);
-            double price = object.optDouble("price", 0);
-            String nurl = object.optString("nurl");
-            if (!TextUtils.isEmpty(nurl) && nurl.contains(AUCTION_PRICE)) {
-                nurl = nurl.replace(AUCTION_PRICE, String.valueOf(price));
-            }
-            response.setNurl(nurl);
-            String lurl = object.optString("lurl");
-            if (!TextUtils.isEmpty(lurl) && lurl.contains(AUCTION_PRICE)) {
-                lurl = lurl.replace(AUCTION_PRICE, String.valueOf(price + 0.1));
-            }
-            response.setLurl(lurl);
-            response.setPrice(price);
-            response.setExpire(object.optInt("expire"));
+        for (BidResponse response : wfResult.getBidResponses()) {
+            int iid = response.getIid();
             BaseInstance instance = InsManager.getInsById(placement, String.valueOf(iid));
             if (instance != null) {
                 instance.setBidResponse(response);
@@ -164,15 +134,4 @@ public class WaterFallHelper {
         }
         return bidResponses;
     }
-
-
-    public static MediationRule getMediationRule(JSONObject clInfo) {
-        JSONObject ruleObject = clInfo.optJSONObject("rule");
-        MediationRule rule = null;
-        if (ruleObject != null) {
-            rule = MediationRule.create(ruleObject);
-        }
-        return rule;
-    }
-
 }
@@ -0,0 +1,277 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.helper;
+
+import android.text.TextUtils;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.openmediation.sdk.bid.BidResponse;
+import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.IOUtil;
+import com.openmediation.sdk.utils.model.MediationRule;
+import com.openmediation.sdk.utils.model.WaterfallResult;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * Reads a waterfall response in one pass with a pull parser, without building a json tree.
+ * Fields are read leniently like JSONObject's opt methods: a missing, null or mistyped value
+ * gets the default and unknown fields are skipped.
+ */
+public final class WaterfallParser {
+    private static final String AUCTION_PRICE = "${AUCTION_PRICE}";
+
+    private WaterfallParser() {
+    }
+
+    public static WaterfallResult parse(String response) throws IOException {
+        return parse(new StringReader(response));
+    }
+
+    public static WaterfallResult parse(Reader in) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        try {
+            WaterfallResult result = new WaterfallResult();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                switch (name) {
+                    case "code":
+                        result.setCode(nextInt(reader, 0));
+                        break;
+                    case "msg":
+                        result.setMsg(nextString(reader));
+                        break;
+                    case "abt":
+                        result.setAbt(nextInt(reader, 0));
+                        break;
+                    case "abtId":
+                        result.setAbtId(nextInt(reader, 0));
+                        break;
+                    case "rule":
+                        result.setRule(readRule(reader));
+                        break;
+                    case "ins":
+                        readIns(reader, result);
+                        break;
+                    case "c2s":
+                        readC2S(reader, result);
+                        break;
+                    case "bidresp":
+                        readBidResponses(reader, result);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            return result;
+        } finally {
+            IOUtil.closeQuietly(reader);
+        }
+    }
+
+    private static MediationRule readRule(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        int id = -1;
+        String name = "";
+        int type = -1;
+        int priority = -1;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = nextInt(reader, -1);
+                    break;
+                case "n":
+                    name = nextString(reader);
+                    break;
+                case "t":
+                    type = nextInt(reader, -1);
+                    break;
+                case "i":
+                    priority = nextInt(reader, -1);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return MediationRule.create(id, name, type, priority);
+    }
+
+    private static void readIns(JsonReader reader, WaterfallResult result) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            int id = 0;
+            double r = 0d;
+            int i = -1;
+            int rp = -1;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "id":
+                        id = nextInt(reader, 0);
+                        break;
+                    case "r":
+                        r = nextDouble(reader, 0d);
+                        break;
+                    case "i":
+                        i = nextInt(reader, -1);
+                        break;
+                    case "rp":
+                        rp = nextInt(reader, -1);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            result.getIns().add(new WaterfallResult.Instance(id, r, i, rp));
+        }
+        reader.endArray();
+    }
+
+    private static void readC2S(JsonReader reader, WaterfallResult result) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            result.getC2s().add(nextInt(reader, 0));
+        }
+        reader.endArray();
+    }
+
+    private static void readBidResponses(JsonReader reader, WaterfallResult result) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            BidResponse response = readBidResponse(reader);
+            if (response != null) {
+                result.getBidResponses().add(response);
+            }
+        }
+        reader.endArray();
+    }
+
+    /**
+     * @return the bid, or null if it has no ad
+     */
+    private static BidResponse readBidResponse(JsonReader reader) throws IOException {
+        int iid = 0;
+        String adm = "";
+        double price = 0;
+        String nurl = "";
+        String lurl = "";
+        int expire = 0;
+        int nbr = 0;
+        String err = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "iid":
+                    iid = nextInt(reader, 0);
+                    break;
+                case "adm":
+                    adm = nextString(reader);
+                    break;
+                case "price":
+                    price = nextDouble(reader, 0);
+                    break;
+                case "nurl":
+                    nurl = nextString(reader);
+                    break;
+                case "lurl":
+                    lurl = nextString(reader);
+                    break;
+                case "expire":
+                    expire = nextInt(reader, 0);
+                    break;
+                case "nbr":
+                    nbr = nextInt(reader, 0);
+                    break;
+                case "err":
+                    err = nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        if (TextUtils.isEmpty(adm)) {
+            DeveloperLog.LogD("Ins : " + iid + " bid failed cause" + " nbr : " + nbr + " err : " + err);
+            return null;
+        }
+        BidResponse response = new BidResponse();
+        response.setIid(iid);
+        response.setPayLoad(adm);
+        if (!TextUtils.isEmpty(nurl) && nurl.contains(AUCTION_PRICE)) {
+            nurl = nurl.replace(AUCTION_PRICE, String.valueOf(price));
+        }
+        response.setNurl(nurl);
+        if (!TextUtils.isEmpty(lurl) && lurl.contains(AUCTION_PRICE)) {
+            lurl = lurl.replace(AUCTION_PRICE, String.valueOf(price + 0.1));
+        }
+        response.setLurl(lurl);
+        response.setPrice(price);
+        response.setExpire(expire);
+        return response;
+    }
+
+    private static int nextInt(JsonReader reader, int fallback) throws IOException {
+        double value = nextDouble(reader, Double.NaN);
+        return Double.isNaN(value) ? fallback : (int) value;
+    }
+
+    private static double nextDouble(JsonReader reader, double fallback) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+            try {
+                return Double.parseDouble(reader.nextString());
+            } catch (NumberFormatException e) {
+                return fallback;
+            }
+        }
+        reader.skipValue();
+        return fallback;
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return reader.nextString();
+        } else if (token == JsonToken.BOOLEAN) {
+            return String.valueOf(reader.nextBoolean());
+        }
+        reader.skipValue();
+        return "";
+    }
+}
@@ -6,9 +6,11 @@ import com.openmediation.sdk.bid.BidResponse;
 import com.openmediation.sdk.core.runnable.LoadTimeoutRunnable;
 import com.openmediation.sdk.mediation.CustomAdsAdapter;
 import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.SdkTimer;
 
 import java.math.BigDecimal;
-import java.util.concurrent.ScheduledFuture;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 public class BaseInstance extends Frequency implements Comparable<BaseInstance> {
     // AuctionID
@@ -72,9 +74,10 @@ public class BaseInstance extends Frequency implements Comparable<BaseInstance>
 
     protected InstanceLoadStatus mLastLoadStatus;
 
-    private MEDIATION_STATE mMediationState;
+    private volatile MEDIATION_STATE mMediationState;
+    private final Set<StateListener> mStateListeners = new CopyOnWriteArraySet<>();
     private LoadTimeoutRunnable mTimeoutRunnable;
-    private ScheduledFuture mScheduledFuture;
+    private SdkTimer.Timeout mLoadTimeout;
 
     public String getReqId() {
         return reqId;
@@ -283,7 +286,43 @@ public class BaseInstance extends Frequency implements Comparable<BaseInstance>
      * @param state the state
      */
     public void setMediationState(MEDIATION_STATE state) {
-        mMediationState = state;
+        synchronized (this) {
+            MEDIATION_STATE old = mMediationState;
+            mMediationState = state;
+            if (old != state) {
+                for (StateListener listener : mStateListeners) {
+                    listener.onStateChanged(old, state);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a counter of the instance's states, such as a list the instance is in. The listener
+     * gets the current state, so it stays exact while the state keeps changing.
+     *
+     * @param listener the listener
+     */
+    public void addStateListener(StateListener listener) {
+        if (listener == null) {
+            return;
+        }
+        synchronized (this) {
+            if (mStateListeners.add(listener) && mMediationState != null) {
+                listener.onStateChanged(null, mMediationState);
+            }
+        }
+    }
+
+    /**
+     * Removes a counter, it is told the state is gone
+     */
+    public void removeStateListener(StateListener listener) {
+        synchronized (this) {
+            if (mStateListeners.remove(listener) && mMediationState != null) {
+                listener.onStateChanged(mMediationState, null);
+            }
+        }
     }
 
     /**
@@ -336,12 +375,12 @@ public class BaseInstance extends Frequency implements Comparable<BaseInstance>
         this.mTimeoutRunnable = timeoutRunnable;
     }
 
-    public void setScheduledFuture(ScheduledFuture scheduledFuture) {
-        this.mScheduledFuture = scheduledFuture;
+    public void setLoadTimeout(SdkTimer.Timeout loadTimeout) {
+        this.mLoadTimeout = loadTimeout;
     }
 
-    public ScheduledFuture getScheduledFuture() {
-        return mScheduledFuture;
+    public SdkTimer.Timeout getLoadTimeout() {
+        return mLoadTimeout;
     }
 
     public long getC2SBidStart() {
@@ -485,6 +524,17 @@ public class BaseInstance extends Frequency implements Comparable<BaseInstance>
         }
     }
 
+    /**
+     * Counts instance states, called under the instance's lock so it must not block
+     */
+    public interface StateListener {
+        /**
+         * @param from the old state, null when the instance is added
+         * @param to   the new state, null when the instance is removed
+         */
+        void onStateChanged(MEDIATION_STATE from, MEDIATION_STATE to);
+    }
+
     /**
      * The enum Mediation state.
      */
@@ -15,6 +15,8 @@ public class Configurations {
     private int ri;
     // Impression Callback Switch, 0-off, 1-on
     private int ics;
+    // LR batching switch, 0-off: one report per request, 1-on: reports posted together as "lrs"
+    private int lrb;
     private ApiConfigurations api;
     private Events events;
     private SparseArray<Mediation> ms;
@@ -39,6 +41,14 @@ public class Configurations {
         return ics == 1;
     }
 
+    public void setLrb(int lrb) {
+        this.lrb = lrb;
+    }
+
+    public boolean lrBatchEnabled() {
+        return lrb == 1;
+    }
+
     public int getCoa() {
         return coa;
     }
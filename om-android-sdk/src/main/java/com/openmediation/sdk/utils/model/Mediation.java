@@ -48,6 +48,10 @@ public class Mediation {
         this.nn = nn;
     }
 
+    public String getNn() {
+        return nn;
+    }
+
     public String getNetworkName() {
         return TextUtils.isEmpty(nn) ? n : nn;
     }
@@ -24,6 +24,17 @@ public class MediationRule {
         this.priority = jsonObject.optInt("i", -1);
     }
 
+    private MediationRule(int id, String name, int type, int priority) {
+        this.id = id;
+        this.name = name;
+        this.type = type;
+        this.priority = priority;
+    }
+
+    public static MediationRule create(int id, String name, int type, int priority) {
+        return new MediationRule(id, name, type, priority);
+    }
+
     public static MediationRule create(JSONObject jsonObject) {
         if (jsonObject == null) {
             return null;
@@ -0,0 +1,115 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.model;
+
+import com.openmediation.sdk.bid.BidResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Waterfall response
+ */
+public class WaterfallResult {
+    private int code;
+    private String msg;
+    // ab test mode and id of the waterfall
+    private int abt;
+    private int abtId;
+    private MediationRule rule;
+    // ranked instances
+    private final List<Instance> ins = new ArrayList<>();
+    // ids of the instances bidding on the client
+    private final List<Integer> c2s = new ArrayList<>();
+    // s2s bid responses that have an ad
+    private final List<BidResponse> bidResponses = new ArrayList<>();
+
+    /**
+     * An instance of the waterfall and its ranking
+     */
+    public static class Instance {
+        private final int id;
+        // revenue
+        private final double r;
+        // priority
+        private final int i;
+        // revenue precision
+        private final int rp;
+
+        public Instance(int id, double r, int i, int rp) {
+            this.id = id;
+            this.r = r;
+            this.i = i;
+            this.rp = rp;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public double getRevenue() {
+            return r;
+        }
+
+        public int getPriority() {
+            return i;
+        }
+
+        public int getRevenuePrecision() {
+            return rp;
+        }
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public void setCode(int code) {
+        this.code = code;
+    }
+
+    public String getMsg() {
+        return msg;
+    }
+
+    public void setMsg(String msg) {
+        this.msg = msg;
+    }
+
+    public int getAbt() {
+        return abt;
+    }
+
+    public void setAbt(int abt) {
+        this.abt = abt;
+    }
+
+    public int getAbtId() {
+        return abtId;
+    }
+
+    public void setAbtId(int abtId) {
+        this.abtId = abtId;
+    }
+
+    public MediationRule getRule() {
+        return rule;
+    }
+
+    public void setRule(MediationRule rule) {
+        this.rule = rule;
+    }
+
+    public List<Instance> getIns() {
+        return ins;
+    }
+
+    public List<Integer> getC2s() {
+        return c2s;
+    }
+
+    public List<BidResponse> getBidResponses() {
+        return bidResponses;
+    }
+}
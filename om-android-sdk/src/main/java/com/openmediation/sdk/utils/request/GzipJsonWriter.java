@@ -0,0 +1,327 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.request;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a json request body straight into gzip, for bodies built on every load.
+ * <p>
+ * Pre-encoded bytes such as the device fields are copied as they are; names and values are
+ * encoded to UTF-8 into a small input buffer that is deflated whenever it fills. The buffers
+ * and the {@link Deflater} belong to the thread and are reused, so a body costs about one
+ * array of its compressed size. The output is a gzip stream like
+ * {@link com.openmediation.sdk.utils.Gzip#inGZip(byte[])} makes.
+ */
+final class GzipJsonWriter {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_DEPTH = 8;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<GzipJsonWriter> WRITERS = new ThreadLocal<GzipJsonWriter>() {
+        @Override
+        protected GzipJsonWriter initialValue() {
+            return new GzipJsonWriter();
+        }
+    };
+
+    private final Deflater mDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 mCrc = new CRC32();
+    private final byte[] mIn = new byte[BUFFER_SIZE];
+    private final byte[] mChunk = new byte[BUFFER_SIZE];
+    private byte[] mOut = new byte[BUFFER_SIZE];
+    private int mInLength;
+    private int mOutLength;
+    private int mTotal;
+    /**
+     * whether the object or array at each depth has no member yet
+     */
+    private final boolean[] isEmpty = new boolean[MAX_DEPTH];
+    private int mDepth;
+
+    private GzipJsonWriter() {
+    }
+
+    /**
+     * @return the writer of the calling thread, reset for a new body
+     */
+    static GzipJsonWriter obtain() {
+        GzipJsonWriter writer = WRITERS.get();
+        writer.reset();
+        return writer;
+    }
+
+    private void reset() {
+        mDeflater.reset();
+        mCrc.reset();
+        mInLength = 0;
+        mOutLength = 0;
+        mTotal = 0;
+        mDepth = 0;
+        output(GZIP_HEADER, GZIP_HEADER.length);
+    }
+
+    /**
+     * Starts the body with an object opened by pre-encoded bytes, such as
+     * {@link com.openmediation.sdk.utils.device.DeviceContext#getBaseJsonPrefix()}
+     *
+     * @param prefix an opening brace followed by zero or more members
+     */
+    GzipJsonWriter beginObject(byte[] prefix) {
+        write(prefix, 0, prefix.length);
+        mDepth++;
+        isEmpty[mDepth] = prefix.length <= 1;
+        return this;
+    }
+
+    GzipJsonWriter beginObject() {
+        separate();
+        write('{');
+        mDepth++;
+        isEmpty[mDepth] = true;
+        return this;
+    }
+
+    GzipJsonWriter endObject() {
+        write('}');
+        mDepth--;
+        return this;
+    }
+
+    GzipJsonWriter beginArray() {
+        separate();
+        write('[');
+        mDepth++;
+        isEmpty[mDepth] = true;
+        return this;
+    }
+
+    GzipJsonWriter endArray() {
+        write(']');
+        mDepth--;
+        return this;
+    }
+
+    GzipJsonWriter name(String name) {
+        separate();
+        string(name);
+        write(':');
+        // the value follows the name without a comma
+        isEmpty[mDepth] = true;
+        return this;
+    }
+
+    GzipJsonWriter value(String value) {
+        separate();
+        string(value);
+        return this;
+    }
+
+    GzipJsonWriter value(long value) {
+        separate();
+        ascii(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes the number like JSONObject does, integral values without a fraction
+     *
+     * @throws IllegalArgumentException for NaN and infinities, which json cannot represent
+     */
+    GzipJsonWriter value(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            // rejected like JSONObject does, the body would not parse
+            throw new IllegalArgumentException("Forbidden numeric value: " + value);
+        }
+        separate();
+        if (value == (long) value) {
+            ascii(Long.toString((long) value));
+        } else {
+            ascii(Double.toString(value));
+        }
+        return this;
+    }
+
+    /**
+     * Writes json text, such as a JSONObject's toString(), as the value
+     */
+    GzipJsonWriter rawValue(String json) {
+        separate();
+        utf8(json);
+        return this;
+    }
+
+    /**
+     * @return the gzip body
+     */
+    byte[] finish() {
+        flushInput();
+        mDeflater.finish();
+        while (!mDeflater.finished()) {
+            int count = mDeflater.deflate(mChunk);
+            output(mChunk, count);
+        }
+        long crc = mCrc.getValue();
+        byte[] trailer = {
+                (byte) crc, (byte) (crc >> 8), (byte) (crc >> 16), (byte) (crc >> 24),
+                (byte) mTotal, (byte) (mTotal >> 8), (byte) (mTotal >> 16), (byte) (mTotal >> 24)
+        };
+        output(trailer, trailer.length);
+        return Arrays.copyOf(mOut, mOutLength);
+    }
+
+    /**
+     * @return bytes of json written so far
+     */
+    int size() {
+        return mTotal + mInLength;
+    }
+
+    private void separate() {
+        if (isEmpty[mDepth]) {
+            isEmpty[mDepth] = false;
+        } else {
+            write(',');
+        }
+    }
+
+    private void string(String value) {
+        write('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    write('\\');
+                    write(c);
+                    break;
+                case '\t':
+                    write('\\');
+                    write('t');
+                    break;
+                case '\b':
+                    write('\\');
+                    write('b');
+                    break;
+                case '\n':
+                    write('\\');
+                    write('n');
+                    break;
+                case '\r':
+                    write('\\');
+                    write('r');
+                    break;
+                case '\f':
+                    write('\\');
+                    write('f');
+                    break;
+                default:
+                    if (c <= 0x1F || c == '\u2028' || c == '\u2029') {
+                        write('\\');
+                        write('u');
+                        write(HEX[(c >> 12) & 0xF]);
+                        write(HEX[(c >> 8) & 0xF]);
+                        write(HEX[(c >> 4) & 0xF]);
+                        write(HEX[c & 0xF]);
+                    } else {
+                        i = utf8(value, i);
+                    }
+                    break;
+            }
+        }
+        write('"');
+    }
+
+    private void ascii(String value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            write(value.charAt(i));
+        }
+    }
+
+    private void utf8(String value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            i = utf8(value, i);
+        }
+    }
+
+    /**
+     * Encodes the char at i, or the surrogate pair starting there
+     *
+     * @return index of the last char consumed
+     */
+    private int utf8(String value, int i) {
+        char c = value.charAt(i);
+        if (c < 0x80) {
+            write(c);
+        } else if (c < 0x800) {
+            write(0xC0 | (c >> 6));
+            write(0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(i + 1));
+            write(0xF0 | (codePoint >> 18));
+            write(0x80 | ((codePoint >> 12) & 0x3F));
+            write(0x80 | ((codePoint >> 6) & 0x3F));
+            write(0x80 | (codePoint & 0x3F));
+            return i + 1;
+        } else if (Character.isSurrogate(c)) {
+            // unpaired, as String.getBytes does
+            write('?');
+        } else {
+            write(0xE0 | (c >> 12));
+            write(0x80 | ((c >> 6) & 0x3F));
+            write(0x80 | (c & 0x3F));
+        }
+        return i;
+    }
+
+    private void write(int b) {
+        if (mInLength == mIn.length) {
+            flushInput();
+        }
+        mIn[mInLength++] = (byte) b;
+    }
+
+    private void write(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            if (mInLength == mIn.length) {
+                flushInput();
+            }
+            int count = Math.min(length, mIn.length - mInLength);
+            System.arraycopy(bytes, offset, mIn, mInLength, count);
+            mInLength += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    private void flushInput() {
+        if (mInLength == 0) {
+            return;
+        }
+        mCrc.update(mIn, 0, mInLength);
+        mTotal += mInLength;
+        mDeflater.setInput(mIn, 0, mInLength);
+        while (!mDeflater.needsInput()) {
+            int count = mDeflater.deflate(mChunk);
+            output(mChunk, count);
+        }
+        mInLength = 0;
+    }
+
+    private void output(byte[] bytes, int length) {
+        if (mOutLength + length > mOut.length) {
+            mOut = Arrays.copyOf(mOut, Math.max(mOut.length * 2, mOutLength + length));
+        }
+        System.arraycopy(bytes, 0, mOut, mOutLength, length);
+        mOutLength += length;
+    }
+}
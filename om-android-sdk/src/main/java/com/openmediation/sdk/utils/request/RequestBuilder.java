@@ -4,29 +4,21 @@
 package com.openmediation.sdk.utils.request;
 
 import android.content.Context;
-import android.os.Build;
 import android.text.TextUtils;
 
 import com.openmediation.sdk.bid.BidResponse;
-import com.openmediation.sdk.core.MetaData;
-import com.openmediation.sdk.core.OmManager;
-import com.openmediation.sdk.utils.AFManager;
 import com.openmediation.sdk.utils.AdtUtil;
-import com.openmediation.sdk.utils.DensityUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
 import com.openmediation.sdk.utils.Gzip;
 import com.openmediation.sdk.utils.JsonUtil;
-import com.openmediation.sdk.utils.OaidHelper;
 import com.openmediation.sdk.utils.cache.DataCache;
 import com.openmediation.sdk.utils.constant.CommonConstants;
 import com.openmediation.sdk.utils.constant.KeyConstants;
+import com.openmediation.sdk.utils.device.DeviceContext;
 import com.openmediation.sdk.utils.device.DeviceUtil;
 import com.openmediation.sdk.utils.event.Event;
-import com.openmediation.sdk.utils.model.BaseInstance;
 import com.openmediation.sdk.utils.model.InstanceLoadStatus;
-import com.openmediation.sdk.utils.model.MediationRule;
 import com.openmediation.sdk.utils.model.PlacementInfo;
-import com.openmediation.sdk.utils.request.network.util.NetworkChecker;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -36,10 +28,8 @@ import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.regex.Pattern;
 
 /**
@@ -275,43 +265,6 @@ public class RequestBuilder {
     }
 
 
-    /**
-     * Build lr request body byte [ ].
-     *
-     * @param extras the extras
-     * @return the byte [ ]
-     * @throws Exception the exception
-     */
-    public static byte[] buildLrRequestBody(String reqId, int ruleId, BaseInstance instance, int... extras) throws Exception {
-        JSONObject jsonObject = getRequestBodyBaseJson();
-        if (instance != null) {
-            JsonUtil.put(jsonObject, KeyConstants.RequestBody.KEY_REQ_ID, instance.getReqId());
-            JsonUtil.put(jsonObject, KeyConstants.RequestBody.KEY_INSTANCE_REVENUE, instance.getRevenue());
-            JsonUtil.put(jsonObject, KeyConstants.RequestBody.KEY_INSTANCE_PRECISION, instance.getRevenuePrecision());
-            JsonUtil.put(jsonObject, KeyConstants.RequestBody.KEY_INSTANCE_PRIORITY, instance.getPriority());
-            MediationRule rule = instance.getMediationRule();
-            if (rule != null) {
-                JsonUtil.put(jsonObject, KeyConstants.RequestBody.KEY_RULE_ID, rule.getId());
-            }
-        } else {
-            JsonUtil.put(jsonObject, KeyConstants.RequestBody.KEY_REQ_ID, reqId);
-            JsonUtil.put(jsonObject, KeyConstants.RequestBody.KEY_RULE_ID, ruleId);
-        }
-        JsonUtil.put(jsonObject, KeyConstants.RequestBody.KEY_PID, extras[0]);
-        JsonUtil.put(jsonObject, KeyConstants.RequestBody.KEY_SCENE, extras[1]);
-        JsonUtil.put(jsonObject, KeyConstants.RequestBody.KEY_ACT, extras[2]);
-        JsonUtil.put(jsonObject, KeyConstants.RequestBody.KEY_MID, extras[3]);
-        JsonUtil.put(jsonObject, KeyConstants.RequestBody.KEY_IID, extras[4]);
-        JsonUtil.put(jsonObject, "abt", extras[5]);
-        JsonUtil.put(jsonObject, KeyConstants.RequestBody.KEY_TYPE, extras[6]);
-        if (extras[7] == 1) {
-            JsonUtil.put(jsonObject, KeyConstants.RequestBody.KEY_BID, extras[7]);
-        }
-        JsonUtil.put(jsonObject, "abtId", extras[8]);
-        DeveloperLog.LogD("lr params:" + jsonObject.toString());
-        return Gzip.inGZip(jsonObject.toString().getBytes(Charset.forName(CommonConstants.CHARTSET_UTF8)));
-    }
-
     /**
      * Build ic request body byte [ ].
      *
@@ -341,102 +294,32 @@ public class RequestBuilder {
         body.put(KeyConstants.RequestBody.KEY_BTIME, DeviceUtil.getBtime());
         body.put(KeyConstants.RequestBody.KEY_RAM, DeviceUtil.getTotalRAM(context));
         body.put(KeyConstants.RequestBody.KEY_ADNS, adapters);
-        body.put(KeyConstants.RequestBody.KEY_ANDROID, buildAndroidRequestBody(context));
+        body.put(KeyConstants.RequestBody.KEY_ANDROID, DeviceContext.get().newAndroidJson());
 
         DeveloperLog.LogD("init params:" + body);
         return Gzip.inGZip(body.toString().getBytes(Charset.forName(CommonConstants.CHARTSET_UTF8)));
     }
 
+    /**
+     * Returns a new base request body: a copy of the cached {@link DeviceContext} snapshot
+     * plus the fields that change per request.
+     */
     public static JSONObject getRequestBodyBaseJson() throws Exception {
-        JSONObject body = new JSONObject();
-        Map<String, Object> map = DeviceUtil.getLocaleInfo();
-        Context context = AdtUtil.getInstance().getApplicationContext();
-        body.put(KeyConstants.RequestBody.KEY_TS, System.currentTimeMillis());
-        body.put(KeyConstants.RequestBody.KEY_FIT, DeviceUtil.getFit());
-        body.put(KeyConstants.RequestBody.KEY_ZO, DeviceUtil.getTimeZoneOffset());
-        body.put(KeyConstants.RequestBody.KEY_TZ, DeviceUtil.getTimeZone());
-        body.put(KeyConstants.RequestBody.KEY_SESSION, DeviceUtil.getSessionId());
-        body.put(KeyConstants.RequestBody.KEY_UID, DeviceUtil.getUid());
-        body.put(KeyConstants.RequestBody.KEY_FLT, DeviceUtil.getFlt());
-        Map<String, Object> gaidMap = getGaidMap();
-        for (Map.Entry<String, Object> integerEntry : gaidMap.entrySet()) {
-            body.put(integerEntry.getKey(), integerEntry.getValue());
-        }
-        body.put(KeyConstants.RequestBody.KEY_LANG, map.get(KeyConstants.RequestBody.KEY_LANG));
-        body.put(KeyConstants.RequestBody.KEY_LANG_NAME, DeviceUtil.getLocaleInfo().get(KeyConstants.RequestBody.KEY_LANG_NAME));
-        body.put(KeyConstants.RequestBody.KEY_JB, DeviceUtil.isRoot() ? 1 : 0);
-        body.put(KeyConstants.RequestBody.KEY_BUNDLE, context != null ? context.getPackageName() : "");
-        body.put(KeyConstants.RequestBody.KEY_MAKE, Build.MANUFACTURER);
-        body.put(KeyConstants.RequestBody.KEY_BRAND, Build.BRAND);
-        body.put(KeyConstants.RequestBody.KEY_MODEL, Build.MODEL);
-        body.put(KeyConstants.RequestBody.KEY_OSV, Build.VERSION.RELEASE);
-        body.put(KeyConstants.RequestBody.KEY_BUILD, Build.DISPLAY);
-        body.put(KeyConstants.RequestBody.KEY_APPV, DeviceUtil.getVersionName(context));
-        body.put(KeyConstants.RequestBody.KEY_W, DensityUtil.getPhoneWidth(context));
-        body.put(KeyConstants.RequestBody.KEY_H, DensityUtil.getPhoneHeight(context));
-        body.put(KeyConstants.RequestBody.KEY_CONT, NetworkChecker.getConnectType(context));
-        body.put(KeyConstants.RequestBody.KEY_CARRIER, NetworkChecker.getNetworkOperator(context));
-        body.put(KeyConstants.RequestBody.KEY_LIP, DeviceUtil.getHostIp());
-        body.put(KeyConstants.RequestBody.KEY_LCOUNTRY, map.get(KeyConstants.RequestBody.KEY_LCOUNTRY));
-        body.put(KeyConstants.RequestBody.KEY_FM, DeviceUtil.getFm());
-        body.put(KeyConstants.RequestBody.KEY_AF_ID, AFManager.getAfId(context));
-        Map<String, Integer> battery = DeviceUtil.getBatteryInfo(context);
-        if (battery == null || battery.isEmpty()) {
-            body.put(KeyConstants.RequestBody.KEY_BATTERY, 0);
-        } else {
-            for (Map.Entry<String, Integer> integerEntry : battery.entrySet()) {
-                if (integerEntry == null) {
-                    continue;
-                }
-
-                body.put(integerEntry.getKey(), integerEntry.getValue());
-            }
-
-            if (!body.has(KeyConstants.RequestBody.KEY_BATTERY)) {
-                body.put(KeyConstants.RequestBody.KEY_BATTERY, 0);
-            }
-        }
-        String channel = DataCache.getInstance().getFromMem(KeyConstants.KEY_APP_CHANNEL, String.class);
-        body.put(KeyConstants.RequestBody.KEY_CHANNEL, channel);
-        body.put(KeyConstants.RequestBody.KEY_CDID, OmManager.getInstance().getUserId());
-        body.put(KeyConstants.RequestBody.KEY_TAGS, OmManager.getInstance().getTagsObject());
-        body.put(KeyConstants.RequestBody.KEY_GCY, DeviceUtil.getNetworkCountryIso(context));
-        appendRegsObject(body, OmManager.getInstance().getMetaData());
+        JSONObject body = DeviceContext.get().newBaseJson();
+        appendRequestFields(body);
         return body;
     }
 
-    private static void appendRegsObject(JSONObject body, MetaData metaData) throws Exception {
-        if (metaData == null) {
-            return;
-        }
-        String gender = metaData.getUserGender();
-        if (!TextUtils.isEmpty(gender)) {
-            int genderValue = 0;
-            if ("male".equals(gender)) {
-                genderValue = 1;
-            } else if ("female".equals(gender)) {
-                genderValue = 2;
-            }
-            body.put(KeyConstants.RequestBody.KEY_GENDER, genderValue);
-        }
-        if (metaData.getUserAge() != null) {
-            body.put(KeyConstants.RequestBody.KEY_AGE, metaData.getUserAge());
-        }
-        JSONObject regs = new JSONObject();
-        if (metaData.getGDPRConsent() != null) {
-            regs.put(KeyConstants.RequestBody.KEY_GDPR, metaData.getGDPRConsent() ? 0 : 1);
-        }
-        if (metaData.getAgeRestricted() != null) {
-            regs.put(KeyConstants.RequestBody.KEY_COPPA, metaData.getAgeRestricted() ? 1 : 0);
-        }
-        if (metaData.getUSPrivacyLimit() != null) {
-            regs.put(KeyConstants.RequestBody.KEY_CCPA, metaData.getUSPrivacyLimit() ? 1 : 0);
-        }
-        body.put(KeyConstants.RequestBody.KEY_REGS, regs);
+    /**
+     * Appends the per-request fields that are not part of the {@link DeviceContext} snapshot
+     */
+    public static void appendRequestFields(JSONObject body) throws Exception {
+        RequestFields.collect().appendTo(body);
     }
 
     /**
-     * Build wf request body byte [ ].
+     * Build wf request body byte [ ]. The device fields are copied from their pre-encoded
+     * snapshot and the rest is written straight into the gzip stream, no JSONObject is built.
      *
      * @param c2sResult the responses
      * @param extras    the extras
@@ -446,65 +329,111 @@ public class RequestBuilder {
     public static byte[] buildWfRequestBody(PlacementInfo info, List<BidResponse> c2sResult, List<BidResponse> s2sResult,
                                             List<InstanceLoadStatus> statusList, String reqId,
                                             String... extras) throws Exception {
-        JSONObject body = getRequestBodyBaseJson();
-        body.put(KeyConstants.RequestBody.KEY_REQ_ID, reqId);
+        return buildWfRequestBody(DeviceContext.get().getBaseJsonPrefix(), RequestFields.collect(), info,
+                c2sResult, s2sResult, statusList, reqId, extras);
+    }
+
+    /**
+     * Builds the wf body on the given base fields
+     *
+     * @param basePrefix the pre-encoded device fields, see {@link DeviceContext#getBaseJsonPrefix()}
+     * @param fields     the per-request fields
+     */
+    static byte[] buildWfRequestBody(byte[] basePrefix, RequestFields fields, PlacementInfo info,
+                                     List<BidResponse> c2sResult, List<BidResponse> s2sResult,
+                                     List<InstanceLoadStatus> statusList, String reqId,
+                                     String... extras) throws Exception {
+        GzipJsonWriter out = GzipJsonWriter.obtain();
+        out.beginObject(basePrefix);
+        fields.writeTo(out);
+        if (reqId != null) {
+            out.name(KeyConstants.RequestBody.KEY_REQ_ID).value(reqId);
+        }
         if (info.getWidth() != 0) {
-            body.put(KeyConstants.RequestBody.KEY_W, info.getWidth());
+            out.name(KeyConstants.RequestBody.KEY_W).value(info.getWidth());
         }
         if (info.getHeight() != 0) {
-            body.put(KeyConstants.RequestBody.KEY_H, info.getHeight());
+            out.name(KeyConstants.RequestBody.KEY_H).value(info.getHeight());
+        }
+        if (info.getId() != null) {
+            out.name(KeyConstants.RequestBody.KEY_PID).value(info.getId());
+        }
+        if (extras[0] != null) {
+            out.name(KeyConstants.RequestBody.KEY_IAP).value(extras[0]);
+        }
+        out.name(KeyConstants.RequestBody.KEY_IMPRTIMES).value(Integer.parseInt(extras[1]));
+        if (extras[2] != null) {
+            out.name("act").value(extras[2]);
         }
-        body.put(KeyConstants.RequestBody.KEY_PID, info.getId());
-        body.put(KeyConstants.RequestBody.KEY_IAP, extras[0]);
-        body.put(KeyConstants.RequestBody.KEY_IMPRTIMES, Integer.valueOf(extras[1]));
-        body.put("act", extras[2]);
         if (c2sResult != null && !c2sResult.isEmpty()) {
-            JSONArray array = new JSONArray();
+            out.name("bid").beginArray();
             for (BidResponse response : c2sResult) {
                 if (response == null) {
                     continue;
                 }
-                JSONObject object = new JSONObject();
-                JsonUtil.put(object, "iid", response.getIid());
-                JsonUtil.put(object, "price", response.getPrice());
-                JsonUtil.put(object, "cur", response.getCur());
-                array.put(object);
+                out.beginObject();
+                if (response.getIid() >= 0) {
+                    out.name("iid").value(response.getIid());
+                }
+                if (response.getPrice() >= 0) {
+                    out.name("price").value(response.getPrice());
+                }
+                if (!TextUtils.isEmpty(response.getCur())) {
+                    out.name("cur").value(response.getCur());
+                }
+                out.endObject();
             }
-            body.put("bid", array);
+            out.endArray();
         }
 
         if (s2sResult != null && !s2sResult.isEmpty()) {
-            JSONArray array = new JSONArray();
+            out.name("bids2s").beginArray();
             for (BidResponse response : s2sResult) {
                 if (response == null) {
                     continue;
                 }
-                JSONObject object = new JSONObject();
-                JsonUtil.put(object, "iid", response.getIid());
-                JsonUtil.put(object, "token", response.getToken());
-                array.put(object);
+                out.beginObject();
+                if (response.getIid() >= 0) {
+                    out.name("iid").value(response.getIid());
+                }
+                if (!TextUtils.isEmpty(response.getToken())) {
+                    out.name("token").value(response.getToken());
+                }
+                out.endObject();
             }
-            body.put("bids2s", array);
+            out.endArray();
         }
 
         if (statusList != null && !statusList.isEmpty()) {
-            JSONArray array = new JSONArray();
+            out.name("ils").beginArray();
             for (InstanceLoadStatus status : statusList) {
                 if (status == null) {
                     continue;
                 }
-                JSONObject object = new JSONObject();
-                JsonUtil.put(object, "iid", status.getIid());
-                JsonUtil.put(object, "lts", status.getLts());
-                JsonUtil.put(object, "dur", status.getDur());
-                JsonUtil.put(object, "code", status.getCode());
-                JsonUtil.put(object, "msg", status.getMsg());
-                array.put(object);
+                out.beginObject();
+                if (status.getIid() >= 0) {
+                    out.name("iid").value(status.getIid());
+                }
+                if (status.getLts() >= 0) {
+                    out.name("lts").value(status.getLts());
+                }
+                out.name("dur").value(status.getDur());
+                if (!TextUtils.isEmpty(status.getCode())) {
+                    out.name("code").value(status.getCode());
+                }
+                if (!TextUtils.isEmpty(status.getMsg())) {
+                    out.name("msg").value(status.getMsg());
+                }
+                out.endObject();
             }
-            body.put("ils", array);
+            out.endArray();
         }
-        DeveloperLog.LogD("request wf params : " + body.toString());
-        return Gzip.inGZip(body.toString().getBytes(Charset.forName(CommonConstants.CHARTSET_UTF8)));
+        out.endObject();
+        int size = out.size();
+        byte[] body = out.finish();
+        DeveloperLog.LogD("request wf params, pid : " + info.getId() + ", reqId : " + reqId
+                + ", json bytes : " + size + ", gzip bytes : " + body.length);
+        return body;
     }
 
     /**
@@ -525,25 +454,6 @@ public class RequestBuilder {
     }
 
 
-    /**
-     * Build event request body byte [ ].
-     *
-     * @param events the events
-     * @return the byte [ ]
-     * @throws Exception the exception
-     */
-    public static byte[] buildEventRequestBody(ConcurrentLinkedQueue<Event> events) throws Exception {
-        JSONObject body = getRequestBodyBaseJson();
-        body.put(KeyConstants.RequestBody.KEY_APPK, DataCache.getInstance().getFromMem(KeyConstants.KEY_APP_KEY, String.class));
-        JSONArray jsonEvents = new JSONArray();
-        for (Event e : events) {
-            jsonEvents.put(e.toJSONObject());
-        }
-        body.put("events", jsonEvents);
-        DeveloperLog.LogD("event report params : " + body.toString());
-        return Gzip.inGZip(body.toString().getBytes(Charset.forName(CommonConstants.CHARTSET_UTF8)));
-    }
-
     public static byte[] buildEventRequestBody(Event event) throws Exception {
         JSONObject body = getRequestBodyBaseJson();
         JSONArray jsonEvents = new JSONArray();
@@ -556,14 +466,13 @@ public class RequestBuilder {
     /**
      * Build error request body byte [ ].
      *
-     * @param extras the extras
+     * @param errors the errors, each with its tag, error and count
      * @return the byte [ ]
      * @throws Exception the exception
      */
-    public static byte[] buildErrorRequestBody(String... extras) throws Exception {
+    public static byte[] buildErrorRequestBody(JSONArray errors) throws Exception {
         JSONObject body = getRequestBodyBaseJson();
-        body.put("tag", extras[0]);
-        body.put("error", extras[1]);
+        body.put("errors", errors);
         return Gzip.inGZip(body.toString().getBytes(Charset.forName(CommonConstants.CHARTSET_UTF8)));
     }
 
@@ -595,63 +504,4 @@ public class RequestBuilder {
         JsonUtil.put(jsonObject, "cd", object);
         return Gzip.inGZip(jsonObject.toString().getBytes(Charset.forName(CommonConstants.CHARTSET_UTF8)));
     }
-
-    private static JSONObject buildAndroidRequestBody(Context context) throws Exception {
-        JSONObject androidBody = new JSONObject();
-        androidBody.put(KeyConstants.Android.KEY_DEVICE, Build.DEVICE);
-        androidBody.put(KeyConstants.Android.KEY_PRODUCE, Build.PRODUCT);
-        androidBody.put(KeyConstants.Android.KEY_SD, DensityUtil.getScreenDensity());
-        androidBody.put(KeyConstants.Android.KEY_SS, DensityUtil.getScreenSize());
-        androidBody.put(KeyConstants.Android.KEY_CPU_ABI, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_CPU_ABI));
-        androidBody.put(KeyConstants.Android.KEY_CPU_ABI2, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_CPU_ABI2));
-        androidBody.put(KeyConstants.Android.KEY_CPU_ABI_LIST, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_CPU_ABI_LIST));
-        androidBody.put(KeyConstants.Android.KEY_CPU_ABI_LIST_32, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_CPU_ABI_LIST_32));
-        androidBody.put(KeyConstants.Android.KEY_CPU_ABI_LIST_64, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_CPU_ABI_LIST_64));
-        androidBody.put(KeyConstants.Android.KEY_API_LEVEL, Build.VERSION.SDK_INT);
-        androidBody.put(KeyConstants.Android.KEY_D_DPI, DensityUtil.getDensityDpi(context));
-        androidBody.put(KeyConstants.Android.KEY_DIM_SIZE, DensityUtil.getDimSize());
-        androidBody.put(KeyConstants.Android.KEY_XDP, Integer.toString(DensityUtil.getXdpi(context)));
-        androidBody.put(KeyConstants.Android.KEY_YDP, Integer.toString(DensityUtil.getYdpi(context)));
-        androidBody.put(KeyConstants.Android.KEY_DFPID, DeviceUtil.getUniquePsuedoId());
-        androidBody.put(KeyConstants.Android.KEY_ARCH, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_ARCH));
-        androidBody.put(KeyConstants.Android.KEY_CHIPNAME, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_CHIPNAME));
-        androidBody.put(KeyConstants.Android.KEY_BRIDGE, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_BRIDGE));
-        androidBody.put(KeyConstants.Android.KEY_NATIVE_BRIDGE, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_NATIVE_BRIDGE));
-        androidBody.put(KeyConstants.Android.KEY_BRIDGE_EXEC, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_BRIDGE_EXEC));
-        androidBody.put(KeyConstants.Android.KEY_ISA_X86_FEATURES, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_ISA_X86_FEATURES));
-        androidBody.put(KeyConstants.Android.KEY_ISA_X86_VARIANT, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_ISA_X86_VARIANT));
-        androidBody.put(KeyConstants.Android.KEY_ZYGOTE, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_ZYGOTE));
-        androidBody.put(KeyConstants.Android.KEY_MOCK_LOCATION, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_MOCK_LOCATION));
-        androidBody.put(KeyConstants.Android.KEY_ISA_ARM, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_ISA_ARM));
-        androidBody.put(KeyConstants.Android.KEY_ISA_ARM_FEATURES, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_ISA_ARM_FEATURES));
-        androidBody.put(KeyConstants.Android.KEY_ISA_ARM_VARIANT, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_ISA_ARM_VARIANT));
-        androidBody.put(KeyConstants.Android.KEY_ISA_ARM64_FEATURES, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_ISA_ARM64_FEATURES));
-        androidBody.put(KeyConstants.Android.KEY_ISA_ARM64_VARIANT, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_ISA_ARM64_VARIANT));
-        androidBody.put(KeyConstants.Android.KEY_BUILD_USER, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_BUILD_USER));
-        androidBody.put(KeyConstants.Android.KEY_KERNEL_QEMU, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_KERNEL_QEMU));
-        androidBody.put(KeyConstants.Android.KEY_HARDWARE, DeviceUtil.getSystemProperties(KeyConstants.Device.KEY_RO_HARDWARE));
-        androidBody.put(KeyConstants.RequestBody.KEY_TDM, DeviceUtil.disk());
-        androidBody.put(KeyConstants.RequestBody.KEY_IFGP, DeviceUtil.ifGp(AdtUtil.getInstance().getApplicationContext()));
-        return androidBody;
-    }
-
-    private static Map<String, Object> getGaidMap() {
-        Map<String, Object> map = new HashMap<>();
-        int dType;
-        String did;
-        String gaid = DataCache.getInstance().get(KeyConstants.RequestBody.KEY_GAID, String.class);
-        if (!TextUtils.isEmpty(gaid)) {
-            did = gaid;
-            dType = 2;
-        } else if (!TextUtils.isEmpty(OaidHelper.getOaid())) {
-            did = OaidHelper.getOaid();
-            dType = 4;
-        } else {
-            did = "";
-            dType = 0;
-        }
-        map.put(KeyConstants.RequestBody.KEY_DID, did);
-        map.put(KeyConstants.RequestBody.KEY_DTYPE, dType);
-        return map;
-    }
 }
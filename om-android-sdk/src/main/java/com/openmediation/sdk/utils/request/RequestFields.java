@@ -0,0 +1,127 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.request;
+
+import android.text.TextUtils;
+
+import com.openmediation.sdk.core.MetaData;
+import com.openmediation.sdk.core.OmManager;
+import com.openmediation.sdk.utils.OaidHelper;
+import com.openmediation.sdk.utils.cache.DataCache;
+import com.openmediation.sdk.utils.constant.KeyConstants;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The per-request fields of a request body that are not part of the
+ * {@link com.openmediation.sdk.utils.device.DeviceContext} snapshot. They are collected in one
+ * place and then put into a JSONObject body or written to a streamed one, so both kinds of body
+ * carry the same fields.
+ */
+final class RequestFields {
+
+    private final List<String> mNames = new ArrayList<>();
+    private final List<Object> mValues = new ArrayList<>();
+
+    RequestFields() {
+    }
+
+    /**
+     * @return the fields of a request made now
+     */
+    static RequestFields collect() throws JSONException {
+        RequestFields fields = new RequestFields();
+        fields.put(KeyConstants.RequestBody.KEY_TS, System.currentTimeMillis());
+        String did;
+        int dType;
+        String gaid = DataCache.getInstance().get(KeyConstants.RequestBody.KEY_GAID, String.class);
+        String oaid = TextUtils.isEmpty(gaid) ? OaidHelper.getOaid() : null;
+        if (!TextUtils.isEmpty(gaid)) {
+            did = gaid;
+            dType = 2;
+        } else if (!TextUtils.isEmpty(oaid)) {
+            did = oaid;
+            dType = 4;
+        } else {
+            did = "";
+            dType = 0;
+        }
+        fields.put(KeyConstants.RequestBody.KEY_DID, did);
+        fields.put(KeyConstants.RequestBody.KEY_DTYPE, dType);
+        fields.put(KeyConstants.RequestBody.KEY_CHANNEL,
+                DataCache.getInstance().getFromMem(KeyConstants.KEY_APP_CHANNEL, String.class));
+        fields.put(KeyConstants.RequestBody.KEY_CDID, OmManager.getInstance().getUserId());
+        fields.put(KeyConstants.RequestBody.KEY_TAGS, OmManager.getInstance().getTagsObject());
+        fields.putRegs(OmManager.getInstance().getMetaData());
+        return fields;
+    }
+
+    /**
+     * Adds a field, a null value is left out like JSONObject does
+     *
+     * @param value a String, Number, Boolean or JSONObject
+     */
+    RequestFields put(String name, Object value) {
+        if (value != null) {
+            mNames.add(name);
+            mValues.add(value);
+        }
+        return this;
+    }
+
+    private void putRegs(MetaData metaData) throws JSONException {
+        if (metaData == null) {
+            return;
+        }
+        String gender = metaData.getUserGender();
+        if (!TextUtils.isEmpty(gender)) {
+            int genderValue = 0;
+            if ("male".equals(gender)) {
+                genderValue = 1;
+            } else if ("female".equals(gender)) {
+                genderValue = 2;
+            }
+            put(KeyConstants.RequestBody.KEY_GENDER, genderValue);
+        }
+        put(KeyConstants.RequestBody.KEY_AGE, metaData.getUserAge());
+        JSONObject regs = new JSONObject();
+        if (metaData.getGDPRConsent() != null) {
+            regs.put(KeyConstants.RequestBody.KEY_GDPR, metaData.getGDPRConsent() ? 0 : 1);
+        }
+        if (metaData.getAgeRestricted() != null) {
+            regs.put(KeyConstants.RequestBody.KEY_COPPA, metaData.getAgeRestricted() ? 1 : 0);
+        }
+        if (metaData.getUSPrivacyLimit() != null) {
+            regs.put(KeyConstants.RequestBody.KEY_CCPA, metaData.getUSPrivacyLimit() ? 1 : 0);
+        }
+        put(KeyConstants.RequestBody.KEY_REGS, regs);
+    }
+
+    void appendTo(JSONObject body) throws JSONException {
+        for (int i = 0; i < mNames.size(); i++) {
+            body.put(mNames.get(i), mValues.get(i));
+        }
+    }
+
+    void writeTo(GzipJsonWriter out) {
+        for (int i = 0; i < mNames.size(); i++) {
+            out.name(mNames.get(i));
+            Object value = mValues.get(i);
+            if (value instanceof String) {
+                out.value((String) value);
+            } else if (value instanceof Double || value instanceof Float) {
+                out.value(((Number) value).doubleValue());
+            } else if (value instanceof Number) {
+                out.value(((Number) value).longValue());
+            } else {
+                // JSONObject, Boolean
+                out.rawValue(value.toString());
+            }
+        }
+    }
+}
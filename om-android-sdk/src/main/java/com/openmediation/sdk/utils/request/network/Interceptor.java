@@ -0,0 +1,45 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.request.network;
+
+import com.openmediation.sdk.utils.request.network.connect.AbstractUrlConnection;
+
+/**
+ * Observes or rewrites a request around its execution on the connection.
+ */
+public interface Interceptor {
+
+    /**
+     * Intercept response.
+     *
+     * @param chain the chain, call {@link Chain#proceed(Request)} to continue
+     * @return the response, null if the request does not want one
+     * @throws Exception the exception
+     */
+    Response intercept(Chain chain) throws Exception;
+
+    /**
+     * The type Chain.
+     */
+    interface Chain {
+        /**
+         * @return the request
+         */
+        Request request();
+
+        /**
+         * @return the connection running the request
+         */
+        AbstractUrlConnection connection();
+
+        /**
+         * Passes the request to the next interceptor, or to the connection after the last one.
+         *
+         * @param request the request
+         * @return the response
+         * @throws Exception the exception
+         */
+        Response proceed(Request request) throws Exception;
+    }
+}
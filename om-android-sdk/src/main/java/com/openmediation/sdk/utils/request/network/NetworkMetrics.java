@@ -0,0 +1,406 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.request.network;
+
+import android.os.SystemClock;
+
+import com.openmediation.sdk.NetworkMetricsListener;
+import com.openmediation.sdk.NetworkStats;
+import com.openmediation.sdk.RequestMetrics;
+import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.Preconditions;
+import com.openmediation.sdk.utils.SdkScheduler;
+import com.openmediation.sdk.utils.constant.CommonConstants;
+import com.openmediation.sdk.utils.request.network.connect.AbstractUrlConnection;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-endpoint request counters and the listeners they are reported to.
+ * <p>
+ * {@link #INTERCEPTOR} runs first in the chain of every request. A request is recorded when its
+ * response body hits the end or is closed, so body time and bytes cover what was actually read.
+ */
+public final class NetworkMetrics {
+
+    /**
+     * Endpoints beyond this count are folded into {@link #OTHER_ENDPOINT}
+     */
+    private static final int MAX_ENDPOINTS = 64;
+    private static final String OTHER_ENDPOINT = "other";
+
+    private static final List<NetworkMetricsListener> LISTENERS = new CopyOnWriteArrayList<>();
+    private static final ConcurrentHashMap<String, Endpoint> ENDPOINTS = new ConcurrentHashMap<>();
+    /**
+     * Scheme and host of the SDK's api, whose urls are counted by path
+     */
+    private static final Set<String> API_ORIGINS = new CopyOnWriteArraySet<>();
+    private static final int MAX_EXTENSION = 5;
+
+    static {
+        addApiUrls(CommonConstants.INIT_URL);
+    }
+
+    /**
+     * The built-in interceptor recording every request.
+     */
+    public static final Interceptor INTERCEPTOR = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws Exception {
+            Request request = chain.request();
+            Call call = new Call(request, chain.connection());
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (Exception e) {
+                call.onHeaders(-1);
+                call.finish(e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+                throw e;
+            }
+            if (response == null) {
+                call.onHeaders(-1);
+                call.finish(null);
+                return null;
+            }
+            call.onHeaders(response.code());
+            ResponseBody body = response.body();
+            if (body == null) {
+                call.finish(null);
+                return response;
+            }
+            InputStream stream = new MeteredInputStream(body.stream(), call);
+            ResponseBody metered = new StreamBody(response.headers().getContentType(),
+                    new BufferedInputStream(stream));
+            return Response.newBuilder().code(response.code()).headers(response.headers())
+                    .body(metered).connection(chain.connection()).build();
+        }
+    };
+
+    private NetworkMetrics() {
+    }
+
+    /**
+     * Registers a listener, see {@link NetworkMetricsListener}.
+     *
+     * @param listener the listener
+     */
+    public static void addListener(NetworkMetricsListener listener) {
+        Preconditions.checkNotNull(listener, true);
+        if (!LISTENERS.contains(listener)) {
+            LISTENERS.add(listener);
+        }
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener the listener
+     */
+    public static void removeListener(NetworkMetricsListener listener) {
+        Preconditions.checkNotNull(listener, true);
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * @return a snapshot of the counters, keyed by endpoint
+     */
+    public static Map<String, NetworkStats> getStats() {
+        Map<String, NetworkStats> stats = new HashMap<>();
+        for (Map.Entry<String, Endpoint> entry : ENDPOINTS.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().snapshot(entry.getKey()));
+        }
+        return stats;
+    }
+
+    /**
+     * Records a request served by joining an identical one already in flight.
+     *
+     * @param url the url
+     */
+    public static void onCoalesced(String url) {
+        endpoint(url).mCoalesced.incrementAndGet();
+    }
+
+    /**
+     * Records a request dropped because its lane was full.
+     *
+     * @param url  the url
+     * @param lane the lane
+     */
+    static void onRejected(String url, SdkScheduler.Lane lane) {
+        DeveloperLog.LogE("request rejected, lane " + lane + " is full: " + url);
+        endpoint(url).mRejected.incrementAndGet();
+        for (NetworkMetricsListener listener : LISTENERS) {
+            try {
+                listener.onRequestRejected(url, lane.name());
+            } catch (Exception e) {
+                DeveloperLog.LogD("NetworkMetrics", e);
+            }
+        }
+    }
+
+    private static void record(RequestMetrics metrics) {
+        DeveloperLog.LogD("NetworkMetrics", metrics.toString());
+        endpoint(metrics.getUrl()).add(metrics);
+        for (NetworkMetricsListener listener : LISTENERS) {
+            try {
+                listener.onRequestFinished(metrics);
+            } catch (Exception e) {
+                DeveloperLog.LogD("NetworkMetrics", e);
+            }
+        }
+    }
+
+    /**
+     * Counts the urls of these hosts by path, the urls of other hosts are counted by host and
+     * file type
+     *
+     * @param urls api urls from the config
+     */
+    public static void addApiUrls(String... urls) {
+        if (urls == null) {
+            return;
+        }
+        for (String url : urls) {
+            String origin = originOf(url);
+            if (origin != null) {
+                API_ORIGINS.add(origin);
+            }
+        }
+    }
+
+    private static Endpoint endpoint(String url) {
+        String key = endpointOf(url);
+        Endpoint endpoint = ENDPOINTS.get(key);
+        if (endpoint != null) {
+            return endpoint;
+        }
+        if (ENDPOINTS.size() >= MAX_ENDPOINTS) {
+            key = OTHER_ENDPOINT;
+        }
+        endpoint = new Endpoint();
+        Endpoint exist = ENDPOINTS.putIfAbsent(key, endpoint);
+        return exist != null ? exist : endpoint;
+    }
+
+    /**
+     * @return for an api url the url without query and fragment, for others such as creatives
+     * and trackers, whose paths are mostly one-off, the scheme and host followed by "/*" and the
+     * file extension if any
+     */
+    static String endpointOf(String url) {
+        if (url == null) {
+            return OTHER_ENDPOINT;
+        }
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        String path = url.substring(0, end);
+        String origin = originOf(path);
+        if (origin == null) {
+            return OTHER_ENDPOINT;
+        }
+        if (API_ORIGINS.contains(origin)) {
+            return path;
+        }
+        return origin + "/*" + extensionOf(path, origin.length());
+    }
+
+    /**
+     * @return the lower-cased scheme, host and port of the url, or null if it has none
+     */
+    private static String originOf(String url) {
+        if (url == null) {
+            return null;
+        }
+        int scheme = url.indexOf("://");
+        if (scheme <= 0) {
+            return null;
+        }
+        int end = url.length();
+        for (int i = scheme + 3; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        if (end == scheme + 3) {
+            return null;
+        }
+        return url.substring(0, end).toLowerCase(Locale.US);
+    }
+
+    /**
+     * @return the extension of the last path segment with its dot, such as ".mp4", or ""
+     */
+    private static String extensionOf(String path, int pathStart) {
+        int dot = path.lastIndexOf('.');
+        if (dot <= path.lastIndexOf('/') || dot < pathStart || path.length() - dot - 1 > MAX_EXTENSION
+                || dot == path.length() - 1) {
+            return "";
+        }
+        for (int i = dot + 1; i < path.length(); i++) {
+            if (!Character.isLetterOrDigit(path.charAt(i))) {
+                return "";
+            }
+        }
+        return path.substring(dot).toLowerCase(Locale.US);
+    }
+
+    private static final class Endpoint {
+        final AtomicLong mRequests = new AtomicLong();
+        final AtomicLong mErrors = new AtomicLong();
+        final AtomicLong mCoalesced = new AtomicLong();
+        final AtomicLong mRejected = new AtomicLong();
+        final AtomicLong mRequestBytes = new AtomicLong();
+        final AtomicLong mResponseBytes = new AtomicLong();
+        final AtomicLongArray mLatency = new AtomicLongArray(NetworkStats.LATENCY_BOUNDS.length + 1);
+
+        void add(RequestMetrics metrics) {
+            mRequests.incrementAndGet();
+            if (!metrics.isSuccess()) {
+                mErrors.incrementAndGet();
+            }
+            if (metrics.getRequestBytes() > 0) {
+                mRequestBytes.addAndGet(metrics.getRequestBytes());
+            }
+            mResponseBytes.addAndGet(metrics.getResponseBytes());
+            long[] bounds = NetworkStats.LATENCY_BOUNDS;
+            int bucket = 0;
+            while (bucket < bounds.length && metrics.getTotalTime() > bounds[bucket]) {
+                bucket++;
+            }
+            mLatency.incrementAndGet(bucket);
+        }
+
+        NetworkStats snapshot(String key) {
+            long[] latency = new long[mLatency.length()];
+            for (int i = 0; i < latency.length; i++) {
+                latency[i] = mLatency.get(i);
+            }
+            return new NetworkStats(key, mRequests.get(), mErrors.get(), mCoalesced.get(),
+                    mRejected.get(), mRequestBytes.get(), mResponseBytes.get(), latency);
+        }
+    }
+
+    /**
+     * State of one request between the interceptor and the end of its body
+     */
+    private static final class Call {
+        private final Request mRequest;
+        private final AbstractUrlConnection mConnection;
+        private final long mStart;
+        private final AtomicBoolean isFinished = new AtomicBoolean(false);
+        private long mHeadersAt;
+        private int mCode;
+        private long mBytes;
+
+        Call(Request request, AbstractUrlConnection connection) {
+            mRequest = request;
+            mConnection = connection;
+            mStart = SystemClock.elapsedRealtime();
+        }
+
+        void onHeaders(int code) {
+            mCode = code;
+            mHeadersAt = SystemClock.elapsedRealtime();
+        }
+
+        void onRead(long bytes) {
+            mBytes += bytes;
+        }
+
+        void finish(String error) {
+            if (!isFinished.compareAndSet(false, true)) {
+                return;
+            }
+            long end = SystemClock.elapsedRealtime();
+            long connectTime = mConnection == null ? -1 : mConnection.getConnectTime();
+            long handshakeTime = mConnection == null ? -1 : mConnection.getHandshakeTime();
+            long ttfb = -1;
+            if (mCode > 0) {
+                ttfb = mHeadersAt - mStart - Math.max(0, connectTime);
+            }
+            RequestBody body = mRequest.getRequestBody();
+            record(new RequestMetrics(mRequest.getUrl(), endpointOf(mRequest.getUrl()),
+                    String.valueOf(mRequest.getRequestMethod()), mCode, error, connectTime,
+                    handshakeTime, ttfb, end - mHeadersAt, end - mStart,
+                    body == null ? 0 : body.length(), mBytes));
+        }
+    }
+
+    private static final class MeteredInputStream extends FilterInputStream {
+        private final Call mCall;
+
+        MeteredInputStream(InputStream in, Call call) {
+            super(in);
+            mCall = call;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                mCall.finish(null);
+            } else {
+                mCall.onRead(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count;
+            try {
+                count = super.read(b, off, len);
+            } catch (IOException e) {
+                mCall.finish(e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+                throw e;
+            }
+            if (count < 0) {
+                mCall.finish(null);
+            } else {
+                mCall.onRead(count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCall.onRead(skipped);
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                mCall.finish(null);
+            }
+        }
+    }
+}
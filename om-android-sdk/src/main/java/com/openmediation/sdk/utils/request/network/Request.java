@@ -10,6 +10,7 @@ import android.text.TextUtils;
 import com.openmediation.sdk.utils.error.ErrorCode;
 import com.openmediation.sdk.utils.IOUtil;
 import com.openmediation.sdk.utils.DeveloperLog;
+import com.openmediation.sdk.utils.SdkScheduler;
 
 /**
  * The type Request.
@@ -26,6 +27,7 @@ public class Request {
     private final boolean isCheckChain;
     private final OnRequestCallback mCallback;
     private final Object mTag;
+    private final SdkScheduler.Lane mLane;
     private boolean mShouldCallbackResponse;
 
     private Context mContext;
@@ -96,6 +98,7 @@ public class Request {
         isCheckChain = builder.isCheckChain;
         mCallback = builder.mCallback;
         mTag = builder.mTag;
+        mLane = builder.mLane == null ? SdkScheduler.Lane.CRITICAL : builder.mLane;
     }
 
     /**
@@ -197,6 +200,15 @@ public class Request {
         return mTag;
     }
 
+    /**
+     * Gets the scheduler lane an async request runs on.
+     *
+     * @return the lane
+     */
+    public SdkScheduler.Lane getLane() {
+        return mLane;
+    }
+
     private void performRequest(Context context) {
         if (context == null) {
             callbackError(mCallback, ErrorCode.ERROR_CONTEXT);
@@ -230,7 +242,12 @@ public class Request {
                 }
             }
         });
-        ReqExecutor.execute(asyncReq);
+        if (!ReqExecutor.execute(mLane, asyncReq)) {
+            NetworkMetrics.onRejected(mUrl, mLane);
+            if (mCallback != null) {
+                mCallback.onRequestFailed("request rejected, lane " + mLane + " is full");
+            }
+        }
     }
 
 
@@ -239,6 +256,11 @@ public class Request {
         return new SyncReq(this).start();
     }
 
+    private Response syncRequestOrThrow() throws Exception {
+        mShouldCallbackResponse = true;
+        return new SyncReq(this).execute();
+    }
+
     private void callbackError(OnRequestCallback callback, String error) {
         if (callback == null) {
             throw new IllegalArgumentException(error);
@@ -261,6 +283,7 @@ public class Request {
         private boolean isInstanceFollowRedirects;
         private boolean isCheckChain;
         private Object mTag;
+        private SdkScheduler.Lane mLane;
 
         /**
          * Method request builder.
@@ -372,6 +395,17 @@ public class Request {
             return this;
         }
 
+        /**
+         * Lane request builder, async requests run on {@link SdkScheduler.Lane#CRITICAL} by default.
+         *
+         * @param lane the lane
+         * @return the request builder
+         */
+        public RequestBuilder lane(SdkScheduler.Lane lane) {
+            mLane = lane;
+            return this;
+        }
+
         /**
          * Sync request response.
          *
@@ -381,6 +415,18 @@ public class Request {
             return new Request(this).syncRequest();
         }
 
+        /**
+         * Sync request that throws instead of returning null, a response of status 400 or above
+         * fails with a {@link com.openmediation.sdk.utils.request.network.exception.ReadException}
+         * carrying the status.
+         *
+         * @return the response, null for an unsupported url
+         * @throws Exception the exception
+         */
+        public Response syncRequestOrThrow() throws Exception {
+            return new Request(this).syncRequestOrThrow();
+        }
+
         /**
          * Perform request.
          *
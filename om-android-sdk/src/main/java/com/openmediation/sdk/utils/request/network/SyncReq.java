@@ -13,13 +13,17 @@ class SyncReq extends BaseTask{
 
      Response start() {
         try {
-            if (mConnection == null) {
-                return null;
-            }
-            return mConnection.intercept(mRequest);
+            return execute();
         } catch (Exception e) {
             DeveloperLog.LogD("SyncReq", e);
             return null;
         }
     }
+
+    Response execute() throws Exception {
+        if (mConnection == null) {
+            return null;
+        }
+        return mConnection.intercept(mRequest);
+    }
 }
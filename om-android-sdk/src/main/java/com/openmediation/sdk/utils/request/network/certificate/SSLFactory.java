@@ -103,6 +103,7 @@ public class SSLFactory extends SSLSocketFactory {
                 }
             };
             sslContext.init(null, new X509TrustManager[]{trustAllCert}, null);
+            TlsSocketFactory.configureSessionCache(sslContext);
             defaultFactory = sslContext.getSocketFactory();
         } catch (GeneralSecurityException e) {
             throw new AssertionError(); // The system has no TLS. Just give up.
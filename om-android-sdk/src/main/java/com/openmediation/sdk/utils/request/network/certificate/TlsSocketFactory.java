@@ -0,0 +1,183 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.request.network.certificate;
+
+import android.os.SystemClock;
+
+import com.openmediation.sdk.utils.crash.CrashUtil;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.SecureRandom;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+
+/**
+ * Process-wide SSLSocketFactory instances.
+ * <p>
+ * HttpsURLConnection only reuses a pooled connection when the same factory instance is set,
+ * and TLS sessions are only resumed within one SSLContext, so every request of a kind shares
+ * one factory here instead of building a new context per request.
+ * <p>
+ * The factories also note when a new TLS socket is layered over a connected TCP socket, which
+ * lets the caller tell the handshake time apart and see whether a pooled connection was used.
+ */
+public final class TlsSocketFactory extends SSLSocketFactory {
+
+    /**
+     * Max cached client sessions per context
+     */
+    static final int SESSION_CACHE_SIZE = 32;
+    /**
+     * Session lifetime in seconds
+     */
+    static final int SESSION_TIMEOUT = 12 * 60 * 60;
+
+    private static final ThreadLocal<long[]> HANDSHAKE_START = new ThreadLocal<>();
+
+    private final SSLSocketFactory mDelegate;
+
+    private TlsSocketFactory(SSLSocketFactory delegate) {
+        mDelegate = delegate;
+    }
+
+    /**
+     * Factory with the system trust store
+     */
+    public static TlsSocketFactory system() {
+        return SystemHolder.INSTANCE;
+    }
+
+    /**
+     * Factory that checks the server chain against {@link PublicKeyTrustManager}
+     */
+    public static TlsSocketFactory pinned() throws Exception {
+        TlsSocketFactory factory = PinnedHolder.INSTANCE;
+        if (factory == null) {
+            throw new IllegalStateException("TLSv1.2 is not available");
+        }
+        return factory;
+    }
+
+    /**
+     * Factory with the TLS versions and cipher suites of {@link SSLFactory}, used below Lollipop
+     */
+    public static TlsSocketFactory compat() {
+        return CompatHolder.INSTANCE;
+    }
+
+    /**
+     * Starts timing the connection made by the current thread
+     */
+    public static void beginConnect() {
+        HANDSHAKE_START.set(new long[]{-1});
+    }
+
+    /**
+     * Ends timing the connection made by the current thread
+     *
+     * @param connectedAt elapsedRealtime at which the connection was established
+     * @return TLS handshake duration in ms, or -1 if no new TLS socket was created,
+     * meaning a pooled connection was used
+     */
+    public static long endConnect(long connectedAt) {
+        long[] start = HANDSHAKE_START.get();
+        HANDSHAKE_START.remove();
+        if (start == null || start[0] < 0) {
+            return -1;
+        }
+        return Math.max(0, connectedAt - start[0]);
+    }
+
+    static void configureSessionCache(SSLContext context) {
+        SSLSessionContext sessionContext = context.getClientSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+            sessionContext.setSessionTimeout(SESSION_TIMEOUT);
+        }
+    }
+
+    private static void onLayered() {
+        long[] start = HANDSHAKE_START.get();
+        if (start != null) {
+            start[0] = SystemClock.elapsedRealtime();
+        }
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return mDelegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return mDelegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+        onLayered();
+        return mDelegate.createSocket(s, host, port, autoClose);
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return mDelegate.createSocket();
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        onLayered();
+        return mDelegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        onLayered();
+        return mDelegate.createSocket(host, port, localHost, localPort);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        onLayered();
+        return mDelegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        onLayered();
+        return mDelegate.createSocket(address, port, localAddress, localPort);
+    }
+
+    private static final class SystemHolder {
+        private static final TlsSocketFactory INSTANCE =
+                new TlsSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory());
+    }
+
+    private static final class PinnedHolder {
+        private static final TlsSocketFactory INSTANCE = create();
+
+        private static TlsSocketFactory create() {
+            try {
+                TrustManager[] tm = {new PublicKeyTrustManager()};
+                SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
+                sslContext.init(null, tm, new SecureRandom());
+                configureSessionCache(sslContext);
+                return new TlsSocketFactory(sslContext.getSocketFactory());
+            } catch (Exception e) {
+                CrashUtil.getSingleton().saveException(e);
+                return null;
+            }
+        }
+    }
+
+    private static final class CompatHolder {
+        private static final TlsSocketFactory INSTANCE = new TlsSocketFactory(new SSLFactory());
+    }
+}
@@ -3,9 +3,14 @@
 
 package com.openmediation.sdk.utils.request.network.connect;
 
+import android.os.SystemClock;
+
+import com.openmediation.sdk.utils.DeveloperLog;
 import com.openmediation.sdk.utils.IOUtil;
 import com.openmediation.sdk.utils.crash.CrashUtil;
 import com.openmediation.sdk.utils.request.network.Headers;
+import com.openmediation.sdk.utils.request.network.Interceptor;
+import com.openmediation.sdk.utils.request.network.NetworkMetrics;
 import com.openmediation.sdk.utils.request.network.Request;
 import com.openmediation.sdk.utils.request.network.RequestBody;
 import com.openmediation.sdk.utils.request.network.Response;
@@ -17,17 +22,45 @@ import com.openmediation.sdk.utils.request.network.exception.WriteException;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.SocketTimeoutException;
 import java.net.URLConnection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * The type Abstract url connection.
  */
 public abstract class AbstractUrlConnection {
 
+    /**
+     * Idle connections HttpURLConnection keeps for reuse, unless the app has set its own
+     */
+    private static final String MAX_IDLE_CONNECTIONS = "5";
+
+    private static final List<Interceptor> INTERCEPTORS = new CopyOnWriteArrayList<>();
+
+    static {
+        INTERCEPTORS.add(NetworkMetrics.INTERCEPTOR);
+        try {
+            if (System.getProperty("http.keepAlive") == null) {
+                System.setProperty("http.keepAlive", "true");
+            }
+            if (System.getProperty("http.maxConnections") == null) {
+                System.setProperty("http.maxConnections", MAX_IDLE_CONNECTIONS);
+            }
+        } catch (Exception e) {
+            DeveloperLog.LogD("AbstractUrlConnection", e);
+        }
+    }
+
     private URLConnection mConnection;
+    private long mConnectTime = -1;
+    /**
+     * TLS handshake duration, -1 for plain http or a reused connection
+     */
+    long mHandshakeTime = -1;
 
     /**
      * Cancel.
@@ -59,6 +92,46 @@ public abstract class AbstractUrlConnection {
     AbstractUrlConnection() {
     }
 
+    /**
+     * Gets the time spent opening the connection, including the TLS handshake.
+     *
+     * @return the connect time in ms, -1 if not connected
+     */
+    public long getConnectTime() {
+        return mConnectTime;
+    }
+
+    /**
+     * Gets the TLS handshake time.
+     *
+     * @return the handshake time in ms, -1 for plain http or a reused connection
+     */
+    public long getHandshakeTime() {
+        return mHandshakeTime;
+    }
+
+    /**
+     * Adds an interceptor that runs for every request, after the built-in ones.
+     *
+     * @param interceptor the interceptor
+     */
+    public static void addInterceptor(Interceptor interceptor) {
+        if (interceptor != null && !INTERCEPTORS.contains(interceptor)) {
+            INTERCEPTORS.add(interceptor);
+        }
+    }
+
+    /**
+     * Removes an interceptor added by {@link #addInterceptor(Interceptor)}.
+     *
+     * @param interceptor the interceptor
+     */
+    public static void removeInterceptor(Interceptor interceptor) {
+        if (interceptor != NetworkMetrics.INTERCEPTOR) {
+            INTERCEPTORS.remove(interceptor);
+        }
+    }
+
     /**
      * Intercept response.
      *
@@ -67,26 +140,46 @@ public abstract class AbstractUrlConnection {
      * @throws Exception the exception
      */
     public Response intercept(Request request) throws Exception {
+        return new RealChain(INTERCEPTORS.toArray(new Interceptor[0]), 0, request).proceed(request);
+    }
+
+    private Response execute(Request request) throws Exception {
 //        if (!NetworkChecker.isAvailable(request.getContext())) {
 //            throw new ConnectException(ErrorCode.ERROR_NETWORK_NOT_AVAILABLE);
 //        }
 
         Request.Method method = request.getRequestMethod();
+        Headers headers = request.getHeaders();
+        if (headers != null && headers.getFirst(Headers.KEY_CONNECTION) == null) {
+            headers.set(Headers.KEY_CONNECTION, Headers.VALUE_KEEP_ALIVE);
+        }
         if (isAllowBody(method)) {
-            Headers headers = request.getHeaders();
             RequestBody body = request.getRequestBody();
             if (body != null && headers != null) {
-                headers.set(Headers.KEY_CONTENT_LENGTH, Long.toString(body.length()));
+                if (body.length() < 0) {
+                    headers.remove(Headers.KEY_CONTENT_LENGTH);
+                } else {
+                    headers.set(Headers.KEY_CONTENT_LENGTH, Long.toString(body.length()));
+                }
                 headers.set(Headers.KEY_CONTENT_TYPE, body.contentType());
             }
-            mConnection = connect(request);
+            mConnection = timedConnect(request);
             writeBody(body);
         } else {
-            mConnection = connect(request);
+            mConnection = timedConnect(request);
         }
         return readResponse(request);
     }
 
+    private URLConnection timedConnect(Request request) throws Exception {
+        long start = SystemClock.elapsedRealtime();
+        URLConnection connection = connect(request);
+        mConnectTime = SystemClock.elapsedRealtime() - start;
+        DeveloperLog.LogD("AbstractUrlConnection", "connect: " + mConnectTime
+                + "ms, handshake: " + mHandshakeTime + "ms, url: " + request.getUrl());
+        return connection;
+    }
+
     private void writeBody(RequestBody body) throws WriteException {
         try {
             if (body == null) {
@@ -104,7 +197,7 @@ public abstract class AbstractUrlConnection {
         try {
             int code = getResponseCode();
             if (code >= 400) {
-                throw new ReadException(String.format("%s RequestCode:%d", mConnection.getURL().toString(), code));
+                throw new ReadException(String.format("%s RequestCode:%d", mConnection.getURL().toString(), code), code);
             }
             BufferedInputStream inputStream = IOUtil.toBufferedInputStream(mConnection.getInputStream());
             if (!request.shouldCallbackResponse()) {
@@ -139,6 +232,19 @@ public abstract class AbstractUrlConnection {
         return headers;
     }
 
+    /**
+     * Bodies of unknown length are streamed chunked instead of being buffered by the connection.
+     *
+     * @param connection the connection, not yet connected
+     * @param request    the request
+     */
+    void applyStreamingMode(HttpURLConnection connection, Request request) {
+        RequestBody body = request.getRequestBody();
+        if (body != null && isAllowBody(request.getRequestMethod()) && body.length() < 0) {
+            connection.setChunkedStreamingMode(0);
+        }
+    }
+
     /**
      * Is allow body boolean.
      *
@@ -148,4 +254,35 @@ public abstract class AbstractUrlConnection {
     boolean isAllowBody(Request.Method method) {
         return method.equals(Request.Method.POST);
     }
+
+    private final class RealChain implements Interceptor.Chain {
+        private final Interceptor[] mInterceptors;
+        private final int mIndex;
+        private final Request mRequest;
+
+        RealChain(Interceptor[] interceptors, int index, Request request) {
+            mInterceptors = interceptors;
+            mIndex = index;
+            mRequest = request;
+        }
+
+        @Override
+        public Request request() {
+            return mRequest;
+        }
+
+        @Override
+        public AbstractUrlConnection connection() {
+            return AbstractUrlConnection.this;
+        }
+
+        @Override
+        public Response proceed(Request request) throws Exception {
+            if (mIndex >= mInterceptors.length) {
+                return execute(request);
+            }
+            RealChain next = new RealChain(mInterceptors, mIndex + 1, request);
+            return mInterceptors[mIndex].intercept(next);
+        }
+    }
 }
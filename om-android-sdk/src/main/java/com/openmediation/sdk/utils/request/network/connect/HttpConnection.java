@@ -59,6 +59,7 @@ public class HttpConnection extends AbstractUrlConnection {
         mConnection.setDoInput(true);
         boolean isAllowBody = isAllowBody(method);
         mConnection.setDoOutput(isAllowBody);
+        applyStreamingMode(mConnection, request);
 
         Headers headers = request.getHeaders();
 
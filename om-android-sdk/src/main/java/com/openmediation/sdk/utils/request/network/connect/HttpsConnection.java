@@ -4,13 +4,13 @@
 package com.openmediation.sdk.utils.request.network.connect;
 
 import android.os.Build;
+import android.os.SystemClock;
 
 import com.openmediation.sdk.utils.DeveloperLog;
 import com.openmediation.sdk.utils.IOUtil;
 import com.openmediation.sdk.utils.request.network.Headers;
 import com.openmediation.sdk.utils.request.network.Request;
-import com.openmediation.sdk.utils.request.network.certificate.PublicKeyTrustManager;
-import com.openmediation.sdk.utils.request.network.certificate.SSLFactory;
+import com.openmediation.sdk.utils.request.network.certificate.TlsSocketFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -20,9 +20,6 @@ import java.util.List;
 import java.util.Map;
 
 import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
 
 import static com.openmediation.sdk.utils.request.network.Headers.KEY_CONNECTION;
 
@@ -67,6 +64,7 @@ public final class HttpsConnection extends AbstractUrlConnection {
         mConnection.setDoInput(true);
         boolean isAllowBody = isAllowBody(method);
         mConnection.setDoOutput(isAllowBody);
+        applyStreamingMode(mConnection, request);
         mConnection.setUseCaches(false);
 
         Headers headers = request.getHeaders();
@@ -82,19 +80,20 @@ public final class HttpsConnection extends AbstractUrlConnection {
             }
         }
 
-        if (request.isCheckChain()) {
-            TrustManager[] tm = {new PublicKeyTrustManager()};
-            SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
-            sslContext.init(null, tm, new java.security.SecureRandom());
-            SSLSocketFactory ssf = sslContext.getSocketFactory();
-            mConnection.setSSLSocketFactory(ssf);
-        }
-
+        // factories are shared so that pooled connections and TLS sessions can be reused
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
-            SSLFactory ssf = new SSLFactory();
-            mConnection.setSSLSocketFactory(ssf);
+            mConnection.setSSLSocketFactory(TlsSocketFactory.compat());
+        } else if (request.isCheckChain()) {
+            mConnection.setSSLSocketFactory(TlsSocketFactory.pinned());
+        } else {
+            mConnection.setSSLSocketFactory(TlsSocketFactory.system());
+        }
+        TlsSocketFactory.beginConnect();
+        try {
+            mConnection.connect();
+        } finally {
+            mHandshakeTime = TlsSocketFactory.endConnect(SystemClock.elapsedRealtime());
         }
-        mConnection.connect();
         return mConnection;
     }
 }
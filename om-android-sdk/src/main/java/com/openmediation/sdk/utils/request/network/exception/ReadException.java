@@ -6,15 +6,35 @@ package com.openmediation.sdk.utils.request.network.exception;
 import java.io.IOException;
 
 public class ReadException extends IOException {
+    /**
+     * http status of the response, -1 if none was read
+     */
+    private int mCode = -1;
+
     public ReadException(String message) {
         super(message);
     }
 
+    public ReadException(String message, int code) {
+        super(message);
+        mCode = code;
+    }
+
     public ReadException(String message, Throwable cause) {
         super(message, cause);
     }
 
     public ReadException(Throwable cause) {
         super(cause);
+        if (cause instanceof ReadException) {
+            mCode = ((ReadException) cause).getCode();
+        }
+    }
+
+    /**
+     * @return the http status of the response, -1 if the request failed before one was read
+     */
+    public int getCode() {
+        return mCode;
     }
 }
@@ -0,0 +1,374 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.request;
+
+import com.openmediation.sdk.bid.BidResponse;
+import com.openmediation.sdk.utils.constant.CommonConstants;
+import com.openmediation.sdk.utils.constant.KeyConstants;
+import com.openmediation.sdk.utils.model.InstanceLoadStatus;
+import com.openmediation.sdk.utils.model.PlacementInfo;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the wf body {@link RequestBuilder#buildWfRequestBody} streams through
+ * {@link GzipJsonWriter} decodes to the JSONObject body the request was built from before.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class GzipJsonWriterTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String ESCAPES = "quote\" backslash\\ slash/ tab\t newline\n return\r"
+            + " backspace\b feed\f control\u0001\u001f separators \u2028 \u2029 del\u007f";
+    private static final String UNICODE = "é ü 中文 日本語 😀 🇨🇳 𝄞";
+
+    @Test
+    public void wfBodyMatchesJsonObject() throws Exception {
+        JSONObject base = baseJson();
+        WfBody body = new WfBody("pid", "req-1", CommonConstants.BANNER);
+        body.bid(101, 1.5, "USD");
+        body.bid(102, 0, "USD");
+        body.bid(-1, -1, "");
+        body.s2s(103, "token");
+        body.s2s(104, "");
+        body.status(101, 120, 80, "0", null);
+        body.status(104, 300, 1200, "timeout", "no fill");
+        assertBody(body.expected(base), body.build(base));
+    }
+
+    @Test
+    public void leavesOutOptionalFields() throws Exception {
+        JSONObject base = baseJson();
+        WfBody body = new WfBody("pid", null, CommonConstants.VIDEO);
+        body.mIap = null;
+        body.mAct = null;
+        body.mFields = new RequestFields().put("ts", 1600000000001L);
+        JSONObject actual = assertBody(body.expected(base), body.build(base));
+        assertTrue(!actual.has("reqId") && !actual.has(KeyConstants.RequestBody.KEY_W) && !actual.has("iap") && !actual.has("bid"));
+    }
+
+    @Test
+    public void escapesStrings() throws Exception {
+        JSONObject base = baseJson();
+        base.put("esc", ESCAPES);
+        WfBody body = new WfBody(ESCAPES, UNICODE, CommonConstants.NATIVE);
+        body.mFields.put("cdid", ESCAPES + UNICODE);
+        body.status(1, 2, 3, UNICODE, ESCAPES);
+        JSONObject actual = assertBody(body.expected(base), body.build(base));
+        assertEquals(ESCAPES, actual.getString("pid"));
+        assertEquals(UNICODE, actual.getString("reqId"));
+    }
+
+    @Test
+    public void encodesSurrogatePairsAsOneCodePoint() throws Exception {
+        WfBody body = new WfBody("😀", "a😀b🇨🇳", CommonConstants.VIDEO);
+        byte[] json = gunzip(body.build(baseJson()));
+        String text = new String(json, UTF8);
+        assertTrue(text.contains("\"a😀b🇨🇳\""));
+        // four bytes per pair, not two three-byte surrogates
+        assertEquals(4, "😀".getBytes(UTF8).length);
+        assertTrue(indexOf(json, "😀".getBytes(UTF8)) >= 0);
+    }
+
+    @Test
+    public void replacesUnpairedSurrogatesLikeGetBytes() throws Exception {
+        String value = "a\uD83Db\uDE00c\uD83D";
+        WfBody body = new WfBody(value, "req", CommonConstants.VIDEO);
+        JSONObject actual = new JSONObject(new String(gunzip(body.build(baseJson())), UTF8));
+        assertEquals(new String(value.getBytes(UTF8), UTF8), actual.getString("pid"));
+    }
+
+    @Test
+    public void writesBodiesLargerThanTheBuffer() throws Exception {
+        JSONObject base = baseJson();
+        StringBuilder msg = new StringBuilder();
+        while (msg.length() < 20 * 1024) {
+            // multi-byte chars of every length end up on buffer boundaries
+            msg.append("load failed é 中 😀 ").append(msg.length()).append(' ');
+        }
+        WfBody body = new WfBody("pid", "req-2", CommonConstants.INTERSTITIAL);
+        for (int i = 0; i < 500; i++) {
+            body.bid(i, i / 3.0, "USD");
+            body.status(i, 1000L + i, i, String.valueOf(i), i % 50 == 0 ? msg.toString() : "msg " + i);
+        }
+        byte[] json = gunzip(body.build(base));
+        assertTrue(json.length > 8 * 1024);
+        assertJsonEquals(body.expected(base), new JSONObject(new String(json, UTF8)));
+    }
+
+    @Test
+    public void reusesTheWriterOfTheThread() throws Exception {
+        JSONObject base = baseJson();
+        WfBody first = new WfBody("first", "req-3", CommonConstants.BANNER);
+        first.status(1, 2, 3, "code", ESCAPES);
+        WfBody second = new WfBody("second", "req-4", CommonConstants.VIDEO);
+        byte[] firstGzip = first.build(base);
+        byte[] secondGzip = second.build(base);
+        assertBody(first.expected(base), firstGzip);
+        assertBody(second.expected(base), secondGzip);
+    }
+
+    @Test
+    public void countsTheJsonBytes() throws Exception {
+        GzipJsonWriter out = GzipJsonWriter.obtain();
+        out.beginObject("{\"a\":1".getBytes(UTF8));
+        out.name("b").value("中😀");
+        out.name("c").value(2.5);
+        out.endObject();
+        int size = out.size();
+        byte[] json = gunzip(out.finish());
+        assertEquals("{\"a\":1,\"b\":\"中😀\",\"c\":2.5}", new String(json, UTF8));
+        assertEquals(json.length, size);
+    }
+
+    @Test
+    public void rejectsNonFiniteNumbers() {
+        double[] values = {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (double value : values) {
+            GzipJsonWriter out = GzipJsonWriter.obtain().beginObject();
+            try {
+                out.name("price").value(value);
+                fail("wrote " + value);
+            } catch (IllegalArgumentException expected) {
+                // like JSONObject.put
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInfinitePrice() throws Exception {
+        WfBody body = new WfBody("pid", "req-5", CommonConstants.VIDEO);
+        body.bid(1, Double.POSITIVE_INFINITY, "USD");
+        body.build(baseJson());
+    }
+
+    static JSONObject baseJson() throws Exception {
+        JSONObject base = new JSONObject();
+        base.put("fit", 1590000000L);
+        base.put("zo", -480);
+        base.put("lang", "zh");
+        base.put("lang_name", "中文");
+        base.put("make", "Google");
+        base.put("model", "Pixel \"5\"");
+        base.put("battery", 87);
+        base.put("android", new JSONObject().put("sdk", 34).put("abi", "arm64-v8a"));
+        return base;
+    }
+
+    /**
+     * @return the base json as {@link com.openmediation.sdk.utils.device.DeviceContext} encodes it
+     */
+    static byte[] prefixOf(JSONObject base) {
+        String json = base.toString();
+        return json.substring(0, json.length() - 1).getBytes(UTF8);
+    }
+
+    private static JSONObject assertBody(JSONObject expected, byte[] gzip) throws Exception {
+        JSONObject actual = new JSONObject(new String(gunzip(gzip), UTF8));
+        assertJsonEquals(expected, actual);
+        return actual;
+    }
+
+    /**
+     * Compares like JSONObject.similar, which the android org.json does not have
+     */
+    private static void assertJsonEquals(Object expected, Object actual) throws Exception {
+        if (expected instanceof JSONObject) {
+            assertTrue("expected " + expected + " but was " + actual, actual instanceof JSONObject);
+            JSONObject e = (JSONObject) expected;
+            JSONObject a = (JSONObject) actual;
+            assertEquals("expected " + e + " but was " + a, e.length(), a.length());
+            Iterator<String> keys = e.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                assertTrue("missing " + key + " in " + a, a.has(key));
+                assertJsonEquals(e.get(key), a.get(key));
+            }
+        } else if (expected instanceof JSONArray) {
+            assertTrue("expected " + expected + " but was " + actual, actual instanceof JSONArray);
+            JSONArray e = (JSONArray) expected;
+            JSONArray a = (JSONArray) actual;
+            assertEquals(e.length(), a.length());
+            for (int i = 0; i < e.length(); i++) {
+                assertJsonEquals(e.get(i), a.get(i));
+            }
+        } else if (expected instanceof Number && actual instanceof Number) {
+            assertEquals(((Number) expected).doubleValue(), ((Number) actual).doubleValue(), 0);
+        } else {
+            assertEquals(expected, actual);
+        }
+    }
+
+    static byte[] gunzip(byte[] gzip) throws Exception {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) > 0) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static int indexOf(byte[] array, byte[] target) {
+        outer:
+        for (int i = 0; i <= array.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (array[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * The arguments of a wf request, built by the real builder and put into a JSONObject the way
+     * the body was built before
+     */
+    static final class WfBody {
+        final PlacementInfo mInfo;
+        final String mReqId;
+        final List<BidResponse> mBids = new ArrayList<>();
+        final List<BidResponse> mS2s = new ArrayList<>();
+        final List<InstanceLoadStatus> mStatus = new ArrayList<>();
+        RequestFields mFields;
+        String mIap = "9.99";
+        String mAct = "1";
+
+        WfBody(String pid, String reqId, int adType) throws Exception {
+            mInfo = new PlacementInfo(pid).getPlacementInfo(adType);
+            mReqId = reqId;
+            mFields = new RequestFields()
+                    .put("ts", 1600000000000L)
+                    .put("did", "38400000-8cf0-11bd-b23e-10b96e40000d")
+                    .put("dtype", 2)
+                    .put("channel", "store")
+                    .put("cdid", "user-1")
+                    .put("tags", new JSONObject().put("level", 10).put("vip", "gold"))
+                    .put("gender", 2)
+                    .put("age", 30)
+                    .put("regs", new JSONObject().put("gdpr", 0).put("coppa", 1));
+        }
+
+        void bid(int iid, double price, String cur) {
+            BidResponse response = new BidResponse();
+            response.setIid(iid);
+            response.setPrice(price);
+            response.setCur(cur);
+            mBids.add(response);
+        }
+
+        void s2s(int iid, String token) {
+            BidResponse response = new BidResponse();
+            response.setIid(iid);
+            response.setToken(token);
+            mS2s.add(response);
+        }
+
+        void status(int iid, long lts, long dur, String code, String msg) {
+            InstanceLoadStatus status = new InstanceLoadStatus();
+            status.setIid(iid);
+            status.setLts(lts);
+            status.setDur(dur);
+            status.setCode(code);
+            status.setMsg(msg);
+            mStatus.add(status);
+        }
+
+        byte[] build(JSONObject base) throws Exception {
+            return RequestBuilder.buildWfRequestBody(prefixOf(base), mFields, mInfo, mBids, mS2s, mStatus,
+                    mReqId, mIap, "3", mAct);
+        }
+
+        JSONObject expected(JSONObject base) throws Exception {
+            JSONObject body = new JSONObject(base.toString());
+            mFields.appendTo(body);
+            body.put("reqId", mReqId);
+            if (mInfo.getWidth() != 0) {
+                body.put(KeyConstants.RequestBody.KEY_W, mInfo.getWidth());
+            }
+            if (mInfo.getHeight() != 0) {
+                body.put(KeyConstants.RequestBody.KEY_H, mInfo.getHeight());
+            }
+            body.put("pid", mInfo.getId());
+            body.put("iap", mIap);
+            body.put("imprTimes", 3);
+            body.put("act", mAct);
+            JSONArray bids = new JSONArray();
+            for (BidResponse response : mBids) {
+                JSONObject bid = new JSONObject();
+                if (response.getIid() >= 0) {
+                    bid.put("iid", response.getIid());
+                }
+                if (response.getPrice() >= 0) {
+                    bid.put("price", response.getPrice());
+                }
+                if (!isEmpty(response.getCur())) {
+                    bid.put("cur", response.getCur());
+                }
+                bids.put(bid);
+            }
+            if (bids.length() > 0) {
+                body.put("bid", bids);
+            }
+            JSONArray s2s = new JSONArray();
+            for (BidResponse response : mS2s) {
+                JSONObject bid = new JSONObject();
+                if (response.getIid() >= 0) {
+                    bid.put("iid", response.getIid());
+                }
+                if (!isEmpty(response.getToken())) {
+                    bid.put("token", response.getToken());
+                }
+                s2s.put(bid);
+            }
+            if (s2s.length() > 0) {
+                body.put("bids2s", s2s);
+            }
+            JSONArray ils = new JSONArray();
+            for (InstanceLoadStatus status : mStatus) {
+                JSONObject item = new JSONObject();
+                item.put("iid", status.getIid());
+                item.put("lts", status.getLts());
+                item.put("dur", status.getDur());
+                if (!isEmpty(status.getCode())) {
+                    item.put("code", status.getCode());
+                }
+                if (!isEmpty(status.getMsg())) {
+                    item.put("msg", status.getMsg());
+                }
+                ils.put(item);
+            }
+            if (ils.length() > 0) {
+                body.put("ils", ils);
+            }
+            return body;
+        }
+
+        private static boolean isEmpty(String value) {
+            return value == null || value.length() == 0;
+        }
+    }
+}
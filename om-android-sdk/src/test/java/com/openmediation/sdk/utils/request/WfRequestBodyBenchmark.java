@@ -0,0 +1,83 @@
+// Copyright 2021 ADTIMING TECHNOLOGY COMPANY LIMITED
+// Licensed under the GNU Lesser General Public License Version 3
+
+package com.openmediation.sdk.utils.request;
+
+import com.openmediation.sdk.utils.Gzip;
+import com.openmediation.sdk.utils.constant.CommonConstants;
+
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Bytes allocated per wf request body, built as a JSONObject that is then serialized and gzipped
+ * (before) and streamed through {@link GzipJsonWriter} (after). Prints both to the test output.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WfRequestBodyBenchmark {
+
+    private static final int WARM_UP = 2000;
+    private static final int ROUNDS = 5000;
+
+    @Test
+    public void streamingAllocatesLessThanJsonObject() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        final JSONObject base = GzipJsonWriterTest.baseJson();
+        final byte[] prefix = GzipJsonWriterTest.prefixOf(base);
+        final GzipJsonWriterTest.WfBody body = new GzipJsonWriterTest.WfBody("1234", "req-1", CommonConstants.BANNER);
+        for (int i = 0; i < 8; i++) {
+            body.bid(100 + i, 0.5 + i, "USD");
+            body.s2s(200 + i, "s2s-token-" + i);
+            body.status(300 + i, 1600000000000L + i, 200 + i, "0", "load failed " + i);
+        }
+
+        long before = measure(threads, new Body() {
+            @Override
+            public byte[] build() throws Exception {
+                return Gzip.inGZip(body.expected(base).toString().getBytes(Charset.forName("UTF-8")));
+            }
+        });
+        long after = measure(threads, new Body() {
+            @Override
+            public byte[] build() throws Exception {
+                return RequestBuilder.buildWfRequestBody(prefix, body.mFields, body.mInfo, body.mBids, body.mS2s,
+                        body.mStatus, body.mReqId, body.mIap, "3", body.mAct);
+            }
+        });
+        System.out.println("wf request body, bytes allocated per request: JSONObject " + before
+                + ", streamed " + after);
+        assertTrue("streamed " + after + " >= JSONObject " + before, after < before);
+    }
+
+    private static long measure(com.sun.management.ThreadMXBean threads, Body body) throws Exception {
+        long id = Thread.currentThread().getId();
+        int sink = 0;
+        for (int i = 0; i < WARM_UP; i++) {
+            sink += body.build().length;
+        }
+        long start = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < ROUNDS; i++) {
+            sink += body.build().length;
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - start;
+        assertTrue(sink > 0);
+        return allocated / ROUNDS;
+    }
+
+    private interface Body {
+        byte[] build() throws Exception;
+    }
+}